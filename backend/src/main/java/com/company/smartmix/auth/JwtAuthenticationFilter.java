@@ -1,5 +1,7 @@
 package com.company.smartmix.auth;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -16,6 +18,8 @@ import org.springframework.util.StringUtils;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * JWT认证过滤器
@@ -27,13 +31,22 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
     private final JwtTokenProvider tokenProvider;
     private final UserDetailsService userDetailsService;
+    private final MeterRegistry meterRegistry;
+    // 按结果复用计时器，每个请求不再经过 builder 和注册表查找
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
 
     @Override
     protected void doFilterInternal(HttpServletRequest request,
             HttpServletResponse response,
             FilterChain filterChain) throws ServletException, IOException {
+        // 只统计令牌校验和加载用户的耗时，不含后续处理
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "anonymous";
         try {
             String jwt = getJwtFromRequest(request);
+            if (StringUtils.hasText(jwt)) {
+                outcome = "invalid"; // 校验通过后改为 authenticated
+            }
 
             if (StringUtils.hasText(jwt) && tokenProvider.validateToken(jwt)) {
                 String username = tokenProvider.getUsernameFromToken(jwt);
@@ -44,10 +57,17 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
                 authentication.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
 
                 SecurityContextHolder.getContext().setAuthentication(authentication);
+                outcome = "authenticated";
             }
         } catch (Exception ex) {
             log.error("Could not set user authentication in security context", ex);
+            outcome = "error";
         }
+        sample.stop(timers.computeIfAbsent(outcome, tag -> Timer.builder("smartmix.auth.jwt")
+                .description("JWT认证过滤器耗时")
+                .tag("outcome", tag)
+                .publishPercentileHistogram()
+                .register(meterRegistry)));
 
         filterChain.doFilter(request, response);
     }
@@ -0,0 +1,96 @@
+package com.company.smartmix.common;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.Value;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * 游标分页结果
+ *
+ * 与 Page 不同，不统计总数，也不按偏移量跳过数据；下一页从 nextCursor 指向的排序键之后继续，
+ * 翻页深度不影响查询代价。
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CursorPage<T> {
+
+    private static final String SEPARATOR = "|";
+
+    private List<T> items;
+    private String nextCursor; // 为空表示没有下一页
+    private boolean hasMore;
+
+    /**
+     * 由多取一条的查询结果构造：rows 最多 size + 1 条，多出的一条只用于判断是否还有下一页
+     */
+    public static <T> CursorPage<T> of(List<T> rows, int size, Function<T, String> cursorOf) {
+        if (rows.size() <= size) {
+            return new CursorPage<>(rows, null, false);
+        }
+        List<T> items = rows.subList(0, size);
+        return new CursorPage<>(items, cursorOf.apply(items.get(size - 1)), true);
+    }
+
+    /**
+     * 把排序键编码为不透明的游标
+     */
+    public static String encodeCursor(Object... parts) {
+        StringBuilder joined = new StringBuilder();
+        for (int i = 0; i < parts.length; i++) {
+            if (i > 0) {
+                joined.append(SEPARATOR);
+            }
+            joined.append(parts[i]);
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(joined.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 解码游标，段数不符时抛出 400
+     */
+    public static String[] decodeCursor(String cursor, int parts) {
+        try {
+            String joined = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] values = joined.split("\\" + SEPARATOR, -1);
+            if (values.length == parts) {
+                return values;
+            }
+        } catch (IllegalArgumentException e) {
+            // 按无效游标处理
+        }
+        throw new BusinessException(400, "无效的分页游标");
+    }
+
+    /**
+     * 解码 (创建时间, ID) 游标；未传游标时从 start 开始（ID 取最大值，包含 start 时刻的全部数据）
+     */
+    public static TimeIdCursor decodeTimeIdCursor(String cursor, LocalDateTime start) {
+        if (cursor == null || cursor.isBlank()) {
+            return new TimeIdCursor(start, Long.MAX_VALUE);
+        }
+        String[] parts = decodeCursor(cursor, 2);
+        try {
+            return new TimeIdCursor(LocalDateTime.parse(parts[0]), Long.parseLong(parts[1]));
+        } catch (DateTimeParseException | NumberFormatException e) {
+            throw new BusinessException(400, "无效的分页游标");
+        }
+    }
+
+    /**
+     * 按 (创建时间, ID) 倒序翻页的位置
+     */
+    @Value
+    public static class TimeIdCursor {
+        LocalDateTime createdAt;
+        long id;
+    }
+}
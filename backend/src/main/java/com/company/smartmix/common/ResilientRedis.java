@@ -0,0 +1,80 @@
+package com.company.smartmix.common;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * Redis 访问封装：Redis 未启用或不可用时不抛异常，调用方回退到本地实现。
+ *
+ * 一次调用失败后在冷却期内不再访问 Redis，避免每个请求都等待连接超时。
+ */
+@Slf4j
+@Component
+public class ResilientRedis {
+
+    private final ObjectProvider<StringRedisTemplate> templateProvider;
+    private final boolean enabled;
+    private final long cooldownMillis;
+
+    private volatile long unavailableUntil;
+
+    public ResilientRedis(ObjectProvider<StringRedisTemplate> templateProvider,
+            @Value("${app.redis.enabled:true}") boolean enabled,
+            @Value("${app.redis.cooldown-seconds:30}") long cooldownSeconds) {
+        this.templateProvider = templateProvider;
+        this.enabled = enabled;
+        this.cooldownMillis = cooldownSeconds * 1000;
+    }
+
+    /**
+     * 当前是否尝试访问 Redis
+     */
+    public boolean isAvailable() {
+        return enabled && System.currentTimeMillis() >= unavailableUntil;
+    }
+
+    public Optional<String> get(String key) {
+        return Optional.ofNullable(execute(template -> template.opsForValue().get(key), null));
+    }
+
+    /**
+     * 写入并设置过期时间，返回是否写入成功
+     */
+    public boolean set(String key, String value, Duration ttl) {
+        return execute(template -> {
+            template.opsForValue().set(key, value, ttl);
+            return true;
+        }, false);
+    }
+
+    public boolean delete(String key) {
+        return execute(template -> Boolean.TRUE.equals(template.delete(key)), false);
+    }
+
+    /**
+     * 执行 Redis 操作，未启用、冷却中或失败时返回 fallback
+     */
+    public <T> T execute(Function<StringRedisTemplate, T> action, T fallback) {
+        if (!isAvailable()) {
+            return fallback;
+        }
+        StringRedisTemplate template = templateProvider.getIfAvailable();
+        if (template == null) {
+            return fallback;
+        }
+        try {
+            return action.apply(template);
+        } catch (RuntimeException e) {
+            unavailableUntil = System.currentTimeMillis() + cooldownMillis;
+            log.warn("Redis 不可用，{} 秒内使用本地回退: {}", cooldownMillis / 1000, e.getMessage());
+            return fallback;
+        }
+    }
+}
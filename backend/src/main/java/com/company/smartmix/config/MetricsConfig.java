@@ -0,0 +1,20 @@
+package com.company.smartmix.config;
+
+import io.micrometer.core.instrument.binder.commonspool2.CommonsObjectPool2Metrics;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 指标配置
+ *
+ * 连接池、HTTP请求和JVM指标由 Actuator 自动注册；这里补充 Redis 连接池（commons-pool2）的指标，
+ * 通过 JMX 读取 Lettuce 连接池的活跃/空闲/等待数。
+ */
+@Configuration
+public class MetricsConfig {
+
+    @Bean
+    public CommonsObjectPool2Metrics commonsObjectPool2Metrics() {
+        return new CommonsObjectPool2Metrics();
+    }
+}
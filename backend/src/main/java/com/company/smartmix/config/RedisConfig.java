@@ -0,0 +1,48 @@
+package com.company.smartmix.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+
+/**
+ * Redis 发布/订阅配置（跨节点缓存失效通知），app.redis.enabled=false 时不创建
+ *
+ * 监听容器不随应用自动启动：Redis 不可用时应用照常启动，定时重试订阅，订阅成功后由容器自行处理断线重连。
+ */
+@Slf4j
+@Configuration
+@ConditionalOnProperty(prefix = "app.redis", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class RedisConfig {
+
+    private RedisMessageListenerContainer container;
+
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory connectionFactory) {
+        container = new RedisMessageListenerContainer() {
+            @Override
+            public boolean isAutoStartup() {
+                return false; // 由 startListenerContainer 启动
+            }
+        };
+        container.setConnectionFactory(connectionFactory);
+        return container;
+    }
+
+    @Scheduled(initialDelay = 0, fixedDelayString = "${app.redis.subscribe-retry-ms:30000}")
+    public void startListenerContainer() {
+        if (container == null || container.isRunning()) {
+            return;
+        }
+        try {
+            container.start();
+            log.info("Redis 订阅已启动");
+        } catch (RuntimeException e) {
+            container.stop();
+            log.warn("Redis 订阅启动失败，稍后重试: {}", e.getMessage());
+        }
+    }
+}
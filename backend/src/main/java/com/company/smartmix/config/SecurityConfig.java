@@ -1,7 +1,9 @@
 package com.company.smartmix.config;
 
 import com.company.smartmix.auth.JwtAuthenticationFilter;
+import jakarta.servlet.DispatcherType;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.authentication.AuthenticationManager;
@@ -37,6 +39,10 @@ public class SecurityConfig {
     private final JwtAuthenticationFilter jwtAuthenticationFilter;
     private final UserDetailsService userDetailsService;
 
+    // 只在本地环境开放，其他环境的指标抓取需认证或走内网的独立管理端口
+    @Value("${app.metrics.prometheus-public:false}")
+    private boolean prometheusPublic;
+
     @Bean
     public SecurityFilterChain securityFilterChain(HttpSecurity http) throws Exception {
         http
@@ -47,10 +53,13 @@ public class SecurityConfig {
                         // 公开端点
                         .requestMatchers("/api/auth/**").permitAll()
                         .requestMatchers("/api/health").permitAll()
+                        .requestMatchers(publicActuatorEndpoints()).permitAll()
                         .requestMatchers("/swagger-ui.html", "/swagger-ui/**", "/v3/api-docs/**").permitAll()
                         .requestMatchers("/api/erp/**").permitAll()
                         .requestMatchers("/swagger-ui/**", "/v3/api-docs/**", "/swagger-ui.html").permitAll()
                         .requestMatchers("/error").permitAll()
+                        // 流式响应的异步分派，原请求已完成认证
+                        .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
                         // 所有其他端点需要认证
                         .anyRequest().authenticated())
                 .authenticationProvider(authenticationProvider())
@@ -59,6 +68,12 @@ public class SecurityConfig {
         return http.build();
     }
 
+    private String[] publicActuatorEndpoints() {
+        return prometheusPublic
+                ? new String[] { "/actuator/health", "/actuator/prometheus" }
+                : new String[] { "/actuator/health" };
+    }
+
     @Bean
     public AuthenticationProvider authenticationProvider() {
         DaoAuthenticationProvider authProvider = new DaoAuthenticationProvider();
@@ -2,136 +2,257 @@ package com.company.smartmix.cost;
 
 import com.company.smartmix.common.ApiResponse;
 import com.company.smartmix.common.BusinessException;
-import com.company.smartmix.material.MaterialPrice;
-import com.company.smartmix.material.MaterialPriceRepository;
+import com.company.smartmix.material.MaterialCache;
+import com.company.smartmix.material.MaterialRef;
+import com.company.smartmix.material.MaterialRepository;
+import com.company.smartmix.material.MaterialPriceSnapshot;
+import com.company.smartmix.material.MaterialPriceSnapshotService;
 import com.company.smartmix.mix.MixRecipe;
+import com.company.smartmix.mix.MixRecipeChangedEvent;
 import com.company.smartmix.mix.MixRecipeItem;
 import com.company.smartmix.mix.MixRecipeRepository;
+import io.micrometer.core.instrument.Timer;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 /**
  * 成本优化推荐引擎控制器
  */
+@Slf4j
 @Tag(name = "成本优化", description = "成本计算与优化推荐")
 @RestController
 @RequestMapping("/api/cost")
 @RequiredArgsConstructor
 public class CostOptimizationController {
 
+    private static final int DEFAULT_DETAIL_LIMIT = 3;
+    private static final int MAX_DETAIL_LIMIT = 20;
+
     private final MixRecipeRepository mixRecipeRepository;
-    private final MaterialPriceRepository materialPriceRepository;
+    private final MaterialPriceSnapshotService materialPriceSnapshotService;
+    private final MaterialRepository materialRepository;
+    private final MaterialCache materialCache;
+    private final MixDesignOptimizer mixDesignOptimizer;
+    private final RecipeUnitCostRepository recipeUnitCostRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final HistoricalCostService historicalCostService;
+    private final PriceRiskSimulator priceRiskSimulator;
+    private final CostRecommendationMetrics costRecommendationMetrics;
 
-    @Operation(summary = "获取成本优化推荐", description = "根据强度等级和方量推荐最低成本配比")
+    @Operation(summary = "获取成本优化推荐", description = "根据强度等级和方量推荐最低成本配比；排序、成本和最优标记均取自单方成本物化表，"
+            + "includeDetails 时只为前 detailLimit 个配比附加材料成本构成")
     @GetMapping("/recommendations")
     public ApiResponse<List<CostRecommendationDTO>> getRecommendations(
             @RequestParam String strengthGrade,
-            @RequestParam BigDecimal volume) {
+            @RequestParam BigDecimal volume,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(defaultValue = "false") boolean includeDetails,
+            @RequestParam(defaultValue = "" + DEFAULT_DETAIL_LIMIT) int detailLimit) {
+        if (detailLimit < 1 || detailLimit > MAX_DETAIL_LIMIT) {
+            return ApiResponse.badRequest("detailLimit 须在 1 到 " + MAX_DETAIL_LIMIT + " 之间");
+        }
+        Timer.Sample sample = Timer.start();
+        try {
+            return recommend(strengthGrade, volume, limit, includeDetails ? detailLimit : 0);
+        } finally {
+            sample.stop(costRecommendationMetrics.timer(includeDetails));
+        }
+    }
 
+    private ApiResponse<List<CostRecommendationDTO>> recommend(String strengthGrade, BigDecimal volume, Integer limit,
+            int detailLimit) {
         if (volume == null || volume.compareTo(BigDecimal.ZERO) <= 0) {
             return ApiResponse.badRequest("方量必须大于0");
         }
 
-        // 查询符合强度等级且已审核的配比
-        List<MixRecipe> approvedRecipes = mixRecipeRepository.findByStrengthGradeAndStatus(
-                strengthGrade, MixRecipe.RecipeStatus.APPROVED);
+        // 从单方成本物化表按成本升序取出已审核且价格完整的配比（单次索引范围查询）
+        List<RecipeUnitCost> ranked = recipeUnitCostRepository
+                .findByStrengthGradeAndStatusAndPriceIncompleteFalseOrderByUnitCostAsc(
+                        strengthGrade, MixRecipe.RecipeStatus.APPROVED);
+        costRecommendationMetrics.recordRecipes(ranked.size());
+
+        if (ranked.isEmpty()) {
+            return ApiResponse.success("没有找到符合条件且价格完整的已审核配比", new ArrayList<>());
+        }
+        if (limit != null && limit > 0 && ranked.size() > limit) {
+            ranked = ranked.subList(0, limit);
+        }
 
-        if (approvedRecipes.isEmpty()) {
-            return ApiResponse.success("没有找到符合条件的已审核配比", new ArrayList<>());
+        // 排序、成本、价格纪元和最优标记都来自物化表同一批行
+        List<CostRecommendationDTO> recommendations = ranked.stream()
+                .map(row -> toRankingDTO(row, volume))
+                .collect(Collectors.toList());
+        recommendations.get(0).setBest(true);
+        if (detailLimit > 0) {
+            attachDetails(ranked.subList(0, Math.min(detailLimit, ranked.size())), recommendations);
         }
+        return ApiResponse.success(recommendations);
+    }
 
-        // 计算每个配比的成本
-        List<CostRecommendationDTO> recommendations = new ArrayList<>();
+    /**
+     * 为前 N 个配比附加材料成本构成。物化表行的价格纪元与当前价格快照不同（价格刚同步、尚未重算）时
+     * 构成与行上的成本不一致，此时不附加
+     */
+    private void attachDetails(List<RecipeUnitCost> rows, List<CostRecommendationDTO> recommendations) {
+        Map<Long, MixRecipe> recipes = mixRecipeRepository
+                .findAllWithItemsByIdIn(rows.stream().map(RecipeUnitCost::getMixRecipeId).toList())
+                .stream()
+                .collect(Collectors.toMap(MixRecipe::getId, Function.identity()));
+        MaterialPriceSnapshot prices = materialPriceSnapshotService.current();
 
-        for (MixRecipe recipe : approvedRecipes) {
-            try {
-                CostRecommendationDTO recommendation = calculateCost(recipe, volume);
-                if (recommendation != null) {
-                    recommendations.add(recommendation);
-                }
-            } catch (Exception e) {
-                // 跳过计算失败的配比
+        for (int i = 0; i < rows.size(); i++) {
+            RecipeUnitCost row = rows.get(i);
+            MixRecipe recipe = recipes.get(row.getMixRecipeId());
+            if (recipe == null || !Objects.equals(row.getPriceEpoch(), prices.getPriceEpoch())) {
                 continue;
             }
+            try {
+                recommendations.get(i).setMaterialDetails(materialDetails(recipe, prices));
+            } catch (RuntimeException e) {
+                log.warn("配比材料成本构成计算失败: recipe={}", recipe.getRecipeCode(), e);
+            }
         }
+    }
+
+    @Operation(summary = "历史时点成本", description = "按指定时点生效的材料价格计算配比或生产任务成本")
+    @GetMapping("/as-of")
+    public ApiResponse<HistoricalCostService.AsOfCostResult> getCostAsOf(
+            @RequestParam(required = false) Long mixRecipeId,
+            @RequestParam(required = false) Long taskId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime asOf,
+            @RequestParam(required = false) BigDecimal volume) {
+        HistoricalCostService.AsOfCostRequest request = new HistoricalCostService.AsOfCostRequest();
+        request.setMixRecipeId(mixRecipeId);
+        request.setTaskId(taskId);
+        request.setAsOf(asOf);
+        request.setVolume(volume);
+
+        HistoricalCostService.AsOfCostResult result = historicalCostService.costBatch(List.of(request)).get(0);
+        if (result.getError() != null) {
+            return ApiResponse.badRequest(result.getError());
+        }
+        return ApiResponse.success(result);
+    }
+
+    @Operation(summary = "批量历史时点成本", description = "批量计算 (配比|任务, 时点) 的理论成本，不逐条查询")
+    @PostMapping("/as-of/batch")
+    public ApiResponse<List<HistoricalCostService.AsOfCostResult>> getCostAsOfBatch(
+            @RequestBody List<HistoricalCostService.AsOfCostRequest> requests) {
+        return ApiResponse.success(historicalCostService.costBatch(requests));
+    }
 
-        if (recommendations.isEmpty()) {
-            return ApiResponse.success("所有配比的材料价格数据不完整", new ArrayList<>());
+    @Operation(summary = "价格波动风险模拟", description = "按材料历史价格变动抽样，评估各配比成本分布及成为最低成本的概率")
+    @GetMapping("/simulation")
+    public ApiResponse<PriceRiskSimulator.SimulationResult> simulatePriceRisk(
+            @RequestParam String strengthGrade,
+            @RequestParam(defaultValue = "" + PriceRiskSimulator.DEFAULT_SCENARIOS) int scenarios,
+            @RequestParam(required = false) Long seed) {
+        return ApiResponse.success(priceRiskSimulator.simulate(strengthGrade, scenarios, seed));
+    }
+
+    @Operation(summary = "最低成本配比设计", description = "在用量范围与比例约束下求解最低成本的单方用量")
+    @PostMapping("/mix-design/optimize")
+    public ApiResponse<MixDesignOptimizer.MixDesignResult> optimizeMixDesign(
+            @Valid @RequestBody MixDesignOptimizer.MixDesignRequest request) {
+        return ApiResponse.success(mixDesignOptimizer.optimize(request));
+    }
+
+    @Operation(summary = "保存优化配比", description = "重新求解并将结果保存为待审核配比")
+    @PostMapping("/mix-design/save")
+    @Transactional
+    public ApiResponse<SavedMixDesignDTO> saveMixDesign(@Valid @RequestBody SaveMixDesignRequest request) {
+        if (mixRecipeRepository.existsByRecipeCode(request.getRecipeCode())) {
+            return ApiResponse.badRequest("配比编号已存在");
         }
 
-        // 按单方成本排序
-        recommendations.sort(Comparator.comparing(CostRecommendationDTO::getUnitCost));
+        MixDesignOptimizer.MixDesignResult result = mixDesignOptimizer.optimize(request.getDesign());
+
+        MixRecipe recipe = new MixRecipe();
+        recipe.setRecipeCode(request.getRecipeCode());
+        recipe.setStrengthGrade(result.getStrengthGrade());
+        recipe.setSlump(result.getSlump());
+        recipe.setTechnicalRequirements(request.getTechnicalRequirements());
+        recipe.setRemarks(request.getRemarks() != null ? request.getRemarks()
+                : "成本优化生成，理论单方成本 " + result.getUnitCost() + " 元/m³");
+        recipe.setStatus(MixRecipe.RecipeStatus.PENDING_APPROVAL);
 
-        // 标记最低成本配比
-        if (!recommendations.isEmpty()) {
-            recommendations.get(0).setBest(true);
+        for (MixDesignOptimizer.MixDesignItem designItem : result.getItems()) {
+            MixRecipeItem item = new MixRecipeItem();
+            item.setMaterial(materialRepository.getReferenceById(designItem.getMaterialId()));
+            item.setDosagePerM3(designItem.getDosagePerM3());
+            recipe.addItem(item);
         }
 
-        return ApiResponse.success(recommendations);
+        MixRecipe saved = mixRecipeRepository.save(recipe);
+        eventPublisher.publishEvent(new MixRecipeChangedEvent(saved.getId()));
+
+        SavedMixDesignDTO dto = new SavedMixDesignDTO();
+        dto.setMixRecipeId(saved.getId());
+        dto.setMixRecipeCode(saved.getRecipeCode());
+        dto.setStatus(saved.getStatus());
+        dto.setDesign(result);
+        return ApiResponse.success("优化配比已保存，等待审核", dto);
     }
 
     /**
-     * 计算单个配比的成本
+     * 由物化表行生成排序结果（不含材料明细）
      */
-    private CostRecommendationDTO calculateCost(MixRecipe recipe, BigDecimal volume) {
+    private CostRecommendationDTO toRankingDTO(RecipeUnitCost row, BigDecimal volume) {
         CostRecommendationDTO dto = new CostRecommendationDTO();
-        dto.setMixRecipeId(recipe.getId());
-        dto.setMixRecipeCode(recipe.getRecipeCode());
-        dto.setStrengthGrade(recipe.getStrengthGrade());
-        dto.setSlump(recipe.getSlump());
+        dto.setMixRecipeId(row.getMixRecipeId());
+        dto.setMixRecipeCode(row.getRecipeCode());
+        dto.setStrengthGrade(row.getStrengthGrade());
+        dto.setSlump(row.getSlump());
+        dto.setUnitCost(row.getUnitCost());
+        dto.setTotalCost(row.getUnitCost().multiply(volume).setScale(2, RoundingMode.HALF_UP));
+        dto.setPriceEpoch(row.getPriceEpoch());
+        dto.setPriceIncomplete(false);
+        dto.setBest(false);
+        return dto;
+    }
 
+    /**
+     * 按价格快照计算单个配比的材料成本构成，价格不完整时返回 null
+     */
+    private List<MaterialCostDetail> materialDetails(MixRecipe recipe, MaterialPriceSnapshot prices) {
         List<MaterialCostDetail> materialDetails = new ArrayList<>();
-        BigDecimal unitCost = BigDecimal.ZERO;
-        boolean priceIncomplete = false;
-
-        // 计算每种材料的成本
         for (MixRecipeItem item : recipe.getItems()) {
-            MaterialPrice currentPrice = materialPriceRepository
-                    .findByMaterialAndIsCurrent(item.getMaterial(), true)
-                    .orElse(null);
-
-            if (currentPrice == null || currentPrice.getPricePerKg() == null) {
-                priceIncomplete = true;
-                break;
+            BigDecimal unitPrice = prices.getPricePerKg(item.getMaterial().getId());
+            if (unitPrice == null) {
+                return null;
             }
 
             BigDecimal dosage = item.getDosagePerM3();
-            BigDecimal unitPrice = currentPrice.getPricePerKg();
-            BigDecimal costPerM3 = dosage.multiply(unitPrice).setScale(2, RoundingMode.HALF_UP);
-
+            MaterialRef material = materialCache.getRequired(item.getMaterial().getId());
             MaterialCostDetail detail = new MaterialCostDetail();
-            detail.setMaterialCode(item.getMaterial().getMaterialCode());
-            detail.setMaterialName(item.getMaterial().getDescription());
+            detail.setMaterialCode(material.getMaterialCode());
+            detail.setMaterialName(material.getDescription());
             detail.setDosagePerM3(dosage);
             detail.setUnitPrice(unitPrice);
-            detail.setCostPerM3(costPerM3);
-
+            detail.setCostPerM3(dosage.multiply(unitPrice).setScale(2, RoundingMode.HALF_UP));
             materialDetails.add(detail);
-            unitCost = unitCost.add(costPerM3);
         }
-
-        // 如果价格不完整，返回 null
-        if (priceIncomplete) {
-            return null;
-        }
-
-        dto.setUnitCost(unitCost.setScale(2, RoundingMode.HALF_UP));
-        dto.setTotalCost(unitCost.multiply(volume).setScale(2, RoundingMode.HALF_UP));
-        dto.setMaterialDetails(materialDetails);
-        dto.setPriceIncomplete(false);
-        dto.setBest(false);
-
-        return dto;
+        return materialDetails;
     }
 
     // DTOs
@@ -146,9 +267,31 @@ public class CostOptimizationController {
         private BigDecimal totalCost; // 总成本（元）
         private boolean isBest; // 是否最低成本推荐
         private boolean priceIncomplete; // 价格数据是否不完整
+        private Long priceEpoch; // 单方成本计算所用价格纪元
         private List<MaterialCostDetail> materialDetails;
     }
 
+    @Data
+    public static class SaveMixDesignRequest {
+        @NotBlank(message = "配比编号不能为空")
+        private String recipeCode;
+
+        private String technicalRequirements;
+        private String remarks;
+
+        @Valid
+        @NotNull(message = "优化参数不能为空")
+        private MixDesignOptimizer.MixDesignRequest design;
+    }
+
+    @Data
+    public static class SavedMixDesignDTO {
+        private Long mixRecipeId;
+        private String mixRecipeCode;
+        private MixRecipe.RecipeStatus status;
+        private MixDesignOptimizer.MixDesignResult design;
+    }
+
     @Data
     public static class MaterialCostDetail {
         private String materialCode;
@@ -0,0 +1,45 @@
+package com.company.smartmix.cost;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+/**
+ * 成本优化推荐指标
+ *
+ * smartmix.cost.recommendation：推荐接口耗时（直方图），按是否附加材料成本构成区分；
+ * smartmix.cost.recommendation.recipes：每次推荐参与排序的配比数。
+ * 指标在启动时创建，请求中只记录数值。
+ */
+@Component
+public class CostRecommendationMetrics {
+
+    private final Timer withDetails;
+    private final Timer withoutDetails;
+    private final DistributionSummary recipes;
+
+    public CostRecommendationMetrics(MeterRegistry meterRegistry) {
+        this.withDetails = timer(meterRegistry, true);
+        this.withoutDetails = timer(meterRegistry, false);
+        this.recipes = DistributionSummary.builder("smartmix.cost.recommendation.recipes")
+                .description("每次推荐参与排序的配比数")
+                .register(meterRegistry);
+    }
+
+    public Timer timer(boolean includeDetails) {
+        return includeDetails ? withDetails : withoutDetails;
+    }
+
+    public void recordRecipes(int count) {
+        recipes.record(count);
+    }
+
+    private static Timer timer(MeterRegistry meterRegistry, boolean includeDetails) {
+        return Timer.builder("smartmix.cost.recommendation")
+                .description("成本优化推荐耗时")
+                .tag("includeDetails", String.valueOf(includeDetails))
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,222 @@
+package com.company.smartmix.cost;
+
+import com.company.smartmix.common.BusinessException;
+import com.company.smartmix.material.Material;
+import com.company.smartmix.material.MaterialPriceLookup;
+import com.company.smartmix.material.MaterialPriceTimeline;
+import com.company.smartmix.material.MaterialPriceTimelineService;
+import com.company.smartmix.mix.MixRecipe;
+import com.company.smartmix.mix.MixRecipeItem;
+import com.company.smartmix.mix.MixRecipeRepository;
+import com.company.smartmix.mix.RecipeDetail;
+import com.company.smartmix.mix.RecipeVersion;
+import com.company.smartmix.mix.RecipeVersionService;
+import com.company.smartmix.task.ProductionTask;
+import com.company.smartmix.task.ProductionTaskRepository;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 历史时点成本计算服务
+ * 按价格时间线计算配比或生产任务在任意时刻的理论成本，批量请求只做两次查询
+ */
+@Service
+@RequiredArgsConstructor
+public class HistoricalCostService {
+
+    public static final int MAX_BATCH_SIZE = 10_000;
+
+    private final MixRecipeRepository mixRecipeRepository;
+    private final ProductionTaskRepository productionTaskRepository;
+    private final MaterialPriceTimelineService materialPriceTimelineService;
+    private final RecipeVersionService recipeVersionService;
+
+    /**
+     * 批量计算 (配比|任务, 时点) 成本
+     */
+    @Transactional(readOnly = true)
+    public List<AsOfCostResult> costBatch(List<AsOfCostRequest> requests) {
+        if (requests.size() > MAX_BATCH_SIZE) {
+            throw new BusinessException(400, "单次最多计算 " + MAX_BATCH_SIZE + " 条");
+        }
+
+        // 一次查询加载全部任务
+        Set<Long> taskIds = requests.stream()
+                .map(AsOfCostRequest::getTaskId)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+        Map<Long, ProductionTask> tasks = taskIds.isEmpty() ? Map.of()
+                : productionTaskRepository.findAllById(taskIds).stream()
+                        .collect(Collectors.toMap(ProductionTask::getId, Function.identity()));
+
+        // 已关联审核版本的任务按版本快照计算（配比可能已被修改），其余一次查询加载全部配比及明细
+        Set<Long> recipeIds = new HashSet<>();
+        Map<Long, RecipeVersion> versions = new HashMap<>();
+        for (AsOfCostRequest request : requests) {
+            Long versionId = resolveVersionId(request, tasks);
+            if (versionId != null) {
+                RecipeVersion version = recipeVersionService.get(versionId);
+                if (version != null) {
+                    versions.put(versionId, version);
+                }
+                continue;
+            }
+            Long recipeId = resolveRecipeId(request, tasks);
+            if (recipeId != null) {
+                recipeIds.add(recipeId);
+            }
+        }
+        List<MixRecipe> recipes = new ArrayList<>(recipeIds.isEmpty() ? List.of()
+                : mixRecipeRepository.findAllWithItemsByIdIn(recipeIds));
+        int liveRows = recipes.size();
+        List<Long> versionIds = new ArrayList<>(versions.keySet());
+        for (Long versionId : versionIds) {
+            recipes.add(toRecipe(versions.get(versionId).getRecipe()));
+        }
+        RecipeCostMatrix matrix = RecipeCostMatrix.of(recipes);
+        Map<Long, Integer> rowByRecipeId = new HashMap<>();
+        for (int r = 0; r < liveRows; r++) {
+            rowByRecipeId.put(matrix.recipe(r).getId(), r);
+        }
+        Map<Long, Integer> rowByVersionId = new HashMap<>();
+        for (int i = 0; i < versionIds.size(); i++) {
+            rowByVersionId.put(versionIds.get(i), liveRows + i);
+        }
+
+        MaterialPriceTimeline timeline = materialPriceTimelineService.current();
+        long[] priceVector = new long[matrix.cols()];
+        List<AsOfCostResult> results = new ArrayList<>(requests.size());
+
+        for (AsOfCostRequest request : requests) {
+            AsOfCostResult result = new AsOfCostResult();
+            result.setTaskId(request.getTaskId());
+            ProductionTask task = request.getTaskId() != null ? tasks.get(request.getTaskId()) : null;
+            Long versionId = resolveVersionId(request, tasks);
+            RecipeVersion version = versionId != null ? versions.get(versionId) : null;
+            Long recipeId = version != null ? version.getMixRecipeId() : resolveRecipeId(request, tasks);
+            result.setMixRecipeId(recipeId);
+            result.setRecipeVersionId(versionId);
+            Integer row = versionId != null ? rowByVersionId.get(versionId) : rowByRecipeId.get(recipeId);
+
+            if (request.getTaskId() != null && task == null) {
+                result.setError("生产任务不存在");
+            } else if (versionId != null && version == null) {
+                result.setError("配比版本不存在");
+            } else if (recipeId == null) {
+                result.setError(task != null ? "任务尚未选择配比" : "配比ID或任务ID不能为空");
+            } else if (row == null) {
+                result.setError("配比不存在");
+            } else {
+                LocalDateTime asOf = resolveAsOf(request, task);
+                MaterialPriceLookup prices = timeline.at(asOf);
+                matrix.fillPriceVector(prices, priceVector);
+                long cents = matrix.unitCost(row, priceVector, prices);
+
+                result.setAsOf(asOf);
+                result.setMixRecipeCode(matrix.recipe(row).getRecipeCode());
+                result.setPriceIncomplete(cents == RecipeCostMatrix.INCOMPLETE);
+                result.setUnitCost(RecipeCostMatrix.toAmount(cents));
+                BigDecimal volume = request.getVolume() != null ? request.getVolume()
+                        : task != null ? task.getVolume() : null;
+                if (result.getUnitCost() != null && volume != null) {
+                    result.setVolume(volume);
+                    result.setTotalCost(result.getUnitCost().multiply(volume).setScale(2, RoundingMode.HALF_UP));
+                }
+            }
+            results.add(result);
+        }
+        return results;
+    }
+
+    private Long resolveRecipeId(AsOfCostRequest request, Map<Long, ProductionTask> tasks) {
+        if (request.getMixRecipeId() != null) {
+            return request.getMixRecipeId();
+        }
+        ProductionTask task = request.getTaskId() != null ? tasks.get(request.getTaskId()) : null;
+        return task != null ? task.getSelectedMixRecipeId() : null;
+    }
+
+    /**
+     * 未指定配比、任务已关联审核版本时按该版本计算
+     */
+    private Long resolveVersionId(AsOfCostRequest request, Map<Long, ProductionTask> tasks) {
+        if (request.getMixRecipeId() != null || request.getTaskId() == null) {
+            return null;
+        }
+        ProductionTask task = tasks.get(request.getTaskId());
+        return task != null ? task.getSelectedRecipeVersionId() : null;
+    }
+
+    /**
+     * 由版本快照构建只用于计算的配比（不持久化），明细只需材料ID和用量
+     */
+    private static MixRecipe toRecipe(RecipeDetail detail) {
+        MixRecipe recipe = new MixRecipe();
+        recipe.setId(detail.getId());
+        recipe.setRecipeCode(detail.getRecipeCode());
+        for (RecipeDetail.Item detailItem : detail.getItems()) {
+            Material material = new Material();
+            material.setId(detailItem.getMaterialId());
+            MixRecipeItem item = new MixRecipeItem();
+            item.setMaterial(material);
+            item.setDosagePerM3(detailItem.getDosagePerM3());
+            recipe.addItem(item);
+        }
+        return recipe;
+    }
+
+    /**
+     * 时点默认值：已完成任务取完成时间（最后更新时间），其他任务取创建时间，配比取当前时间
+     */
+    private LocalDateTime resolveAsOf(AsOfCostRequest request, ProductionTask task) {
+        if (request.getAsOf() != null) {
+            return request.getAsOf();
+        }
+        if (task != null) {
+            if (task.getStatus() == ProductionTask.TaskStatus.COMPLETED && task.getUpdatedAt() != null) {
+                return task.getUpdatedAt();
+            }
+            return task.getCreatedAt();
+        }
+        return LocalDateTime.now();
+    }
+
+    // DTOs
+
+    @Data
+    public static class AsOfCostRequest {
+        private Long mixRecipeId; // 配比ID（与任务ID二选一，优先）
+        private Long taskId; // 生产任务ID，未指定配比时使用任务选择时的配比版本（早期任务没有版本时使用当前配比）
+        private LocalDateTime asOf; // 计价时点
+        private BigDecimal volume; // 方量，默认取任务方量
+    }
+
+    @Data
+    public static class AsOfCostResult {
+        private Long mixRecipeId;
+        private String mixRecipeCode;
+        private Long recipeVersionId; // 按任务关联的审核版本计算时的版本ID
+        private Long taskId;
+        private LocalDateTime asOf;
+        private BigDecimal volume;
+        private BigDecimal unitCost; // 单方成本（元/m³）
+        private BigDecimal totalCost; // 总成本（元）
+        private boolean priceIncomplete;
+        private String error;
+    }
+}
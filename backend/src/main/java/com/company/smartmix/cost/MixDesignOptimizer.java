@@ -0,0 +1,344 @@
+package com.company.smartmix.cost;
+
+import com.company.smartmix.common.BusinessException;
+import com.company.smartmix.material.MaterialCache;
+import com.company.smartmix.material.MaterialPriceSnapshot;
+import com.company.smartmix.material.MaterialPriceSnapshotService;
+import com.company.smartmix.material.MaterialRef;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.DecimalMin;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * 最低成本配比设计优化器
+ * 根据材料用量上下限及水胶比、胶材总量、外加剂掺量、砂率、容重等约束，
+ * 以当前材料价格为目标系数求解线性规划，得到最低成本的单方用量
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class MixDesignOptimizer {
+
+    private final MaterialCache materialCache;
+    private final MaterialPriceSnapshotService materialPriceSnapshotService;
+
+    /**
+     * 求解最低成本配比
+     */
+    public MixDesignResult optimize(MixDesignRequest request) {
+        long start = System.nanoTime();
+
+        List<MaterialBound> bounds = request.getMaterials();
+        validateBounds(bounds);
+        Map<Long, MaterialRef> materials = materialCache
+                .getAll(bounds.stream().map(MaterialBound::getMaterialId).collect(Collectors.toSet()));
+
+        MaterialPriceSnapshot prices = materialPriceSnapshotService.current();
+        int n = bounds.size();
+        SimplexSolver solver = new SimplexSolver(n);
+        BigDecimal[] unitPrices = new BigDecimal[n];
+
+        for (int j = 0; j < n; j++) {
+            MaterialBound bound = bounds.get(j);
+            if (!materials.containsKey(bound.getMaterialId())) {
+                throw new BusinessException(400, "材料不存在: " + bound.getMaterialId());
+            }
+            BigDecimal price = prices.getPricePerKg(bound.getMaterialId());
+            if (price == null) {
+                throw new BusinessException(400, "材料缺少当前价格: "
+                        + materials.get(bound.getMaterialId()).getMaterialCode());
+            }
+            double lo = bound.getMinDosage() != null ? bound.getMinDosage().doubleValue() : 0.0;
+            double hi = bound.getMaxDosage() != null ? bound.getMaxDosage().doubleValue() : Double.POSITIVE_INFINITY;
+            unitPrices[j] = price;
+            solver.objective(j, price.doubleValue()).bounds(j, lo, hi);
+        }
+
+        addConstraints(solver, request, bounds);
+
+        SimplexSolver.Result result = solver.solve();
+        long elapsedMicros = (System.nanoTime() - start) / 1000;
+        log.debug("配比优化求解完成: status={}, iterations={}, {}μs",
+                result.getStatus(), result.getIterations(), elapsedMicros);
+
+        switch (result.getStatus()) {
+            case INFEASIBLE:
+                throw new BusinessException(400, "约束条件无可行解，请放宽用量范围或比例要求");
+            case UNBOUNDED:
+                throw new BusinessException(400, "约束条件不完整，优化问题无界");
+            case ITERATION_LIMIT:
+                throw new BusinessException("配比优化未收敛");
+            default:
+                break;
+        }
+
+        return toResult(request, bounds, materials, unitPrices, result, elapsedMicros);
+    }
+
+    /**
+     * 同一材料只能出现一次（否则目标与约束中会被重复计入），用量上下限不能为负且下限不大于上限
+     */
+    private static void validateBounds(List<MaterialBound> bounds) {
+        Set<Long> seen = new HashSet<>();
+        for (MaterialBound bound : bounds) {
+            if (!seen.add(bound.getMaterialId())) {
+                throw new BusinessException(400, "候选材料重复: " + bound.getMaterialId());
+            }
+            BigDecimal min = bound.getMinDosage();
+            BigDecimal max = bound.getMaxDosage();
+            if ((min != null && min.signum() < 0) || (max != null && max.signum() < 0)) {
+                throw new BusinessException(400, "用量上下限不能为负: " + bound.getMaterialId());
+            }
+            if (min != null && max != null && min.compareTo(max) > 0) {
+                throw new BusinessException(400, "用量下限不能大于上限: " + bound.getMaterialId());
+            }
+        }
+    }
+
+    /**
+     * 将比例约束线性化后加入求解器
+     */
+    private void addConstraints(SimplexSolver solver, MixDesignRequest request, List<MaterialBound> bounds) {
+        int n = bounds.size();
+        double[] binder = roleVector(bounds, MaterialRole.BINDER);
+        double[] water = roleVector(bounds, MaterialRole.WATER);
+        double[] admixture = roleVector(bounds, MaterialRole.ADMIXTURE);
+        double[] fine = roleVector(bounds, MaterialRole.FINE_AGGREGATE);
+        double[] coarse = roleVector(bounds, MaterialRole.COARSE_AGGREGATE);
+
+        // 水胶比：water - r·binder (<=|>=) 0
+        if (request.getMaxWaterBinderRatio() != null) {
+            solver.constraint(combine(water, binder, -request.getMaxWaterBinderRatio().doubleValue()),
+                    SimplexSolver.Sense.LE, 0.0);
+        }
+        if (request.getMinWaterBinderRatio() != null) {
+            solver.constraint(combine(water, binder, -request.getMinWaterBinderRatio().doubleValue()),
+                    SimplexSolver.Sense.GE, 0.0);
+        }
+
+        // 胶凝材料总量
+        if (request.getMinBinder() != null) {
+            solver.constraint(binder, SimplexSolver.Sense.GE, request.getMinBinder().doubleValue());
+        }
+        if (request.getMaxBinder() != null) {
+            solver.constraint(binder, SimplexSolver.Sense.LE, request.getMaxBinder().doubleValue());
+        }
+
+        // 外加剂掺量（占胶凝材料百分比）
+        if (request.getMinAdmixturePercent() != null) {
+            solver.constraint(combine(admixture, binder, -percent(request.getMinAdmixturePercent())),
+                    SimplexSolver.Sense.GE, 0.0);
+        }
+        if (request.getMaxAdmixturePercent() != null) {
+            solver.constraint(combine(admixture, binder, -percent(request.getMaxAdmixturePercent())),
+                    SimplexSolver.Sense.LE, 0.0);
+        }
+
+        // 砂率：fine / (fine + coarse)
+        double[] aggregate = combine(fine, coarse, 1.0);
+        if (request.getMinSandRatioPercent() != null) {
+            solver.constraint(combine(fine, aggregate, -percent(request.getMinSandRatioPercent())),
+                    SimplexSolver.Sense.GE, 0.0);
+        }
+        if (request.getMaxSandRatioPercent() != null) {
+            solver.constraint(combine(fine, aggregate, -percent(request.getMaxSandRatioPercent())),
+                    SimplexSolver.Sense.LE, 0.0);
+        }
+
+        // 容重（单方总质量）
+        double[] all = new double[n];
+        Arrays.fill(all, 1.0);
+        if (request.getMinTotalMass() != null) {
+            solver.constraint(all, SimplexSolver.Sense.GE, request.getMinTotalMass().doubleValue());
+        }
+        if (request.getMaxTotalMass() != null) {
+            solver.constraint(all, SimplexSolver.Sense.LE, request.getMaxTotalMass().doubleValue());
+        }
+    }
+
+    private MixDesignResult toResult(MixDesignRequest request, List<MaterialBound> bounds,
+            Map<Long, MaterialRef> materials, BigDecimal[] unitPrices, SimplexSolver.Result solution,
+            long elapsedMicros) {
+        double[] x = solution.getSolution();
+        List<MixDesignItem> items = new ArrayList<>();
+        BigDecimal unitCost = BigDecimal.ZERO;
+        BigDecimal binder = BigDecimal.ZERO;
+        BigDecimal water = BigDecimal.ZERO;
+        BigDecimal admixture = BigDecimal.ZERO;
+        BigDecimal fine = BigDecimal.ZERO;
+        BigDecimal coarse = BigDecimal.ZERO;
+        BigDecimal totalMass = BigDecimal.ZERO;
+
+        for (int j = 0; j < bounds.size(); j++) {
+            BigDecimal dosage = BigDecimal.valueOf(x[j]).setScale(2, RoundingMode.HALF_UP);
+            if (dosage.signum() == 0) {
+                continue;
+            }
+            MaterialBound bound = bounds.get(j);
+            MaterialRef material = materials.get(bound.getMaterialId());
+            BigDecimal costPerM3 = dosage.multiply(unitPrices[j]).setScale(2, RoundingMode.HALF_UP);
+
+            MixDesignItem item = new MixDesignItem();
+            item.setMaterialId(material.getId());
+            item.setMaterialCode(material.getMaterialCode());
+            item.setMaterialName(material.getDescription());
+            item.setRole(bound.getRole());
+            item.setDosagePerM3(dosage);
+            item.setUnitPrice(unitPrices[j]);
+            item.setCostPerM3(costPerM3);
+            items.add(item);
+
+            unitCost = unitCost.add(costPerM3);
+            totalMass = totalMass.add(dosage);
+            switch (bound.getRole()) {
+                case BINDER -> binder = binder.add(dosage);
+                case WATER -> water = water.add(dosage);
+                case ADMIXTURE -> admixture = admixture.add(dosage);
+                case FINE_AGGREGATE -> fine = fine.add(dosage);
+                case COARSE_AGGREGATE -> coarse = coarse.add(dosage);
+                default -> {
+                }
+            }
+        }
+
+        MixDesignResult result = new MixDesignResult();
+        result.setStrengthGrade(request.getStrengthGrade());
+        result.setSlump(request.getSlump());
+        result.setUnitCost(unitCost.setScale(2, RoundingMode.HALF_UP));
+        result.setTotalBinder(binder);
+        result.setTotalMass(totalMass);
+        if (binder.signum() > 0) {
+            result.setWaterBinderRatio(water.divide(binder, 3, RoundingMode.HALF_UP));
+            result.setAdmixturePercent(admixture.multiply(BigDecimal.valueOf(100)).divide(binder, 2,
+                    RoundingMode.HALF_UP));
+        }
+        BigDecimal aggregate = fine.add(coarse);
+        if (aggregate.signum() > 0) {
+            result.setSandRatioPercent(fine.multiply(BigDecimal.valueOf(100)).divide(aggregate, 2,
+                    RoundingMode.HALF_UP));
+        }
+        result.setItems(items);
+        result.setIterations(solution.getIterations());
+        result.setSolveTimeMicros(elapsedMicros);
+        return result;
+    }
+
+    private static double[] roleVector(List<MaterialBound> bounds, MaterialRole role) {
+        double[] v = new double[bounds.size()];
+        for (int j = 0; j < v.length; j++) {
+            if (bounds.get(j).getRole() == role) {
+                v[j] = 1.0;
+            }
+        }
+        return v;
+    }
+
+    /**
+     * 返回 a + k·b
+     */
+    private static double[] combine(double[] a, double[] b, double k) {
+        double[] v = new double[a.length];
+        for (int j = 0; j < v.length; j++) {
+            v[j] = a[j] + k * b[j];
+        }
+        return v;
+    }
+
+    private static double percent(BigDecimal value) {
+        return value.doubleValue() / 100.0;
+    }
+
+    /**
+     * 材料在配比中的角色
+     */
+    public enum MaterialRole {
+        BINDER, // 胶凝材料（水泥、粉煤灰、矿粉等）
+        WATER, // 水
+        ADMIXTURE, // 外加剂
+        FINE_AGGREGATE, // 细骨料
+        COARSE_AGGREGATE, // 粗骨料
+        OTHER
+    }
+
+    // DTOs
+
+    @Data
+    public static class MixDesignRequest {
+        @NotBlank(message = "强度等级不能为空")
+        private String strengthGrade;
+
+        private String slump;
+
+        @Valid
+        @NotEmpty(message = "候选材料不能为空")
+        private List<MaterialBound> materials = new ArrayList<>();
+
+        private BigDecimal minWaterBinderRatio;
+        private BigDecimal maxWaterBinderRatio;
+        private BigDecimal minBinder; // 胶凝材料总量下限（kg/m³）
+        private BigDecimal maxBinder;
+        private BigDecimal minAdmixturePercent; // 外加剂掺量下限（占胶材%）
+        private BigDecimal maxAdmixturePercent;
+        private BigDecimal minSandRatioPercent; // 砂率下限（%）
+        private BigDecimal maxSandRatioPercent;
+        private BigDecimal minTotalMass; // 容重下限（kg/m³）
+        private BigDecimal maxTotalMass;
+    }
+
+    @Data
+    public static class MaterialBound {
+        @NotNull(message = "材料ID不能为空")
+        private Long materialId;
+
+        @NotNull(message = "材料角色不能为空")
+        private MaterialRole role;
+
+        @DecimalMin(value = "0", message = "用量下限不能为负")
+        private BigDecimal minDosage; // 单方用量下限（kg/m³）
+
+        @DecimalMin(value = "0", message = "用量上限不能为负")
+        private BigDecimal maxDosage; // 单方用量上限（kg/m³）
+    }
+
+    @Data
+    public static class MixDesignResult {
+        private String strengthGrade;
+        private String slump;
+        private BigDecimal unitCost; // 单方成本（元/m³）
+        private BigDecimal waterBinderRatio;
+        private BigDecimal totalBinder;
+        private BigDecimal admixturePercent;
+        private BigDecimal sandRatioPercent;
+        private BigDecimal totalMass;
+        private List<MixDesignItem> items;
+        private int iterations;
+        private long solveTimeMicros;
+    }
+
+    @Data
+    public static class MixDesignItem {
+        private Long materialId;
+        private String materialCode;
+        private String materialName;
+        private MaterialRole role;
+        private BigDecimal dosagePerM3; // 单方用量（kg/m³）
+        private BigDecimal unitPrice; // 单价（元/kg）
+        private BigDecimal costPerM3; // 单方成本（元/m³）
+    }
+}
@@ -0,0 +1,410 @@
+package com.company.smartmix.cost;
+
+import com.company.smartmix.common.BusinessException;
+import com.company.smartmix.material.MaterialPriceSnapshot;
+import com.company.smartmix.material.MaterialPriceSnapshotService;
+import com.company.smartmix.material.MaterialPriceTimeline;
+import com.company.smartmix.material.MaterialPriceTimelineService;
+import com.company.smartmix.mix.MixRecipe;
+import com.company.smartmix.mix.MixRecipeItem;
+import com.company.smartmix.mix.MixRecipeRepository;
+import lombok.Data;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.Semaphore;
+
+/**
+ * 价格波动蒙特卡洛模拟
+ *
+ * 每种材料从其价格历史中取相邻两次价格的变动比例作为经验分布，
+ * 每个情景对当前价格独立抽样一次变动比例，然后计算全部候选配比的单方成本。
+ * 情景按区间拆分为 ForkJoin 任务并行计算，全部使用基本类型数组。
+ * 模拟结果用于风险评估，使用 double 计算而非定点金额。
+ *
+ * 不保存每个情景的成本：各配比的成本只可能落在 [各材料取最低变动比例, 各材料取最高变动比例] 区间内，
+ * 按该区间划分 HISTOGRAM_BINS 个等宽分箱计数，分位数在分箱内线性插值，误差不超过区间宽度 / HISTOGRAM_BINS；
+ * 均值、最小值、最大值精确计算。内存只与配比数有关，与情景数无关。
+ *
+ * 计算在专用的有界 ForkJoinPool 中进行，不占用公共池（并行流等其他功能共用）；
+ * 同时进行的模拟数受信号量限制，超出时直接返回429，单次情景数 × 配比数（计算量）不超过 MAX_SAMPLES。
+ */
+@Slf4j
+@Service
+public class PriceRiskSimulator {
+
+    public static final int DEFAULT_SCENARIOS = 10_000;
+    public static final int MAX_SCENARIOS = 200_000;
+    private static final long MAX_SAMPLES = 20_000_000L;
+    private static final int HISTOGRAM_BINS = 8_192;
+    private static final int LEAF_SIZE = 2_048;
+
+    private final MixRecipeRepository mixRecipeRepository;
+    private final MaterialPriceSnapshotService materialPriceSnapshotService;
+    private final MaterialPriceTimelineService materialPriceTimelineService;
+    private final ForkJoinPool pool;
+    private final Semaphore permits;
+
+    public PriceRiskSimulator(MixRecipeRepository mixRecipeRepository,
+            MaterialPriceSnapshotService materialPriceSnapshotService,
+            MaterialPriceTimelineService materialPriceTimelineService,
+            @Value("${app.cost.risk-simulation.parallelism:2}") int parallelism,
+            @Value("${app.cost.risk-simulation.max-concurrent:2}") int maxConcurrent) {
+        this.mixRecipeRepository = mixRecipeRepository;
+        this.materialPriceSnapshotService = materialPriceSnapshotService;
+        this.materialPriceTimelineService = materialPriceTimelineService;
+        this.pool = new ForkJoinPool(parallelism);
+        this.permits = new Semaphore(maxConcurrent);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    @Transactional(readOnly = true)
+    public SimulationResult simulate(String strengthGrade, int scenarios, Long seed) {
+        if (scenarios <= 0 || scenarios > MAX_SCENARIOS) {
+            throw new BusinessException(400, "情景数量应在 1 到 " + MAX_SCENARIOS + " 之间");
+        }
+        if (!permits.tryAcquire()) {
+            throw new BusinessException(429, "价格风险模拟任务繁忙，请稍后重试");
+        }
+        try {
+            return run(strengthGrade, scenarios, seed);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private SimulationResult run(String strengthGrade, int scenarios, Long seed) {
+        long start = System.nanoTime();
+
+        // 候选配比：已审核且当前价格完整
+        MaterialPriceSnapshot prices = materialPriceSnapshotService.current();
+        List<MixRecipe> approved = mixRecipeRepository.findByStrengthGradeAndStatusWithItems(
+                strengthGrade, MixRecipe.RecipeStatus.APPROVED);
+        RecipeCostMatrix kernel = RecipeCostMatrix.of(approved);
+        long[] currentCosts = kernel.unitCosts(prices);
+        List<MixRecipe> recipes = new ArrayList<>();
+        List<BigDecimal> currentUnitCosts = new ArrayList<>();
+        for (int r = 0; r < kernel.rows(); r++) {
+            if (currentCosts[r] != RecipeCostMatrix.INCOMPLETE) {
+                recipes.add(kernel.recipe(r));
+                currentUnitCosts.add(RecipeCostMatrix.toAmount(currentCosts[r]));
+            }
+        }
+        if (recipes.isEmpty()) {
+            throw new BusinessException(400, "没有价格完整的已审核配比");
+        }
+        if ((long) scenarios * recipes.size() > MAX_SAMPLES) {
+            throw new BusinessException(400, "情景数量 × 配比数量超出上限 " + MAX_SAMPLES);
+        }
+
+        Model model = buildModel(recipes, prices, materialPriceTimelineService.current());
+        long actualSeed = seed != null ? seed : System.nanoTime();
+        Distribution distribution = new Distribution(model);
+
+        pool.invoke(new ScenarioTask(model, distribution, actualSeed, 0, scenarios));
+
+        // 各配比的成本分布统计
+        List<RecipeRisk> sorted = new ArrayList<>(recipes.size());
+        for (int r = 0; r < recipes.size(); r++) {
+            RecipeRisk risk = new RecipeRisk();
+            MixRecipe recipe = recipes.get(r);
+            risk.setMixRecipeId(recipe.getId());
+            risk.setMixRecipeCode(recipe.getRecipeCode());
+            risk.setSlump(recipe.getSlump());
+            risk.setCurrentUnitCost(currentUnitCosts.get(r));
+            risk.setMean(amount(distribution.sums[r] / scenarios));
+            risk.setMin(amount(distribution.mins[r]));
+            risk.setP5(amount(distribution.percentile(r, scenarios, 0.05)));
+            risk.setP50(amount(distribution.percentile(r, scenarios, 0.50)));
+            risk.setP95(amount(distribution.percentile(r, scenarios, 0.95)));
+            risk.setMax(amount(distribution.maxs[r]));
+            risk.setProbabilityBest(BigDecimal.valueOf((double) distribution.wins[r] / scenarios)
+                    .setScale(4, RoundingMode.HALF_UP));
+            sorted.add(risk);
+        }
+        sorted.sort(Comparator.comparing(RecipeRisk::getProbabilityBest).reversed()
+                .thenComparing(RecipeRisk::getMean));
+
+        SimulationResult result = new SimulationResult();
+        result.setStrengthGrade(strengthGrade);
+        result.setScenarios(scenarios);
+        result.setSeed(actualSeed);
+        result.setMaterialsWithoutHistory(model.materialsWithoutHistory);
+        result.setRecipes(sorted);
+        result.setElapsedMillis((System.nanoTime() - start) / 1_000_000);
+        log.debug("价格风险模拟完成: grade={}, recipes={}, scenarios={}, {}ms",
+                strengthGrade, recipes.size(), scenarios, result.getElapsedMillis());
+        return result;
+    }
+
+    /**
+     * 构建模拟模型：稠密用量矩阵、当前价格、各材料的历史变动比例，以及各配比成本的取值区间
+     */
+    private Model buildModel(List<MixRecipe> recipes, MaterialPriceSnapshot prices, MaterialPriceTimeline timeline) {
+        Map<Long, Integer> columns = new HashMap<>();
+        for (MixRecipe recipe : recipes) {
+            for (MixRecipeItem item : recipe.getItems()) {
+                columns.putIfAbsent(item.getMaterial().getId(), columns.size());
+            }
+        }
+        int m = columns.size();
+        Model model = new Model(recipes.size(), m);
+
+        for (int r = 0; r < recipes.size(); r++) {
+            for (MixRecipeItem item : recipes.get(r).getItems()) {
+                model.dosages[r * m + columns.get(item.getMaterial().getId())] += item.getDosagePerM3().doubleValue();
+            }
+        }
+        for (Map.Entry<Long, Integer> column : columns.entrySet()) {
+            int c = column.getValue();
+            model.currentPrices[c] = prices.getPricePerKg(column.getKey()).doubleValue();
+
+            BigDecimal[] history = timeline.history(column.getKey());
+            double[] ratios = new double[Math.max(history.length - 1, 0)];
+            int count = 0;
+            for (int k = 1; k < history.length; k++) {
+                if (history[k - 1].signum() > 0) {
+                    ratios[count++] = history[k].doubleValue() / history[k - 1].doubleValue();
+                }
+            }
+            model.ratios[c] = Arrays.copyOf(ratios, count);
+            if (count == 0) {
+                model.materialsWithoutHistory++;
+            }
+        }
+
+        // 每种材料的单价只可能在 当前价格 × [最低, 最高] 变动比例 之间，逐项取端点即得配比成本的上下界
+        double[] lowPrices = new double[m];
+        double[] highPrices = new double[m];
+        for (int c = 0; c < m; c++) {
+            double[] ratios = model.ratios[c];
+            double low = 1.0;
+            double high = 1.0;
+            if (ratios.length > 0) {
+                low = Double.POSITIVE_INFINITY;
+                high = Double.NEGATIVE_INFINITY;
+                for (double ratio : ratios) {
+                    low = Math.min(low, ratio);
+                    high = Math.max(high, ratio);
+                }
+            }
+            lowPrices[c] = model.currentPrices[c] * low;
+            highPrices[c] = model.currentPrices[c] * high;
+        }
+        for (int r = 0; r < recipes.size(); r++) {
+            double low = 0.0;
+            double high = 0.0;
+            for (int c = 0; c < m; c++) {
+                double dosage = model.dosages[r * m + c];
+                low += Math.min(dosage * lowPrices[c], dosage * highPrices[c]);
+                high += Math.max(dosage * lowPrices[c], dosage * highPrices[c]);
+            }
+            model.costFloor[r] = low;
+            model.binScale[r] = high > low ? HISTOGRAM_BINS / (high - low) : 0.0;
+        }
+        return model;
+    }
+
+    private static BigDecimal amount(double value) {
+        return BigDecimal.valueOf(value).setScale(2, RoundingMode.HALF_UP);
+    }
+
+    private static final class Model {
+        final int recipes;
+        final int materials;
+        final double[] dosages; // recipes × materials，kg/m³
+        final double[] currentPrices; // 元/kg
+        final double[][] ratios; // 各材料的历史变动比例
+        final double[] costFloor; // 各配比成本下界，元/m³
+        final double[] binScale; // 每元对应的分箱数，区间宽度为0时为0
+        int materialsWithoutHistory;
+
+        Model(int recipes, int materials) {
+            this.recipes = recipes;
+            this.materials = materials;
+            this.dosages = new double[recipes * materials];
+            this.currentPrices = new double[materials];
+            this.ratios = new double[materials][];
+            this.costFloor = new double[recipes];
+            this.binScale = new double[recipes];
+        }
+
+        int bin(int recipe, double cost) {
+            int bin = (int) ((cost - costFloor[recipe]) * binScale[recipe]);
+            return Math.max(0, Math.min(bin, HISTOGRAM_BINS - 1));
+        }
+    }
+
+    /**
+     * 各配比的成本分布汇总：分箱计数（recipes × HISTOGRAM_BINS）、累计值、最值和胜出次数，叶子任务结束时合并
+     */
+    private static final class Distribution {
+        final Model model;
+        final int[] histogram;
+        final double[] sums;
+        final double[] mins;
+        final double[] maxs;
+        final long[] wins;
+
+        Distribution(Model model) {
+            this.model = model;
+            this.histogram = new int[model.recipes * HISTOGRAM_BINS];
+            this.sums = new double[model.recipes];
+            this.mins = new double[model.recipes];
+            this.maxs = new double[model.recipes];
+            this.wins = new long[model.recipes];
+            Arrays.fill(mins, Double.POSITIVE_INFINITY);
+            Arrays.fill(maxs, Double.NEGATIVE_INFINITY);
+        }
+
+        /**
+         * 按最近秩定义（第 ceil(p × n) 个样本）定位分箱，在分箱内按计数线性插值，结果不超出实际最值
+         */
+        double percentile(int recipe, int scenarios, double p) {
+            long rank = Math.max(1L, (long) Math.ceil(p * scenarios));
+            double scale = model.binScale[recipe];
+            if (scale == 0.0) {
+                return mins[recipe];
+            }
+            int base = recipe * HISTOGRAM_BINS;
+            long seen = 0;
+            for (int b = 0; b < HISTOGRAM_BINS; b++) {
+                int count = histogram[base + b];
+                if (seen + count >= rank) {
+                    double value = model.costFloor[recipe] + (b + (double) (rank - seen) / count) / scale;
+                    return Math.max(mins[recipe], Math.min(value, maxs[recipe]));
+                }
+                seen += count;
+            }
+            return maxs[recipe];
+        }
+    }
+
+    /**
+     * 情景区间任务：叶子节点内复用价格数组，先在本地记录各情景所在分箱和统计量，叶子结束时一次合并到汇总
+     */
+    private static final class ScenarioTask extends RecursiveAction {
+        private final Model model;
+        private final Distribution distribution;
+        private final long seed;
+        private final int from;
+        private final int to;
+
+        ScenarioTask(Model model, Distribution distribution, long seed, int from, int to) {
+            this.model = model;
+            this.distribution = distribution;
+            this.seed = seed;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > LEAF_SIZE) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new ScenarioTask(model, distribution, seed, from, mid),
+                        new ScenarioTask(model, distribution, seed, mid, to));
+                return;
+            }
+
+            // 按区间起点派生随机数，保证同一种子结果可复现
+            SplittableRandom random = new SplittableRandom(seed ^ (from * 0x9E3779B97F4A7C15L));
+            int n = model.recipes;
+            int m = model.materials;
+            int width = to - from;
+            double[] scenarioPrices = new double[m];
+            int[] bins = new int[n * width]; // recipe × 区间内情景
+            double[] sums = new double[n];
+            double[] mins = new double[n];
+            double[] maxs = new double[n];
+            long[] localWins = new long[n];
+            Arrays.fill(mins, Double.POSITIVE_INFINITY);
+            Arrays.fill(maxs, Double.NEGATIVE_INFINITY);
+
+            for (int s = from; s < to; s++) {
+                for (int c = 0; c < m; c++) {
+                    double[] ratios = model.ratios[c];
+                    double ratio = ratios.length == 0 ? 1.0 : ratios[random.nextInt(ratios.length)];
+                    scenarioPrices[c] = model.currentPrices[c] * ratio;
+                }
+                int best = 0;
+                double bestCost = Double.POSITIVE_INFINITY;
+                for (int r = 0; r < n; r++) {
+                    double cost = 0.0;
+                    int base = r * m;
+                    for (int c = 0; c < m; c++) {
+                        cost += model.dosages[base + c] * scenarioPrices[c];
+                    }
+                    bins[r * width + s - from] = model.bin(r, cost);
+                    sums[r] += cost;
+                    mins[r] = Math.min(mins[r], cost);
+                    maxs[r] = Math.max(maxs[r], cost);
+                    if (cost < bestCost) {
+                        bestCost = cost;
+                        best = r;
+                    }
+                }
+                localWins[best]++;
+            }
+
+            synchronized (distribution) {
+                int[] histogram = distribution.histogram;
+                for (int r = 0; r < n; r++) {
+                    int base = r * HISTOGRAM_BINS;
+                    for (int i = r * width, end = i + width; i < end; i++) {
+                        histogram[base + bins[i]]++;
+                    }
+                    distribution.sums[r] += sums[r];
+                    distribution.mins[r] = Math.min(distribution.mins[r], mins[r]);
+                    distribution.maxs[r] = Math.max(distribution.maxs[r], maxs[r]);
+                    distribution.wins[r] += localWins[r];
+                }
+            }
+        }
+    }
+
+    // DTOs
+
+    @Data
+    public static class SimulationResult {
+        private String strengthGrade;
+        private int scenarios;
+        private long seed;
+        private int materialsWithoutHistory; // 无价格变动历史（按固定价格处理）的材料数
+        private long elapsedMillis;
+        private List<RecipeRisk> recipes;
+    }
+
+    @Data
+    public static class RecipeRisk {
+        private Long mixRecipeId;
+        private String mixRecipeCode;
+        private String slump;
+        private BigDecimal currentUnitCost; // 当前单方成本（元/m³）
+        private BigDecimal mean;
+        private BigDecimal min;
+        private BigDecimal p5;
+        private BigDecimal p50;
+        private BigDecimal p95;
+        private BigDecimal max;
+        private BigDecimal probabilityBest; // 成为最低成本配比的概率
+    }
+}
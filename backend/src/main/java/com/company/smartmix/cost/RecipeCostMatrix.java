@@ -0,0 +1,218 @@
+package com.company.smartmix.cost;
+
+import com.company.smartmix.material.MaterialPriceLookup;
+import com.company.smartmix.mix.MixRecipe;
+import com.company.smartmix.mix.MixRecipeItem;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 定点稠密成本计算核
+ *
+ * 将一组配比表示为 配比×材料 的稠密矩阵：用量按 0.01kg 定点存为 long，
+ * 单价按 0.0001元/kg 定点存为 long。逐项乘积（1e-6 元）按 HALF_UP 舍入到分后求和，
+ * 与 BigDecimal 路径（dosage.multiply(price).setScale(2, HALF_UP) 再累加）逐位一致。
+ * 无法精确定点表示的行（同一材料重复出现、超出精度或量级）退回 BigDecimal 计算。
+ */
+public final class RecipeCostMatrix {
+
+    /**
+     * 单方成本结果：价格不完整
+     */
+    public static final long INCOMPLETE = Long.MIN_VALUE;
+
+    private static final long ABSENT = Long.MIN_VALUE;
+    private static final long NOT_EXACT = Long.MIN_VALUE + 1;
+    private static final int DOSAGE_SCALE = 2;
+    private static final int PRICE_SCALE = 4;
+    private static final long HALF = 5_000L;
+    private static final long DIVISOR = 10_000L;
+
+    private final List<MixRecipe> recipes;
+    private final Long[] materialIds;
+    private final int rows;
+    private final int cols;
+    private final long[] dosages;
+    private final boolean[] irregular;
+
+    private RecipeCostMatrix(List<MixRecipe> recipes, Long[] materialIds, long[] dosages, boolean[] irregular) {
+        this.recipes = recipes;
+        this.materialIds = materialIds;
+        this.rows = recipes.size();
+        this.cols = materialIds.length;
+        this.dosages = dosages;
+        this.irregular = irregular;
+    }
+
+    /**
+     * 由配比（需已加载明细与材料）构建矩阵，列只包含这些配比用到的材料
+     */
+    public static RecipeCostMatrix of(List<MixRecipe> recipes) {
+        Map<Long, Integer> columns = new HashMap<>();
+        for (MixRecipe recipe : recipes) {
+            for (MixRecipeItem item : recipe.getItems()) {
+                columns.putIfAbsent(item.getMaterial().getId(), columns.size());
+            }
+        }
+        Long[] materialIds = new Long[columns.size()];
+        columns.forEach((materialId, col) -> materialIds[col] = materialId);
+
+        int cols = materialIds.length;
+        long[] dosages = new long[recipes.size() * cols];
+        Arrays.fill(dosages, ABSENT);
+        boolean[] irregular = new boolean[recipes.size()];
+
+        for (int r = 0; r < recipes.size(); r++) {
+            int base = r * cols;
+            for (MixRecipeItem item : recipes.get(r).getItems()) {
+                int index = base + columns.get(item.getMaterial().getId());
+                long units = toUnits(item.getDosagePerM3(), DOSAGE_SCALE);
+                if (dosages[index] != ABSENT || units == NOT_EXACT) {
+                    irregular[r] = true;
+                }
+                dosages[index] = units;
+            }
+        }
+        return new RecipeCostMatrix(recipes, materialIds, dosages, irregular);
+    }
+
+    public int rows() {
+        return rows;
+    }
+
+    public int cols() {
+        return cols;
+    }
+
+    public MixRecipe recipe(int row) {
+        return recipes.get(row);
+    }
+
+    /**
+     * 计算全部配比的单方成本（单位：分），价格不完整的行为 {@link #INCOMPLETE}
+     */
+    public long[] unitCosts(MaterialPriceLookup prices) {
+        long[] out = new long[rows];
+        compute(priceVector(prices), prices, out);
+        return out;
+    }
+
+    /**
+     * 将单价转换为与列对齐的定点价格向量
+     */
+    public long[] priceVector(MaterialPriceLookup prices) {
+        long[] vector = new long[cols];
+        fillPriceVector(prices, vector);
+        return vector;
+    }
+
+    /**
+     * 复用已有数组填充定点价格向量
+     */
+    public void fillPriceVector(MaterialPriceLookup prices, long[] vector) {
+        for (int c = 0; c < cols; c++) {
+            BigDecimal price = prices.getPricePerKg(materialIds[c]);
+            vector[c] = price == null ? ABSENT : toUnits(price, PRICE_SCALE);
+        }
+    }
+
+    /**
+     * 单次遍历计算全部行，热路径不分配对象；prices 仅用于不规则行的 BigDecimal 回退
+     */
+    public void compute(long[] priceVector, MaterialPriceLookup prices, long[] out) {
+        for (int r = 0; r < rows; r++) {
+            out[r] = unitCost(r, priceVector, prices);
+        }
+    }
+
+    /**
+     * 计算单行的单方成本（单位：分）
+     */
+    public long unitCost(int row, long[] priceVector, MaterialPriceLookup prices) {
+        if (irregular[row]) {
+            return decimalUnitCost(recipes.get(row), prices);
+        }
+        long sum = 0L;
+        int base = row * cols;
+        for (int c = 0; c < cols; c++) {
+            long d = dosages[base + c];
+            if (d == ABSENT) {
+                continue;
+            }
+            long p = priceVector[c];
+            if (p == ABSENT) {
+                return INCOMPLETE;
+            }
+            if (p == NOT_EXACT) {
+                return decimalUnitCost(recipes.get(row), prices);
+            }
+            long product = d * p;
+            sum += product >= 0 ? (product + HALF) / DIVISOR : -((-product + HALF) / DIVISOR);
+        }
+        return sum;
+    }
+
+    /**
+     * 按单方成本升序返回行号（跳过价格不完整的行），最多 limit 个
+     */
+    public static int[] ascendingOrder(long[] unitCosts, int limit) {
+        int count = 0;
+        int[] order = new int[unitCosts.length];
+        for (int r = 0; r < unitCosts.length; r++) {
+            if (unitCosts[r] != INCOMPLETE) {
+                order[count++] = r;
+            }
+        }
+        // 插入排序：候选配比规模小，且相同成本保持原顺序
+        for (int i = 1; i < count; i++) {
+            int row = order[i];
+            long cost = unitCosts[row];
+            int j = i - 1;
+            while (j >= 0 && unitCosts[order[j]] > cost) {
+                order[j + 1] = order[j];
+                j--;
+            }
+            order[j + 1] = row;
+        }
+        return Arrays.copyOf(order, Math.min(count, limit));
+    }
+
+    /**
+     * 分转换为两位小数金额
+     */
+    public static BigDecimal toAmount(long cents) {
+        return cents == INCOMPLETE ? null : BigDecimal.valueOf(cents, 2);
+    }
+
+    /**
+     * BigDecimal 参考实现：逐项 HALF_UP 保留两位后求和
+     */
+    private static long decimalUnitCost(MixRecipe recipe, MaterialPriceLookup prices) {
+        BigDecimal unitCost = BigDecimal.ZERO;
+        for (MixRecipeItem item : recipe.getItems()) {
+            BigDecimal price = prices.getPricePerKg(item.getMaterial().getId());
+            if (price == null) {
+                return INCOMPLETE;
+            }
+            unitCost = unitCost.add(item.getDosagePerM3().multiply(price).setScale(2, RoundingMode.HALF_UP));
+        }
+        return unitCost.setScale(2, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    /**
+     * 定点转换，无法精确表示或超出量级时返回 NOT_EXACT
+     */
+    private static long toUnits(BigDecimal value, int scale) {
+        if (value.scale() > scale && value.stripTrailingZeros().scale() > scale) {
+            return NOT_EXACT;
+        }
+        // 限制在 31 位以内，保证逐项乘积不超过 2^62
+        BigDecimal scaled = value.setScale(scale, RoundingMode.UNNECESSARY);
+        return scaled.unscaledValue().bitLength() < 32 ? scaled.unscaledValue().longValue() : NOT_EXACT;
+    }
+}
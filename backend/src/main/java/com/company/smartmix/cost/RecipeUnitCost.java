@@ -0,0 +1,80 @@
+package com.company.smartmix.cost;
+
+import com.company.smartmix.common.BaseEntity;
+import com.company.smartmix.mix.MixRecipe;
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * 配比单方成本物化表
+ * 每个配比一行，按价格纪元增量维护，供成本推荐直接按单方成本排序查询
+ */
+@Data
+@EqualsAndHashCode(callSuper = true)
+@Entity
+@Table(name = "recipe_unit_cost", uniqueConstraints = {
+        @UniqueConstraint(columnNames = "mixRecipeId")
+}, indexes = {
+        @Index(name = "idx_grade_status_cost", columnList = "strengthGrade, status, priceIncomplete, unitCost")
+})
+public class RecipeUnitCost extends BaseEntity {
+
+    /**
+     * 配比ID
+     */
+    @Column(nullable = false)
+    private Long mixRecipeId;
+
+    /**
+     * 配比编号（冗余自配比）
+     */
+    @Column(nullable = false, length = 50)
+    private String recipeCode;
+
+    /**
+     * 坍落度（冗余自配比）
+     */
+    @Column(length = 50)
+    private String slump;
+
+    /**
+     * 强度等级（冗余自配比，用于范围查询）
+     */
+    @Column(nullable = false, length = 20)
+    private String strengthGrade;
+
+    /**
+     * 配比状态（冗余自配比）
+     */
+    @Column(nullable = false, length = 20)
+    @Enumerated(EnumType.STRING)
+    private MixRecipe.RecipeStatus status;
+
+    /**
+     * 单方成本（元/m³），价格不完整时为空
+     */
+    @Column(precision = 10, scale = 2)
+    private BigDecimal unitCost;
+
+    /**
+     * 是否存在缺少当前价格的材料
+     */
+    @Column(nullable = false)
+    private Boolean priceIncomplete = false;
+
+    /**
+     * 计算所用的价格纪元
+     */
+    @Column(nullable = false)
+    private Long priceEpoch;
+
+    /**
+     * 计算时间
+     */
+    @Column(nullable = false)
+    private LocalDateTime calculatedAt;
+}
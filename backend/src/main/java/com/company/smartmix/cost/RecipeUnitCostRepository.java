@@ -0,0 +1,23 @@
+package com.company.smartmix.cost;
+
+import com.company.smartmix.mix.MixRecipe;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * 配比单方成本Repository
+ */
+@Repository
+public interface RecipeUnitCostRepository extends JpaRepository<RecipeUnitCost, Long> {
+
+    List<RecipeUnitCost> findByMixRecipeIdIn(Collection<Long> mixRecipeIds);
+
+    Optional<RecipeUnitCost> findByMixRecipeId(Long mixRecipeId);
+
+    List<RecipeUnitCost> findByStrengthGradeAndStatusAndPriceIncompleteFalseOrderByUnitCostAsc(
+            String strengthGrade, MixRecipe.RecipeStatus status);
+}
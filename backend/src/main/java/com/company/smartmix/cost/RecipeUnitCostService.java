@@ -0,0 +1,129 @@
+package com.company.smartmix.cost;
+
+import com.company.smartmix.material.MaterialPriceChangedEvent;
+import com.company.smartmix.material.MaterialPriceSnapshot;
+import com.company.smartmix.material.MaterialPriceSnapshotService;
+import com.company.smartmix.mix.MixRecipe;
+import com.company.smartmix.mix.MixRecipeChangedEvent;
+import com.company.smartmix.mix.MixRecipeItemRepository;
+import com.company.smartmix.mix.MixRecipeRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 配比单方成本物化表维护服务
+ * 价格同步后只重算引用了变动材料的配比；配比变更时在同一事务内重算该配比
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class RecipeUnitCostService {
+
+    private static final int CHUNK_SIZE = 500;
+
+    private final RecipeUnitCostRepository recipeUnitCostRepository;
+    private final MixRecipeRepository mixRecipeRepository;
+    private final MixRecipeItemRepository mixRecipeItemRepository;
+    private final MaterialPriceSnapshotService materialPriceSnapshotService;
+
+    /**
+     * 启动时在价格快照加载后全量重算一次，修正停机期间的价格变动
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(Ordered.LOWEST_PRECEDENCE)
+    @Transactional
+    public void onApplicationReady() {
+        List<Long> recipeIds = mixRecipeRepository.findAllIds();
+        refresh(recipeIds);
+        log.info("配比单方成本已全量重算: recipes={}, epoch={}",
+                recipeIds.size(), materialPriceSnapshotService.current().getPriceEpoch());
+    }
+
+    /**
+     * 价格同步提交后（价格快照已重建），重算引用了变动材料的配比
+     */
+    @TransactionalEventListener
+    @Order(Ordered.LOWEST_PRECEDENCE)
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void onMaterialPriceChanged(MaterialPriceChangedEvent event) {
+        // 全量价格推送时材料ID可达数万个，分块查询，避免单条 IN 语句过长
+        List<Long> materialIds = new ArrayList<>(event.getMaterialIds());
+        Set<Long> recipeIds = new LinkedHashSet<>();
+        for (int from = 0; from < materialIds.size(); from += CHUNK_SIZE) {
+            recipeIds.addAll(mixRecipeItemRepository.findRecipeIdsByMaterialIds(
+                    materialIds.subList(from, Math.min(from + CHUNK_SIZE, materialIds.size()))));
+        }
+        refresh(recipeIds);
+        log.debug("价格变动重算配比单方成本: materials={}, recipes={}",
+                event.getMaterialIds().size(), recipeIds.size());
+    }
+
+    /**
+     * 配比变更时在同一事务内重算
+     */
+    @EventListener
+    public void onMixRecipeChanged(MixRecipeChangedEvent event) {
+        refresh(List.of(event.getRecipeId()));
+    }
+
+    /**
+     * 按当前价格快照重算指定配比
+     */
+    @Transactional
+    public void refresh(Collection<Long> recipeIds) {
+        MaterialPriceSnapshot prices = materialPriceSnapshotService.current();
+        List<Long> ids = new ArrayList<>(recipeIds);
+        for (int from = 0; from < ids.size(); from += CHUNK_SIZE) {
+            List<Long> chunk = ids.subList(from, Math.min(from + CHUNK_SIZE, ids.size()));
+            refreshChunk(chunk, prices);
+        }
+    }
+
+    private void refreshChunk(List<Long> recipeIds, MaterialPriceSnapshot prices) {
+        List<MixRecipe> recipes = mixRecipeRepository.findAllWithItemsByIdIn(recipeIds);
+        Map<Long, RecipeUnitCost> existing = recipeUnitCostRepository.findByMixRecipeIdIn(recipeIds).stream()
+                .collect(Collectors.toMap(RecipeUnitCost::getMixRecipeId, Function.identity()));
+        LocalDateTime now = LocalDateTime.now();
+
+        RecipeCostMatrix matrix = RecipeCostMatrix.of(recipes);
+        long[] unitCosts = matrix.unitCosts(prices);
+
+        List<RecipeUnitCost> rows = new ArrayList<>(recipes.size());
+        for (int r = 0; r < matrix.rows(); r++) {
+            MixRecipe recipe = matrix.recipe(r);
+            RecipeUnitCost row = existing.get(recipe.getId());
+            if (row == null) {
+                row = new RecipeUnitCost();
+                row.setMixRecipeId(recipe.getId());
+            }
+            row.setRecipeCode(recipe.getRecipeCode());
+            row.setSlump(recipe.getSlump());
+            row.setStrengthGrade(recipe.getStrengthGrade());
+            row.setStatus(recipe.getStatus());
+            row.setUnitCost(RecipeCostMatrix.toAmount(unitCosts[r]));
+            row.setPriceIncomplete(unitCosts[r] == RecipeCostMatrix.INCOMPLETE);
+            row.setPriceEpoch(prices.getPriceEpoch());
+            row.setCalculatedAt(now);
+            rows.add(row);
+        }
+        recipeUnitCostRepository.saveAll(rows);
+    }
+}
@@ -0,0 +1,316 @@
+package com.company.smartmix.cost;
+
+import lombok.Getter;
+
+import java.util.Arrays;
+
+/**
+ * 线性规划求解器（两阶段单纯形法，稠密单数组表格）
+ *
+ * <pre>
+ *   min  c·x
+ *   s.t. A·x (<=, >=, =) b
+ *        lo <= x <= hi
+ * </pre>
+ *
+ * 变量先平移为 y = x - lo >= 0，上界作为附加约束行。
+ * 面向配比设计这类小规模问题（几十个变量），每次求解只分配一张表格。
+ */
+public class SimplexSolver {
+
+    public enum Sense {
+        LE, GE, EQ
+    }
+
+    public enum Status {
+        OPTIMAL, INFEASIBLE, UNBOUNDED, ITERATION_LIMIT
+    }
+
+    private static final double EPS = 1e-9;
+    private static final int MAX_ITERATIONS = 10_000;
+    private static final int DEGENERATE_LIMIT = 50;
+
+    private final int n;
+    private final double[] cost;
+    private final double[] lower;
+    private final double[] upper;
+
+    private double[] rows = new double[0];
+    private Sense[] senses = new Sense[0];
+    private double[] rhs = new double[0];
+    private int m;
+
+    public SimplexSolver(int variableCount) {
+        this.n = variableCount;
+        this.cost = new double[variableCount];
+        this.lower = new double[variableCount];
+        this.upper = new double[variableCount];
+        Arrays.fill(upper, Double.POSITIVE_INFINITY);
+    }
+
+    public SimplexSolver objective(int j, double c) {
+        cost[j] = c;
+        return this;
+    }
+
+    public SimplexSolver bounds(int j, double lo, double hi) {
+        lower[j] = lo;
+        upper[j] = hi;
+        return this;
+    }
+
+    /**
+     * 添加约束 coefficients·x (sense) b
+     */
+    public SimplexSolver constraint(double[] coefficients, Sense sense, double b) {
+        if (coefficients.length != n) {
+            throw new IllegalArgumentException("约束系数长度应为 " + n);
+        }
+        if (m * n == rows.length) {
+            int capacity = Math.max(8, m * 2);
+            rows = Arrays.copyOf(rows, capacity * n);
+            senses = Arrays.copyOf(senses, capacity);
+            rhs = Arrays.copyOf(rhs, capacity);
+        }
+        System.arraycopy(coefficients, 0, rows, m * n, n);
+        senses[m] = sense;
+        rhs[m] = b;
+        m++;
+        return this;
+    }
+
+    public Result solve() {
+        for (int j = 0; j < n; j++) {
+            if (lower[j] > upper[j] + EPS) {
+                return new Result(Status.INFEASIBLE, null, Double.NaN, 0);
+            }
+        }
+
+        // 统计行数：一般约束 + 有限上界
+        int boundRows = 0;
+        for (int j = 0; j < n; j++) {
+            if (upper[j] != Double.POSITIVE_INFINITY) {
+                boundRows++;
+            }
+        }
+        int rowCount = m + boundRows;
+
+        // 列布局：[结构变量 n][松弛/剩余 rowCount][人工变量 rowCount][rhs]
+        int slackStart = n;
+        int artStart = n + rowCount;
+        int width = artStart + rowCount + 1;
+        int rhsCol = width - 1;
+        double[] t = new double[(rowCount + 1) * width];
+        int[] basis = new int[rowCount];
+        int artificialCount = 0;
+
+        int r = 0;
+        for (int i = 0; i < m; i++, r++) {
+            double b = rhs[i];
+            for (int j = 0; j < n; j++) {
+                double a = rows[i * n + j];
+                t[r * width + j] = a;
+                b -= a * lower[j];
+            }
+            artificialCount += initRow(t, basis, r, width, slackStart, artStart, rhsCol, senses[i], b);
+        }
+        for (int j = 0; j < n; j++) {
+            if (upper[j] != Double.POSITIVE_INFINITY) {
+                t[r * width + j] = 1.0;
+                artificialCount += initRow(t, basis, r, width, slackStart, artStart, rhsCol, Sense.LE,
+                        upper[j] - lower[j]);
+                r++;
+            }
+        }
+
+        int objRow = rowCount * width;
+        int[] pivots = new int[1]; // 两个阶段累计的换基次数
+
+        // 第一阶段：最小化人工变量之和
+        if (artificialCount > 0) {
+            for (int i = 0; i < rowCount; i++) {
+                if (basis[i] >= artStart) {
+                    int base = i * width;
+                    for (int j = 0; j < width; j++) {
+                        t[objRow + j] -= t[base + j];
+                    }
+                    t[objRow + basis[i]] = 0.0;
+                }
+            }
+            // 人工变量之和有下界 0，第一阶段不会无界
+            if (iterate(t, basis, rowCount, width, rhsCol, pivots) == Status.ITERATION_LIMIT) {
+                return new Result(Status.ITERATION_LIMIT, null, Double.NaN, pivots[0]);
+            }
+            if (-t[objRow + rhsCol] > 1e-7) {
+                return new Result(Status.INFEASIBLE, null, Double.NaN, pivots[0]);
+            }
+            // 将仍在基中的人工变量换出
+            for (int i = 0; i < rowCount; i++) {
+                if (basis[i] >= artStart) {
+                    int base = i * width;
+                    for (int j = 0; j < artStart; j++) {
+                        if (Math.abs(t[base + j]) > EPS) {
+                            pivot(t, basis, rowCount, width, i, j);
+                            break;
+                        }
+                    }
+                }
+            }
+            // 禁止人工变量再次入基
+            for (int i = 0; i <= rowCount; i++) {
+                int base = i * width;
+                for (int j = artStart; j < rhsCol; j++) {
+                    t[base + j] = 0.0;
+                }
+            }
+        }
+
+        // 第二阶段：原目标函数
+        Arrays.fill(t, objRow, objRow + width, 0.0);
+        for (int j = 0; j < n; j++) {
+            t[objRow + j] = cost[j];
+        }
+        for (int i = 0; i < rowCount; i++) {
+            int col = basis[i];
+            if (col < n && cost[col] != 0.0) {
+                double c = cost[col];
+                int base = i * width;
+                for (int j = 0; j < width; j++) {
+                    t[objRow + j] -= c * t[base + j];
+                }
+            }
+        }
+        Status status = iterate(t, basis, rowCount, width, rhsCol, pivots);
+        if (status != Status.OPTIMAL) {
+            return new Result(status, null, Double.NaN, pivots[0]);
+        }
+
+        double[] x = lower.clone();
+        for (int i = 0; i < rowCount; i++) {
+            if (basis[i] < n) {
+                x[basis[i]] += t[i * width + rhsCol];
+            }
+        }
+        double objective = 0.0;
+        for (int j = 0; j < n; j++) {
+            objective += cost[j] * x[j];
+        }
+        return new Result(Status.OPTIMAL, x, objective, pivots[0]);
+    }
+
+    /**
+     * 初始化一行的松弛/人工变量，返回新增人工变量个数
+     */
+    private static int initRow(double[] t, int[] basis, int r, int width, int slackStart, int artStart,
+            int rhsCol, Sense sense, double b) {
+        int base = r * width;
+        if (b < 0) {
+            for (int j = 0; j < slackStart; j++) {
+                t[base + j] = -t[base + j];
+            }
+            b = -b;
+            sense = sense == Sense.LE ? Sense.GE : sense == Sense.GE ? Sense.LE : Sense.EQ;
+        }
+        t[base + rhsCol] = b;
+        switch (sense) {
+            case LE:
+                t[base + slackStart + r] = 1.0;
+                basis[r] = slackStart + r;
+                return 0;
+            case GE:
+                t[base + slackStart + r] = -1.0;
+                t[base + artStart + r] = 1.0;
+                basis[r] = artStart + r;
+                return 1;
+            default:
+                t[base + artStart + r] = 1.0;
+                basis[r] = artStart + r;
+                return 1;
+        }
+    }
+
+    /**
+     * 单纯形迭代：Dantzig 规则，连续退化时切换为 Bland 规则防止循环。
+     * 返回 OPTIMAL、UNBOUNDED 或 ITERATION_LIMIT，换基次数累加到 pivots[0]
+     */
+    private static Status iterate(double[] t, int[] basis, int rowCount, int width, int rhsCol, int[] pivots) {
+        int objRow = rowCount * width;
+        int degenerate = 0;
+        for (int iteration = 1; iteration <= MAX_ITERATIONS; iteration++) {
+            boolean bland = degenerate >= DEGENERATE_LIMIT;
+            int entering = -1;
+            double best = -EPS;
+            for (int j = 0; j < rhsCol; j++) {
+                double d = t[objRow + j];
+                if (d < best) {
+                    entering = j;
+                    if (bland) {
+                        break;
+                    }
+                    best = d;
+                }
+            }
+            if (entering < 0) {
+                return Status.OPTIMAL;
+            }
+
+            int leaving = -1;
+            double minRatio = Double.POSITIVE_INFINITY;
+            for (int i = 0; i < rowCount; i++) {
+                double a = t[i * width + entering];
+                if (a > EPS) {
+                    double ratio = t[i * width + rhsCol] / a;
+                    if (ratio < minRatio - EPS || (ratio < minRatio + EPS && leaving >= 0
+                            && basis[i] < basis[leaving])) {
+                        minRatio = ratio;
+                        leaving = i;
+                    }
+                }
+            }
+            if (leaving < 0) {
+                return Status.UNBOUNDED;
+            }
+            degenerate = minRatio < EPS ? degenerate + 1 : 0;
+            pivot(t, basis, rowCount, width, leaving, entering);
+            pivots[0]++;
+        }
+        return Status.ITERATION_LIMIT;
+    }
+
+    private static void pivot(double[] t, int[] basis, int rowCount, int width, int row, int col) {
+        int pivotBase = row * width;
+        double p = t[pivotBase + col];
+        for (int j = 0; j < width; j++) {
+            t[pivotBase + j] /= p;
+        }
+        for (int i = 0; i <= rowCount; i++) {
+            if (i == row) {
+                continue;
+            }
+            int base = i * width;
+            double factor = t[base + col];
+            if (factor != 0.0) {
+                for (int j = 0; j < width; j++) {
+                    t[base + j] -= factor * t[pivotBase + j];
+                }
+                t[base + col] = 0.0;
+            }
+        }
+        basis[row] = col;
+    }
+
+    @Getter
+    public static class Result {
+        private final Status status;
+        private final double[] solution;
+        private final double objective;
+        private final int iterations;
+
+        Result(Status status, double[] solution, double objective, int iterations) {
+            this.status = status;
+            this.solution = solution;
+            this.objective = objective;
+            this.iterations = iterations;
+        }
+    }
+}
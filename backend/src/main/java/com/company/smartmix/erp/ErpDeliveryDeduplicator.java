@@ -0,0 +1,255 @@
+package com.company.smartmix.erp;
+
+import com.company.smartmix.common.BusinessException;
+import com.company.smartmix.common.ResilientRedis;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * ERP重复推送识别
+ *
+ * 指纹 = SHA-256(推送方Token, 数据类型, 请求体哈希)。窗口期内相同指纹的推送直接返回首次的处理结果，
+ * 不再访问数据库。结果保存在 Redis（多节点共享），同时在本地保留一份，Redis 未启用或不可用时使用本地记录。
+ * 只记录全部成功的结果：有单条失败时ERP重发可能是在依赖数据补齐后重试，需要重新处理。
+ *
+ * 处理前先用 SET NX 写入"处理中"标记领取指纹，并发的相同推送等待首次处理的结果，不会重复处理；
+ * 处理失败、事务回滚或结果不全部成功时删除标记，进程中断时标记在 pending-seconds 后过期。
+ */
+@Slf4j
+@Component
+public class ErpDeliveryDeduplicator {
+
+    private static final String KEY_PREFIX = "smartmix:erp:delivery:";
+    private static final String PENDING = "PENDING";
+    private static final long WAIT_POLL_MILLIS = 100;
+
+    private final ResilientRedis redis;
+    private final ObjectMapper objectMapper;
+    private final boolean enabled;
+    private final Duration window;
+    private final Duration pendingTtl;
+    private final long pendingWaitMillis;
+    private final Map<String, LocalEntry> local;
+
+    public ErpDeliveryDeduplicator(ResilientRedis redis, ObjectMapper objectMapper,
+            @Value("${app.erp.dedup.enabled:true}") boolean enabled,
+            @Value("${app.erp.dedup.window-seconds:600}") long windowSeconds,
+            @Value("${app.erp.dedup.local-max-entries:10000}") int localMaxEntries,
+            @Value("${app.erp.dedup.pending-seconds:300}") long pendingSeconds,
+            @Value("${app.erp.dedup.pending-wait-ms:5000}") long pendingWaitMillis) {
+        this.redis = redis;
+        this.objectMapper = objectMapper;
+        this.enabled = enabled;
+        this.window = Duration.ofSeconds(windowSeconds);
+        this.pendingTtl = Duration.ofSeconds(pendingSeconds);
+        this.pendingWaitMillis = pendingWaitMillis;
+        this.local = new LinkedHashMap<>(256, 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, LocalEntry> eldest) {
+                return size() > localMaxEntries || eldest.getValue().isExpired();
+            }
+        };
+    }
+
+    /**
+     * 由原始请求体的哈希计算指纹
+     */
+    public String fingerprintOfHash(String token, SyncLog.DataType dataType, String bodyHash) {
+        MessageDigest digest = sha256();
+        digest.update((token != null ? token : "").getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(dataType.name().getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(bodyHash.getBytes(StandardCharsets.UTF_8));
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * 领取指纹：窗口期内已有处理结果时返回该结果；相同推送正在处理时等待其结果，超时返回409；
+     * 否则写入处理中标记并返回空，调用方处理后须调用 {@link #remember} 或 {@link #release}。
+     * 在事务内领取时，事务回滚后自动删除标记
+     */
+    public <T> Optional<T> claim(String fingerprint, Class<T> type) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        long deadline = System.currentTimeMillis() + pendingWaitMillis;
+        while (true) {
+            String value = tryClaim(fingerprint);
+            if (value == null) {
+                releaseOnRollback(fingerprint);
+                return Optional.empty();
+            }
+            if (!PENDING.equals(value)) {
+                try {
+                    return Optional.of(objectMapper.readValue(value, type));
+                } catch (JsonProcessingException e) {
+                    log.warn("重复推送记录无法解析，重新处理: {}", fingerprint, e);
+                    forget(fingerprint);
+                    continue;
+                }
+            }
+            if (System.currentTimeMillis() >= deadline) {
+                throw new BusinessException(409, "相同内容的推送正在处理，请稍后重试");
+            }
+            try {
+                Thread.sleep(WAIT_POLL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new BusinessException(409, "相同内容的推送正在处理，请稍后重试");
+            }
+        }
+    }
+
+    /**
+     * 记录处理结果
+     */
+    public void remember(String fingerprint, Object result) {
+        if (!enabled) {
+            return;
+        }
+        String value;
+        try {
+            value = objectMapper.writeValueAsString(result);
+        } catch (JsonProcessingException e) {
+            log.warn("重复推送记录序列化失败: {}", fingerprint, e);
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            // 事务回滚时不能记录，否则重发会被误判为已处理
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    store(fingerprint, value);
+                }
+            });
+        } else {
+            store(fingerprint, value);
+        }
+    }
+
+    /**
+     * 放弃领取（结果不记录），事务内调用时在事务结束后删除标记，避免提交前相同推送被并发处理
+     */
+    public void release(String fingerprint) {
+        if (!enabled) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    forget(fingerprint);
+                }
+            });
+        } else {
+            forget(fingerprint);
+        }
+    }
+
+    /**
+     * 删除记录，之后相同内容的推送会重新处理
+     */
+    public void forget(String fingerprint) {
+        if (fingerprint == null) {
+            return;
+        }
+        synchronized (local) {
+            local.remove(fingerprint);
+        }
+        redis.delete(KEY_PREFIX + fingerprint);
+    }
+
+    /**
+     * 写入处理中标记，成功时返回 null，否则返回已有的值（结果或处理中标记）
+     */
+    private String tryClaim(String fingerprint) {
+        String key = KEY_PREFIX + fingerprint;
+        Boolean claimed = redis.execute(template -> template.opsForValue().setIfAbsent(key, PENDING, pendingTtl),
+                null);
+        if (claimed != null) {
+            if (claimed) {
+                return null;
+            }
+            // 标记恰好过期时按处理中处理，下一轮重新领取
+            return redis.get(key).orElse(PENDING);
+        }
+        synchronized (local) {
+            String value = findLocal(fingerprint);
+            if (value == null) {
+                local.put(fingerprint, new LocalEntry(PENDING, System.currentTimeMillis() + pendingTtl.toMillis()));
+            }
+            return value;
+        }
+    }
+
+    private void releaseOnRollback(String fingerprint) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status != STATUS_COMMITTED) {
+                        forget(fingerprint);
+                    }
+                }
+            });
+        }
+    }
+
+    private void store(String fingerprint, String value) {
+        synchronized (local) {
+            local.put(fingerprint, new LocalEntry(value, System.currentTimeMillis() + window.toMillis()));
+        }
+        redis.set(KEY_PREFIX + fingerprint, value, window);
+    }
+
+    private String findLocal(String fingerprint) {
+        synchronized (local) {
+            LocalEntry entry = local.get(fingerprint);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.isExpired()) {
+                local.remove(fingerprint);
+                return null;
+            }
+            return entry.value;
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final class LocalEntry {
+        private final String value;
+        private final long expiresAt;
+
+        LocalEntry(String value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isExpired() {
+            return System.currentTimeMillis() >= expiresAt;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.company.smartmix.erp;
+
+import com.company.smartmix.common.ApiResponse;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.security.SecurityRequirements;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.net.URI;
+
+/**
+ * ERP异步导入控制器
+ * 接收推送后立即返回 202 和任务ID，由后台线程池分块处理
+ */
+@Tag(name = "ERP集成", description = "ERP数据同步接口（由ERP主动推送）")
+@RestController
+@RequestMapping("/api/erp")
+@RequiredArgsConstructor
+public class ErpIngestController {
+
+    private static final String RETRY_AFTER_SECONDS = "30";
+
+    private final ErpIngestService erpIngestService;
+    private final ErpWebhookAuth erpWebhookAuth;
+
+    @Operation(summary = "异步同步材料主数据", description = "接收后返回202，通过任务ID查询进度")
+    @SecurityRequirements
+    @PostMapping("/async/materials")
+    public ResponseEntity<ApiResponse<JobAcceptedDTO>> enqueueMaterials(HttpServletRequest httpRequest)
+            throws IOException {
+        return enqueue(SyncLog.DataType.MATERIAL, httpRequest);
+    }
+
+    @Operation(summary = "异步同步材料价格", description = "接收后返回202，通过任务ID查询进度")
+    @SecurityRequirements
+    @PostMapping("/async/material-prices")
+    public ResponseEntity<ApiResponse<JobAcceptedDTO>> enqueueMaterialPrices(HttpServletRequest httpRequest)
+            throws IOException {
+        return enqueue(SyncLog.DataType.MATERIAL_PRICE, httpRequest);
+    }
+
+    @Operation(summary = "异步同步生产任务", description = "接收后返回202，通过任务ID查询进度")
+    @SecurityRequirements
+    @PostMapping("/async/production-tasks")
+    public ResponseEntity<ApiResponse<JobAcceptedDTO>> enqueueProductionTasks(HttpServletRequest httpRequest)
+            throws IOException {
+        return enqueue(SyncLog.DataType.PRODUCTION_TASK, httpRequest);
+    }
+
+    @Operation(summary = "查询导入任务", description = "进度、单条失败明细和吞吐量")
+    @SecurityRequirements
+    @GetMapping("/jobs/{id}")
+    public ApiResponse<ErpIngestService.IngestJobDTO> getJob(@PathVariable Long id, HttpServletRequest httpRequest) {
+        erpWebhookAuth.validate(httpRequest);
+        return ApiResponse.success(erpIngestService.getJob(id));
+    }
+
+    private ResponseEntity<ApiResponse<JobAcceptedDTO>> enqueue(SyncLog.DataType dataType,
+            HttpServletRequest httpRequest) throws IOException {
+        erpWebhookAuth.validate(httpRequest);
+
+        // 队列积压时拒绝新任务，由ERP稍后重试
+        if (erpIngestService.isQueueFull()) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, RETRY_AFTER_SECONDS)
+                    .body(ApiResponse.error(503, "导入队列已满，请稍后重试"));
+        }
+
+        JobAcceptedDTO dto = erpIngestService.enqueue(dataType, httpRequest.getInputStream(),
+                httpRequest.getRemoteAddr(), httpRequest.getHeader(ErpWebhookAuth.HEADER));
+        return ResponseEntity.accepted()
+                .location(URI.create(dto.getStatusUrl()))
+                .body(ApiResponse.success(dto.isDuplicate() ? "重复推送，返回已有任务" : "已接收", dto));
+    }
+
+    // DTOs
+
+    @Data
+    public static class JobAcceptedDTO {
+        private Long jobId;
+        private SyncLog.DataType dataType;
+        private int totalCount;
+        private String statusUrl;
+        private boolean duplicate; // 重复推送，返回的是首次推送的任务
+    }
+}
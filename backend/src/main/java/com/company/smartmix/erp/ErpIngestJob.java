@@ -0,0 +1,125 @@
+package com.company.smartmix.erp;
+
+import com.company.smartmix.common.BaseEntity;
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+import java.time.LocalDateTime;
+
+/**
+ * ERP异步导入任务（持久化队列）
+ */
+@Data
+@EqualsAndHashCode(callSuper = true)
+@Entity
+@Table(name = "erp_ingest_jobs", indexes = {
+        @Index(name = "idx_status_lease", columnList = "status,leaseUntil")
+})
+public class ErpIngestJob extends BaseEntity {
+
+    /**
+     * 数据类型（MATERIAL / MATERIAL_PRICE / PRODUCTION_TASK）
+     */
+    @Column(nullable = false, length = 30)
+    @Enumerated(EnumType.STRING)
+    private SyncLog.DataType dataType;
+
+    /**
+     * 任务状态
+     */
+    @Column(nullable = false, length = 20)
+    @Enumerated(EnumType.STRING)
+    private JobStatus status = JobStatus.QUEUED;
+
+    /**
+     * 推送的原始数据（JSON数组）在 PayloadStore 中的位置，完成后同步日志引用同一条记录
+     */
+    @Embedded
+    private PayloadRef payloadRef;
+
+    /**
+     * 推送指纹（见 ErpDeliveryDeduplicator），处理有失败时据此删除重复推送记录
+     */
+    @Column(length = 64)
+    private String deliveryFingerprint;
+
+    /**
+     * 来源IP
+     */
+    @Column(length = 50)
+    private String sourceIp;
+
+    /**
+     * 数据条数
+     */
+    @Column(nullable = false)
+    private Integer totalCount = 0;
+
+    /**
+     * 已处理条数（已提交的分块），重新领取时从这里继续
+     */
+    @Column(nullable = false)
+    private Integer processedCount = 0;
+
+    @Column(nullable = false)
+    private Integer successCount = 0;
+
+    @Column(nullable = false)
+    private Integer failureCount = 0;
+
+    /**
+     * 按行统计：新增、更新、内容未变化而跳过
+     */
+    @Column(nullable = false)
+    private Integer insertedCount = 0;
+
+    @Column(nullable = false)
+    private Integer updatedCount = 0;
+
+    @Column(nullable = false)
+    private Integer unchangedCount = 0;
+
+    /**
+     * 失败明细（JSON，最多保留 SyncResult.MAX_FAILURES 条）
+     */
+    @Column(columnDefinition = "TEXT")
+    private String failureDetails;
+
+    /**
+     * 领取次数
+     */
+    @Column(nullable = false)
+    private Integer attempts = 0;
+
+    /**
+     * 当前持有者（节点+领取标识）
+     */
+    @Column(length = 80)
+    private String leaseOwner;
+
+    /**
+     * 租约到期时间，过期未续约的运行中任务会被重新领取
+     */
+    private LocalDateTime leaseUntil;
+
+    private LocalDateTime startedAt;
+
+    private LocalDateTime finishedAt;
+
+    @Column(columnDefinition = "TEXT")
+    private String errorMessage;
+
+    /**
+     * 完成后写入的同步日志ID
+     */
+    @Column
+    private Long syncLogId;
+
+    public enum JobStatus {
+        QUEUED, // 排队中
+        RUNNING, // 处理中
+        SUCCEEDED, // 已完成（可能含单条失败）
+        FAILED // 整体失败
+    }
+}
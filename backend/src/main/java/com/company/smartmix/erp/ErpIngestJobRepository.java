@@ -0,0 +1,35 @@
+package com.company.smartmix.erp;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * ERP异步导入任务Repository
+ */
+@Repository
+public interface ErpIngestJobRepository extends JpaRepository<ErpIngestJob, Long> {
+
+    /**
+     * 可领取的任务：排队中，或运行中但租约已过期
+     */
+    @Query("SELECT j.id FROM ErpIngestJob j WHERE j.status = ?1 OR (j.status = ?2 AND j.leaseUntil < ?3) "
+            + "ORDER BY j.id")
+    List<Long> findClaimableIds(ErpIngestJob.JobStatus queued, ErpIngestJob.JobStatus running,
+            LocalDateTime now, Pageable pageable);
+
+    /**
+     * 原子领取：条件更新成功（返回1）才算领取到；同时递增版本号，使旧持有者的后续提交失败
+     */
+    @Modifying
+    @Query("UPDATE ErpIngestJob j SET j.status = ?2, j.leaseOwner = ?3, j.leaseUntil = ?4, "
+            + "j.attempts = j.attempts + 1, j.startedAt = COALESCE(j.startedAt, ?5), j.version = j.version + 1 "
+            + "WHERE j.id = ?1 AND (j.status = ?6 OR (j.status = ?2 AND j.leaseUntil < ?5))")
+    int claim(Long id, ErpIngestJob.JobStatus running, String owner, LocalDateTime leaseUntil,
+            LocalDateTime now, ErpIngestJob.JobStatus queued);
+}
@@ -0,0 +1,431 @@
+package com.company.smartmix.erp;
+
+import com.company.smartmix.common.BusinessException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * ERP异步导入服务
+ *
+ * 接收时只做JSON数组格式检查，原始数据写入 PayloadStore 后排队，由 {@link ErpIngestWorker} 领取后分块处理。
+ * 每个分块的业务写入与任务进度在同一事务内提交，中断后从已提交的位置继续。
+ */
+@Slf4j
+@Service
+public class ErpIngestService {
+
+    private final ErpIngestJobRepository jobRepository;
+    private final SyncLogRepository syncLogRepository;
+    private final ErpSyncService erpSyncService;
+    private final ObjectMapper objectMapper;
+    private final PayloadStore payloadStore;
+    private final ErpDeliveryDeduplicator erpDeliveryDeduplicator;
+    private final TransactionTemplate transactionTemplate;
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${app.erp.batch-size:500}")
+    private int batchSize;
+
+    @Value("${app.erp.ingest.max-queued:50}")
+    private int maxQueued;
+
+    @Value("${app.erp.ingest.lease-seconds:300}")
+    private long leaseSeconds;
+
+    @Value("${app.erp.ingest.max-attempts:3}")
+    private int maxAttempts;
+
+    public ErpIngestService(ErpIngestJobRepository jobRepository, SyncLogRepository syncLogRepository,
+            ErpSyncService erpSyncService, ObjectMapper objectMapper, PayloadStore payloadStore,
+            ErpDeliveryDeduplicator erpDeliveryDeduplicator, PlatformTransactionManager transactionManager,
+            JdbcTemplate jdbcTemplate) {
+        this.jobRepository = jobRepository;
+        this.syncLogRepository = syncLogRepository;
+        this.erpSyncService = erpSyncService;
+        this.objectMapper = objectMapper;
+        this.payloadStore = payloadStore;
+        this.erpDeliveryDeduplicator = erpDeliveryDeduplicator;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * 排队任务是否已达上限（接收端背压）
+     *
+     * 在读取请求体之前调用。走 JDBC 而不经过 JPA：open-in-view 下请求内首次使用 EntityManager 取得的连接
+     * 会一直持有到请求结束，慢速上传期间会占住连接池
+     */
+    public boolean isQueueFull() {
+        Long queued = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM erp_ingest_jobs WHERE status = ?",
+                Long.class, ErpIngestJob.JobStatus.QUEUED.name());
+        return queued != null && queued >= maxQueued;
+    }
+
+    /**
+     * 校验格式并排队：请求体边读边计数并压缩写入 PayloadStore，格式错误时丢弃已写入的数据。
+     * 窗口期内的重复推送不再排队，返回首次推送的任务。
+     * 读取请求体和落盘期间不开启事务、不占用数据库连接，落盘完成后才在短事务内写入任务记录
+     */
+    public ErpIngestController.JobAcceptedDTO enqueue(SyncLog.DataType dataType, InputStream input,
+            String sourceIp, String token) {
+        ErpIngestJob job = new ErpIngestJob();
+        job.setDataType(dataType);
+        job.setSourceIp(sourceIp);
+        // 只释放本次领取的指纹，等待其他推送超时（409）时不能删除对方的标记
+        String claimed = null;
+        try (PayloadStore.Writer writer = payloadStore.newWriter()) {
+            TeeInputStream tee = new TeeInputStream(input, writer);
+            job.setTotalCount(countItems(tee));
+            tee.drain();
+
+            String fingerprint = erpDeliveryDeduplicator.fingerprintOfHash(token, dataType, writer.hash());
+            Optional<ErpIngestController.JobAcceptedDTO> duplicate = erpDeliveryDeduplicator
+                    .claim(fingerprint, ErpIngestController.JobAcceptedDTO.class);
+            if (duplicate.isPresent()) {
+                log.info("ERP重复推送，返回已有导入任务: type={}, job={}", dataType, duplicate.get().getJobId());
+                duplicate.get().setDuplicate(true);
+                return duplicate.get();
+            }
+            claimed = fingerprint;
+            job.setDeliveryFingerprint(fingerprint);
+            job.setPayloadRef(writer.commit());
+            job.setStatus(ErpIngestJob.JobStatus.QUEUED);
+            transactionTemplate.executeWithoutResult(tx -> jobRepository.save(job));
+        } catch (IOException e) {
+            erpDeliveryDeduplicator.release(claimed);
+            throw new BusinessException(500, "保存原始数据失败: " + e.getMessage());
+        } catch (RuntimeException e) {
+            erpDeliveryDeduplicator.release(claimed);
+            throw e;
+        }
+
+        ErpIngestController.JobAcceptedDTO dto = new ErpIngestController.JobAcceptedDTO();
+        dto.setJobId(job.getId());
+        dto.setDataType(dataType);
+        dto.setTotalCount(job.getTotalCount());
+        dto.setStatusUrl("/api/erp/jobs/" + job.getId());
+        erpDeliveryDeduplicator.remember(job.getDeliveryFingerprint(), dto);
+        return dto;
+    }
+
+    @Transactional(readOnly = true)
+    public IngestJobDTO getJob(Long id) {
+        ErpIngestJob job = jobRepository.findById(id)
+                .orElseThrow(() -> new BusinessException(404, "导入任务不存在"));
+        return toDTO(job);
+    }
+
+    /**
+     * 领取一个任务，没有可领取的任务时返回 null
+     */
+    @Transactional
+    public Long claimNext(String owner) {
+        LocalDateTime now = LocalDateTime.now();
+        List<Long> ids = jobRepository.findClaimableIds(ErpIngestJob.JobStatus.QUEUED,
+                ErpIngestJob.JobStatus.RUNNING, now, PageRequest.of(0, 5));
+        for (Long id : ids) {
+            if (jobRepository.claim(id, ErpIngestJob.JobStatus.RUNNING, owner, now.plusSeconds(leaseSeconds),
+                    now, ErpIngestJob.JobStatus.QUEUED) == 1) {
+                return id;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 处理已领取的任务（在工作线程中调用，不在事务内）
+     */
+    public void process(Long jobId, String owner) {
+        ErpIngestJob job = jobRepository.findById(jobId).orElse(null);
+        if (job == null || !owner.equals(job.getLeaseOwner())) {
+            return;
+        }
+        if (job.getAttempts() > maxAttempts) {
+            finish(jobId, owner, ErpIngestJob.JobStatus.FAILED, "超过最大重试次数");
+            return;
+        }
+
+        if (job.getPayloadRef() == null) {
+            finish(jobId, owner, ErpIngestJob.JobStatus.FAILED, "原始数据缺失");
+            return;
+        }
+
+        // 先校验内容哈希，确认读到的是本次推送的原始数据
+        try {
+            if (!payloadStore.verify(job.getPayloadRef())) {
+                finish(jobId, owner, ErpIngestJob.JobStatus.FAILED, "原始数据哈希校验失败");
+                return;
+            }
+        } catch (PayloadStore.PayloadExpiredException e) {
+            finish(jobId, owner, ErpIngestJob.JobStatus.FAILED, e.getMessage());
+            return;
+        } catch (IOException e) {
+            log.error("ERP导入任务读取原始数据失败: job={}", jobId, e);
+            release(jobId, owner, e.getMessage());
+            return;
+        }
+
+        // 从 PayloadStore 流式读取，跳过已提交的条目后按分块处理；价格变动在任务结束后合并发布一次
+        Set<Long> changedMaterialIds = new HashSet<>();
+        try (InputStream in = payloadStore.open(job.getPayloadRef());
+                MappingIterator<Object> iterator = objectMapper
+                        .readerFor(ErpSyncService.itemType(job.getDataType())).readValues(in)) {
+            int index = 0;
+            List<Object> chunk = new ArrayList<>(batchSize);
+            while (iterator.hasNextValue()) {
+                Object item = ErpSyncService.nextItem(iterator);
+                if (index++ < job.getProcessedCount()) {
+                    continue;
+                }
+                chunk.add(item);
+                if (chunk.size() == batchSize) {
+                    submitChunk(jobId, owner, job.getDataType(), chunk, index, changedMaterialIds);
+                    chunk = new ArrayList<>(batchSize);
+                }
+            }
+            if (!chunk.isEmpty()) {
+                submitChunk(jobId, owner, job.getDataType(), chunk, index, changedMaterialIds);
+            }
+            finish(jobId, owner, ErpIngestJob.JobStatus.SUCCEEDED, null);
+        } catch (PayloadStore.PayloadExpiredException e) {
+            finish(jobId, owner, ErpIngestJob.JobStatus.FAILED, e.getMessage());
+        } catch (Exception e) {
+            log.error("ERP导入任务处理失败: job={}", jobId, e);
+            release(jobId, owner, e.getMessage());
+        } finally {
+            // 中途失败时已提交分块的价格变动同样需要发布
+            erpSyncService.publishMaterialPriceChanged(changedMaterialIds);
+        }
+    }
+
+    /**
+     * 分块事务提交后才计入价格变动的材料
+     */
+    private void submitChunk(Long jobId, String owner, SyncLog.DataType dataType, List<Object> chunk, int to,
+            Set<Long> changedMaterialIds) {
+        int offset = to - chunk.size();
+        Set<Long> chunkChanged = new HashSet<>();
+        transactionTemplate.executeWithoutResult(
+                status -> processChunk(jobId, owner, dataType, chunk, offset, to, chunkChanged));
+        changedMaterialIds.addAll(chunkChanged);
+    }
+
+    /**
+     * 单个分块：逐条校验，合法数据交给同步服务，进度与业务数据同一事务提交
+     */
+    private void processChunk(Long jobId, String owner, SyncLog.DataType dataType, List<?> chunk,
+            int offset, int to, Set<Long> changedMaterialIds) {
+        ErpIngestJob job = jobRepository.findById(jobId).orElseThrow();
+        if (job.getStatus() != ErpIngestJob.JobStatus.RUNNING || !owner.equals(job.getLeaseOwner())) {
+            throw new IllegalStateException("导入任务已被其他节点领取: " + jobId);
+        }
+
+        ErpWebhookController.SyncResult chunkResult = erpSyncService.syncChunk(dataType, chunk, offset, changedMaterialIds);
+
+        List<ErpWebhookController.ItemFailure> failures = readFailures(job);
+        for (ErpWebhookController.ItemFailure failure : chunkResult.getFailures()) {
+            if (failures.size() >= ErpWebhookController.SyncResult.MAX_FAILURES) {
+                break;
+            }
+            failures.add(failure);
+        }
+        job.setFailureDetails(writeFailures(failures));
+        job.setSuccessCount(job.getSuccessCount() + chunkResult.getSuccessCount());
+        job.setFailureCount(job.getFailureCount() + chunkResult.getFailureCount());
+        job.setInsertedCount(job.getInsertedCount() + chunkResult.getInsertedCount());
+        job.setUpdatedCount(job.getUpdatedCount() + chunkResult.getUpdatedCount());
+        job.setUnchangedCount(job.getUnchangedCount() + chunkResult.getUnchangedCount());
+        job.setProcessedCount(to);
+        job.setLeaseUntil(LocalDateTime.now().plusSeconds(leaseSeconds));
+        jobRepository.save(job);
+    }
+
+    /**
+     * 结束任务：写同步日志，日志引用任务的原始数据记录
+     */
+    private void finish(Long jobId, String owner, ErpIngestJob.JobStatus status, String errorMessage) {
+        transactionTemplate.executeWithoutResult(tx -> {
+            ErpIngestJob job = jobRepository.findById(jobId).orElseThrow();
+            if (!owner.equals(job.getLeaseOwner())) {
+                return;
+            }
+            SyncLog syncLog = new SyncLog();
+            syncLog.setDirection(SyncLog.SyncDirection.ERP_TO_SMARTMIX);
+            syncLog.setDataType(job.getDataType());
+            syncLog.setSourceIp(job.getSourceIp());
+            syncLog.setPayloadRef(job.getPayloadRef());
+            syncLog.setStatus(status == ErpIngestJob.JobStatus.SUCCEEDED
+                    ? SyncLog.SyncStatus.SUCCESS : SyncLog.SyncStatus.FAILED);
+            syncLog.setErrorMessage(errorMessage);
+            syncLogRepository.save(syncLog);
+
+            job.setStatus(status);
+            job.setErrorMessage(errorMessage);
+            job.setFinishedAt(LocalDateTime.now());
+            job.setLeaseOwner(null);
+            job.setLeaseUntil(null);
+            job.setSyncLogId(syncLog.getId());
+            jobRepository.save(job);
+            if (status == ErpIngestJob.JobStatus.FAILED || job.getFailureCount() > 0) {
+                // 有失败时允许ERP重发重新处理
+                erpDeliveryDeduplicator.forget(job.getDeliveryFingerprint());
+            }
+            log.info("ERP导入任务结束: job={}, type={}, status={}, success={}, failure={}, unchanged={}", jobId,
+                    job.getDataType(), status, job.getSuccessCount(), job.getFailureCount(), job.getUnchangedCount());
+        });
+    }
+
+    /**
+     * 处理异常时释放任务：未超过重试次数则重新排队，否则标记失败
+     */
+    private void release(Long jobId, String owner, String errorMessage) {
+        try {
+            ErpIngestJob job = jobRepository.findById(jobId).orElse(null);
+            if (job == null || !owner.equals(job.getLeaseOwner())) {
+                return;
+            }
+            if (job.getAttempts() >= maxAttempts) {
+                finish(jobId, owner, ErpIngestJob.JobStatus.FAILED, errorMessage);
+                return;
+            }
+            transactionTemplate.executeWithoutResult(tx -> {
+                ErpIngestJob current = jobRepository.findById(jobId).orElseThrow();
+                if (owner.equals(current.getLeaseOwner())) {
+                    current.setStatus(ErpIngestJob.JobStatus.QUEUED);
+                    current.setLeaseOwner(null);
+                    current.setLeaseUntil(null);
+                    current.setErrorMessage(errorMessage);
+                    jobRepository.save(current);
+                }
+            });
+        } catch (Exception e) {
+            // 释放失败时等待租约过期后重新领取
+            log.warn("释放ERP导入任务失败: job={}", jobId, e);
+        }
+    }
+
+    /**
+     * 流式检查请求体为对象数组并计数，不构建对象
+     */
+    private int countItems(InputStream input) {
+        try (JsonParser parser = objectMapper.getFactory().createParser(input)) {
+            // 计数后还要读完剩余数据写入 PayloadStore，不能关闭请求流
+            parser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new BusinessException(400, "请求体应为JSON数组");
+            }
+            int count = 0;
+            JsonToken token;
+            while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                if (token != JsonToken.START_OBJECT) {
+                    throw new BusinessException(400, "数组元素应为JSON对象");
+                }
+                parser.skipChildren();
+                count++;
+            }
+            return count;
+        } catch (IOException e) {
+            throw new BusinessException(400, "JSON格式错误: " + e.getMessage());
+        }
+    }
+
+    private List<ErpWebhookController.ItemFailure> readFailures(ErpIngestJob job) {
+        if (job.getFailureDetails() == null) {
+            return new ArrayList<>();
+        }
+        try {
+            return objectMapper.readValue(job.getFailureDetails(),
+                    new TypeReference<List<ErpWebhookController.ItemFailure>>() {
+                    });
+        } catch (JsonProcessingException e) {
+            return new ArrayList<>();
+        }
+    }
+
+    private String writeFailures(List<ErpWebhookController.ItemFailure> failures) {
+        try {
+            return failures.isEmpty() ? null : objectMapper.writeValueAsString(failures);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private IngestJobDTO toDTO(ErpIngestJob job) {
+        IngestJobDTO dto = new IngestJobDTO();
+        dto.setId(job.getId());
+        dto.setDataType(job.getDataType());
+        dto.setStatus(job.getStatus());
+        dto.setTotalCount(job.getTotalCount());
+        dto.setProcessedCount(job.getProcessedCount());
+        dto.setSuccessCount(job.getSuccessCount());
+        dto.setFailureCount(job.getFailureCount());
+        dto.setInsertedCount(job.getInsertedCount());
+        dto.setUpdatedCount(job.getUpdatedCount());
+        dto.setUnchangedCount(job.getUnchangedCount());
+        dto.setAttempts(job.getAttempts());
+        dto.setCreatedAt(job.getCreatedAt());
+        dto.setStartedAt(job.getStartedAt());
+        dto.setFinishedAt(job.getFinishedAt());
+        dto.setErrorMessage(job.getErrorMessage());
+        dto.setSyncLogId(job.getSyncLogId());
+        dto.setFailures(readFailures(job));
+        dto.setProgress(job.getTotalCount() == 0 ? 100.0
+                : Math.round(job.getProcessedCount() * 1000.0 / job.getTotalCount()) / 10.0);
+        if (job.getStartedAt() != null) {
+            LocalDateTime end = job.getFinishedAt() != null ? job.getFinishedAt() : LocalDateTime.now();
+            long millis = Math.max(Duration.between(job.getStartedAt(), end).toMillis(), 1);
+            dto.setElapsedMillis(millis);
+            dto.setItemsPerSecond(Math.round(job.getProcessedCount() * 10_000.0 / millis) / 10.0);
+        }
+        return dto;
+    }
+
+    // DTOs
+
+    @Data
+    public static class IngestJobDTO {
+        private Long id;
+        private SyncLog.DataType dataType;
+        private ErpIngestJob.JobStatus status;
+        private int totalCount;
+        private int processedCount;
+        private int successCount;
+        private int failureCount;
+        private int insertedCount;
+        private int updatedCount;
+        private int unchangedCount;
+        private double progress; // 百分比
+        private int attempts;
+        private LocalDateTime createdAt;
+        private LocalDateTime startedAt;
+        private LocalDateTime finishedAt;
+        private Long elapsedMillis;
+        private Double itemsPerSecond; // 吞吐量（条/秒）
+        private String errorMessage;
+        private Long syncLogId;
+        private List<ErpWebhookController.ItemFailure> failures;
+    }
+}
@@ -0,0 +1,87 @@
+package com.company.smartmix.erp;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ERP异步导入工作线程池
+ *
+ * 定时领取排队任务，领取前先取得处理许可、处理结束后归还，许可数等于线程数，
+ * 因此已领取的任务一定能交给线程池执行，不会因线程池拒绝而滞留在 RUNNING 状态直到租约过期；
+ * 其余任务留在数据库队列中，多节点部署时由原子领取保证每个任务只被一个节点处理。
+ */
+@Slf4j
+@Component
+public class ErpIngestWorker {
+
+    private final ErpIngestService erpIngestService;
+    private final ThreadPoolExecutor executor;
+    private final Semaphore permits;
+    private final String nodeId = UUID.randomUUID().toString().substring(0, 8);
+
+    public ErpIngestWorker(ErpIngestService erpIngestService,
+            @Value("${app.erp.ingest.workers:2}") int workers) {
+        this.erpIngestService = erpIngestService;
+        this.permits = new Semaphore(workers);
+        AtomicInteger threadNo = new AtomicInteger();
+        // 归还许可时线程可能尚未回到池中，队列容量留出 workers 个位置，持有许可的任务不会被拒绝；
+        // 不使用 CallerRuns，任务不能在调度线程上执行
+        this.executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(workers), runnable -> {
+                    Thread thread = new Thread(runnable, "erp-ingest-" + threadNo.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    @Scheduled(fixedDelayString = "${app.erp.ingest.poll-interval-ms:1000}")
+    public void poll() {
+        while (!executor.isShutdown() && permits.tryAcquire()) {
+            boolean submitted = false;
+            try {
+                String owner = nodeId + ":" + UUID.randomUUID();
+                Long jobId = erpIngestService.claimNext(owner);
+                if (jobId == null) {
+                    return;
+                }
+                executor.execute(() -> {
+                    try {
+                        erpIngestService.process(jobId, owner);
+                    } finally {
+                        permits.release();
+                    }
+                });
+                submitted = true;
+            } catch (RejectedExecutionException e) {
+                // 只在关闭时发生，已领取的任务在租约过期后重新处理
+                log.warn("ERP导入线程池已关闭，任务留待租约过期后重新处理");
+                return;
+            } finally {
+                if (!submitted) {
+                    permits.release();
+                }
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        // 未完成的任务在租约过期后由其他节点或重启后继续
+        executor.shutdown();
+        if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+            log.warn("ERP导入线程未在30秒内结束，剩余任务将在租约过期后重新处理");
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,386 @@
+package com.company.smartmix.erp;
+
+import com.fasterxml.jackson.annotation.JsonRawValue;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.client.RestClient;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * ERP发件箱发送器
+ *
+ * 定时领取到期事件，同一任务的多次变更只发送最新一条，按数据类型分批，
+ * 每批一次 HTTP 请求，最多 concurrency 个批次并行。发送失败按指数退避重试，超过次数标记失败。
+ * 领取使用条件更新加租约，多节点部署时每个事件只由一个节点发送；
+ * 跨节点的先后顺序不保证，ERP端应按 eventId 丢弃较旧的事件。
+ */
+@Slf4j
+@Component
+public class ErpOutboxDispatcher {
+
+    public static final String TOKEN_HEADER = "X-SMARTMIX-TOKEN";
+
+    private final ErpOutboxEventRepository outboxEventRepository;
+    private final SyncLogRepository syncLogRepository;
+    private final PayloadStore payloadStore;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final RestClient restClient;
+    private final ThreadPoolExecutor executor;
+    private final String nodeId = UUID.randomUUID().toString().substring(0, 8);
+
+    private final boolean enabled;
+    private final String endpoint;
+    private final int batchSize;
+    private final int concurrency;
+
+    @Value("${app.erp.outbox.max-attempts:8}")
+    private int maxAttempts;
+
+    @Value("${app.erp.outbox.backoff-base-seconds:5}")
+    private long backoffBaseSeconds;
+
+    @Value("${app.erp.outbox.backoff-max-seconds:600}")
+    private long backoffMaxSeconds;
+
+    @Value("${app.erp.outbox.lease-seconds:120}")
+    private long leaseSeconds;
+
+    @Value("${app.erp.outbox.retention-days:7}")
+    private int retentionDays;
+
+    @Value("${app.erp.outbox.max-rounds-per-tick:10}")
+    private int maxRoundsPerTick;
+
+    public ErpOutboxDispatcher(ErpOutboxEventRepository outboxEventRepository, SyncLogRepository syncLogRepository,
+            PayloadStore payloadStore, ObjectMapper objectMapper, PlatformTransactionManager transactionManager,
+            @Value("${app.erp.outbox.enabled:false}") boolean enabled,
+            @Value("${app.erp.outbox.endpoint:}") String endpoint,
+            @Value("${app.erp.outbox.token:}") String token,
+            @Value("${app.erp.outbox.batch-size:200}") int batchSize,
+            @Value("${app.erp.outbox.concurrency:4}") int concurrency,
+            @Value("${app.erp.outbox.connect-timeout-ms:3000}") int connectTimeoutMs,
+            @Value("${app.erp.outbox.read-timeout-ms:10000}") int readTimeoutMs) {
+        this.outboxEventRepository = outboxEventRepository;
+        this.syncLogRepository = syncLogRepository;
+        this.payloadStore = payloadStore;
+        this.objectMapper = objectMapper;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.endpoint = endpoint;
+        this.batchSize = batchSize;
+        this.concurrency = concurrency;
+
+        SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setConnectTimeout(connectTimeoutMs);
+        requestFactory.setReadTimeout(readTimeoutMs);
+        this.restClient = RestClient.builder()
+                .requestFactory(requestFactory)
+                .defaultHeader(TOKEN_HEADER, token)
+                .build();
+
+        AtomicInteger threadNo = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(concurrency, concurrency, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "erp-outbox-" + threadNo.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(30, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 连续发送直到没有到期事件，每次调度最多 max-rounds-per-tick 轮，剩余事件留到下次调度，
+     * 避免积压时长时间占用调度线程
+     */
+    @Scheduled(fixedDelayString = "${app.erp.outbox.poll-interval-ms:2000}")
+    public void dispatch() {
+        if (!enabled || endpoint.isBlank()) {
+            return;
+        }
+        try {
+            for (int round = 0; round < maxRoundsPerTick && !executor.isShutdown(); round++) {
+                if (dispatchRound() == 0) {
+                    break;
+                }
+            }
+        } catch (Exception e) {
+            log.error("ERP发件箱发送失败", e);
+        }
+    }
+
+    /**
+     * 一轮：领取、合并、分批并行发送，返回领取到的事件数
+     */
+    private int dispatchRound() throws InterruptedException {
+        String owner = nodeId + ":" + UUID.randomUUID();
+        List<ErpOutboxEvent> events = transactionTemplate.execute(tx -> claim(owner));
+        if (events == null || events.isEmpty()) {
+            return 0;
+        }
+
+        List<List<ErpOutboxEvent>> batches = new ArrayList<>();
+        Map<SyncLog.DataType, List<ErpOutboxEvent>> byType = events.stream()
+                .collect(Collectors.groupingBy(ErpOutboxEvent::getDataType, LinkedHashMap::new, Collectors.toList()));
+        for (List<ErpOutboxEvent> typed : byType.values()) {
+            for (int from = 0; from < typed.size(); from += batchSize) {
+                batches.add(typed.subList(from, Math.min(from + batchSize, typed.size())));
+            }
+        }
+
+        List<Future<?>> futures = new ArrayList<>(batches.size());
+        for (List<ErpOutboxEvent> batch : batches) {
+            futures.add(executor.submit(() -> send(batch, owner)));
+        }
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                log.error("ERP发件箱批次处理异常", e.getCause());
+            }
+        }
+        return events.size();
+    }
+
+    /**
+     * 领取最多 batchSize × concurrency 条到期事件，并合并同一业务键的多次变更
+     */
+    private List<ErpOutboxEvent> claim(String owner) {
+        LocalDateTime now = LocalDateTime.now();
+        List<Long> ids = outboxEventRepository.findClaimableIds(ErpOutboxEvent.OutboxStatus.PENDING,
+                ErpOutboxEvent.OutboxStatus.SENDING, now, PageRequest.of(0, batchSize * concurrency));
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        outboxEventRepository.claim(ids, ErpOutboxEvent.OutboxStatus.SENDING, owner,
+                now.plusSeconds(leaseSeconds), ErpOutboxEvent.OutboxStatus.PENDING, now);
+        List<ErpOutboxEvent> claimed = outboxEventRepository.findByLeaseOwnerAndStatusOrderById(owner,
+                ErpOutboxEvent.OutboxStatus.SENDING);
+        if (claimed.isEmpty()) {
+            return claimed;
+        }
+
+        // 每个业务键以ID最大的事件为准（含尚未领取的待发送事件），其余标记为已取代
+        Map<String, Long> latest = new HashMap<>();
+        claimed.forEach(event -> latest.merge(keyOf(event.getDataType(), event.getAggregateKey()),
+                event.getId(), Math::max));
+        Map<SyncLog.DataType, Set<String>> aggregateKeys = claimed.stream()
+                .collect(Collectors.groupingBy(ErpOutboxEvent::getDataType,
+                        Collectors.mapping(ErpOutboxEvent::getAggregateKey, Collectors.toSet())));
+        List<ErpOutboxEventRepository.KeyedEvent> pending = new ArrayList<>();
+        aggregateKeys.forEach((dataType, keys) -> pending.addAll(outboxEventRepository.findByAggregateKeys(dataType,
+                keys, ErpOutboxEvent.OutboxStatus.PENDING)));
+        for (ErpOutboxEventRepository.KeyedEvent event : pending) {
+            latest.computeIfPresent(keyOf(event.getDataType(), event.getAggregateKey()),
+                    (key, id) -> Math.max(id, event.getId()));
+        }
+
+        List<Long> superseded = new ArrayList<>();
+        List<ErpOutboxEvent> toSend = new ArrayList<>(claimed.size());
+        for (ErpOutboxEvent event : claimed) {
+            if (latest.get(keyOf(event.getDataType(), event.getAggregateKey())).equals(event.getId())) {
+                toSend.add(event);
+            } else {
+                superseded.add(event.getId());
+            }
+        }
+        for (ErpOutboxEventRepository.KeyedEvent event : pending) {
+            Long newest = latest.get(keyOf(event.getDataType(), event.getAggregateKey()));
+            if (newest != null && event.getId() < newest) {
+                superseded.add(event.getId());
+            }
+        }
+        if (!superseded.isEmpty()) {
+            outboxEventRepository.supersede(superseded, ErpOutboxEvent.OutboxStatus.SUPERSEDED);
+        }
+        return toSend;
+    }
+
+    /**
+     * 发送一个批次（同一数据类型），并记录同步日志；结果只写回仍由 owner 持有租约的事件
+     */
+    private void send(List<ErpOutboxEvent> batch, String owner) {
+        SyncLog.DataType dataType = batch.get(0).getDataType();
+        OutboxBatch body = new OutboxBatch();
+        body.setBatchId(UUID.randomUUID().toString());
+        body.setDataType(dataType);
+        body.setEvents(batch.stream().map(ErpOutboxDispatcher::toMessage).collect(Collectors.toList()));
+
+        byte[] bytes;
+        try {
+            bytes = objectMapper.writeValueAsBytes(body);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+
+        long start = System.nanoTime();
+        String error = null;
+        try {
+            restClient.post()
+                    .uri(endpoint)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(bytes)
+                    .retrieve()
+                    .toBodilessEntity();
+        } catch (Exception e) {
+            error = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+        }
+
+        PayloadRef payloadRef = null;
+        try {
+            payloadRef = payloadStore.append(out -> out.write(bytes));
+        } catch (Exception e) {
+            log.warn("保存回传ERP原始数据失败: batch={}", body.getBatchId(), e);
+        }
+
+        List<Long> ids = batch.stream().map(ErpOutboxEvent::getId).collect(Collectors.toList());
+        String errorMessage = error;
+        PayloadRef ref = payloadRef;
+        transactionTemplate.executeWithoutResult(tx -> {
+            SyncLog syncLog = new SyncLog();
+            syncLog.setDirection(SyncLog.SyncDirection.SMARTMIX_TO_ERP);
+            syncLog.setDataType(dataType);
+            syncLog.setPayloadRef(ref);
+            syncLog.setStatus(errorMessage == null ? SyncLog.SyncStatus.SUCCESS : SyncLog.SyncStatus.FAILED);
+            syncLog.setErrorMessage(errorMessage);
+            syncLogRepository.save(syncLog);
+
+            if (errorMessage == null) {
+                int updated = outboxEventRepository.markSent(ids, ErpOutboxEvent.OutboxStatus.SENT,
+                        LocalDateTime.now(), syncLog.getId(), ErpOutboxEvent.OutboxStatus.SENDING, owner);
+                if (updated < ids.size()) {
+                    log.warn("部分回传ERP事件的租约已失效，未标记为已发送: type={}, events={}, updated={}",
+                            dataType, ids.size(), updated);
+                }
+            } else {
+                scheduleRetry(ids, owner, errorMessage, syncLog.getId());
+            }
+        });
+
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        if (error == null) {
+            log.info("回传ERP: type={}, events={}, {}ms", dataType, batch.size(), millis);
+        } else {
+            log.warn("回传ERP失败: type={}, events={}, error={}", dataType, batch.size(), error);
+        }
+    }
+
+    /**
+     * 失败事件按指数退避（带抖动）重新排队，超过最大次数标记失败
+     */
+    private void scheduleRetry(List<Long> ids, String owner, String errorMessage, Long syncLogId) {
+        LocalDateTime now = LocalDateTime.now();
+        List<ErpOutboxEvent> events = new ArrayList<>();
+        for (ErpOutboxEvent event : outboxEventRepository.findAllById(ids)) {
+            // 期间已被取代，或租约过期后已被其他节点重新领取
+            if (event.getStatus() != ErpOutboxEvent.OutboxStatus.SENDING || !owner.equals(event.getLeaseOwner())) {
+                continue;
+            }
+            events.add(event);
+            int attempts = event.getAttempts() + 1;
+            event.setAttempts(attempts);
+            event.setLastError(errorMessage);
+            event.setSyncLogId(syncLogId);
+            event.setLeaseOwner(null);
+            event.setLeaseUntil(null);
+            if (attempts >= maxAttempts) {
+                event.setStatus(ErpOutboxEvent.OutboxStatus.FAILED);
+            } else {
+                long delay = Math.min(backoffBaseSeconds << Math.min(attempts - 1, 20), backoffMaxSeconds);
+                long jitter = ThreadLocalRandom.current().nextLong(delay / 4 + 1);
+                event.setStatus(ErpOutboxEvent.OutboxStatus.PENDING);
+                event.setNextAttemptAt(now.plusSeconds(delay + jitter));
+            }
+        }
+        outboxEventRepository.saveAll(events);
+    }
+
+    /**
+     * 删除超过保留天数的已发送/已取代事件（分块删除，避免长事务）
+     */
+    @Scheduled(cron = "${app.erp.outbox.cleanup-cron:0 45 3 * * *}")
+    public void purgeFinished() {
+        LocalDateTime before = LocalDateTime.now().minusDays(retentionDays);
+        Set<ErpOutboxEvent.OutboxStatus> finished = EnumSet.of(ErpOutboxEvent.OutboxStatus.SENT,
+                ErpOutboxEvent.OutboxStatus.SUPERSEDED);
+        int deleted = 0;
+        while (true) {
+            Integer count = transactionTemplate.execute(tx -> {
+                List<Long> ids = outboxEventRepository.findFinishedIdsBefore(finished, before,
+                        PageRequest.of(0, 1000));
+                return ids.isEmpty() ? 0 : outboxEventRepository.deleteByIdIn(ids);
+            });
+            if (count == null || count == 0) {
+                break;
+            }
+            deleted += count;
+        }
+        if (deleted > 0) {
+            log.info("已清理ERP发件箱事件: {} 条（保留 {} 天）", deleted, retentionDays);
+        }
+    }
+
+    private static String keyOf(SyncLog.DataType dataType, String aggregateKey) {
+        return dataType.name() + ":" + aggregateKey;
+    }
+
+    private static OutboxMessage toMessage(ErpOutboxEvent event) {
+        OutboxMessage message = new OutboxMessage();
+        message.setEventId(event.getId());
+        message.setKey(event.getAggregateKey());
+        message.setCreatedAt(event.getCreatedAt());
+        message.setPayload(event.getPayload());
+        return message;
+    }
+
+    // DTOs
+
+    @Data
+    public static class OutboxBatch {
+        private String batchId;
+        private SyncLog.DataType dataType;
+        private List<OutboxMessage> events;
+    }
+
+    @Data
+    public static class OutboxMessage {
+        private Long eventId; // 单调递增，ERP端据此丢弃较旧的事件
+        private String key;
+        private LocalDateTime createdAt;
+        @JsonRawValue
+        private String payload;
+    }
+}
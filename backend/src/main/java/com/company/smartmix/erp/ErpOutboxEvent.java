@@ -0,0 +1,85 @@
+package com.company.smartmix.erp;
+
+import com.company.smartmix.common.BaseEntity;
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+import java.time.LocalDateTime;
+
+/**
+ * 回传ERP的待发送事件（事务性发件箱）
+ *
+ * 与业务数据在同一事务内写入，由 {@link ErpOutboxDispatcher} 批量发送。
+ */
+@Data
+@EqualsAndHashCode(callSuper = true)
+@Entity
+@Table(name = "erp_outbox", indexes = {
+        @Index(name = "idx_outbox_status_next", columnList = "status,nextAttemptAt"),
+        @Index(name = "idx_outbox_aggregate", columnList = "dataType,aggregateKey,status")
+})
+public class ErpOutboxEvent extends BaseEntity {
+
+    /**
+     * 数据类型（THEORETICAL_CONSUMPTION / COST_DATA）
+     */
+    @Column(nullable = false, length = 30)
+    @Enumerated(EnumType.STRING)
+    private SyncLog.DataType dataType;
+
+    /**
+     * 业务键（任务单号），同一业务键的多次变更只发送最新一条
+     */
+    @Column(nullable = false, length = 50)
+    private String aggregateKey;
+
+    /**
+     * 事件内容（JSON），写入时生成，反映当时的业务状态
+     */
+    @Column(nullable = false, columnDefinition = "TEXT")
+    private String payload;
+
+    @Column(nullable = false, length = 20)
+    @Enumerated(EnumType.STRING)
+    private OutboxStatus status = OutboxStatus.PENDING;
+
+    /**
+     * 发送次数
+     */
+    @Column(nullable = false)
+    private Integer attempts = 0;
+
+    /**
+     * 下次可发送时间（失败后按指数退避推迟）
+     */
+    @Column(nullable = false)
+    private LocalDateTime nextAttemptAt;
+
+    /**
+     * 当前发送者，租约过期未完成的事件会被重新领取
+     */
+    @Column(length = 80)
+    private String leaseOwner;
+
+    private LocalDateTime leaseUntil;
+
+    private LocalDateTime sentAt;
+
+    @Column(columnDefinition = "TEXT")
+    private String lastError;
+
+    /**
+     * 发送批次对应的同步日志ID
+     */
+    @Column
+    private Long syncLogId;
+
+    public enum OutboxStatus {
+        PENDING, // 待发送（含等待重试）
+        SENDING, // 发送中
+        SENT, // 已发送
+        SUPERSEDED, // 已被同一业务键的更新事件取代，不再发送
+        FAILED // 超过最大重试次数
+    }
+}
@@ -0,0 +1,80 @@
+package com.company.smartmix.erp;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * ERP发件箱Repository
+ */
+@Repository
+public interface ErpOutboxEventRepository extends JpaRepository<ErpOutboxEvent, Long> {
+
+    /**
+     * 可领取的事件：到期的待发送事件，或发送中但租约已过期
+     */
+    @Query("SELECT e.id FROM ErpOutboxEvent e WHERE (e.status = ?1 AND e.nextAttemptAt <= ?3) "
+            + "OR (e.status = ?2 AND e.leaseUntil < ?3) ORDER BY e.id")
+    List<Long> findClaimableIds(ErpOutboxEvent.OutboxStatus pending, ErpOutboxEvent.OutboxStatus sending,
+            LocalDateTime now, Pageable pageable);
+
+    /**
+     * 原子领取一批事件，返回领取到的条数；之后按 leaseOwner 查询实际领取到的事件
+     */
+    @Modifying
+    @Query("UPDATE ErpOutboxEvent e SET e.status = ?2, e.leaseOwner = ?3, e.leaseUntil = ?4, "
+            + "e.version = e.version + 1 WHERE e.id IN ?1 "
+            + "AND ((e.status = ?5 AND e.nextAttemptAt <= ?6) OR (e.status = ?2 AND e.leaseUntil < ?6))")
+    int claim(Collection<Long> ids, ErpOutboxEvent.OutboxStatus sending, String owner, LocalDateTime leaseUntil,
+            ErpOutboxEvent.OutboxStatus pending, LocalDateTime now);
+
+    List<ErpOutboxEvent> findByLeaseOwnerAndStatusOrderById(String leaseOwner, ErpOutboxEvent.OutboxStatus status);
+
+    /**
+     * 指定数据类型和业务键下未发送的事件（用于合并同一任务的多次变更），条件与 idx_outbox_aggregate 列顺序一致
+     */
+    @Query("SELECT e.id AS id, e.dataType AS dataType, e.aggregateKey AS aggregateKey FROM ErpOutboxEvent e "
+            + "WHERE e.dataType = ?1 AND e.aggregateKey IN ?2 AND e.status = ?3")
+    List<KeyedEvent> findByAggregateKeys(SyncLog.DataType dataType, Collection<String> aggregateKeys,
+            ErpOutboxEvent.OutboxStatus status);
+
+    /**
+     * 标记为已被同一业务键的更新事件取代
+     */
+    @Modifying
+    @Query("UPDATE ErpOutboxEvent e SET e.status = ?2, e.leaseOwner = NULL, e.leaseUntil = NULL, "
+            + "e.version = e.version + 1 WHERE e.id IN ?1")
+    int supersede(Collection<Long> ids, ErpOutboxEvent.OutboxStatus superseded);
+
+    /**
+     * 标记为已发送；只更新仍由 owner 持有租约的发送中事件，租约过期后被其他节点重新领取的不更新
+     */
+    @Modifying
+    @Query("UPDATE ErpOutboxEvent e SET e.status = ?2, e.sentAt = ?3, e.syncLogId = ?4, e.leaseOwner = NULL, "
+            + "e.leaseUntil = NULL, e.attempts = e.attempts + 1, e.version = e.version + 1 WHERE e.id IN ?1 "
+            + "AND e.status = ?5 AND e.leaseOwner = ?6")
+    int markSent(Collection<Long> ids, ErpOutboxEvent.OutboxStatus sent, LocalDateTime sentAt, Long syncLogId,
+            ErpOutboxEvent.OutboxStatus sending, String owner);
+
+    @Query("SELECT e.id FROM ErpOutboxEvent e WHERE e.status IN ?1 AND e.createdAt < ?2 ORDER BY e.id")
+    List<Long> findFinishedIdsBefore(Collection<ErpOutboxEvent.OutboxStatus> statuses, LocalDateTime before,
+            Pageable pageable);
+
+    @Modifying
+    @Query("DELETE FROM ErpOutboxEvent e WHERE e.id IN ?1")
+    int deleteByIdIn(Collection<Long> ids);
+
+    interface KeyedEvent {
+        Long getId();
+
+        SyncLog.DataType getDataType();
+
+        String getAggregateKey();
+    }
+}
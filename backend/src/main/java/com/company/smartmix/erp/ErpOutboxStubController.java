@@ -0,0 +1,71 @@
+package com.company.smartmix.erp;
+
+import com.company.smartmix.common.ApiResponse;
+import com.fasterxml.jackson.databind.JsonNode;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.security.SecurityRequirements;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 模拟ERP接收端（仅本地联调使用）
+ *
+ * 接收发件箱批次并计数，按 failure-rate 随机返回 503 以验证重试。
+ */
+@Slf4j
+@Tag(name = "ERP集成", description = "ERP数据同步接口（由ERP主动推送）")
+@RestController
+@RequestMapping("/api/erp/stub/outbox")
+@ConditionalOnProperty(prefix = "app.erp.outbox.stub", name = "enabled", havingValue = "true")
+public class ErpOutboxStubController {
+
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong events = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    @Value("${app.erp.outbox.stub.failure-rate:0}")
+    private double failureRate;
+
+    @Operation(summary = "模拟ERP接收回传批次")
+    @SecurityRequirements
+    @PostMapping
+    public ResponseEntity<Void> receive(@RequestBody JsonNode batch) {
+        if (ThreadLocalRandom.current().nextDouble() < failureRate) {
+            rejected.incrementAndGet();
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+        batches.incrementAndGet();
+        int size = batch.path("events").size();
+        events.addAndGet(size);
+        log.info("模拟ERP收到回传: batch={}, type={}, events={}", batch.path("batchId").asText(),
+                batch.path("dataType").asText(), size);
+        return ResponseEntity.ok().build();
+    }
+
+    @Operation(summary = "模拟ERP接收统计")
+    @SecurityRequirements
+    @GetMapping
+    public ApiResponse<StubStatsDTO> stats() {
+        StubStatsDTO stats = new StubStatsDTO();
+        stats.setBatches(batches.get());
+        stats.setEvents(events.get());
+        stats.setRejected(rejected.get());
+        return ApiResponse.success(stats);
+    }
+
+    @Data
+    public static class StubStatsDTO {
+        private long batches;
+        private long events;
+        private long rejected;
+    }
+}
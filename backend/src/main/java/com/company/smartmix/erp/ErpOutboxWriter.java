@@ -0,0 +1,171 @@
+package com.company.smartmix.erp;
+
+import com.company.smartmix.mix.RecipeDetail;
+import com.company.smartmix.task.ProductionTask;
+import com.company.smartmix.task.TaskPlanWriter;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 写入回传ERP的发件箱事件
+ *
+ * 必须在业务事务内调用：事件与任务状态一起提交或一起回滚，发送由 {@link ErpOutboxDispatcher} 异步完成。
+ */
+@Component
+@RequiredArgsConstructor
+public class ErpOutboxWriter {
+
+    private static final int BATCH_SIZE = 500;
+
+    private static final String INSERT = "INSERT INTO erp_outbox (data_type, aggregate_key, payload, status, "
+            + "attempts, next_attempt_at, created_at, updated_at, version) "
+            + "VALUES (:dataType, :aggregateKey, :payload, :status, 0, :now, :now, :now, 0)";
+
+    private final ErpOutboxEventRepository outboxEventRepository;
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+
+    /**
+     * 任务已计划（选定配比）：回传理论材料消耗和理论成本
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void taskPlanned(ProductionTask task, RecipeDetail recipe) {
+        outboxEventRepository.save(newEvent(SyncLog.DataType.THEORETICAL_CONSUMPTION, task.getTaskNo(),
+                theoreticalConsumption(task, recipe, task.getTheoreticalUnitCost(), task.getTheoreticalTotalCost())));
+    }
+
+    /**
+     * 批量计划：事件以 JDBC 批量语句写入（主键为 IDENTITY，Hibernate 无法批量插入）
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void tasksPlanned(List<TaskPlanWriter.TaskPlan> plans) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        for (int from = 0; from < plans.size(); from += BATCH_SIZE) {
+            List<TaskPlanWriter.TaskPlan> chunk = plans.subList(from, Math.min(from + BATCH_SIZE, plans.size()));
+            MapSqlParameterSource[] params = new MapSqlParameterSource[chunk.size()];
+            for (int i = 0; i < chunk.size(); i++) {
+                TaskPlanWriter.TaskPlan plan = chunk.get(i);
+                params[i] = new MapSqlParameterSource()
+                        .addValue("dataType", SyncLog.DataType.THEORETICAL_CONSUMPTION.name())
+                        .addValue("aggregateKey", plan.getTask().getTaskNo())
+                        .addValue("payload", toJson(plan.getTask().getTaskNo(), theoreticalConsumption(plan.getTask(),
+                                plan.getVersion().getRecipe(), plan.getUnitCost(), plan.getTotalCost())))
+                        .addValue("status", ErpOutboxEvent.OutboxStatus.PENDING.name())
+                        .addValue("now", now);
+            }
+            jdbcTemplate.batchUpdate(INSERT, params);
+        }
+    }
+
+    /**
+     * 任务已完成：回传成本数据
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void taskCompleted(ProductionTask task, LocalDateTime completedAt) {
+        CostDataPayload payload = new CostDataPayload();
+        payload.setTaskNo(task.getTaskNo());
+        payload.setSapProductionOrderNo(task.getSapProductionOrderNo());
+        payload.setStatus(task.getStatus().name());
+        payload.setVolume(task.getVolume());
+        payload.setMixRecipeId(task.getSelectedMixRecipeId());
+        payload.setTheoreticalUnitCost(task.getTheoreticalUnitCost());
+        payload.setTheoreticalTotalCost(task.getTheoreticalTotalCost());
+        payload.setCompletedAt(completedAt);
+        outboxEventRepository.save(newEvent(SyncLog.DataType.COST_DATA, task.getTaskNo(), payload));
+    }
+
+    private TheoreticalConsumptionPayload theoreticalConsumption(ProductionTask task, RecipeDetail recipe,
+            BigDecimal unitCost, BigDecimal totalCost) {
+        TheoreticalConsumptionPayload payload = new TheoreticalConsumptionPayload();
+        payload.setTaskNo(task.getTaskNo());
+        payload.setSapSalesOrderNo(task.getSapSalesOrderNo());
+        payload.setSapProductionOrderNo(task.getSapProductionOrderNo());
+        payload.setStrengthGrade(task.getStrengthGrade());
+        payload.setVolume(task.getVolume());
+        payload.setMixRecipeId(recipe.getId());
+        payload.setMixRecipeCode(recipe.getRecipeCode());
+        payload.setTheoreticalUnitCost(unitCost);
+        payload.setTheoreticalTotalCost(totalCost);
+        List<MaterialConsumption> materials = new ArrayList<>(recipe.getItems().size());
+        for (RecipeDetail.Item item : recipe.getItems()) {
+            MaterialConsumption consumption = new MaterialConsumption();
+            consumption.setMaterialCode(item.getMaterialCode());
+            consumption.setPlantCode(item.getPlantCode());
+            consumption.setBaseUnit(item.getMaterialUnit());
+            consumption.setDosagePerM3(item.getDosagePerM3());
+            consumption.setQuantity(item.getDosagePerM3().multiply(task.getVolume()).setScale(2, RoundingMode.HALF_UP));
+            materials.add(consumption);
+        }
+        payload.setMaterials(materials);
+        return payload;
+    }
+
+    private ErpOutboxEvent newEvent(SyncLog.DataType dataType, String aggregateKey, Object payload) {
+        ErpOutboxEvent event = new ErpOutboxEvent();
+        event.setDataType(dataType);
+        event.setAggregateKey(aggregateKey);
+        event.setStatus(ErpOutboxEvent.OutboxStatus.PENDING);
+        event.setNextAttemptAt(LocalDateTime.now());
+        event.setPayload(toJson(aggregateKey, payload));
+        return event;
+    }
+
+    private String toJson(String aggregateKey, Object payload) {
+        try {
+            return objectMapper.writeValueAsString(payload);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("发件箱事件序列化失败: " + aggregateKey, e);
+        }
+    }
+
+    // DTOs
+
+    @Data
+    public static class TheoreticalConsumptionPayload {
+        private String taskNo;
+        private String sapSalesOrderNo;
+        private String sapProductionOrderNo;
+        private String strengthGrade;
+        private BigDecimal volume;
+        private Long mixRecipeId;
+        private String mixRecipeCode;
+        private BigDecimal theoreticalUnitCost;
+        private BigDecimal theoreticalTotalCost;
+        private List<MaterialConsumption> materials;
+    }
+
+    @Data
+    public static class MaterialConsumption {
+        private String materialCode;
+        private String plantCode;
+        private String baseUnit;
+        private BigDecimal dosagePerM3;
+        private BigDecimal quantity; // 理论用量 = 单方用量 × 方量
+    }
+
+    @Data
+    public static class CostDataPayload {
+        private String taskNo;
+        private String sapProductionOrderNo;
+        private String status;
+        private BigDecimal volume;
+        private Long mixRecipeId;
+        private BigDecimal theoreticalUnitCost;
+        private BigDecimal theoreticalTotalCost;
+        private LocalDateTime completedAt;
+    }
+}
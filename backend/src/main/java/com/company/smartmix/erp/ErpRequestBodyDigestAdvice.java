@@ -0,0 +1,92 @@
+package com.company.smartmix.erp;
+
+import org.springframework.core.MethodParameter;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.servlet.mvc.method.annotation.RequestBodyAdvice;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * ERP批量推送请求体摘要
+ *
+ * 绑定 {@link ErpWebhookController} 的请求体时，边读边计算原始字节的 SHA-256，
+ * 读完后（含 JSON 之后剩余的字节）写入请求属性 {@link #BODY_HASH_ATTRIBUTE}，作为重复推送指纹的输入。
+ */
+@ControllerAdvice(assignableTypes = ErpWebhookController.class)
+public class ErpRequestBodyDigestAdvice implements RequestBodyAdvice {
+
+    public static final String BODY_HASH_ATTRIBUTE = ErpRequestBodyDigestAdvice.class.getName() + ".bodyHash";
+
+    private static final String DIGEST_ATTRIBUTE = ErpRequestBodyDigestAdvice.class.getName() + ".digest";
+
+    @Override
+    public boolean supports(MethodParameter methodParameter, Type targetType,
+            Class<? extends HttpMessageConverter<?>> converterType) {
+        return true;
+    }
+
+    @Override
+    public HttpInputMessage beforeBodyRead(HttpInputMessage inputMessage, MethodParameter parameter, Type targetType,
+            Class<? extends HttpMessageConverter<?>> converterType) throws IOException {
+        DigestInputStream body = new DigestInputStream(inputMessage.getBody(), sha256());
+        RequestContextHolder.currentRequestAttributes()
+                .setAttribute(DIGEST_ATTRIBUTE, body, RequestAttributes.SCOPE_REQUEST);
+        return new HttpInputMessage() {
+            @Override
+            public InputStream getBody() {
+                return body;
+            }
+
+            @Override
+            public HttpHeaders getHeaders() {
+                return inputMessage.getHeaders();
+            }
+        };
+    }
+
+    @Override
+    public Object afterBodyRead(Object body, HttpInputMessage inputMessage, MethodParameter parameter,
+            Type targetType, Class<? extends HttpMessageConverter<?>> converterType) {
+        RequestAttributes attributes = RequestContextHolder.currentRequestAttributes();
+        DigestInputStream digest = (DigestInputStream) attributes.getAttribute(DIGEST_ATTRIBUTE,
+                RequestAttributes.SCOPE_REQUEST);
+        if (digest != null) {
+            try {
+                // 解析器可能没有读到流末尾，剩余字节也计入摘要
+                digest.transferTo(OutputStream.nullOutputStream());
+            } catch (IOException e) {
+                throw new IllegalStateException("读取请求体失败", e);
+            }
+            attributes.setAttribute(BODY_HASH_ATTRIBUTE, HexFormat.of().formatHex(digest.getMessageDigest().digest()),
+                    RequestAttributes.SCOPE_REQUEST);
+            attributes.removeAttribute(DIGEST_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+        }
+        return body;
+    }
+
+    @Override
+    public Object handleEmptyBody(Object body, HttpInputMessage inputMessage, MethodParameter parameter,
+            Type targetType, Class<? extends HttpMessageConverter<?>> converterType) {
+        return body;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
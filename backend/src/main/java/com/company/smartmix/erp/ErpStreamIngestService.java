@@ -0,0 +1,136 @@
+package com.company.smartmix.erp;
+
+import com.company.smartmix.common.BusinessException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * ERP流式同步
+ *
+ * 使用 Jackson 流式解析逐条读取 NDJSON 或 JSON 数组，每凑满一个分块就校验并提交一次，
+ * 内存占用只与分块大小有关，与推送总量无关。各分块独立提交，整个推送不是一个事务；
+ * 价格变动事件在整个推送结束后合并发布一次，避免每个分块都重建一次价格快照。
+ * 原始数据边读边压缩写入 {@link PayloadStore}，同步日志只保存其位置。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ErpStreamIngestService {
+
+    private final ErpSyncService erpSyncService;
+    private final SyncLogRepository syncLogRepository;
+    private final ObjectMapper objectMapper;
+    private final PayloadStore payloadStore;
+
+    @Value("${app.erp.batch-size:500}")
+    private int batchSize;
+
+    /**
+     * 读取并同步整个数据流；单条数据类型不匹配计入失败并继续，JSON语法错误时停止读取（已提交的分块保留）。
+     * 读取的原始数据同时写入 PayloadStore，包括出错前已读取的部分
+     */
+    public ErpWebhookController.SyncResult ingest(SyncLog.DataType dataType, InputStream input, String sourceIp) {
+        ErpWebhookController.SyncResult result = new ErpWebhookController.SyncResult();
+        List<Object> chunk = new ArrayList<>(batchSize);
+        Set<Long> changedMaterialIds = new HashSet<>();
+        int index = 0;
+        int chunkStart = 0;
+        long start = System.nanoTime();
+
+        try (PayloadStore.Writer writer = newWriter()) {
+            try (MappingIterator<Object> iterator = objectMapper.readerFor(ErpSyncService.itemType(dataType))
+                    .readValues(new TeeInputStream(input, writer))) {
+                while (iterator.hasNextValue()) {
+                    chunk.add(ErpSyncService.nextItem(iterator));
+                    index++;
+                    if (chunk.size() == batchSize) {
+                        flush(dataType, chunk, chunkStart, result, changedMaterialIds);
+                        chunkStart = index;
+                    }
+                }
+                flush(dataType, chunk, chunkStart, result, changedMaterialIds);
+            } catch (IOException e) {
+                // 语法错误之前已完整读取的数据照常提交
+                flush(dataType, chunk, chunkStart, result, changedMaterialIds);
+                String message = "第 " + (index + 1) + " 条数据JSON格式错误，已处理 " + index + " 条: " + e.getMessage();
+                writeSyncLog(dataType, sourceIp, commit(writer), SyncLog.SyncStatus.FAILED, message);
+                throw new BusinessException(400, message);
+            }
+            writeSyncLog(dataType, sourceIp, commit(writer), SyncLog.SyncStatus.SUCCESS, null);
+        } catch (IOException e) {
+            // 只会来自丢弃未提交的临时文件
+            log.warn("清理ERP流式同步临时文件失败", e);
+        } finally {
+            // 已提交分块的价格变动，出错中止时同样需要发布
+            erpSyncService.publishMaterialPriceChanged(changedMaterialIds);
+        }
+
+        log.info("ERP流式同步: type={}, items={}, success={}, failure={}, {}ms", dataType, index,
+                result.getSuccessCount(), result.getFailureCount(), (System.nanoTime() - start) / 1_000_000);
+        return result;
+    }
+
+    /**
+     * 提交当前分块（独立事务）并合并结果，分块提交后才计入价格变动的材料
+     */
+    private void flush(SyncLog.DataType dataType, List<Object> chunk, int offset,
+            ErpWebhookController.SyncResult result, Set<Long> changedMaterialIds) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        Set<Long> chunkChanged = new HashSet<>();
+        ErpWebhookController.SyncResult chunkResult = erpSyncService.syncChunk(dataType, chunk, offset, chunkChanged);
+        changedMaterialIds.addAll(chunkChanged);
+        result.setSuccessCount(result.getSuccessCount() + chunkResult.getSuccessCount());
+        result.addRowCounts(chunkResult);
+        for (ErpWebhookController.ItemFailure failure : chunkResult.getFailures()) {
+            result.failure(failure.getIndex(), failure.getKey(), failure.getMessage());
+        }
+        result.setFailureCount(result.getFailureCount() + chunkResult.getFailureCount()
+                - chunkResult.getFailures().size());
+        chunk.clear();
+    }
+
+    private PayloadStore.Writer newWriter() {
+        try {
+            return payloadStore.newWriter();
+        } catch (IOException e) {
+            throw new BusinessException(500, "保存原始数据失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 保存原始数据，失败时只记录日志，不影响已提交的同步结果
+     */
+    private PayloadRef commit(PayloadStore.Writer writer) {
+        try {
+            return writer.commit();
+        } catch (IOException e) {
+            log.warn("保存ERP流式同步原始数据失败", e);
+            return null;
+        }
+    }
+
+    private void writeSyncLog(SyncLog.DataType dataType, String sourceIp, PayloadRef payloadRef,
+            SyncLog.SyncStatus status, String errorMessage) {
+        SyncLog syncLog = new SyncLog();
+        syncLog.setDirection(SyncLog.SyncDirection.ERP_TO_SMARTMIX);
+        syncLog.setDataType(dataType);
+        syncLog.setSourceIp(sourceIp);
+        syncLog.setPayloadRef(payloadRef);
+        syncLog.setStatus(status);
+        syncLog.setErrorMessage(errorMessage);
+        syncLogRepository.save(syncLog);
+    }
+}
@@ -0,0 +1,83 @@
+package com.company.smartmix.erp;
+
+import com.company.smartmix.common.ApiResponse;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * ERP同步接口指标
+ *
+ * smartmix.erp.sync：每次推送的处理耗时（直方图），按数据类型、接口形式和结果区分；
+ * smartmix.erp.sync.items：处理的条数，按数据类型和单条结果区分。重复推送不计入条数。
+ * 计数器启动时创建，计时器按标签组合首次使用时创建，之后复用，不在每次推送时向注册表查找。
+ */
+@Component
+public class ErpSyncMetrics {
+
+    private final MeterRegistry meterRegistry;
+    private final Map<SyncLog.DataType, Counter> successItems = new EnumMap<>(SyncLog.DataType.class);
+    private final Map<SyncLog.DataType, Counter> failureItems = new EnumMap<>(SyncLog.DataType.class);
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+
+    public ErpSyncMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        for (SyncLog.DataType dataType : SyncLog.DataType.values()) {
+            successItems.put(dataType, items(dataType, "success"));
+            failureItems.put(dataType, items(dataType, "failure"));
+        }
+    }
+
+    /**
+     * 计时执行一次同步请求并记录条数
+     */
+    public ApiResponse<ErpWebhookController.SyncResult> record(SyncLog.DataType dataType, String mode,
+            SyncCall call) throws IOException {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "error";
+        try {
+            ApiResponse<ErpWebhookController.SyncResult> response = call.execute();
+            ErpWebhookController.SyncResult result = response.getData();
+            if (ErpWebhookController.DUPLICATE_MESSAGE.equals(response.getMessage())) {
+                outcome = "duplicate";
+            } else if (result != null) {
+                outcome = result.getFailureCount() > 0 ? "partial" : "success";
+                successItems.get(dataType).increment(result.getSuccessCount());
+                failureItems.get(dataType).increment(result.getFailureCount());
+            }
+            return response;
+        } finally {
+            sample.stop(timer(dataType, mode, outcome));
+        }
+    }
+
+    private Timer timer(SyncLog.DataType dataType, String mode, String outcome) {
+        return timers.computeIfAbsent(dataType.name() + ':' + mode + ':' + outcome,
+                key -> Timer.builder("smartmix.erp.sync")
+                        .description("ERP推送处理耗时")
+                        .tag("dataType", dataType.name())
+                        .tag("mode", mode)
+                        .tag("outcome", outcome)
+                        .publishPercentileHistogram()
+                        .register(meterRegistry));
+    }
+
+    private Counter items(SyncLog.DataType dataType, String result) {
+        return Counter.builder("smartmix.erp.sync.items")
+                .description("ERP推送处理条数")
+                .tag("dataType", dataType.name())
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    @FunctionalInterface
+    public interface SyncCall {
+        ApiResponse<ErpWebhookController.SyncResult> execute() throws IOException;
+    }
+}
@@ -0,0 +1,252 @@
+package com.company.smartmix.erp;
+
+import com.company.smartmix.material.MaterialChangedEvent;
+import com.company.smartmix.material.MaterialPriceChangedEvent;
+import com.company.smartmix.task.ProductionTask;
+import com.company.smartmix.task.ProductionTaskRepository;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * ERP数据同步服务
+ * 同步接口与异步导入任务共用，每次调用在一个事务内处理一批数据，单条失败不影响其余数据
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ErpSyncService {
+
+    private final ProductionTaskRepository productionTaskRepository;
+    private final MaterialBulkWriter materialBulkWriter;
+    private final MaterialPriceBulkWriter materialPriceBulkWriter;
+    private final ApplicationEventPublisher eventPublisher;
+    private final Validator validator;
+
+    /**
+     * 各数据类型对应的推送数据类
+     */
+    public static Class<?> itemType(SyncLog.DataType dataType) {
+        switch (dataType) {
+            case MATERIAL:
+                return ErpWebhookController.MaterialSyncRequest.class;
+            case MATERIAL_PRICE:
+                return ErpWebhookController.MaterialPriceSyncRequest.class;
+            case PRODUCTION_TASK:
+                return ErpWebhookController.ProductionTaskSyncRequest.class;
+            default:
+                throw new IllegalArgumentException("不支持的数据类型: " + dataType);
+        }
+    }
+
+    /**
+     * 读取下一条推送数据；字段类型不匹配时返回 {@link UnreadableItem}，迭代器会重新定位到下一条，
+     * JSON语法错误仍抛出 IOException
+     */
+    public static Object nextItem(MappingIterator<Object> iterator) throws IOException {
+        try {
+            return iterator.nextValue();
+        } catch (JsonMappingException e) {
+            return new UnreadableItem("数据格式错误: " + e.getOriginalMessage());
+        }
+    }
+
+    /**
+     * 同步一个分块：逐条校验，合法数据按类型同步；失败序号加上 offset 换算为在整个推送中的位置。
+     * 价格变动的材料ID写入 changedMaterialIds，不逐块发布事件，由调用方在整个推送结束后
+     * 通过 {@link #publishMaterialPriceChanged} 统一发布一次
+     */
+    @Transactional
+    public ErpWebhookController.SyncResult syncChunk(SyncLog.DataType dataType, List<?> chunk, int offset,
+            Set<Long> changedMaterialIds) {
+        ErpWebhookController.SyncResult chunkResult = new ErpWebhookController.SyncResult();
+        List<Object> valid = new ArrayList<>(chunk.size());
+        int[] positions = new int[chunk.size()];
+        for (int i = 0; i < chunk.size(); i++) {
+            Object item = chunk.get(i);
+            if (item instanceof UnreadableItem unreadable) {
+                chunkResult.failure(offset + i, null, unreadable.getMessage());
+                continue;
+            }
+            Set<ConstraintViolation<Object>> violations = validator.validate(item);
+            if (violations.isEmpty()) {
+                positions[valid.size()] = offset + i;
+                valid.add(item);
+            } else {
+                chunkResult.failure(offset + i, keyOf(item), violations.stream()
+                        .map(ConstraintViolation::getMessage).collect(Collectors.joining("; ")));
+            }
+        }
+
+        ErpWebhookController.SyncResult result = dispatch(dataType, valid, changedMaterialIds);
+        chunkResult.setSuccessCount(result.getSuccessCount());
+        chunkResult.addRowCounts(result);
+        for (ErpWebhookController.ItemFailure failure : result.getFailures()) {
+            chunkResult.failure(positions[failure.getIndex()], failure.getKey(), failure.getMessage());
+        }
+        chunkResult.setFailureCount(chunkResult.getFailureCount() + result.getFailureCount() - result.getFailures().size());
+        chunkResult.getFailures().sort(Comparator.comparingInt(ErpWebhookController.ItemFailure::getIndex));
+        return chunkResult;
+    }
+
+    /**
+     * 同步材料主数据，事务提交后刷新材料缓存
+     */
+    @Transactional
+    public ErpWebhookController.SyncResult syncMaterials(List<ErpWebhookController.MaterialSyncRequest> requests) {
+        // 预加载 + 内存比对 + JDBC 批量写入，避免逐条查询和保存
+        Map<String, Set<String>> changedCodes = new HashMap<>();
+        ErpWebhookController.SyncResult result = materialBulkWriter.upsert(requests, changedCodes);
+        if (!changedCodes.isEmpty()) {
+            eventPublisher.publishEvent(new MaterialChangedEvent(changedCodes));
+        }
+        return result;
+    }
+
+    /**
+     * 同步材料价格，事务提交后重建价格快照
+     */
+    @Transactional
+    public ErpWebhookController.SyncResult syncMaterialPrices(
+            List<ErpWebhookController.MaterialPriceSyncRequest> requests) {
+        // 一次解析材料 + 一条语句清除当前价格 + JDBC 批量插入
+        Set<Long> changedMaterialIds = new HashSet<>();
+        ErpWebhookController.SyncResult result = materialPriceBulkWriter.insert(requests, changedMaterialIds);
+        publishMaterialPriceChanged(changedMaterialIds);
+        return result;
+    }
+
+    /**
+     * 发布价格变动事件，事务提交后重建价格快照、时间线并重算配比单方成本
+     */
+    @Transactional
+    public void publishMaterialPriceChanged(Set<Long> changedMaterialIds) {
+        if (!changedMaterialIds.isEmpty()) {
+            eventPublisher.publishEvent(new MaterialPriceChangedEvent(changedMaterialIds));
+        }
+    }
+
+    /**
+     * 同步生产任务：一次查询预加载本批已有任务，同步字段内容未变化的任务跳过保存
+     */
+    @Transactional
+    public ErpWebhookController.SyncResult syncProductionTasks(
+            List<ErpWebhookController.ProductionTaskSyncRequest> requests) {
+        ErpWebhookController.SyncResult result = new ErpWebhookController.SyncResult(0, 0);
+
+        Set<String> taskNos = requests.stream()
+                .map(ErpWebhookController.ProductionTaskSyncRequest::getTaskNo)
+                .collect(Collectors.toSet());
+        Map<String, ProductionTask> existing = productionTaskRepository.findByTaskNoIn(taskNos).stream()
+                .collect(Collectors.toMap(ProductionTask::getTaskNo, Function.identity()));
+        Set<String> inserted = new HashSet<>();
+        Set<String> updated = new HashSet<>();
+        Set<String> unchanged = new HashSet<>();
+
+        for (int i = 0; i < requests.size(); i++) {
+            ErpWebhookController.ProductionTaskSyncRequest request = requests.get(i);
+            try {
+                String syncHash = SyncHash.of(request.getProjectName(), request.getStrengthGrade(),
+                        request.getSlumpRequirement(), request.getVolume(), request.getSpecialRequirements(),
+                        request.getSapSalesOrderNo(), request.getSapProductionOrderNo());
+                ProductionTask task = existing.get(request.getTaskNo());
+                if (task != null && syncHash.equals(task.getSyncHash())) {
+                    unchanged.add(request.getTaskNo());
+                    result.success();
+                    continue;
+                }
+                if (task == null) {
+                    task = new ProductionTask();
+                    inserted.add(request.getTaskNo());
+                } else if (!inserted.contains(request.getTaskNo())) {
+                    updated.add(request.getTaskNo());
+                }
+
+                task.setTaskNo(request.getTaskNo());
+                task.setProjectName(request.getProjectName());
+                task.setStrengthGrade(request.getStrengthGrade());
+                task.setSlumpRequirement(request.getSlumpRequirement());
+                task.setVolume(request.getVolume());
+                task.setSpecialRequirements(request.getSpecialRequirements());
+                task.setSourceSystem(ProductionTask.SourceSystem.SAP);
+                task.setSapSalesOrderNo(request.getSapSalesOrderNo());
+                task.setSapProductionOrderNo(request.getSapProductionOrderNo());
+                task.setSyncHash(syncHash);
+
+                if (task.getStatus() == null) {
+                    task.setStatus(ProductionTask.TaskStatus.NEW);
+                }
+
+                existing.put(request.getTaskNo(), productionTaskRepository.save(task));
+                result.success();
+            } catch (Exception e) {
+                log.error("Failed to sync production task: {}", request.getTaskNo(), e);
+                result.failure(i, request.getTaskNo(), e.getMessage());
+            }
+        }
+        result.setInsertedCount(inserted.size());
+        result.setUpdatedCount(updated.size());
+        unchanged.removeAll(inserted);
+        unchanged.removeAll(updated);
+        result.setUnchangedCount(unchanged.size());
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private ErpWebhookController.SyncResult dispatch(SyncLog.DataType dataType, List<Object> items,
+            Set<Long> changedMaterialIds) {
+        if (items.isEmpty()) {
+            return new ErpWebhookController.SyncResult(0, 0);
+        }
+        switch (dataType) {
+            case MATERIAL:
+                return syncMaterials((List<ErpWebhookController.MaterialSyncRequest>) (List<?>) items);
+            case MATERIAL_PRICE:
+                return materialPriceBulkWriter.insert(
+                        (List<ErpWebhookController.MaterialPriceSyncRequest>) (List<?>) items, changedMaterialIds);
+            case PRODUCTION_TASK:
+                return syncProductionTasks((List<ErpWebhookController.ProductionTaskSyncRequest>) (List<?>) items);
+            default:
+                throw new IllegalArgumentException("不支持的数据类型: " + dataType);
+        }
+    }
+
+    private static String keyOf(Object item) {
+        if (item instanceof ErpWebhookController.MaterialSyncRequest material) {
+            return material.getMaterialCode();
+        }
+        if (item instanceof ErpWebhookController.MaterialPriceSyncRequest price) {
+            return price.getMaterialCode();
+        }
+        if (item instanceof ErpWebhookController.ProductionTaskSyncRequest task) {
+            return task.getTaskNo();
+        }
+        return null;
+    }
+
+    /**
+     * 无法映射为推送数据类的单条数据，同步时计入失败
+     */
+    @Value
+    public static class UnreadableItem {
+        String message;
+    }
+}
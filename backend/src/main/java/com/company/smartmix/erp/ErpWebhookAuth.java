@@ -0,0 +1,28 @@
+package com.company.smartmix.erp;
+
+import com.company.smartmix.common.BusinessException;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * ERP Webhook Token 校验（/api/erp/** 不走JWT认证）
+ */
+@Component
+public class ErpWebhookAuth {
+
+    public static final String HEADER = "X-ERP-TOKEN";
+
+    @Value("${app.erp.webhook-token}")
+    private String webhookToken;
+
+    /**
+     * 验证Webhook Token
+     */
+    public void validate(HttpServletRequest request) {
+        String token = request.getHeader(HEADER);
+        if (token == null || !token.equals(webhookToken)) {
+            throw new BusinessException(403, "Invalid webhook token");
+        }
+    }
+}
@@ -2,12 +2,6 @@ package com.company.smartmix.erp;
 
 import com.company.smartmix.common.ApiResponse;
 import com.company.smartmix.common.BusinessException;
-import com.company.smartmix.material.Material;
-import com.company.smartmix.material.MaterialPrice;
-import com.company.smartmix.material.MaterialPriceRepository;
-import com.company.smartmix.material.MaterialRepository;
-import com.company.smartmix.task.ProductionTask;
-import com.company.smartmix.task.ProductionTaskRepository;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.security.SecurityRequirements;
@@ -16,18 +10,21 @@ import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.NoArgsConstructor;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.http.MediaType;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
 import java.math.BigDecimal;
-import java.math.RoundingMode;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
+import java.util.function.Supplier;
 
 /**
  * ERP数据同步Webhook控制器
@@ -40,14 +37,18 @@ import java.util.List;
 @RequiredArgsConstructor
 public class ErpWebhookController {
 
-    private final MaterialRepository materialRepository;
-    private final MaterialPriceRepository materialPriceRepository;
-    private final ProductionTaskRepository productionTaskRepository;
+    private static final String NDJSON = "application/x-ndjson";
+    static final String DUPLICATE_MESSAGE = "重复推送，返回首次处理结果";
+
+    private final ErpSyncService erpSyncService;
+    private final ErpStreamIngestService erpStreamIngestService;
+    private final ErpWebhookAuth erpWebhookAuth;
     private final SyncLogRepository syncLogRepository;
     private final ObjectMapper objectMapper;
-
-    @Value("${app.erp.webhook-token}")
-    private String webhookToken;
+    private final PayloadStore payloadStore;
+    private final ErpDeliveryDeduplicator erpDeliveryDeduplicator;
+    private final ErpSyncMetrics erpSyncMetrics;
+    private final TransactionTemplate transactionTemplate;
 
     /**
      * 同步材料主数据
@@ -55,52 +56,37 @@ public class ErpWebhookController {
     @Operation(summary = "同步材料主数据", description = "从ERP接收材料主数据（批量）")
     @SecurityRequirements // 不需要JWT认证
     @PostMapping("/materials")
-    @Transactional
     public ApiResponse<SyncResult> syncMaterials(@Valid @RequestBody List<MaterialSyncRequest> requests,
-            HttpServletRequest httpRequest) {
-        validateWebhookToken(httpRequest);
+            HttpServletRequest httpRequest) throws IOException {
+        erpWebhookAuth.validate(httpRequest);
+        return erpSyncMetrics.record(SyncLog.DataType.MATERIAL, "batch", () -> {
+            String fingerprint = deliveryFingerprint(httpRequest, SyncLog.DataType.MATERIAL);
+            Optional<SyncResult> duplicate = findDuplicate(fingerprint, SyncLog.DataType.MATERIAL);
+            if (duplicate.isPresent()) {
+                return ApiResponse.success(DUPLICATE_MESSAGE, duplicate.get());
+            }
+            return inTransaction(fingerprint, () -> {
+                SyncLog syncLog = createSyncLog(SyncLog.SyncDirection.ERP_TO_SMARTMIX,
+                        SyncLog.DataType.MATERIAL,
+                        requests,
+                        httpRequest.getRemoteAddr());
 
-        SyncLog syncLog = createSyncLog(SyncLog.SyncDirection.ERP_TO_SMARTMIX,
-                SyncLog.DataType.MATERIAL,
-                requests,
-                httpRequest.getRemoteAddr());
+                try {
+                    SyncResult result = erpSyncService.syncMaterials(requests);
 
-        try {
-            int successCount = 0;
-            int failureCount = 0;
+                    syncLog.setStatus(SyncLog.SyncStatus.SUCCESS);
+                    syncLogRepository.save(syncLog);
+                    rememberIfComplete(fingerprint, result);
 
-            for (MaterialSyncRequest request : requests) {
-                try {
-                    String plantCode = request.getPlantCode() != null ? request.getPlantCode() : "DEFAULT";
-                    Material material = materialRepository
-                            .findByMaterialCodeAndPlantCode(request.getMaterialCode(), plantCode)
-                            .orElse(new Material());
-
-                    material.setMaterialCode(request.getMaterialCode());
-                    material.setDescription(request.getDescription());
-                    material.setSpec(request.getSpec());
-                    material.setBaseUnit(request.getBaseUnit());
-                    material.setPlantCode(plantCode);
-                    material.setSourceSystem("SAP-MM");
-
-                    materialRepository.save(material);
-                    successCount++;
+                    return ApiResponse.success(result);
                 } catch (Exception e) {
-                    log.error("Failed to sync material: {}", request.getMaterialCode(), e);
-                    failureCount++;
+                    syncLog.setStatus(SyncLog.SyncStatus.FAILED);
+                    syncLog.setErrorMessage(e.getMessage());
+                    syncLogRepository.save(syncLog);
+                    throw new BusinessException("材料同步失败: " + e.getMessage());
                 }
-            }
-
-            syncLog.setStatus(SyncLog.SyncStatus.SUCCESS);
-            syncLogRepository.save(syncLog);
-
-            return ApiResponse.success(new SyncResult(successCount, failureCount));
-        } catch (Exception e) {
-            syncLog.setStatus(SyncLog.SyncStatus.FAILED);
-            syncLog.setErrorMessage(e.getMessage());
-            syncLogRepository.save(syncLog);
-            throw new BusinessException("材料同步失败: " + e.getMessage());
-        }
+            });
+        });
     }
 
     /**
@@ -109,66 +95,38 @@ public class ErpWebhookController {
     @Operation(summary = "同步材料价格", description = "从ERP接收材料价格（批量）")
     @SecurityRequirements
     @PostMapping("/material-prices")
-    @Transactional
     public ApiResponse<SyncResult> syncMaterialPrices(@Valid @RequestBody List<MaterialPriceSyncRequest> requests,
-            HttpServletRequest httpRequest) {
-        validateWebhookToken(httpRequest);
+            HttpServletRequest httpRequest) throws IOException {
+        erpWebhookAuth.validate(httpRequest);
+        return erpSyncMetrics.record(SyncLog.DataType.MATERIAL_PRICE, "batch", () -> {
+            String fingerprint = deliveryFingerprint(httpRequest, SyncLog.DataType.MATERIAL_PRICE);
+            Optional<SyncResult> duplicate = findDuplicate(fingerprint, SyncLog.DataType.MATERIAL_PRICE);
+            if (duplicate.isPresent()) {
+                return ApiResponse.success(DUPLICATE_MESSAGE, duplicate.get());
+            }
+            return inTransaction(fingerprint, () -> {
+                SyncLog syncLog = createSyncLog(SyncLog.SyncDirection.ERP_TO_SMARTMIX,
+                        SyncLog.DataType.MATERIAL_PRICE,
+                        requests,
+                        httpRequest.getRemoteAddr());
 
-        SyncLog syncLog = createSyncLog(SyncLog.SyncDirection.ERP_TO_SMARTMIX,
-                SyncLog.DataType.MATERIAL_PRICE,
-                requests,
-                httpRequest.getRemoteAddr());
+                try {
+                    // 事务提交后重建价格快照
+                    SyncResult result = erpSyncService.syncMaterialPrices(requests);
 
-        try {
-            int successCount = 0;
-            int failureCount = 0;
+                    syncLog.setStatus(SyncLog.SyncStatus.SUCCESS);
+                    syncLogRepository.save(syncLog);
+                    rememberIfComplete(fingerprint, result);
 
-            for (MaterialPriceSyncRequest request : requests) {
-                try {
-                    String plantCode = request.getPlantCode() != null ? request.getPlantCode() : "DEFAULT";
-                    Material material = materialRepository
-                            .findByMaterialCodeAndPlantCode(request.getMaterialCode(), plantCode)
-                            .orElseThrow(() -> new BusinessException(
-                                    "材料不存在: " + request.getMaterialCode() + " (Plant: " + plantCode + ")"));
-
-                    // 清除该材料的当前价格标记
-                    materialPriceRepository.clearCurrentPrices(material);
-
-                    // 创建新价格记录
-                    MaterialPrice price = new MaterialPrice();
-                    price.setMaterial(material);
-                    price.setPrice(request.getPrice());
-                    price.setPriceUnit(request.getPriceUnit());
-                    price.setCurrency(request.getCurrency());
-                    price.setEffectiveFrom(parseDateTime(request.getEffectiveFrom()));
-                    price.setIsCurrent(true);
-                    price.setSourceSystem(request.getSourceSystem());
-
-                    // 计算 pricePerKg（元/吨 → 元/公斤）
-                    if ("YuanPerTon".equalsIgnoreCase(request.getPriceUnit())) {
-                        price.setPricePerKg(request.getPrice().divide(new BigDecimal("1000"), 4, RoundingMode.HALF_UP));
-                    } else {
-                        price.setPricePerKg(request.getPrice());
-                    }
-
-                    materialPriceRepository.save(price);
-                    successCount++;
+                    return ApiResponse.success(result);
                 } catch (Exception e) {
-                    log.error("Failed to sync material price: {}", request.getMaterialCode(), e);
-                    failureCount++;
+                    syncLog.setStatus(SyncLog.SyncStatus.FAILED);
+                    syncLog.setErrorMessage(e.getMessage());
+                    syncLogRepository.save(syncLog);
+                    throw new BusinessException("价格同步失败: " + e.getMessage());
                 }
-            }
-
-            syncLog.setStatus(SyncLog.SyncStatus.SUCCESS);
-            syncLogRepository.save(syncLog);
-
-            return ApiResponse.success(new SyncResult(successCount, failureCount));
-        } catch (Exception e) {
-            syncLog.setStatus(SyncLog.SyncStatus.FAILED);
-            syncLog.setErrorMessage(e.getMessage());
-            syncLogRepository.save(syncLog);
-            throw new BusinessException("价格同步失败: " + e.getMessage());
-        }
+            });
+        });
     }
 
     /**
@@ -177,98 +135,140 @@ public class ErpWebhookController {
     @Operation(summary = "同步生产任务", description = "从ERP接收生产任务")
     @SecurityRequirements
     @PostMapping("/production-tasks")
-    @Transactional
     public ApiResponse<SyncResult> syncProductionTasks(@Valid @RequestBody List<ProductionTaskSyncRequest> requests,
-            HttpServletRequest httpRequest) {
-        validateWebhookToken(httpRequest);
+            HttpServletRequest httpRequest) throws IOException {
+        erpWebhookAuth.validate(httpRequest);
+        return erpSyncMetrics.record(SyncLog.DataType.PRODUCTION_TASK, "batch", () -> {
+            String fingerprint = deliveryFingerprint(httpRequest, SyncLog.DataType.PRODUCTION_TASK);
+            Optional<SyncResult> duplicate = findDuplicate(fingerprint, SyncLog.DataType.PRODUCTION_TASK);
+            if (duplicate.isPresent()) {
+                return ApiResponse.success(DUPLICATE_MESSAGE, duplicate.get());
+            }
+            return inTransaction(fingerprint, () -> {
+                SyncLog syncLog = createSyncLog(SyncLog.SyncDirection.ERP_TO_SMARTMIX,
+                        SyncLog.DataType.PRODUCTION_TASK,
+                        requests,
+                        httpRequest.getRemoteAddr());
 
-        SyncLog syncLog = createSyncLog(SyncLog.SyncDirection.ERP_TO_SMARTMIX,
-                SyncLog.DataType.PRODUCTION_TASK,
-                requests,
-                httpRequest.getRemoteAddr());
+                try {
+                    SyncResult result = erpSyncService.syncProductionTasks(requests);
 
-        try {
-            int successCount = 0;
-            int failureCount = 0;
+                    syncLog.setStatus(SyncLog.SyncStatus.SUCCESS);
+                    syncLogRepository.save(syncLog);
+                    rememberIfComplete(fingerprint, result);
 
-            for (ProductionTaskSyncRequest request : requests) {
-                try {
-                    ProductionTask task = productionTaskRepository
-                            .findByTaskNo(request.getTaskNo())
-                            .orElse(new ProductionTask());
-
-                    task.setTaskNo(request.getTaskNo());
-                    task.setProjectName(request.getProjectName());
-                    task.setStrengthGrade(request.getStrengthGrade());
-                    task.setSlumpRequirement(request.getSlumpRequirement());
-                    task.setVolume(request.getVolume());
-                    task.setSpecialRequirements(request.getSpecialRequirements());
-                    task.setSourceSystem(ProductionTask.SourceSystem.SAP);
-                    task.setSapSalesOrderNo(request.getSapSalesOrderNo());
-                    task.setSapProductionOrderNo(request.getSapProductionOrderNo());
-
-                    if (task.getStatus() == null) {
-                        task.setStatus(ProductionTask.TaskStatus.NEW);
-                    }
-
-                    productionTaskRepository.save(task);
-                    successCount++;
+                    return ApiResponse.success(result);
                 } catch (Exception e) {
-                    log.error("Failed to sync production task: {}", request.getTaskNo(), e);
-                    failureCount++;
+                    syncLog.setStatus(SyncLog.SyncStatus.FAILED);
+                    syncLog.setErrorMessage(e.getMessage());
+                    syncLogRepository.save(syncLog);
+                    throw new BusinessException("生产任务同步失败: " + e.getMessage());
                 }
-            }
+            });
+        });
+    }
 
-            syncLog.setStatus(SyncLog.SyncStatus.SUCCESS);
-            syncLogRepository.save(syncLog);
+    /**
+     * 流式同步材料主数据
+     */
+    @Operation(summary = "流式同步材料主数据", description = "接收NDJSON或JSON数组，按分块校验并提交，适用于大批量推送")
+    @SecurityRequirements
+    @PostMapping(value = "/stream/materials", consumes = { NDJSON, MediaType.APPLICATION_JSON_VALUE })
+    public ApiResponse<SyncResult> streamMaterials(HttpServletRequest httpRequest) throws IOException {
+        erpWebhookAuth.validate(httpRequest);
+        return erpSyncMetrics.record(SyncLog.DataType.MATERIAL, "stream", () -> ApiResponse.success(
+                erpStreamIngestService.ingest(SyncLog.DataType.MATERIAL, httpRequest.getInputStream(),
+                        httpRequest.getRemoteAddr())));
+    }
 
-            return ApiResponse.success(new SyncResult(successCount, failureCount));
-        } catch (Exception e) {
-            syncLog.setStatus(SyncLog.SyncStatus.FAILED);
-            syncLog.setErrorMessage(e.getMessage());
-            syncLogRepository.save(syncLog);
-            throw new BusinessException("生产任务同步失败: " + e.getMessage());
-        }
+    /**
+     * 流式同步材料价格
+     */
+    @Operation(summary = "流式同步材料价格", description = "接收NDJSON或JSON数组，按分块校验并提交，适用于大批量推送")
+    @SecurityRequirements
+    @PostMapping(value = "/stream/material-prices", consumes = { NDJSON, MediaType.APPLICATION_JSON_VALUE })
+    public ApiResponse<SyncResult> streamMaterialPrices(HttpServletRequest httpRequest) throws IOException {
+        erpWebhookAuth.validate(httpRequest);
+        return erpSyncMetrics.record(SyncLog.DataType.MATERIAL_PRICE, "stream", () -> ApiResponse.success(
+                erpStreamIngestService.ingest(SyncLog.DataType.MATERIAL_PRICE, httpRequest.getInputStream(),
+                        httpRequest.getRemoteAddr())));
     }
 
     /**
-     * 验证Webhook Token
+     * 流式同步生产任务
      */
-    private void validateWebhookToken(HttpServletRequest request) {
-        String token = request.getHeader("X-ERP-TOKEN");
-        if (token == null || !token.equals(webhookToken)) {
-            throw new BusinessException(403, "Invalid webhook token");
+    @Operation(summary = "流式同步生产任务", description = "接收NDJSON或JSON数组，按分块校验并提交，适用于大批量推送")
+    @SecurityRequirements
+    @PostMapping(value = "/stream/production-tasks", consumes = { NDJSON, MediaType.APPLICATION_JSON_VALUE })
+    public ApiResponse<SyncResult> streamProductionTasks(HttpServletRequest httpRequest) throws IOException {
+        erpWebhookAuth.validate(httpRequest);
+        return erpSyncMetrics.record(SyncLog.DataType.PRODUCTION_TASK, "stream", () -> ApiResponse.success(
+                erpStreamIngestService.ingest(SyncLog.DataType.PRODUCTION_TASK, httpRequest.getInputStream(),
+                        httpRequest.getRemoteAddr())));
+    }
+
+    /**
+     * 推送指纹：推送方Token、数据类型和原始请求体哈希（绑定请求体时由 {@link ErpRequestBodyDigestAdvice} 计算）
+     */
+    private String deliveryFingerprint(HttpServletRequest httpRequest, SyncLog.DataType dataType) {
+        String bodyHash = (String) httpRequest.getAttribute(ErpRequestBodyDigestAdvice.BODY_HASH_ATTRIBUTE);
+        if (bodyHash == null) {
+            throw new IllegalStateException("请求体摘要缺失");
         }
+        return erpDeliveryDeduplicator.fingerprintOfHash(httpRequest.getHeader(ErpWebhookAuth.HEADER), dataType,
+                bodyHash);
     }
 
     /**
-     * 创建同步日志
+     * 查找重复推送：窗口期内已处理过相同内容时返回首次处理结果；
+     * 否则领取该指纹并返回空，由调用方处理后记录或释放（相同推送正在处理时等待其结果）。
+     * 须在开启事务之前调用，等待期间不占用数据库连接
      */
-    private SyncLog createSyncLog(SyncLog.SyncDirection direction,
-            SyncLog.DataType dataType,
-            Object payload,
-            String sourceIp) {
-        SyncLog log = new SyncLog();
-        log.setDirection(direction);
-        log.setDataType(dataType);
-        log.setSourceIp(sourceIp);
+    private Optional<SyncResult> findDuplicate(String fingerprint, SyncLog.DataType dataType) {
+        Optional<SyncResult> duplicate = erpDeliveryDeduplicator.claim(fingerprint, SyncResult.class);
+        duplicate.ifPresent(result -> log.info("ERP重复推送，返回首次处理结果: type={}, fingerprint={}",
+                dataType, fingerprint));
+        return duplicate;
+    }
+
+    /**
+     * 在事务内处理已领取的推送，事务回滚（含提交失败）时释放领取，允许重发重新处理
+     */
+    private ApiResponse<SyncResult> inTransaction(String fingerprint, Supplier<ApiResponse<SyncResult>> work) {
         try {
-            log.setPayload(objectMapper.writeValueAsString(payload));
-        } catch (Exception e) {
-            log.setPayload(payload.toString());
+            return transactionTemplate.execute(tx -> work.get());
+        } catch (RuntimeException e) {
+            erpDeliveryDeduplicator.release(fingerprint);
+            throw e;
         }
-        return log;
     }
 
     /**
-     * 解析日期时间
+     * 全部成功时记录结果（事务提交后生效），有单条失败的推送释放领取，允许重发重试
      */
-    private LocalDateTime parseDateTime(String dateTimeStr) {
+    private void rememberIfComplete(String fingerprint, SyncResult result) {
+        if (result.getFailureCount() == 0) {
+            erpDeliveryDeduplicator.remember(fingerprint, result);
+        } else {
+            erpDeliveryDeduplicator.release(fingerprint);
+        }
+    }
+
+    private SyncLog createSyncLog(SyncLog.SyncDirection direction,
+            SyncLog.DataType dataType,
+            Object payload,
+            String sourceIp) {
+        SyncLog syncLog = new SyncLog();
+        syncLog.setDirection(direction);
+        syncLog.setDataType(dataType);
+        syncLog.setSourceIp(sourceIp);
         try {
-            return LocalDateTime.parse(dateTimeStr, DateTimeFormatter.ISO_DATE_TIME);
+            // 原始数据压缩写入 PayloadStore，日志只保存位置和哈希
+            syncLog.setPayloadRef(payloadStore.append(out -> objectMapper.writeValue(out, payload)));
         } catch (Exception e) {
-            return LocalDateTime.now();
+            log.warn("保存同步原始数据失败: type={}", dataType, e);
         }
+        return syncLog;
     }
 
     // DTO类
@@ -331,12 +331,58 @@ public class ErpWebhookController {
 
     @Data
     public static class SyncResult {
+        /**
+         * 单次结果中保留的失败明细上限
+         */
+        public static final int MAX_FAILURES = 1000;
+
         private int successCount;
         private int failureCount;
 
+        /**
+         * 按行统计写入情况（同一批内重复的键只计一次）：新增、更新、内容未变化而跳过
+         */
+        private int insertedCount;
+        private int updatedCount;
+        private int unchangedCount;
+
+        private List<ItemFailure> failures = new ArrayList<>();
+
+        public SyncResult() {
+        }
+
         public SyncResult(int successCount, int failureCount) {
             this.successCount = successCount;
             this.failureCount = failureCount;
         }
+
+        public void success() {
+            successCount++;
+        }
+
+        public void failure(int index, String key, String message) {
+            failureCount++;
+            if (failures.size() < MAX_FAILURES) {
+                failures.add(new ItemFailure(index, key, message));
+            }
+        }
+
+        /**
+         * 累加另一结果的按行统计
+         */
+        public void addRowCounts(SyncResult other) {
+            insertedCount += other.insertedCount;
+            updatedCount += other.updatedCount;
+            unchangedCount += other.unchangedCount;
+        }
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class ItemFailure {
+        private int index; // 在推送数据中的序号（从0开始）
+        private String key; // 材料编码或任务单号
+        private String message;
     }
 }
@@ -0,0 +1,177 @@
+package com.company.smartmix.erp;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 材料主数据批量写入
+ *
+ * 按（材料编码, 工厂）一次性预加载已有材料，在内存中区分新增与更新，
+ * 再以 JDBC 批量语句分块写入。实体主键为 IDENTITY，Hibernate 无法批量插入，因此绕过 JPA。
+ * 同步字段的内容哈希与已存储的 sync_hash 相同时跳过该行，不产生 UPDATE、不增加版本号。
+ * 单条数据的问题（字段超长等）在写入前校验并按条计入失败数。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class MaterialBulkWriter {
+
+    private static final String DEFAULT_PLANT = "DEFAULT";
+    private static final String SOURCE_SYSTEM = "SAP-MM";
+
+    private static final String SELECT_EXISTING = "SELECT id, material_code, sync_hash FROM materials "
+            + "WHERE plant_code = :plantCode AND material_code IN (:codes)";
+    private static final String INSERT = "INSERT INTO materials (material_code, plant_code, description, spec, "
+            + "base_unit, source_system, sync_hash, created_at, updated_at, version) "
+            + "VALUES (:materialCode, :plantCode, :description, :spec, :baseUnit, :sourceSystem, :syncHash, "
+            + ":now, :now, 0)";
+    private static final String UPDATE = "UPDATE materials SET description = :description, spec = :spec, "
+            + "base_unit = :baseUnit, source_system = :sourceSystem, sync_hash = :syncHash, updated_at = :now, "
+            + "version = version + 1 "
+            + "WHERE id = :id";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Value("${app.erp.batch-size:500}")
+    private int batchSize;
+
+    /**
+     * 写入一批材料，同一（编码, 工厂）出现多次时以最后一条为准，每条都计入成功数；
+     * 新增或内容有变化的材料编码按工厂加入 changedCodes
+     */
+    @Transactional
+    public ErpWebhookController.SyncResult upsert(List<ErpWebhookController.MaterialSyncRequest> requests,
+            Map<String, Set<String>> changedCodes) {
+        ErpWebhookController.SyncResult result = new ErpWebhookController.SyncResult(0, 0);
+
+        // 校验并按工厂分组，同一键后者覆盖前者
+        Map<String, Map<String, ErpWebhookController.MaterialSyncRequest>> byPlant = new LinkedHashMap<>();
+        for (int i = 0; i < requests.size(); i++) {
+            ErpWebhookController.MaterialSyncRequest request = requests.get(i);
+            String plantCode = request.getPlantCode() != null ? request.getPlantCode() : DEFAULT_PLANT;
+            String error = validate(request, plantCode);
+            if (error != null) {
+                log.error("Failed to sync material: {} ({})", request.getMaterialCode(), error);
+                result.failure(i, request.getMaterialCode(), error);
+                continue;
+            }
+            byPlant.computeIfAbsent(plantCode, key -> new LinkedHashMap<>())
+                    .put(request.getMaterialCode(), request);
+            result.success();
+        }
+
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        for (Map.Entry<String, Map<String, ErpWebhookController.MaterialSyncRequest>> plant : byPlant.entrySet()) {
+            List<ErpWebhookController.MaterialSyncRequest> rows = new ArrayList<>(plant.getValue().values());
+            for (int from = 0; from < rows.size(); from += batchSize) {
+                List<ErpWebhookController.MaterialSyncRequest> chunk = rows.subList(from,
+                        Math.min(from + batchSize, rows.size()));
+                Map<String, ExistingRow> existing = loadExisting(plant.getKey(), chunk);
+
+                List<MapSqlParameterSource> inserts = new ArrayList<>();
+                List<MapSqlParameterSource> updates = new ArrayList<>();
+                for (ErpWebhookController.MaterialSyncRequest request : chunk) {
+                    String syncHash = SyncHash.of(request.getDescription(), request.getSpec(),
+                            request.getBaseUnit(), SOURCE_SYSTEM);
+                    ExistingRow row = existing.get(request.getMaterialCode());
+                    if (row != null && syncHash.equals(row.syncHash)) {
+                        result.setUnchangedCount(result.getUnchangedCount() + 1);
+                        continue;
+                    }
+                    MapSqlParameterSource params = new MapSqlParameterSource()
+                            .addValue("materialCode", request.getMaterialCode())
+                            .addValue("plantCode", plant.getKey())
+                            .addValue("description", request.getDescription())
+                            .addValue("spec", request.getSpec())
+                            .addValue("baseUnit", request.getBaseUnit())
+                            .addValue("sourceSystem", SOURCE_SYSTEM)
+                            .addValue("syncHash", syncHash)
+                            .addValue("now", now);
+                    if (row == null) {
+                        inserts.add(params);
+                    } else {
+                        updates.add(params.addValue("id", row.id));
+                    }
+                    changedCodes.computeIfAbsent(plant.getKey(), key -> new HashSet<>()).add(request.getMaterialCode());
+                }
+                if (!inserts.isEmpty()) {
+                    jdbcTemplate.batchUpdate(INSERT, inserts.toArray(new MapSqlParameterSource[0]));
+                }
+                if (!updates.isEmpty()) {
+                    jdbcTemplate.batchUpdate(UPDATE, updates.toArray(new MapSqlParameterSource[0]));
+                }
+                result.setInsertedCount(result.getInsertedCount() + inserts.size());
+                result.setUpdatedCount(result.getUpdatedCount() + updates.size());
+            }
+        }
+
+        log.info("材料批量同步: total={}, inserted={}, updated={}, unchanged={}, failed={}", requests.size(),
+                result.getInsertedCount(), result.getUpdatedCount(), result.getUnchangedCount(),
+                result.getFailureCount());
+        return result;
+    }
+
+    private Map<String, ExistingRow> loadExisting(String plantCode, List<ErpWebhookController.MaterialSyncRequest> chunk) {
+        List<String> codes = new ArrayList<>(chunk.size());
+        chunk.forEach(request -> codes.add(request.getMaterialCode()));
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("plantCode", plantCode)
+                .addValue("codes", codes);
+        Map<String, ExistingRow> existing = new HashMap<>();
+        jdbcTemplate.query(SELECT_EXISTING, params, rs -> {
+            existing.put(rs.getString("material_code"), new ExistingRow(rs.getLong("id"), rs.getString("sync_hash")));
+        });
+        return existing;
+    }
+
+    /**
+     * 按列定义校验单条数据，返回错误信息，合法时返回 null
+     */
+    private static String validate(ErpWebhookController.MaterialSyncRequest request, String plantCode) {
+        if (tooLong(request.getMaterialCode(), 40)) {
+            return "材料编码超长";
+        }
+        if (tooLong(request.getDescription(), 200)) {
+            return "材料描述超长";
+        }
+        if (tooLong(request.getSpec(), 200)) {
+            return "规格超长";
+        }
+        if (tooLong(request.getBaseUnit(), 10)) {
+            return "基本单位超长";
+        }
+        if (tooLong(plantCode, 10)) {
+            return "工厂编码超长";
+        }
+        return null;
+    }
+
+    private static boolean tooLong(String value, int length) {
+        return value != null && value.length() > length;
+    }
+
+    private static final class ExistingRow {
+        private final long id;
+        private final String syncHash;
+
+        ExistingRow(long id, String syncHash) {
+            this.id = id;
+            this.syncHash = syncHash;
+        }
+    }
+}
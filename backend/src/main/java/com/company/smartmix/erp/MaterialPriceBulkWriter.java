@@ -0,0 +1,197 @@
+package com.company.smartmix.erp;
+
+import com.company.smartmix.material.MaterialCache;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 材料价格批量写入
+ *
+ * 按工厂从材料缓存解析本批全部材料（未命中的一次查询补齐），用一条 UPDATE 清除受影响材料的当前价格标记，
+ * 再以 JDBC 批量语句插入新价格。同一材料在本批出现多次时全部保留为历史，最后一条为当前价格，
+ * 与逐条处理的结果一致。单条数据的问题（材料不存在、字段超长等）在写入前按条计入失败。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class MaterialPriceBulkWriter {
+
+    private static final String DEFAULT_PLANT = "DEFAULT";
+    private static final BigDecimal KG_PER_TON = new BigDecimal("1000");
+
+    private static final String CLEAR_CURRENT = "UPDATE material_prices SET is_current = false, updated_at = :now, "
+            + "version = version + 1 WHERE material_id IN (:materialIds) AND is_current = true";
+    private static final String INSERT = "INSERT INTO material_prices (material_id, price, price_unit, currency, "
+            + "effective_from, is_current, price_per_kg, source_system, created_at, updated_at, version) "
+            + "VALUES (:materialId, :price, :priceUnit, :currency, :effectiveFrom, :isCurrent, :pricePerKg, "
+            + ":sourceSystem, :now, :now, 0)";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final MaterialCache materialCache;
+
+    @Value("${app.erp.batch-size:500}")
+    private int batchSize;
+
+    /**
+     * 写入一批价格，价格有变化的材料ID加入 changedMaterialIds
+     */
+    @Transactional
+    public ErpWebhookController.SyncResult insert(List<ErpWebhookController.MaterialPriceSyncRequest> requests,
+            Set<Long> changedMaterialIds) {
+        ErpWebhookController.SyncResult result = new ErpWebhookController.SyncResult(0, 0);
+
+        // 校验并按工厂收集材料编码
+        String[] plantCodes = new String[requests.size()];
+        Map<String, Set<String>> codesByPlant = new LinkedHashMap<>();
+        for (int i = 0; i < requests.size(); i++) {
+            ErpWebhookController.MaterialPriceSyncRequest request = requests.get(i);
+            String plantCode = request.getPlantCode() != null ? request.getPlantCode() : DEFAULT_PLANT;
+            String error = validate(request);
+            if (error != null) {
+                log.error("Failed to sync material price: {} ({})", request.getMaterialCode(), error);
+                result.failure(i, request.getMaterialCode(), error);
+                continue;
+            }
+            plantCodes[i] = plantCode;
+            codesByPlant.computeIfAbsent(plantCode, key -> new LinkedHashSet<>()).add(request.getMaterialCode());
+        }
+
+        Map<String, Map<String, Long>> materialIds = new HashMap<>();
+        codesByPlant.forEach((plantCode, codes) -> materialIds.put(plantCode, materialCache.resolveIds(plantCode, codes)));
+
+        // 解析材料，记录每个材料在本批中的最后一条（作为当前价格）
+        Long[] resolved = new Long[requests.size()];
+        Map<Long, Integer> lastIndex = new LinkedHashMap<>();
+        for (int i = 0; i < requests.size(); i++) {
+            if (plantCodes[i] == null) {
+                continue;
+            }
+            ErpWebhookController.MaterialPriceSyncRequest request = requests.get(i);
+            Long materialId = materialIds.get(plantCodes[i]).get(request.getMaterialCode());
+            if (materialId == null) {
+                String error = "材料不存在: " + request.getMaterialCode() + " (Plant: " + plantCodes[i] + ")";
+                log.error("Failed to sync material price: {}", error);
+                result.failure(i, request.getMaterialCode(), error);
+                continue;
+            }
+            resolved[i] = materialId;
+            lastIndex.put(materialId, i);
+        }
+        result.getFailures().sort(Comparator.comparingInt(ErpWebhookController.ItemFailure::getIndex));
+        if (lastIndex.isEmpty()) {
+            return result;
+        }
+
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Long> ids = new ArrayList<>(lastIndex.keySet());
+        int cleared = 0;
+        for (int from = 0; from < ids.size(); from += batchSize) {
+            cleared += jdbcTemplate.update(CLEAR_CURRENT, new MapSqlParameterSource()
+                    .addValue("materialIds", ids.subList(from, Math.min(from + batchSize, ids.size())))
+                    .addValue("now", now));
+        }
+
+        List<MapSqlParameterSource> inserts = new ArrayList<>(batchSize);
+        for (int i = 0; i < requests.size(); i++) {
+            if (resolved[i] == null) {
+                continue;
+            }
+            ErpWebhookController.MaterialPriceSyncRequest request = requests.get(i);
+            inserts.add(new MapSqlParameterSource()
+                    .addValue("materialId", resolved[i])
+                    .addValue("price", request.getPrice())
+                    .addValue("priceUnit", request.getPriceUnit())
+                    .addValue("currency", request.getCurrency())
+                    .addValue("effectiveFrom", Timestamp.valueOf(parseDateTime(request.getEffectiveFrom())))
+                    .addValue("isCurrent", lastIndex.get(resolved[i]) == i)
+                    .addValue("pricePerKg", pricePerKg(request))
+                    .addValue("sourceSystem", request.getSourceSystem())
+                    .addValue("now", now));
+            result.success();
+            if (inserts.size() == batchSize) {
+                jdbcTemplate.batchUpdate(INSERT, inserts.toArray(new MapSqlParameterSource[0]));
+                result.setInsertedCount(result.getInsertedCount() + inserts.size());
+                inserts.clear();
+            }
+        }
+        if (!inserts.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT, inserts.toArray(new MapSqlParameterSource[0]));
+            result.setInsertedCount(result.getInsertedCount() + inserts.size());
+        }
+        changedMaterialIds.addAll(lastIndex.keySet());
+
+        log.info("材料价格批量同步: total={}, inserted={}, materials={}, cleared={}, failed={}", requests.size(),
+                result.getInsertedCount(), lastIndex.size(), cleared, result.getFailureCount());
+        return result;
+    }
+
+    /**
+     * 计算 pricePerKg（元/吨 → 元/公斤）
+     */
+    private static BigDecimal pricePerKg(ErpWebhookController.MaterialPriceSyncRequest request) {
+        if ("YuanPerTon".equalsIgnoreCase(request.getPriceUnit())) {
+            return request.getPrice().divide(KG_PER_TON, 4, RoundingMode.HALF_UP);
+        }
+        return request.getPrice();
+    }
+
+    /**
+     * 按列定义校验单条数据，返回错误信息，合法时返回 null
+     */
+    private static String validate(ErpWebhookController.MaterialPriceSyncRequest request) {
+        if (integerDigits(request.getPrice()) > 8 || integerDigits(pricePerKg(request)) > 6) {
+            return "价格超出范围";
+        }
+        if (tooLong(request.getPriceUnit(), 20)) {
+            return "价格单位超长";
+        }
+        if (tooLong(request.getCurrency(), 10)) {
+            return "币种超长";
+        }
+        if (tooLong(request.getSourceSystem(), 50)) {
+            return "来源系统超长";
+        }
+        if (tooLong(request.getPlantCode(), 10)) {
+            return "工厂编码超长";
+        }
+        return null;
+    }
+
+    private static int integerDigits(BigDecimal value) {
+        return value.precision() - value.scale();
+    }
+
+    private static boolean tooLong(String value, int length) {
+        return value != null && value.length() > length;
+    }
+
+    /**
+     * 解析日期时间
+     */
+    private static LocalDateTime parseDateTime(String dateTimeStr) {
+        try {
+            return LocalDateTime.parse(dateTimeStr, DateTimeFormatter.ISO_DATE_TIME);
+        } catch (Exception e) {
+            return LocalDateTime.now();
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.company.smartmix.erp;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Embeddable;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 原始数据在 {@link PayloadStore} 中的位置
+ */
+@Data
+@Embeddable
+@NoArgsConstructor
+@AllArgsConstructor
+public class PayloadRef {
+
+    /**
+     * 记录所在存储（{@link PayloadStore#STORE_ID}）；旧版本写入各节点本地文件的引用没有该值，已无法读取
+     */
+    @Column(length = 32)
+    private String payloadStore;
+
+    /**
+     * 记录ID（sync_payloads.id）
+     */
+    @Column
+    private Long payloadId;
+
+    /**
+     * 压缩后字节数
+     */
+    @Column
+    private Long payloadLength;
+
+    /**
+     * 原始数据字节数
+     */
+    @Column
+    private Long payloadSize;
+
+    /**
+     * 原始数据 SHA-256（十六进制）
+     */
+    @Column(length = 64)
+    private String payloadHash;
+}
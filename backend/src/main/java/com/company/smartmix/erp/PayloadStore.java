@@ -0,0 +1,393 @@
+package com.company.smartmix.erp;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * 同步原始数据存储（Deflate 压缩后分块存入数据库，所有节点共享）
+ *
+ * 每条记录 = sync_payloads 记录头（原始长度、压缩长度、分块数、SHA-256）+ 按顺序切分的 sync_payload_chunks。
+ * 写入时先边写边压缩到本地临时文件，提交时在一个事务内写入记录头和全部分块（有外层事务时加入外层事务），
+ * 因此任何节点都能按 {@link PayloadRef} 读取其他节点写入的记录，节点重启也不会丢失。
+ * 读取时逐块查询并流式解压，过期记录按保留天数定时删除。
+ */
+@Slf4j
+@Component
+public class PayloadStore {
+
+    /**
+     * 本存储写入的 {@link PayloadRef#getPayloadStore()}
+     */
+    public static final String STORE_ID = "db";
+
+    private static final String TEMP_PREFIX = "pending-";
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int PURGE_BATCH = 500;
+
+    private static final String INSERT_PAYLOAD = "INSERT INTO sync_payloads (payload_size, compressed_size, "
+            + "chunk_count, payload_hash, created_at, updated_at, version) VALUES (?, ?, ?, ?, ?, ?, 0)";
+    private static final String INSERT_CHUNK = "INSERT INTO sync_payload_chunks (payload_id, seq, data, "
+            + "created_at, updated_at, version) VALUES (?, ?, ?, ?, ?, 0)";
+    private static final String SELECT_PAYLOAD = "SELECT chunk_count, payload_hash FROM sync_payloads WHERE id = ?";
+    private static final String SELECT_CHUNK = "SELECT data FROM sync_payload_chunks WHERE payload_id = ? AND seq = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final Path tempDirectory;
+    private final int chunkBytes;
+    private final int retentionDays;
+    private final int compressionLevel;
+
+    public PayloadStore(JdbcTemplate jdbcTemplate, NamedParameterJdbcTemplate namedJdbcTemplate,
+            PlatformTransactionManager transactionManager,
+            @Value("${app.erp.payload-store.temp-dir:${java.io.tmpdir}/smartmix-payloads}") String tempDirectory,
+            @Value("${app.erp.payload-store.chunk-size-kb:1024}") int chunkSizeKb,
+            @Value("${app.erp.payload-store.retention-days:90}") int retentionDays,
+            @Value("${app.erp.payload-store.compression-level:6}") int compressionLevel) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedJdbcTemplate = namedJdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.tempDirectory = Paths.get(tempDirectory).toAbsolutePath();
+        this.chunkBytes = chunkSizeKb * 1024;
+        this.retentionDays = retentionDays;
+        this.compressionLevel = compressionLevel;
+    }
+
+    /**
+     * 清理上次进程中断时遗留的临时文件
+     */
+    @PostConstruct
+    public void init() throws IOException {
+        Files.createDirectories(tempDirectory);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(tempDirectory, TEMP_PREFIX + "*")) {
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+        }
+        log.info("同步原始数据存储: store={}, tempDir={}, chunk={}KB", STORE_ID, tempDirectory, chunkBytes / 1024);
+    }
+
+    /**
+     * 开始写入一条记录，写完后调用 {@link Writer#commit()}；未提交就关闭则丢弃
+     */
+    public Writer newWriter() throws IOException {
+        return new Writer();
+    }
+
+    /**
+     * 写入一条记录，body 写出的流不需要（也不能）关闭
+     */
+    public PayloadRef append(PayloadBody body) throws IOException {
+        try (Writer writer = newWriter()) {
+            body.writeTo(new FilterOutputStream(writer) {
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    out.write(b, off, len);
+                }
+
+                @Override
+                public void close() throws IOException {
+                    flush();
+                }
+            });
+            return writer.commit();
+        }
+    }
+
+    /**
+     * 读取记录（逐块查询 + 流式解压），调用方负责关闭。
+     * 记录头的哈希与引用不一致时拒绝读取，防止读到其他推送的数据
+     */
+    public InputStream open(PayloadRef ref) throws IOException {
+        if (ref == null || ref.getPayloadId() == null || !STORE_ID.equals(ref.getPayloadStore())) {
+            throw new PayloadExpiredException("原始数据不在共享存储中（旧版本节点本地文件）");
+        }
+        List<Map<String, Object>> rows = jdbcTemplate.queryForList(SELECT_PAYLOAD, ref.getPayloadId());
+        if (rows.isEmpty()) {
+            throw new PayloadExpiredException("原始数据已过期删除: id=" + ref.getPayloadId());
+        }
+        int chunkCount = ((Number) rows.get(0).get("chunk_count")).intValue();
+        if (!String.valueOf(rows.get(0).get("payload_hash")).equals(ref.getPayloadHash())) {
+            throw new IOException("原始数据记录与引用的哈希不一致: id=" + ref.getPayloadId());
+        }
+        return new InflaterInputStream(new ChunkInputStream(ref.getPayloadId(), chunkCount), new Inflater(),
+                BUFFER_SIZE) {
+            @Override
+            public void close() throws IOException {
+                super.close();
+                inf.end();
+            }
+        };
+    }
+
+    /**
+     * 解压并校验内容哈希，不保留内容
+     */
+    public boolean verify(PayloadRef ref) throws IOException {
+        MessageDigest digest = sha256();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long size = 0;
+        try (InputStream in = open(ref)) {
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, n);
+                size += n;
+            }
+        }
+        return size == ref.getPayloadSize() && HexFormat.of().formatHex(digest.digest()).equals(ref.getPayloadHash());
+    }
+
+    /**
+     * 删除超过保留天数的记录，每批在独立事务内删除分块和记录头
+     */
+    @Scheduled(cron = "${app.erp.payload-store.cleanup-cron:0 30 3 * * *}")
+    public void purgeExpired() {
+        Timestamp cutoff = Timestamp.valueOf(LocalDateTime.now().minusDays(retentionDays));
+        int deleted = 0;
+        try {
+            while (true) {
+                List<Long> ids = jdbcTemplate.queryForList(
+                        "SELECT id FROM sync_payloads WHERE created_at < ? ORDER BY id LIMIT " + PURGE_BATCH,
+                        Long.class, cutoff);
+                if (ids.isEmpty()) {
+                    break;
+                }
+                MapSqlParameterSource params = new MapSqlParameterSource("ids", ids);
+                transactionTemplate.executeWithoutResult(tx -> {
+                    namedJdbcTemplate.update("DELETE FROM sync_payload_chunks WHERE payload_id IN (:ids)", params);
+                    namedJdbcTemplate.update("DELETE FROM sync_payloads WHERE id IN (:ids)", params);
+                });
+                deleted += ids.size();
+            }
+        } catch (RuntimeException e) {
+            log.warn("清理过期同步原始数据失败", e);
+        }
+        if (deleted > 0) {
+            log.info("已删除过期同步原始数据: {} 条（保留 {} 天）", deleted, retentionDays);
+        }
+    }
+
+    /**
+     * 把已压缩的临时文件写入记录头和分块（加入外层事务，没有时新开事务）
+     */
+    private PayloadRef insertRecord(Path temp, long size, byte[] hash) throws IOException {
+        long length = Files.size(temp);
+        int chunkCount = (int) ((length + chunkBytes - 1) / chunkBytes);
+        String hex = HexFormat.of().formatHex(hash);
+        try {
+            Long id = transactionTemplate.execute(tx -> {
+                Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+                KeyHolder keyHolder = new GeneratedKeyHolder();
+                jdbcTemplate.update(connection -> {
+                    PreparedStatement ps = connection.prepareStatement(INSERT_PAYLOAD,
+                            Statement.RETURN_GENERATED_KEYS);
+                    ps.setLong(1, size);
+                    ps.setLong(2, length);
+                    ps.setInt(3, chunkCount);
+                    ps.setString(4, hex);
+                    ps.setTimestamp(5, now);
+                    ps.setTimestamp(6, now);
+                    return ps;
+                }, keyHolder);
+                long payloadId = keyHolder.getKey().longValue();
+
+                try (InputStream in = Files.newInputStream(temp)) {
+                    for (int seq = 0; seq < chunkCount; seq++) {
+                        byte[] data = in.readNBytes(chunkBytes);
+                        jdbcTemplate.update(INSERT_CHUNK, payloadId, seq, data, now, now);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return payloadId;
+            });
+            return new PayloadRef(STORE_ID, id, length, size, hex);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 记录内容写出回调
+     */
+    @FunctionalInterface
+    public interface PayloadBody {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    /**
+     * 记录已按保留策略删除，或不在本存储中
+     */
+    public static class PayloadExpiredException extends IOException {
+        public PayloadExpiredException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * 单条记录写入器：边写边压缩到临时文件并计算哈希，提交时整体写入数据库
+     */
+    public final class Writer extends OutputStream {
+        private final Path temp;
+        private final Deflater deflater;
+        private final DeflaterOutputStream out;
+        private final MessageDigest digest = sha256();
+        private long size;
+        private boolean done;
+
+        private Writer() throws IOException {
+            this.temp = Files.createTempFile(tempDirectory, TEMP_PREFIX, ".tmp");
+            this.deflater = new Deflater(compressionLevel);
+            this.out = new DeflaterOutputStream(Files.newOutputStream(temp), deflater, BUFFER_SIZE);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            digest.update(b, off, len);
+            out.write(b, off, len);
+            size += len;
+        }
+
+        /**
+         * 已写入内容的 SHA-256（不影响后续写入）
+         */
+        public String hash() {
+            try {
+                return HexFormat.of().formatHex(((MessageDigest) digest.clone()).digest());
+            } catch (CloneNotSupportedException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        /**
+         * 写入数据库并返回引用
+         */
+        public PayloadRef commit() throws IOException {
+            if (done) {
+                throw new IllegalStateException("记录已提交或已丢弃");
+            }
+            out.finish();
+            out.close();
+            try {
+                return insertRecord(temp, size, digest.digest());
+            } finally {
+                discard();
+            }
+        }
+
+        /**
+         * 未提交时丢弃临时文件
+         */
+        @Override
+        public void close() throws IOException {
+            if (!done) {
+                out.close();
+                discard();
+            }
+        }
+
+        private void discard() throws IOException {
+            done = true;
+            deflater.end();
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * 按序号逐块查询的压缩数据流，同一时刻只持有一个分块
+     */
+    private final class ChunkInputStream extends InputStream {
+        private final long payloadId;
+        private final int chunkCount;
+        private int next;
+        private byte[] chunk = new byte[0];
+        private int position;
+
+        ChunkInputStream(long payloadId, int chunkCount) {
+            this.payloadId = payloadId;
+            this.chunkCount = chunkCount;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return fill() ? chunk[position++] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!fill()) {
+                return -1;
+            }
+            int n = Math.min(len, chunk.length - position);
+            System.arraycopy(chunk, position, b, off, n);
+            position += n;
+            return n;
+        }
+
+        private boolean fill() throws IOException {
+            while (position == chunk.length) {
+                if (next == chunkCount) {
+                    return false;
+                }
+                List<byte[]> rows = jdbcTemplate.query(SELECT_CHUNK, (rs, rowNum) -> rs.getBytes(1), payloadId, next);
+                if (rows.isEmpty()) {
+                    throw new PayloadExpiredException("原始数据分块缺失: id=" + payloadId + ", seq=" + next);
+                }
+                chunk = rows.get(0);
+                position = 0;
+                next++;
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.company.smartmix.erp;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * ERP同步字段内容哈希（SHA-256）
+ *
+ * 各字段按顺序以“长度 + 内容”写入摘要，null 与空字符串可区分；数值去掉末尾的0，
+ * 使 10 与 10.00 得到相同的哈希。
+ */
+final class SyncHash {
+
+    private SyncHash() {
+    }
+
+    static String of(Object... fields) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        ByteBuffer length = ByteBuffer.allocate(4);
+        for (Object field : fields) {
+            byte[] bytes = field == null ? null : text(field).getBytes(StandardCharsets.UTF_8);
+            length.clear();
+            length.putInt(bytes == null ? -1 : bytes.length);
+            digest.update(length.array());
+            if (bytes != null) {
+                digest.update(bytes);
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static String text(Object field) {
+        if (field instanceof BigDecimal decimal) {
+            return decimal.signum() == 0 ? "0" : decimal.stripTrailingZeros().toPlainString();
+        }
+        return field.toString();
+    }
+}
@@ -31,11 +31,17 @@ public class SyncLog extends BaseEntity {
     private DataType dataType;
 
     /**
-     * 请求Payload（JSON）
+     * 请求Payload（JSON），仅历史数据使用；新数据保存在 PayloadStore，见 payloadRef
      */
     @Column(columnDefinition = "TEXT")
     private String payload;
 
+    /**
+     * 请求原始数据在 PayloadStore 中的位置和内容哈希
+     */
+    @Embedded
+    private PayloadRef payloadRef;
+
     /**
      * 同步状态（SUCCESS / FAILED）
      */
@@ -0,0 +1,56 @@
+package com.company.smartmix.erp;
+
+import com.company.smartmix.common.BaseEntity;
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+import java.time.LocalDateTime;
+
+/**
+ * 已归档的同步日志块
+ *
+ * 每行保存一段ID连续的同步日志（NDJSON，Deflate 压缩），由 {@link SyncLogArchiveService} 写入。
+ */
+@Data
+@EqualsAndHashCode(callSuper = true)
+@Entity
+@Table(name = "sync_log_archives", indexes = {
+        @Index(name = "idx_archive_log_range", columnList = "firstLogId,lastLogId")
+})
+public class SyncLogArchive extends BaseEntity {
+
+    /**
+     * 块内第一条/最后一条同步日志ID
+     */
+    @Column(nullable = false)
+    private Long firstLogId;
+
+    @Column(nullable = false)
+    private Long lastLogId;
+
+    /**
+     * 块内同步日志的创建时间范围
+     */
+    @Column(nullable = false)
+    private LocalDateTime firstCreatedAt;
+
+    @Column(nullable = false)
+    private LocalDateTime lastCreatedAt;
+
+    @Column(nullable = false)
+    private Integer rowCount;
+
+    /**
+     * 解压后字节数
+     */
+    @Column(nullable = false)
+    private Long rawSize;
+
+    /**
+     * 压缩后的 NDJSON，每行一条 {@link SyncLogArchiveService.ArchivedSyncLog}
+     */
+    @Lob
+    @Column(nullable = false, columnDefinition = "LONGBLOB")
+    private byte[] content;
+}
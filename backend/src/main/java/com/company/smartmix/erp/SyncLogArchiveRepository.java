@@ -0,0 +1,53 @@
+package com.company.smartmix.erp;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+/**
+ * 同步日志归档Repository
+ */
+@Repository
+public interface SyncLogArchiveRepository extends JpaRepository<SyncLogArchive, Long> {
+
+    /**
+     * 归档块列表（不加载压缩内容）
+     */
+    @Query(value = "SELECT a.id AS id, a.firstLogId AS firstLogId, a.lastLogId AS lastLogId, "
+            + "a.firstCreatedAt AS firstCreatedAt, a.lastCreatedAt AS lastCreatedAt, a.rowCount AS rowCount, "
+            + "a.rawSize AS rawSize, a.createdAt AS createdAt FROM SyncLogArchive a",
+            countQuery = "SELECT COUNT(a) FROM SyncLogArchive a")
+    Page<ArchiveSummary> findSummaries(Pageable pageable);
+
+    /**
+     * 包含指定同步日志的归档块
+     */
+    @Query("SELECT a.id AS id, a.firstLogId AS firstLogId, a.lastLogId AS lastLogId, "
+            + "a.firstCreatedAt AS firstCreatedAt, a.lastCreatedAt AS lastCreatedAt, a.rowCount AS rowCount, "
+            + "a.rawSize AS rawSize, a.createdAt AS createdAt FROM SyncLogArchive a "
+            + "WHERE a.firstLogId <= ?1 AND a.lastLogId >= ?1")
+    Optional<ArchiveSummary> findSummaryContaining(Long logId);
+
+    interface ArchiveSummary {
+        Long getId();
+
+        Long getFirstLogId();
+
+        Long getLastLogId();
+
+        LocalDateTime getFirstCreatedAt();
+
+        LocalDateTime getLastCreatedAt();
+
+        Integer getRowCount();
+
+        Long getRawSize();
+
+        LocalDateTime getCreatedAt();
+    }
+}
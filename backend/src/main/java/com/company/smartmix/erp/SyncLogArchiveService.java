@@ -0,0 +1,225 @@
+package com.company.smartmix.erp;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * 同步日志归档
+ *
+ * 按ID从小到大每次取 chunk-size 条早于保留期限的日志，压缩写入 sync_log_archives 一行，
+ * 再按主键删除这些日志；每块一个短事务，块间暂停 pause-ms，避免长时间锁住正在写入的日志表。
+ * 日志ID随时间递增，遇到第一条未过期的日志即停止，扫描范围只限于待归档的部分。
+ */
+@Slf4j
+@Service
+public class SyncLogArchiveService {
+
+    private final SyncLogRepository syncLogRepository;
+    private final SyncLogArchiveRepository archiveRepository;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    @Value("${app.erp.sync-log-archive.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.erp.sync-log-archive.retention-days:30}")
+    private int retentionDays;
+
+    @Value("${app.erp.sync-log-archive.chunk-size:1000}")
+    private int chunkSize;
+
+    @Value("${app.erp.sync-log-archive.pause-ms:100}")
+    private long pauseMillis;
+
+    @Value("${app.erp.sync-log-archive.compression-level:6}")
+    private int compressionLevel;
+
+    public SyncLogArchiveService(SyncLogRepository syncLogRepository, SyncLogArchiveRepository archiveRepository,
+            ObjectMapper objectMapper, PlatformTransactionManager transactionManager) {
+        this.syncLogRepository = syncLogRepository;
+        this.archiveRepository = archiveRepository;
+        this.objectMapper = objectMapper;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @Scheduled(cron = "${app.erp.sync-log-archive.cron:0 0 4 * * *}")
+    public void archiveExpired() {
+        if (enabled) {
+            archiveBefore(LocalDateTime.now().minusDays(retentionDays));
+        }
+    }
+
+    /**
+     * 归档 cutoff 之前创建的同步日志
+     */
+    public ArchiveRunDTO archiveBefore(LocalDateTime cutoff) {
+        ArchiveRunDTO run = new ArchiveRunDTO();
+        run.setCutoff(cutoff);
+        if (!running.compareAndSet(false, true)) {
+            run.setSkipped(true);
+            return run;
+        }
+        long start = System.currentTimeMillis();
+        try {
+            while (true) {
+                ChunkResult chunk = transactionTemplate.execute(tx -> archiveChunk(cutoff));
+                if (chunk == null || chunk.getArchived() == 0) {
+                    break;
+                }
+                run.setArchived(run.getArchived() + chunk.getArchived());
+                run.setChunks(run.getChunks() + 1);
+                run.setCompressedBytes(run.getCompressedBytes() + chunk.getCompressedBytes());
+                if (chunk.isReachedCutoff()) {
+                    break;
+                }
+                Thread.sleep(pauseMillis);
+            }
+        } catch (OptimisticLockingFailureException e) {
+            // 其他节点正在归档同一批日志，本轮结束
+            log.warn("同步日志归档冲突，已由其他节点处理: {}", e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            running.set(false);
+        }
+        run.setElapsedMillis(System.currentTimeMillis() - start);
+        if (run.getArchived() > 0) {
+            log.info("同步日志归档: archived={}, chunks={}, compressed={}B, cutoff={}, {}ms", run.getArchived(),
+                    run.getChunks(), run.getCompressedBytes(), cutoff, run.getElapsedMillis());
+        }
+        return run;
+    }
+
+    /**
+     * 归档一块：压缩写入归档表并删除原日志，删除条数不符时回滚
+     */
+    private ChunkResult archiveChunk(LocalDateTime cutoff) {
+        List<SyncLog> oldest = syncLogRepository.findOldest(PageRequest.of(0, chunkSize));
+        List<SyncLog> expired = new ArrayList<>(oldest.size());
+        for (SyncLog syncLog : oldest) {
+            if (!syncLog.getCreatedAt().isBefore(cutoff)) {
+                break;
+            }
+            expired.add(syncLog);
+        }
+        ChunkResult result = new ChunkResult();
+        result.setReachedCutoff(expired.size() < chunkSize);
+        if (expired.isEmpty()) {
+            return result;
+        }
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        long rawSize = 0;
+        Deflater deflater = new Deflater(compressionLevel);
+        try (DeflaterOutputStream out = new DeflaterOutputStream(buffer, deflater)) {
+            for (SyncLog syncLog : expired) {
+                byte[] line = objectMapper.writeValueAsBytes(toArchived(syncLog));
+                out.write(line);
+                out.write('\n');
+                rawSize += line.length + 1;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            deflater.end();
+        }
+
+        SyncLog first = expired.get(0);
+        SyncLog last = expired.get(expired.size() - 1);
+        SyncLogArchive archive = new SyncLogArchive();
+        archive.setFirstLogId(first.getId());
+        archive.setLastLogId(last.getId());
+        archive.setFirstCreatedAt(first.getCreatedAt());
+        archive.setLastCreatedAt(last.getCreatedAt());
+        archive.setRowCount(expired.size());
+        archive.setRawSize(rawSize);
+        archive.setContent(buffer.toByteArray());
+        archiveRepository.save(archive);
+
+        List<Long> ids = expired.stream().map(SyncLog::getId).toList();
+        int deleted = syncLogRepository.deleteByIdIn(ids);
+        if (deleted != ids.size()) {
+            throw new OptimisticLockingFailureException("同步日志已被删除: expected=" + ids.size() + ", deleted=" + deleted);
+        }
+        result.setArchived(deleted);
+        result.setCompressedBytes(archive.getContent().length);
+        return result;
+    }
+
+    /**
+     * 打开归档块，返回解压后的 NDJSON 流
+     */
+    public InputStream open(SyncLogArchive archive) {
+        return new InflaterInputStream(new ByteArrayInputStream(archive.getContent()));
+    }
+
+    private static ArchivedSyncLog toArchived(SyncLog syncLog) {
+        ArchivedSyncLog archived = new ArchivedSyncLog();
+        archived.setId(syncLog.getId());
+        archived.setDirection(syncLog.getDirection());
+        archived.setDataType(syncLog.getDataType());
+        archived.setStatus(syncLog.getStatus());
+        archived.setErrorMessage(syncLog.getErrorMessage());
+        archived.setSourceIp(syncLog.getSourceIp());
+        archived.setPayload(syncLog.getPayload());
+        archived.setPayloadRef(syncLog.getPayloadRef());
+        archived.setCreatedAt(syncLog.getCreatedAt());
+        archived.setCreatedBy(syncLog.getCreatedBy());
+        return archived;
+    }
+
+    // DTOs
+
+    @Data
+    public static class ArchivedSyncLog {
+        private Long id;
+        private SyncLog.SyncDirection direction;
+        private SyncLog.DataType dataType;
+        private SyncLog.SyncStatus status;
+        private String errorMessage;
+        private String sourceIp;
+        private String payload; // 历史数据的原始内容
+        private PayloadRef payloadRef; // 原始数据在 PayloadStore 中的位置（受其保留期限约束）
+        private LocalDateTime createdAt;
+        private String createdBy;
+    }
+
+    @Data
+    public static class ArchiveRunDTO {
+        private LocalDateTime cutoff;
+        private boolean skipped; // 已有归档在进行
+        private int archived;
+        private int chunks;
+        private long compressedBytes;
+        private long elapsedMillis;
+    }
+
+    @Data
+    private static class ChunkResult {
+        private int archived;
+        private long compressedBytes;
+        private boolean reachedCutoff;
+    }
+}
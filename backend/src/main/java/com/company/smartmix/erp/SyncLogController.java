@@ -0,0 +1,191 @@
+package com.company.smartmix.erp;
+
+import com.company.smartmix.common.ApiResponse;
+import com.company.smartmix.common.BusinessException;
+import com.company.smartmix.common.CursorPage;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * 同步日志控制器
+ */
+@Slf4j
+@Tag(name = "ERP集成", description = "ERP数据同步接口（由ERP主动推送）")
+@RestController
+@RequestMapping("/api/sync-logs")
+@RequiredArgsConstructor
+public class SyncLogController {
+
+    private static final String NDJSON = "application/x-ndjson";
+    private static final LocalDateTime MIN_TIME = LocalDateTime.of(1970, 1, 1, 0, 0);
+    private static final LocalDateTime MAX_TIME = LocalDateTime.of(9999, 12, 31, 23, 59, 59);
+    private static final int MAX_PAGE_SIZE = 500;
+
+    private final SyncLogRepository syncLogRepository;
+    private final SyncLogArchiveRepository archiveRepository;
+    private final SyncLogArchiveService archiveService;
+    private final PayloadStore payloadStore;
+
+    @Operation(summary = "查询同步日志", description = "按方向、数据类型和时间范围游标分页，按创建时间倒序；"
+            + "下一页传入上一页返回的 nextCursor")
+    @GetMapping
+    public ApiResponse<CursorPage<SyncLogDTO>> searchSyncLogs(
+            @RequestParam SyncLog.SyncDirection direction,
+            @RequestParam SyncLog.DataType dataType,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "50") int size) {
+        if (size < 1 || size > MAX_PAGE_SIZE) {
+            return ApiResponse.badRequest("size 须在 1 到 " + MAX_PAGE_SIZE + " 之间");
+        }
+
+        CursorPage.TimeIdCursor position = CursorPage.decodeTimeIdCursor(cursor, to != null ? to : MAX_TIME);
+
+        List<SyncLogDTO> rows = syncLogRepository.search(direction, dataType, from != null ? from : MIN_TIME,
+                position.getCreatedAt(), position.getId(), PageRequest.of(0, size + 1))
+                .stream().map(this::toDTO).toList();
+        return ApiResponse.success(CursorPage.of(rows, size,
+                row -> CursorPage.encodeCursor(row.getCreatedAt(), row.getId())));
+    }
+
+    @Operation(summary = "查询同步日志归档块")
+    @GetMapping("/archives")
+    public ApiResponse<Page<SyncLogArchiveRepository.ArchiveSummary>> getArchives(
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "20") int size) {
+        return ApiResponse.success(archiveRepository.findSummaries(
+                PageRequest.of(page, size, Sort.by("id").descending())));
+    }
+
+    @Operation(summary = "查询包含指定日志的归档块", description = "日志已从日志表归档时，据此下载所在归档块")
+    @GetMapping("/{id}/archive")
+    public ApiResponse<SyncLogArchiveRepository.ArchiveSummary> getArchiveOf(@PathVariable Long id) {
+        return ApiResponse.success(archiveRepository.findSummaryContaining(id)
+                .orElseThrow(() -> new BusinessException(404, "未找到包含该日志的归档")));
+    }
+
+    @Operation(summary = "下载同步日志归档块", description = "解压后以 NDJSON 返回，每行一条日志")
+    @GetMapping("/archives/{id}")
+    public ResponseEntity<StreamingResponseBody> downloadArchive(@PathVariable Long id) {
+        SyncLogArchive archive = archiveRepository.findById(id)
+                .orElseThrow(() -> new BusinessException(404, "归档不存在"));
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(NDJSON))
+                .contentLength(archive.getRawSize())
+                .body(out -> {
+                    try (InputStream in = archiveService.open(archive)) {
+                        in.transferTo(out);
+                    }
+                });
+    }
+
+    @Operation(summary = "立即归档同步日志", description = "归档早于指定天数的日志，默认使用配置的保留天数")
+    @PostMapping("/archives/run")
+    public ApiResponse<SyncLogArchiveService.ArchiveRunDTO> runArchive(
+            @RequestParam(defaultValue = "${app.erp.sync-log-archive.retention-days:30}") int olderThanDays) {
+        if (olderThanDays < 0) {
+            return ApiResponse.badRequest("olderThanDays 不能为负数");
+        }
+        SyncLogArchiveService.ArchiveRunDTO run = archiveService.archiveBefore(
+                LocalDateTime.now().minusDays(olderThanDays));
+        if (run.isSkipped()) {
+            return ApiResponse.error(409, "已有归档任务在进行");
+        }
+        return ApiResponse.success("归档完成", run);
+    }
+
+    @Operation(summary = "下载同步原始数据", description = "校验内容哈希后以流的方式返回，ETag 为内容 SHA-256")
+    @GetMapping("/{id}/payload")
+    public ResponseEntity<StreamingResponseBody> getPayload(@PathVariable Long id,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        SyncLog syncLog = syncLogRepository.findById(id)
+                .orElseThrow(() -> new BusinessException(404, "同步日志不存在"));
+
+        PayloadRef ref = syncLog.getPayloadRef();
+        if (ref == null || ref.getPayloadId() == null) {
+            // 历史数据仍在日志表中
+            if (syncLog.getPayload() == null) {
+                throw new BusinessException(404, "同步日志没有原始数据");
+            }
+            byte[] payload = syncLog.getPayload().getBytes(StandardCharsets.UTF_8);
+            return ResponseEntity.ok()
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .contentLength(payload.length)
+                    .body(out -> out.write(payload));
+        }
+
+        String etag = "\"" + ref.getPayloadHash() + "\"";
+        if (etag.equals(ifNoneMatch)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        }
+        try {
+            if (!payloadStore.verify(ref)) {
+                log.error("同步原始数据哈希校验失败: syncLog={}, payload={}", id, ref.getPayloadId());
+                throw new BusinessException(500, "原始数据校验失败");
+            }
+        } catch (PayloadStore.PayloadExpiredException e) {
+            throw new BusinessException(410, "原始数据已超过保留期限");
+        } catch (IOException e) {
+            throw new BusinessException(500, "读取原始数据失败: " + e.getMessage());
+        }
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .contentLength(ref.getPayloadSize())
+                .eTag(etag)
+                .body(out -> {
+                    try (InputStream in = payloadStore.open(ref)) {
+                        in.transferTo(out);
+                    }
+                });
+    }
+
+    private SyncLogDTO toDTO(SyncLogRepository.SyncLogSummary summary) {
+        SyncLogDTO dto = new SyncLogDTO();
+        dto.setId(summary.getId());
+        dto.setDirection(summary.getDirection());
+        dto.setDataType(summary.getDataType());
+        dto.setStatus(summary.getStatus());
+        dto.setErrorMessage(summary.getErrorMessage());
+        dto.setSourceIp(summary.getSourceIp());
+        dto.setPayloadSize(summary.getPayloadSize());
+        dto.setPayloadHash(summary.getPayloadHash());
+        dto.setCreatedAt(summary.getCreatedAt());
+        return dto;
+    }
+
+    // DTOs
+
+    @Data
+    public static class SyncLogDTO {
+        private Long id;
+        private SyncLog.SyncDirection direction;
+        private SyncLog.DataType dataType;
+        private SyncLog.SyncStatus status;
+        private String errorMessage;
+        private String sourceIp;
+        private Long payloadSize;
+        private String payloadHash;
+        private LocalDateTime createdAt;
+    }
+}
@@ -1,11 +1,60 @@
 package com.company.smartmix.erp;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
 /**
  * 同步日志Repository
  */
 @Repository
 public interface SyncLogRepository extends JpaRepository<SyncLog, Long> {
+
+    /**
+     * 按 (direction, dataType, createdAt) 游标分页，走 idx_direction_type_created 索引。
+     * 返回 (cursorCreatedAt, cursorId) 之前、from 之后的记录，按创建时间和ID倒序
+     */
+    @Query("SELECT s.id AS id, s.direction AS direction, s.dataType AS dataType, s.status AS status, "
+            + "s.errorMessage AS errorMessage, s.sourceIp AS sourceIp, s.payloadRef.payloadSize AS payloadSize, "
+            + "s.payloadRef.payloadHash AS payloadHash, s.createdAt AS createdAt FROM SyncLog s "
+            + "WHERE s.direction = ?1 AND s.dataType = ?2 AND s.createdAt >= ?3 AND s.createdAt <= ?4 "
+            + "AND (s.createdAt < ?4 OR s.id < ?5) ORDER BY s.createdAt DESC, s.id DESC")
+    List<SyncLogSummary> search(SyncLog.SyncDirection direction, SyncLog.DataType dataType, LocalDateTime from,
+            LocalDateTime cursorCreatedAt, Long cursorId, Pageable pageable);
+
+    /**
+     * ID最小的一批日志（归档按ID顺序进行）
+     */
+    @Query("SELECT s FROM SyncLog s ORDER BY s.id")
+    List<SyncLog> findOldest(Pageable pageable);
+
+    @Modifying
+    @Query("DELETE FROM SyncLog s WHERE s.id IN ?1")
+    int deleteByIdIn(Collection<Long> ids);
+
+    interface SyncLogSummary {
+        Long getId();
+
+        SyncLog.SyncDirection getDirection();
+
+        SyncLog.DataType getDataType();
+
+        SyncLog.SyncStatus getStatus();
+
+        String getErrorMessage();
+
+        String getSourceIp();
+
+        Long getPayloadSize();
+
+        String getPayloadHash();
+
+        LocalDateTime getCreatedAt();
+    }
 }
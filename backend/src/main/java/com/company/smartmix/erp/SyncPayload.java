@@ -0,0 +1,44 @@
+package com.company.smartmix.erp;
+
+import com.company.smartmix.common.BaseEntity;
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+/**
+ * 同步原始数据记录头
+ *
+ * 压缩后的内容按固定大小拆分保存在 {@link SyncPayloadChunk}，由 {@link PayloadStore} 读写。
+ */
+@Data
+@EqualsAndHashCode(callSuper = true)
+@Entity
+@Table(name = "sync_payloads", indexes = {
+        @Index(name = "idx_sync_payload_created", columnList = "createdAt")
+})
+public class SyncPayload extends BaseEntity {
+
+    /**
+     * 原始数据字节数
+     */
+    @Column(nullable = false)
+    private Long payloadSize;
+
+    /**
+     * 压缩后字节数
+     */
+    @Column(nullable = false)
+    private Long compressedSize;
+
+    /**
+     * 分块数
+     */
+    @Column(nullable = false)
+    private Integer chunkCount;
+
+    /**
+     * 原始数据 SHA-256（十六进制）
+     */
+    @Column(nullable = false, length = 64)
+    private String payloadHash;
+}
@@ -0,0 +1,31 @@
+package com.company.smartmix.erp;
+
+import com.company.smartmix.common.BaseEntity;
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+/**
+ * 同步原始数据分块（Deflate 压缩流按顺序切分）
+ */
+@Data
+@EqualsAndHashCode(callSuper = true)
+@Entity
+@Table(name = "sync_payload_chunks", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_sync_payload_chunk", columnNames = { "payloadId", "seq" })
+})
+public class SyncPayloadChunk extends BaseEntity {
+
+    @Column(nullable = false)
+    private Long payloadId;
+
+    /**
+     * 分块序号，从 0 开始
+     */
+    @Column(nullable = false)
+    private Integer seq;
+
+    @Lob
+    @Column(nullable = false, columnDefinition = "LONGBLOB")
+    private byte[] data;
+}
@@ -51,4 +51,10 @@ public class Material extends BaseEntity {
      */
     @Column(length = 50)
     private String sourceSystem = "SAP-MM";
+
+    /**
+     * ERP同步字段的内容哈希，重复推送内容未变化时跳过更新
+     */
+    @Column(length = 64)
+    private String syncHash;
 }
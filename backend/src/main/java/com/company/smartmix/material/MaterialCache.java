@@ -0,0 +1,224 @@
+package com.company.smartmix.material;
+
+import com.company.smartmix.common.BusinessException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 材料主数据缓存，按ID和（材料编码, 工厂）两种键索引
+ *
+ * 启动时全量加载，材料同步事务提交后按本批编码刷新（{@link MaterialChangedEvent}）。
+ * 未命中时回源数据库并补入缓存；其他节点同步的描述等字段变化由定时全量重载兜底。
+ * 材料不会被删除，ID与（编码, 工厂）的对应关系一经建立即不变，命中的ID可直接用于写入。
+ */
+@Slf4j
+@Service
+public class MaterialCache {
+
+    private static final int LOAD_PAGE_SIZE = 5000;
+    private static final int LOAD_CHUNK_SIZE = 500;
+
+    private final MaterialRepository materialRepository;
+    private final TransactionTemplate readOnlyTransaction;
+    private final Map<Long, MaterialRef> byId;
+    private final Map<String, MaterialRef> byKey;
+
+    @Value("${app.material.cache.enabled:true}")
+    private boolean enabled;
+
+    public MaterialCache(MaterialRepository materialRepository, PlatformTransactionManager transactionManager,
+            @Value("${app.material.cache.expected-size:50000}") int expectedSize) {
+        this.materialRepository = materialRepository;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.byId = new ConcurrentHashMap<>(expectedSize * 4 / 3 + 1);
+        this.byKey = new ConcurrentHashMap<>(expectedSize * 4 / 3 + 1);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void onApplicationReady() {
+        reload();
+    }
+
+    /**
+     * 定时全量重载，兜底其他节点同步的材料变化
+     */
+    @Scheduled(initialDelayString = "${app.material.cache.reload-interval-ms:3600000}",
+            fixedDelayString = "${app.material.cache.reload-interval-ms:3600000}")
+    public void scheduledReload() {
+        reload();
+    }
+
+    /**
+     * 材料同步事务提交后刷新本批材料
+     */
+    @TransactionalEventListener
+    public void onMaterialChanged(MaterialChangedEvent event) {
+        if (!enabled) {
+            return;
+        }
+        event.getCodesByPlant().forEach((plantCode, codes) -> {
+            List<String> all = new ArrayList<>(codes);
+            for (int from = 0; from < all.size(); from += LOAD_CHUNK_SIZE) {
+                List<String> chunk = all.subList(from, Math.min(from + LOAD_CHUNK_SIZE, all.size()));
+                readOnlyTransaction.executeWithoutResult(tx -> materialRepository
+                        .findByPlantCodeAndMaterialCodeIn(plantCode, chunk)
+                        .forEach(material -> put(MaterialRef.of(material))));
+            }
+        });
+    }
+
+    /**
+     * 从数据库全量加载，按ID分段读取
+     */
+    public synchronized void reload() {
+        if (!enabled) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        long lastId = 0;
+        int loaded = 0;
+        while (true) {
+            long after = lastId;
+            List<MaterialRef> page = readOnlyTransaction.execute(tx -> materialRepository
+                    .findByIdGreaterThanOrderById(after, PageRequest.of(0, LOAD_PAGE_SIZE))
+                    .stream().map(MaterialRef::of).toList());
+            if (page == null || page.isEmpty()) {
+                break;
+            }
+            page.forEach(this::put);
+            loaded += page.size();
+            lastId = page.get(page.size() - 1).getId();
+            if (page.size() < LOAD_PAGE_SIZE) {
+                break;
+            }
+        }
+        log.info("材料缓存已加载: materials={}, {}ms", loaded, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * 按ID读取材料，不存在时返回 null
+     */
+    public MaterialRef get(Long id) {
+        MaterialRef cached = byId.get(id);
+        if (cached != null) {
+            return cached;
+        }
+        return readOnlyTransaction.execute(tx -> materialRepository.findById(id)
+                .map(material -> putIfAbsent(MaterialRef.of(material)))
+                .orElse(null));
+    }
+
+    public MaterialRef getRequired(Long id) {
+        MaterialRef material = get(id);
+        if (material == null) {
+            throw new BusinessException("材料不存在: " + id);
+        }
+        return material;
+    }
+
+    /**
+     * 按（材料编码, 工厂）读取材料，不存在时返回 null
+     */
+    public MaterialRef get(String materialCode, String plantCode) {
+        MaterialRef cached = byKey.get(key(materialCode, plantCode));
+        if (cached != null) {
+            return cached;
+        }
+        return readOnlyTransaction.execute(tx -> materialRepository.findByMaterialCodeAndPlantCode(materialCode, plantCode)
+                .map(material -> putIfAbsent(MaterialRef.of(material)))
+                .orElse(null));
+    }
+
+    /**
+     * 批量按ID读取，未命中的一次查询补齐；不存在的ID不出现在结果中
+     */
+    public Map<Long, MaterialRef> getAll(Collection<Long> ids) {
+        Map<Long, MaterialRef> result = new HashMap<>(ids.size() * 2);
+        Set<Long> missing = new LinkedHashSet<>();
+        for (Long id : ids) {
+            MaterialRef cached = byId.get(id);
+            if (cached != null) {
+                result.put(id, cached);
+            } else {
+                missing.add(id);
+            }
+        }
+        if (!missing.isEmpty()) {
+            readOnlyTransaction.executeWithoutResult(tx -> materialRepository.findAllById(missing)
+                    .forEach(material -> result.put(material.getId(), putIfAbsent(MaterialRef.of(material)))));
+        }
+        return result;
+    }
+
+    /**
+     * 解析同一工厂下一批材料编码对应的ID，未命中的一次查询补齐；不存在的编码不出现在结果中
+     */
+    public Map<String, Long> resolveIds(String plantCode, Collection<String> materialCodes) {
+        Map<String, Long> result = new HashMap<>(materialCodes.size() * 2);
+        List<String> missing = new ArrayList<>();
+        for (String code : materialCodes) {
+            MaterialRef cached = byKey.get(key(code, plantCode));
+            if (cached != null) {
+                result.put(code, cached.getId());
+            } else {
+                missing.add(code);
+            }
+        }
+        for (int from = 0; from < missing.size(); from += LOAD_CHUNK_SIZE) {
+            List<String> chunk = missing.subList(from, Math.min(from + LOAD_CHUNK_SIZE, missing.size()));
+            materialRepository.findByPlantCodeAndMaterialCodeIn(plantCode, chunk)
+                    .forEach(material -> result.put(material.getMaterialCode(),
+                            putIfAbsent(MaterialRef.of(material)).getId()));
+        }
+        return result;
+    }
+
+    public int size() {
+        return byId.size();
+    }
+
+    private void put(MaterialRef material) {
+        byId.put(material.getId(), material);
+        byKey.put(key(material.getMaterialCode(), material.getPlantCode()), material);
+    }
+
+    /**
+     * 回源结果只在缓存中尚无该材料时写入，避免覆盖同步事件刷新的较新数据
+     */
+    private MaterialRef putIfAbsent(MaterialRef material) {
+        if (!enabled) {
+            return material;
+        }
+        MaterialRef existing = byId.putIfAbsent(material.getId(), material);
+        if (existing != null) {
+            return existing;
+        }
+        byKey.putIfAbsent(key(material.getMaterialCode(), material.getPlantCode()), material);
+        return material;
+    }
+
+    private static String key(String materialCode, String plantCode) {
+        return materialCode + '\u0000' + plantCode;
+    }
+}
@@ -0,0 +1,19 @@
+package com.company.smartmix.material;
+
+import lombok.Value;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 材料主数据变更事件
+ * 在材料同步事务内发布，事务提交后刷新材料缓存
+ */
+@Value
+public class MaterialChangedEvent {
+
+    /**
+     * 本批次新增或更新的材料编码，按工厂分组
+     */
+    Map<String, Set<String>> codesByPlant;
+}
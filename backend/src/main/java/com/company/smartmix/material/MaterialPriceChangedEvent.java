@@ -0,0 +1,18 @@
+package com.company.smartmix.material;
+
+import lombok.Value;
+
+import java.util.Set;
+
+/**
+ * 材料价格变更事件
+ * 在价格同步事务内发布，事务提交后触发价格快照重建
+ */
+@Value
+public class MaterialPriceChangedEvent {
+
+    /**
+     * 本批次涉及的材料ID
+     */
+    Set<Long> materialIds;
+}
@@ -0,0 +1,15 @@
+package com.company.smartmix.material;
+
+import java.math.BigDecimal;
+
+/**
+ * 材料单价查询（元/公斤）
+ */
+@FunctionalInterface
+public interface MaterialPriceLookup {
+
+    /**
+     * 获取材料单价，无价格时返回 null
+     */
+    BigDecimal getPricePerKg(Long materialId);
+}
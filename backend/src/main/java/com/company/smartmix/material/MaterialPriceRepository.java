@@ -5,6 +5,10 @@ import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 /**
@@ -18,4 +22,36 @@ public interface MaterialPriceRepository extends JpaRepository<MaterialPrice, Lo
     @Modifying
     @Query("UPDATE MaterialPrice mp SET mp.isCurrent = false WHERE mp.material = ?1 AND mp.isCurrent = true")
     void clearCurrentPrices(Material material);
+
+    /**
+     * 查询全部当前生效价格（按ID升序，重复的当前价格以最新记录为准）
+     */
+    @Query("SELECT mp.material.id AS materialId, mp.pricePerKg AS pricePerKg FROM MaterialPrice mp "
+            + "WHERE mp.isCurrent = true ORDER BY mp.id")
+    List<CurrentPrice> findAllCurrentPrices();
+
+    @Query("SELECT MAX(mp.id) FROM MaterialPrice mp")
+    Optional<Long> findMaxId();
+
+    @Query("SELECT mp.material.id AS materialId, mp.effectiveFrom AS effectiveFrom, mp.pricePerKg AS pricePerKg "
+            + "FROM MaterialPrice mp ORDER BY mp.material.id, mp.effectiveFrom, mp.id")
+    List<PricePoint> findAllHistory();
+
+    @Query("SELECT mp.material.id AS materialId, mp.effectiveFrom AS effectiveFrom, mp.pricePerKg AS pricePerKg "
+            + "FROM MaterialPrice mp WHERE mp.material.id IN ?1 ORDER BY mp.material.id, mp.effectiveFrom, mp.id")
+    List<PricePoint> findHistoryByMaterialIds(Collection<Long> materialIds);
+
+    interface PricePoint {
+        Long getMaterialId();
+
+        LocalDateTime getEffectiveFrom();
+
+        BigDecimal getPricePerKg();
+    }
+
+    interface CurrentPrice {
+        Long getMaterialId();
+
+        BigDecimal getPricePerKg();
+    }
 }
@@ -0,0 +1,55 @@
+package com.company.smartmix.material;
+
+import lombok.Getter;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 当前材料价格快照（不可变）
+ * 以材料ID为键保存当前生效的 pricePerKg，每次价格同步提交后整体替换
+ */
+@Getter
+public final class MaterialPriceSnapshot implements MaterialPriceLookup {
+
+    public static final MaterialPriceSnapshot EMPTY = new MaterialPriceSnapshot(0L, 0L, Collections.emptyMap());
+
+    /**
+     * 快照版本号（单调递增）
+     */
+    private final long version;
+
+    /**
+     * 价格纪元：构建时 material_prices 的最大ID，跨重启、跨节点单调
+     */
+    private final long priceEpoch;
+
+    /**
+     * 构建时间
+     */
+    private final LocalDateTime builtAt;
+
+    private final Map<Long, BigDecimal> pricePerKgByMaterialId;
+
+    public MaterialPriceSnapshot(long version, long priceEpoch, Map<Long, BigDecimal> pricePerKgByMaterialId) {
+        this.version = version;
+        this.priceEpoch = priceEpoch;
+        this.builtAt = LocalDateTime.now();
+        this.pricePerKgByMaterialId = Collections.unmodifiableMap(new HashMap<>(pricePerKgByMaterialId));
+    }
+
+    /**
+     * 获取材料当前单价（元/公斤），无价格时返回 null
+     */
+    @Override
+    public BigDecimal getPricePerKg(Long materialId) {
+        return pricePerKgByMaterialId.get(materialId);
+    }
+
+    public int size() {
+        return pricePerKgByMaterialId.size();
+    }
+}
@@ -0,0 +1,76 @@
+package com.company.smartmix.material;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 材料价格快照服务
+ * 成本计算只读取内存快照，不再逐条查询当前价格
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class MaterialPriceSnapshotService {
+
+    private final MaterialPriceRepository materialPriceRepository;
+
+    private volatile MaterialPriceSnapshot current = MaterialPriceSnapshot.EMPTY;
+
+    /**
+     * 获取当前快照（调用方应在一次计算内复用同一快照）
+     */
+    public MaterialPriceSnapshot current() {
+        return current;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    @Transactional(readOnly = true)
+    public void onApplicationReady() {
+        rebuild();
+    }
+
+    /**
+     * 价格同步事务提交后重建快照（先于其他依赖价格的监听器执行）
+     */
+    @TransactionalEventListener
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    @Transactional(propagation = Propagation.REQUIRES_NEW, readOnly = true)
+    public void onMaterialPriceChanged(MaterialPriceChangedEvent event) {
+        rebuild();
+    }
+
+    /**
+     * 从数据库加载全部当前价格并原子替换快照
+     */
+    public synchronized MaterialPriceSnapshot rebuild() {
+        long priceEpoch = materialPriceRepository.findMaxId().orElse(0L);
+        List<MaterialPriceRepository.CurrentPrice> prices = materialPriceRepository.findAllCurrentPrices();
+
+        Map<Long, BigDecimal> pricePerKg = new HashMap<>(prices.size() * 2);
+        for (MaterialPriceRepository.CurrentPrice price : prices) {
+            if (price.getPricePerKg() != null) {
+                pricePerKg.put(price.getMaterialId(), price.getPricePerKg());
+            }
+        }
+
+        MaterialPriceSnapshot snapshot = new MaterialPriceSnapshot(current.getVersion() + 1, priceEpoch, pricePerKg);
+        current = snapshot;
+        log.info("材料价格快照已重建: version={}, epoch={}, materials={}",
+                snapshot.getVersion(), snapshot.getPriceEpoch(), snapshot.size());
+        return snapshot;
+    }
+}
@@ -0,0 +1,89 @@
+package com.company.smartmix.material;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 材料价格时间线索引（不可变）
+ * 每种材料按 effectiveFrom 升序保存价格，二分查找 t 时刻生效的价格
+ */
+public final class MaterialPriceTimeline {
+
+    public static final MaterialPriceTimeline EMPTY = new MaterialPriceTimeline(Collections.emptyMap());
+
+    private final Map<Long, Series> seriesByMaterialId;
+
+    MaterialPriceTimeline(Map<Long, Series> seriesByMaterialId) {
+        this.seriesByMaterialId = seriesByMaterialId;
+    }
+
+    /**
+     * 获取材料在 time 时刻生效的单价（元/公斤），早于首个价格时返回 null
+     */
+    public BigDecimal priceAt(Long materialId, LocalDateTime time) {
+        Series series = seriesByMaterialId.get(materialId);
+        return series == null ? null : series.priceAt(toKey(time));
+    }
+
+    /**
+     * 获取材料的历史价格序列（按生效时间升序），无历史时返回空数组
+     */
+    public BigDecimal[] history(Long materialId) {
+        Series series = seriesByMaterialId.get(materialId);
+        return series == null ? new BigDecimal[0] : series.pricePerKg.clone();
+    }
+
+    /**
+     * 返回固定在 time 时刻的价格查询
+     */
+    public MaterialPriceLookup at(LocalDateTime time) {
+        long key = toKey(time);
+        return materialId -> {
+            Series series = seriesByMaterialId.get(materialId);
+            return series == null ? null : series.priceAt(key);
+        };
+    }
+
+    /**
+     * 返回替换了部分材料时间线后的新索引
+     */
+    MaterialPriceTimeline withSeries(Map<Long, Series> replacements) {
+        Map<Long, Series> merged = new HashMap<>(seriesByMaterialId);
+        merged.putAll(replacements);
+        return new MaterialPriceTimeline(merged);
+    }
+
+    public int materialCount() {
+        return seriesByMaterialId.size();
+    }
+
+    static long toKey(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC) * 1_000_000_000L + time.getNano();
+    }
+
+    /**
+     * 单种材料的价格序列
+     */
+    static final class Series {
+        private final long[] effectiveFrom;
+        private final BigDecimal[] pricePerKg;
+
+        Series(long[] effectiveFrom, BigDecimal[] pricePerKg, int size) {
+            this.effectiveFrom = Arrays.copyOf(effectiveFrom, size);
+            this.pricePerKg = Arrays.copyOf(pricePerKg, size);
+        }
+
+        BigDecimal priceAt(long key) {
+            int index = Arrays.binarySearch(effectiveFrom, key);
+            if (index < 0) {
+                index = -index - 2;
+            }
+            return index >= 0 ? pricePerKg[index] : null;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.company.smartmix.material;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 材料价格时间线服务
+ * 启动时全量加载价格历史，价格同步提交后只重建涉及材料的时间线
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class MaterialPriceTimelineService {
+
+    private static final int CHUNK_SIZE = 500;
+
+    private final MaterialPriceRepository materialPriceRepository;
+
+    private volatile MaterialPriceTimeline current = MaterialPriceTimeline.EMPTY;
+
+    public MaterialPriceTimeline current() {
+        return current;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional(readOnly = true)
+    public synchronized void onApplicationReady() {
+        current = MaterialPriceTimeline.EMPTY.withSeries(buildSeries(materialPriceRepository.findAllHistory()));
+        log.info("材料价格时间线已加载: materials={}", current.materialCount());
+    }
+
+    @TransactionalEventListener
+    @Transactional(propagation = Propagation.REQUIRES_NEW, readOnly = true)
+    public synchronized void onMaterialPriceChanged(MaterialPriceChangedEvent event) {
+        // 全量价格推送时材料ID可达数万个，分块查询，避免单条 IN 语句过长
+        List<Long> materialIds = new ArrayList<>(event.getMaterialIds());
+        Map<Long, MaterialPriceTimeline.Series> series = new HashMap<>();
+        for (int from = 0; from < materialIds.size(); from += CHUNK_SIZE) {
+            series.putAll(buildSeries(materialPriceRepository.findHistoryByMaterialIds(
+                    materialIds.subList(from, Math.min(from + CHUNK_SIZE, materialIds.size())))));
+        }
+        current = current.withSeries(series);
+    }
+
+    /**
+     * 由按 (材料, 生效时间, ID) 排序的价格历史构建时间线；同一生效时间以最新记录为准
+     */
+    private Map<Long, MaterialPriceTimeline.Series> buildSeries(List<MaterialPriceRepository.PricePoint> points) {
+        Map<Long, MaterialPriceTimeline.Series> result = new HashMap<>();
+        long[] times = new long[16];
+        BigDecimal[] prices = new BigDecimal[16];
+        int size = 0;
+        Long materialId = null;
+
+        for (MaterialPriceRepository.PricePoint point : points) {
+            if (point.getPricePerKg() == null) {
+                continue;
+            }
+            if (!point.getMaterialId().equals(materialId)) {
+                if (materialId != null) {
+                    result.put(materialId, new MaterialPriceTimeline.Series(times, prices, size));
+                }
+                materialId = point.getMaterialId();
+                size = 0;
+            }
+            long key = MaterialPriceTimeline.toKey(point.getEffectiveFrom());
+            if (size > 0 && times[size - 1] == key) {
+                prices[size - 1] = point.getPricePerKg();
+                continue;
+            }
+            if (size == times.length) {
+                times = Arrays.copyOf(times, size * 2);
+                prices = Arrays.copyOf(prices, size * 2);
+            }
+            times[size] = key;
+            prices[size] = point.getPricePerKg();
+            size++;
+        }
+        if (materialId != null) {
+            result.put(materialId, new MaterialPriceTimeline.Series(times, prices, size));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,22 @@
+package com.company.smartmix.material;
+
+import lombok.Value;
+
+/**
+ * 材料主数据只读副本，由 {@link MaterialCache} 缓存，可在线程间共享
+ */
+@Value
+public class MaterialRef {
+
+    Long id;
+    String materialCode;
+    String description;
+    String spec;
+    String baseUnit;
+    String plantCode;
+
+    public static MaterialRef of(Material material) {
+        return new MaterialRef(material.getId(), material.getMaterialCode(), material.getDescription(),
+                material.getSpec(), material.getBaseUnit(), material.getPlantCode());
+    }
+}
@@ -1,8 +1,11 @@
 package com.company.smartmix.material;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 /**
@@ -14,4 +17,11 @@ public interface MaterialRepository extends JpaRepository<Material, Long> {
     Optional<Material> findByMaterialCodeAndPlantCode(String materialCode, String plantCode);
 
     Optional<Material> findByMaterialCode(String materialCode);
+
+    List<Material> findByPlantCodeAndMaterialCodeIn(String plantCode, Collection<String> materialCodes);
+
+    /**
+     * 按ID顺序分段读取（材料缓存预热）
+     */
+    List<Material> findByIdGreaterThanOrderById(Long id, Pageable pageable);
 }
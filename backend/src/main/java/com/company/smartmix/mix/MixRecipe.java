@@ -16,6 +16,10 @@ import java.util.List;
 @Entity
 @Table(name = "mix_recipes", uniqueConstraints = {
         @UniqueConstraint(columnNames = "recipeCode")
+}, indexes = {
+        @Index(name = "idx_recipe_grade_status_created", columnList = "strengthGrade,status,createdAt"),
+        @Index(name = "idx_recipe_status_created", columnList = "status,createdAt"),
+        @Index(name = "idx_recipe_created", columnList = "createdAt")
 })
 public class MixRecipe extends BaseEntity {
 
@@ -50,6 +54,18 @@ public class MixRecipe extends BaseEntity {
     @Enumerated(EnumType.STRING)
     private RecipeStatus status = RecipeStatus.PENDING_APPROVAL;
 
+    /**
+     * 当前生效的审核版本ID（{@link MixRecipeVersion}），审核时更新
+     */
+    @Column
+    private Long currentVersionId;
+
+    /**
+     * 已分配的最大审核版本号，持有行锁时递增；早于该字段的配比为空，首次生成版本时按已有版本补齐
+     */
+    @Column
+    private Integer latestVersionNo;
+
     /**
      * 配比材料清单
      */
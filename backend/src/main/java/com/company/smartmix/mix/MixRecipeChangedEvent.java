@@ -0,0 +1,13 @@
+package com.company.smartmix.mix;
+
+import lombok.Value;
+
+/**
+ * 配比变更事件
+ * 配比创建、编辑、审核、停用、复制时在同一事务内发布
+ */
+@Value
+public class MixRecipeChangedEvent {
+
+    Long recipeId;
+}
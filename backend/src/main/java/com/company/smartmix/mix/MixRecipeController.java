@@ -2,7 +2,9 @@ package com.company.smartmix.mix;
 
 import com.company.smartmix.common.ApiResponse;
 import com.company.smartmix.common.BusinessException;
-import com.company.smartmix.material.Material;
+import com.company.smartmix.common.CursorPage;
+import com.company.smartmix.material.MaterialCache;
+import com.company.smartmix.material.MaterialRef;
 import com.company.smartmix.material.MaterialRepository;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
@@ -12,18 +14,24 @@ import jakarta.validation.constraints.NotEmpty;
 import jakarta.validation.constraints.NotNull;
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ResponseEntity;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import java.math.BigDecimal;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 /**
@@ -35,9 +43,20 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class MixRecipeController {
 
+    private static final LocalDateTime MAX_TIME = LocalDateTime.of(9999, 12, 31, 23, 59, 59);
+    private static final int MAX_PAGE_SIZE = 200;
+    private static final double MAX_SIMILARITY_PERCENT = 50;
+    private static final Duration VERSION_MAX_AGE = Duration.ofDays(365);
+
     private final MixRecipeRepository mixRecipeRepository;
     private final MixRecipeItemRepository mixRecipeItemRepository;
     private final MaterialRepository materialRepository;
+    private final MaterialCache materialCache;
+    private final ApplicationEventPublisher eventPublisher;
+    private final RecipeDetailCache recipeDetailCache;
+    private final RecipeSearchIndex recipeSearchIndex;
+    private final RecipeSimilarityIndex recipeSimilarityIndex;
+    private final RecipeVersionService recipeVersionService;
 
     @Operation(summary = "分页查询配比")
     @GetMapping
@@ -47,29 +66,107 @@ public class MixRecipeController {
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "10") int size) {
 
-        Pageable pageable = PageRequest.of(page, size, Sort.by("createdAt").descending());
-        Page<MixRecipe> recipes;
+        Pageable pageable = PageRequest.of(page, size, Sort.by(Sort.Order.desc("createdAt"), Sort.Order.desc("id")));
+        Page<MixRecipeRepository.RecipeSummary> recipes;
 
         if (strengthGrade != null && status != null) {
-            recipes = mixRecipeRepository.findByStrengthGradeAndStatus(strengthGrade, status, pageable);
+            recipes = mixRecipeRepository.findSummaryByStrengthGradeAndStatus(strengthGrade, status, pageable);
+        } else if (strengthGrade != null) {
+            recipes = mixRecipeRepository.findSummaryByStrengthGrade(strengthGrade, pageable);
         } else if (status != null) {
-            recipes = mixRecipeRepository.findByStatus(status, pageable);
+            recipes = mixRecipeRepository.findSummaryByStatus(status, pageable);
         } else {
-            recipes = mixRecipeRepository.findAll(pageable);
+            recipes = mixRecipeRepository.findSummaryBy(pageable);
         }
 
         Page<MixRecipeListDTO> result = recipes.map(this::toListDTO);
         return ApiResponse.success(result);
     }
 
+    @Operation(summary = "游标分页查询配比", description = "不统计总数，按创建时间倒序；下一页传入上一页返回的 nextCursor，"
+            + "翻到任意深度的代价与首页相同")
+    @GetMapping("/cursor")
+    public ApiResponse<CursorPage<MixRecipeListDTO>> getRecipesByCursor(
+            @RequestParam(required = false) String strengthGrade,
+            @RequestParam(required = false) MixRecipe.RecipeStatus status,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "10") int size) {
+        if (size < 1 || size > MAX_PAGE_SIZE) {
+            return ApiResponse.badRequest("size 须在 1 到 " + MAX_PAGE_SIZE + " 之间");
+        }
+
+        CursorPage.TimeIdCursor position = CursorPage.decodeTimeIdCursor(cursor, MAX_TIME);
+
+        List<MixRecipeListDTO> rows = mixRecipeRepository.findSummariesBefore(strengthGrade, status,
+                position.getCreatedAt(), position.getId(), PageRequest.of(0, size + 1))
+                .stream().map(this::toListDTO).toList();
+        return ApiResponse.success(CursorPage.of(rows, size,
+                row -> CursorPage.encodeCursor(row.getCreatedAt(), row.getId())));
+    }
+
+    @Operation(summary = "多条件检索配比", description = "按强度等级、状态、坍落度中值范围和材料组成检索，"
+            + "材料条件可限定单方用量或百分比（默认以配比总用量为基准，percentOf 指定基准材料）；在内存索引上执行，不访问数据库")
+    @PostMapping("/search")
+    public ApiResponse<RecipeSearchIndex.SearchResult> searchRecipes(
+            @RequestBody RecipeSearchIndex.SearchRequest request) {
+        if (request.getMaterials() != null
+                && request.getMaterials().stream().anyMatch(m -> m.getMaterialCode() == null || m.getMaterialCode().isBlank())) {
+            return ApiResponse.badRequest("材料条件须指定 materialCode");
+        }
+        return ApiResponse.success(recipeSearchIndex.search(request));
+    }
+
+    @Operation(summary = "查找相似配比", description = "返回与指定配比各材料用量差之和不超过其总用量 percent% 的配比，按差异升序")
+    @GetMapping("/{id}/similar")
+    public ApiResponse<RecipeSimilarityIndex.SimilarResult> getSimilarRecipes(
+            @PathVariable Long id,
+            @RequestParam(defaultValue = "5") double percent,
+            @RequestParam(defaultValue = "true") boolean sameGrade,
+            @RequestParam(defaultValue = "50") int limit) {
+        if (percent <= 0 || percent > MAX_SIMILARITY_PERCENT) {
+            return ApiResponse.badRequest("percent 须大于 0 且不超过 " + MAX_SIMILARITY_PERCENT);
+        }
+        return ApiResponse.success(recipeSimilarityIndex.findSimilar(id, percent, sameGrade, limit));
+    }
+
+    @Operation(summary = "近似重复配比报告", description = "按强度等级列出配比簇，簇内配比与簇代表的用量差异均在 percent% 以内")
+    @GetMapping("/duplicates")
+    public ApiResponse<RecipeSimilarityIndex.DuplicateReport> getDuplicateRecipes(
+            @RequestParam(defaultValue = "2") double percent,
+            @RequestParam(required = false) String strengthGrade,
+            @RequestParam(required = false) MixRecipe.RecipeStatus status) {
+        if (percent <= 0 || percent > MAX_SIMILARITY_PERCENT) {
+            return ApiResponse.badRequest("percent 须大于 0 且不超过 " + MAX_SIMILARITY_PERCENT);
+        }
+        return ApiResponse.success(recipeSimilarityIndex.findDuplicates(percent, strengthGrade, status));
+    }
+
     @Operation(summary = "查询配比详情")
     @GetMapping("/{id}")
-    @Transactional(readOnly = true)
     public ApiResponse<MixRecipeDetailDTO> getRecipeById(@PathVariable Long id) {
-        MixRecipe recipe = mixRecipeRepository.findByIdWithItems(id)
-                .orElseThrow(() -> new BusinessException("配比不存在"));
+        return ApiResponse.success(toDetailDTO(recipeDetailCache.getRequired(id)));
+    }
+
+    @Operation(summary = "配比审核版本列表", description = "按版本号倒序，不含快照内容")
+    @GetMapping("/{id}/versions")
+    public ApiResponse<List<MixRecipeVersionRepository.VersionSummary>> getRecipeVersions(@PathVariable Long id) {
+        return ApiResponse.success(recipeVersionService.listVersions(id));
+    }
 
-        return ApiResponse.success(toDetailDTO(recipe));
+    @Operation(summary = "查询配比审核版本", description = "版本内容不可变，返回强 ETag 并允许客户端长期缓存；"
+            + "请求带 If-None-Match 且未变化时返回 304")
+    @GetMapping("/versions/{versionId}")
+    public ResponseEntity<ApiResponse<RecipeVersion>> getRecipeVersion(@PathVariable Long versionId,
+            WebRequest webRequest) {
+        RecipeVersion version = recipeVersionService.getRequired(versionId);
+        if (webRequest.checkNotModified(version.etag())) {
+            return null;
+        }
+        // 不带时间戳，同一版本的响应体逐字节相同
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.maxAge(VERSION_MAX_AGE).cachePrivate().immutable())
+                .eTag(version.etag())
+                .body(new ApiResponse<>(200, "操作成功", version, null));
     }
 
     @Operation(summary = "创建配比")
@@ -89,23 +186,14 @@ public class MixRecipeController {
         recipe.setStatus(MixRecipe.RecipeStatus.PENDING_APPROVAL);
 
         // 添加材料清单
-        for (MixRecipeItemRequest itemReq : request.getItems()) {
-            Material material = materialRepository.findById(itemReq.getMaterialId())
-                    .orElseThrow(() -> new BusinessException("材料不存在: " + itemReq.getMaterialId()));
-
-            MixRecipeItem item = new MixRecipeItem();
-            item.setMaterial(material);
-            item.setDosagePerM3(itemReq.getDosagePerM3());
-            item.setRemarks(itemReq.getRemarks());
-
-            recipe.addItem(item);
-        }
+        addItems(recipe, request.getItems());
 
         MixRecipe saved = mixRecipeRepository.save(recipe);
-        return ApiResponse.success("配比创建成功", toDetailDTO(saved));
+        eventPublisher.publishEvent(new MixRecipeChangedEvent(saved.getId()));
+        return ApiResponse.success("配比创建成功", toDetailDTO(RecipeDetail.of(saved, materialCache)));
     }
 
-    @Operation(summary = "编辑配比")
+    @Operation(summary = "编辑配比", description = "已审核的配比编辑后回到待审核，已生成的审核版本及引用它的任务不受影响")
     @PutMapping("/{id}")
     @Transactional
     public ApiResponse<MixRecipeDetailDTO> updateRecipe(@PathVariable Long id,
@@ -113,45 +201,39 @@ public class MixRecipeController {
         MixRecipe recipe = mixRecipeRepository.findByIdWithItems(id)
                 .orElseThrow(() -> new BusinessException("配比不存在"));
 
-        if (recipe.getStatus() != MixRecipe.RecipeStatus.PENDING_APPROVAL) {
-            return ApiResponse.badRequest("只能编辑待审核状态的配比");
+        if (recipe.getStatus() == MixRecipe.RecipeStatus.DISABLED) {
+            return ApiResponse.badRequest("已停用的配比不能编辑");
         }
 
+        recipe.setStatus(MixRecipe.RecipeStatus.PENDING_APPROVAL);
         recipe.setSlump(request.getSlump());
         recipe.setTechnicalRequirements(request.getTechnicalRequirements());
         recipe.setRemarks(request.getRemarks());
 
         // 更新材料清单
         recipe.getItems().clear();
-        for (MixRecipeItemRequest itemReq : request.getItems()) {
-            Material material = materialRepository.findById(itemReq.getMaterialId())
-                    .orElseThrow(() -> new BusinessException("材料不存在: " + itemReq.getMaterialId()));
-
-            MixRecipeItem item = new MixRecipeItem();
-            item.setMaterial(material);
-            item.setDosagePerM3(itemReq.getDosagePerM3());
-            item.setRemarks(itemReq.getRemarks());
-
-            recipe.addItem(item);
-        }
+        addItems(recipe, request.getItems());
 
         MixRecipe saved = mixRecipeRepository.save(recipe);
-        return ApiResponse.success("配比更新成功", toDetailDTO(saved));
+        eventPublisher.publishEvent(new MixRecipeChangedEvent(saved.getId()));
+        return ApiResponse.success("配比更新成功", toDetailDTO(RecipeDetail.of(saved, materialCache)));
     }
 
-    @Operation(summary = "审核通过配比")
+    @Operation(summary = "审核通过配比", description = "审核时生成不可变的审核版本")
     @PostMapping("/{id}/approve")
     @Transactional
     public ApiResponse<String> approveRecipe(@PathVariable Long id) {
-        MixRecipe recipe = mixRecipeRepository.findById(id)
+        // 先锁定配比行再读取状态，明细在锁内延迟加载；并发审核同一配比时后到者看到前者提交后的状态
+        MixRecipe recipe = mixRecipeRepository.findForUpdateById(id)
                 .orElseThrow(() -> new BusinessException("配比不存在"));
-
         if (recipe.getStatus() != MixRecipe.RecipeStatus.PENDING_APPROVAL) {
             return ApiResponse.badRequest("只能审核待审核状态的配比");
         }
 
         recipe.setStatus(MixRecipe.RecipeStatus.APPROVED);
+        recipeVersionService.snapshot(recipe);
         mixRecipeRepository.save(recipe);
+        eventPublisher.publishEvent(new MixRecipeChangedEvent(recipe.getId()));
 
         return ApiResponse.success("配比审核成功");
     }
@@ -165,6 +247,7 @@ public class MixRecipeController {
 
         recipe.setStatus(MixRecipe.RecipeStatus.DISABLED);
         mixRecipeRepository.save(recipe);
+        eventPublisher.publishEvent(new MixRecipeChangedEvent(recipe.getId()));
 
         return ApiResponse.success("配比已停用");
     }
@@ -206,12 +289,33 @@ public class MixRecipeController {
         }
 
         MixRecipe saved = mixRecipeRepository.save(newRecipe);
-        return ApiResponse.success("配比复制成功", toDetailDTO(saved));
+        eventPublisher.publishEvent(new MixRecipeChangedEvent(saved.getId()));
+        return ApiResponse.success("配比复制成功", toDetailDTO(RecipeDetail.of(saved, materialCache)));
     }
 
     // DTO 转换方法
 
-    private MixRecipeListDTO toListDTO(MixRecipe recipe) {
+    /**
+     * 按请求添加材料明细：材料一次从材料缓存校验，关联只设置引用，不逐条查询
+     */
+    private void addItems(MixRecipe recipe, List<MixRecipeItemRequest> itemRequests) {
+        Map<Long, MaterialRef> materials = materialCache.getAll(
+                itemRequests.stream().map(MixRecipeItemRequest::getMaterialId).toList());
+        for (MixRecipeItemRequest itemReq : itemRequests) {
+            if (!materials.containsKey(itemReq.getMaterialId())) {
+                throw new BusinessException("材料不存在: " + itemReq.getMaterialId());
+            }
+
+            MixRecipeItem item = new MixRecipeItem();
+            item.setMaterial(materialRepository.getReferenceById(itemReq.getMaterialId()));
+            item.setDosagePerM3(itemReq.getDosagePerM3());
+            item.setRemarks(itemReq.getRemarks());
+
+            recipe.addItem(item);
+        }
+    }
+
+    private MixRecipeListDTO toListDTO(MixRecipeRepository.RecipeSummary recipe) {
         MixRecipeListDTO dto = new MixRecipeListDTO();
         dto.setId(recipe.getId());
         dto.setRecipeCode(recipe.getRecipeCode());
@@ -223,7 +327,7 @@ public class MixRecipeController {
         return dto;
     }
 
-    private MixRecipeDetailDTO toDetailDTO(MixRecipe recipe) {
+    private MixRecipeDetailDTO toDetailDTO(RecipeDetail recipe) {
         MixRecipeDetailDTO dto = new MixRecipeDetailDTO();
         dto.setId(recipe.getId());
         dto.setRecipeCode(recipe.getRecipeCode());
@@ -232,6 +336,7 @@ public class MixRecipeController {
         dto.setTechnicalRequirements(recipe.getTechnicalRequirements());
         dto.setRemarks(recipe.getRemarks());
         dto.setStatus(recipe.getStatus());
+        dto.setCurrentVersionId(recipe.getCurrentVersionId());
         dto.setCreatedAt(recipe.getCreatedAt());
         dto.setCreatedBy(recipe.getCreatedBy());
 
@@ -243,13 +348,13 @@ public class MixRecipeController {
         return dto;
     }
 
-    private MixRecipeItemDTO toItemDTO(MixRecipeItem item) {
+    private MixRecipeItemDTO toItemDTO(RecipeDetail.Item item) {
         MixRecipeItemDTO dto = new MixRecipeItemDTO();
         dto.setId(item.getId());
-        dto.setMaterialId(item.getMaterial().getId());
-        dto.setMaterialCode(item.getMaterial().getMaterialCode());
-        dto.setMaterialName(item.getMaterial().getDescription());
-        dto.setMaterialUnit(item.getMaterial().getBaseUnit());
+        dto.setMaterialId(item.getMaterialId());
+        dto.setMaterialCode(item.getMaterialCode());
+        dto.setMaterialName(item.getMaterialName());
+        dto.setMaterialUnit(item.getMaterialUnit());
         dto.setDosagePerM3(item.getDosagePerM3());
         dto.setRemarks(item.getRemarks());
         return dto;
@@ -277,6 +382,7 @@ public class MixRecipeController {
         private String technicalRequirements;
         private String remarks;
         private MixRecipe.RecipeStatus status;
+        private Long currentVersionId;
         private LocalDateTime createdAt;
         private String createdBy;
         private List<MixRecipeItemDTO> items;
@@ -13,7 +13,7 @@ import java.math.BigDecimal;
  * 配比明细实体
  */
 @Data
-@EqualsAndHashCode(callSuper = true, exclude = "mixRecipe")
+@EqualsAndHashCode(callSuper = true, exclude = { "mixRecipe", "material" })
 @Entity
 @Table(name = "mix_recipe_items")
 public class MixRecipeItem extends BaseEntity {
@@ -27,9 +27,9 @@ public class MixRecipeItem extends BaseEntity {
     private MixRecipe mixRecipe;
 
     /**
-     * 材料
+     * 材料（编码、名称等通过 MaterialCache 按ID读取）
      */
-    @ManyToOne(fetch = FetchType.EAGER)
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "material_id", nullable = false)
     private Material material;
 
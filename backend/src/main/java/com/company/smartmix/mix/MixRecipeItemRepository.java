@@ -1,11 +1,21 @@
 package com.company.smartmix.mix;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
+
 /**
  * 配比明细Repository
  */
 @Repository
 public interface MixRecipeItemRepository extends JpaRepository<MixRecipeItem, Long> {
+
+    /**
+     * 查询使用了指定材料的配比ID
+     */
+    @Query("SELECT DISTINCT i.mixRecipe.id FROM MixRecipeItem i WHERE i.material.id IN ?1")
+    List<Long> findRecipeIdsByMaterialIds(Collection<Long> materialIds);
 }
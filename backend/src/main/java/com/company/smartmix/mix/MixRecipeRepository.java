@@ -2,10 +2,14 @@ package com.company.smartmix.mix;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -19,13 +23,86 @@ public interface MixRecipeRepository extends JpaRepository<MixRecipe, Long> {
 
     boolean existsByRecipeCode(String recipeCode);
 
-    Page<MixRecipe> findByStrengthGradeAndStatus(String strengthGrade, MixRecipe.RecipeStatus status,
+    /**
+     * 列表分页（只查询列表字段，不加载 TEXT 列）
+     */
+    Page<RecipeSummary> findSummaryBy(Pageable pageable);
+
+    Page<RecipeSummary> findSummaryByStrengthGrade(String strengthGrade, Pageable pageable);
+
+    Page<RecipeSummary> findSummaryByStatus(MixRecipe.RecipeStatus status, Pageable pageable);
+
+    Page<RecipeSummary> findSummaryByStrengthGradeAndStatus(String strengthGrade, MixRecipe.RecipeStatus status,
             Pageable pageable);
 
-    Page<MixRecipe> findByStatus(MixRecipe.RecipeStatus status, Pageable pageable);
+    /**
+     * 列表游标分页：(cursorCreatedAt, cursorId) 之前的配比，按创建时间和ID倒序，不统计总数。
+     * 条件为空时不过滤该字段
+     */
+    @Query("SELECT r.id AS id, r.recipeCode AS recipeCode, r.strengthGrade AS strengthGrade, r.slump AS slump, "
+            + "r.status AS status, r.createdAt AS createdAt, r.createdBy AS createdBy FROM MixRecipe r "
+            + "WHERE (?1 IS NULL OR r.strengthGrade = ?1) AND (?2 IS NULL OR r.status = ?2) "
+            + "AND r.createdAt <= ?3 AND (r.createdAt < ?3 OR r.id < ?4) ORDER BY r.createdAt DESC, r.id DESC")
+    List<RecipeSummary> findSummariesBefore(String strengthGrade, MixRecipe.RecipeStatus status,
+            LocalDateTime cursorCreatedAt, Long cursorId, Pageable pageable);
 
     @Query("SELECT r FROM MixRecipe r LEFT JOIN FETCH r.items WHERE r.id = ?1")
     Optional<MixRecipe> findByIdWithItems(Long id);
 
     List<MixRecipe> findByStrengthGradeAndStatus(String strengthGrade, MixRecipe.RecipeStatus status);
+
+    @Query("SELECT DISTINCT r FROM MixRecipe r LEFT JOIN FETCH r.items "
+            + "WHERE r.strengthGrade = ?1 AND r.status = ?2")
+    List<MixRecipe> findByStrengthGradeAndStatusWithItems(String strengthGrade, MixRecipe.RecipeStatus status);
+
+    @Query("SELECT DISTINCT r FROM MixRecipe r LEFT JOIN FETCH r.items "
+            + "WHERE r.strengthGrade IN ?1 AND r.status = ?2")
+    List<MixRecipe> findByStrengthGradeInAndStatusWithItems(Collection<String> strengthGrades,
+            MixRecipe.RecipeStatus status);
+
+    @Query("SELECT DISTINCT r FROM MixRecipe r LEFT JOIN FETCH r.items "
+            + "WHERE r.id IN ?1")
+    List<MixRecipe> findAllWithItemsByIdIn(Collection<Long> ids);
+
+    @Query("SELECT r.id FROM MixRecipe r ORDER BY r.id")
+    List<Long> findAllIds();
+
+    /**
+     * 锁定配比行（SELECT ... FOR UPDATE），生成版本时串行化同一配比的版本号分配。
+     * 须作为事务内对该配比的第一次读取：实体已在持久化上下文中时不会用加锁读到的最新数据刷新
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT r FROM MixRecipe r WHERE r.id = ?1")
+    Optional<MixRecipe> findForUpdateById(Long id);
+
+    @Query("SELECT r.id AS id, r.status AS status, r.currentVersionId AS currentVersionId "
+            + "FROM MixRecipe r WHERE r.id = ?1")
+    Optional<VersionState> findVersionStateById(Long id);
+
+    interface RecipeSummary {
+        Long getId();
+
+        String getRecipeCode();
+
+        String getStrengthGrade();
+
+        String getSlump();
+
+        MixRecipe.RecipeStatus getStatus();
+
+        LocalDateTime getCreatedAt();
+
+        String getCreatedBy();
+    }
+
+    /**
+     * 审核状态和当前版本（选择配比时从数据库读取，不依赖配比缓存）
+     */
+    interface VersionState {
+        Long getId();
+
+        MixRecipe.RecipeStatus getStatus();
+
+        Long getCurrentVersionId();
+    }
 }
@@ -0,0 +1,57 @@
+package com.company.smartmix.mix;
+
+import com.company.smartmix.common.BaseEntity;
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+/**
+ * 配比审核版本实体
+ *
+ * 配比每次审核通过时保存一份完整快照（含材料明细），写入后不再修改；
+ * 生产任务引用版本ID，配比此后再编辑、重新审核都不影响已引用的版本。
+ */
+@Data
+@EqualsAndHashCode(callSuper = true)
+@Entity
+@Table(name = "mix_recipe_versions", uniqueConstraints = {
+        @UniqueConstraint(columnNames = { "mixRecipeId", "versionNo" })
+})
+public class MixRecipeVersion extends BaseEntity {
+
+    /**
+     * 所属配比ID
+     */
+    @Column(nullable = false)
+    private Long mixRecipeId;
+
+    /**
+     * 版本号，同一配比从1递增
+     */
+    @Column(nullable = false)
+    private Integer versionNo;
+
+    /**
+     * 配比编号
+     */
+    @Column(nullable = false, length = 50)
+    private String recipeCode;
+
+    /**
+     * 强度等级
+     */
+    @Column(nullable = false, length = 20)
+    private String strengthGrade;
+
+    /**
+     * 快照内容的 SHA-256，用作 ETag
+     */
+    @Column(nullable = false, length = 64)
+    private String contentHash;
+
+    /**
+     * 配比详情快照（{@link RecipeDetail} JSON）
+     */
+    @Column(nullable = false, columnDefinition = "TEXT")
+    private String detail;
+}
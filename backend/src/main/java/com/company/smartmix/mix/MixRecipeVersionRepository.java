@@ -0,0 +1,35 @@
+package com.company.smartmix.mix;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * 配比审核版本Repository
+ */
+@Repository
+public interface MixRecipeVersionRepository extends JpaRepository<MixRecipeVersion, Long> {
+
+    @Query("SELECT MAX(v.versionNo) FROM MixRecipeVersion v WHERE v.mixRecipeId = ?1")
+    Integer findMaxVersionNo(Long mixRecipeId);
+
+    /**
+     * 版本列表（不加载快照内容）
+     */
+    List<VersionSummary> findSummaryByMixRecipeIdOrderByVersionNoDesc(Long mixRecipeId);
+
+    interface VersionSummary {
+        Long getId();
+
+        Integer getVersionNo();
+
+        String getContentHash();
+
+        LocalDateTime getCreatedAt();
+
+        String getCreatedBy();
+    }
+}
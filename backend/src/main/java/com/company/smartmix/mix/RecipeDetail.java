@@ -0,0 +1,89 @@
+package com.company.smartmix.mix;
+
+import com.company.smartmix.material.MaterialCache;
+import com.company.smartmix.material.MaterialRef;
+import lombok.Builder;
+import lombok.Value;
+import lombok.extern.jackson.Jacksonized;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * 配比详情快照（含材料明细），不可变
+ *
+ * 由 {@link RecipeDetailCache} 缓存在本地和 Redis 中，供详情查询、选择配比、打印任务单等只读场景使用；
+ * 需要修改配比时仍应加载 {@link MixRecipe} 实体。审核时的快照见 {@link RecipeVersion}。
+ */
+@Value
+@Builder
+@Jacksonized
+public class RecipeDetail {
+
+    Long id;
+    String recipeCode;
+    String strengthGrade;
+    String slump;
+    String technicalRequirements;
+    String remarks;
+    MixRecipe.RecipeStatus status;
+    Long currentVersionId; // 版本快照内为空
+    LocalDateTime createdAt;
+    String createdBy;
+    Long version;
+    List<Item> items;
+
+    /**
+     * 由配比实体构建，材料信息从材料缓存读取
+     */
+    public static RecipeDetail of(MixRecipe recipe, MaterialCache materialCache) {
+        return RecipeDetail.builder()
+                .id(recipe.getId())
+                .recipeCode(recipe.getRecipeCode())
+                .strengthGrade(recipe.getStrengthGrade())
+                .slump(recipe.getSlump())
+                .technicalRequirements(recipe.getTechnicalRequirements())
+                .remarks(recipe.getRemarks())
+                .status(recipe.getStatus())
+                .currentVersionId(recipe.getCurrentVersionId())
+                .createdAt(recipe.getCreatedAt())
+                .createdBy(recipe.getCreatedBy())
+                .version(recipe.getVersion())
+                .items(recipe.getItems().stream()
+                        .map(item -> Item.of(item, materialCache.getRequired(item.getMaterial().getId())))
+                        .toList())
+                .build();
+    }
+
+    public boolean isApproved() {
+        return status == MixRecipe.RecipeStatus.APPROVED;
+    }
+
+    @Value
+    @Builder
+    @Jacksonized
+    public static class Item {
+        Long id;
+        Long materialId;
+        String materialCode;
+        String materialName;
+        String materialUnit;
+        String plantCode;
+        BigDecimal dosagePerM3;
+        String remarks;
+
+        static Item of(MixRecipeItem item, MaterialRef material) {
+            return Item.builder()
+                    .id(item.getId())
+                    .materialId(material.getId())
+                    .materialCode(material.getMaterialCode())
+                    .materialName(material.getDescription())
+                    .materialUnit(material.getBaseUnit())
+                    .plantCode(material.getPlantCode())
+                    .dosagePerM3(item.getDosagePerM3())
+                    .remarks(item.getRemarks())
+                    .build();
+        }
+    }
+}
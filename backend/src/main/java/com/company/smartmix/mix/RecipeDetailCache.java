@@ -0,0 +1,170 @@
+package com.company.smartmix.mix;
+
+import com.company.smartmix.common.BusinessException;
+import com.company.smartmix.common.ResilientRedis;
+import com.company.smartmix.material.MaterialCache;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 配比详情两级缓存：本地（Caffeine）+ Redis
+ *
+ * 读取顺序为本地、Redis、数据库，同一配比在本节点并发未命中时只查询一次数据库。
+ * 配比变更（{@link MixRecipeChangedEvent}）提交后清除本地和 Redis 中的副本，并通过 Redis 发布/订阅通知其他节点；
+ * 为覆盖“提交前读到旧数据、提交后写回缓存”的并发窗口，延迟 double-delete-delay-ms 后再清除一次。
+ * Redis 不可用时各节点只依赖本地缓存，较短的本地过期时间限定了收不到通知时的陈旧时长。
+ */
+@Slf4j
+@Component
+public class RecipeDetailCache {
+
+    static final String CHANNEL = "smartmix:recipe:invalidate";
+    private static final String KEY_PREFIX = "smartmix:recipe:detail:";
+
+    private final MixRecipeRepository mixRecipeRepository;
+    private final MaterialCache materialCache;
+    private final ResilientRedis redis;
+    private final ObjectMapper objectMapper;
+    private final ObjectProvider<RedisMessageListenerContainer> listenerContainerProvider;
+    private final TransactionTemplate readOnlyTransaction;
+    private final Cache<Long, RecipeDetail> local;
+    private final ScheduledExecutorService scheduler;
+    private final String nodeId = UUID.randomUUID().toString().substring(0, 8);
+
+    private final boolean enabled;
+    private final Duration redisTtl;
+    private final long doubleDeleteDelayMillis;
+
+    public RecipeDetailCache(MixRecipeRepository mixRecipeRepository, MaterialCache materialCache, ResilientRedis redis,
+            ObjectMapper objectMapper, ObjectProvider<RedisMessageListenerContainer> listenerContainerProvider,
+            PlatformTransactionManager transactionManager,
+            @Value("${app.mix.recipe-cache.enabled:true}") boolean enabled,
+            @Value("${app.mix.recipe-cache.local-max-entries:1000}") long localMaxEntries,
+            @Value("${app.mix.recipe-cache.local-ttl-seconds:60}") long localTtlSeconds,
+            @Value("${app.mix.recipe-cache.redis-ttl-seconds:600}") long redisTtlSeconds,
+            @Value("${app.mix.recipe-cache.double-delete-delay-ms:500}") long doubleDeleteDelayMillis) {
+        this.mixRecipeRepository = mixRecipeRepository;
+        this.materialCache = materialCache;
+        this.redis = redis;
+        this.objectMapper = objectMapper;
+        this.listenerContainerProvider = listenerContainerProvider;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.enabled = enabled;
+        this.redisTtl = Duration.ofSeconds(redisTtlSeconds);
+        this.doubleDeleteDelayMillis = doubleDeleteDelayMillis;
+        this.local = Caffeine.newBuilder()
+                .maximumSize(localMaxEntries)
+                .expireAfterWrite(Duration.ofSeconds(localTtlSeconds))
+                .build();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "recipe-cache-evict");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PostConstruct
+    public void subscribe() {
+        listenerContainerProvider.ifAvailable(container -> container.addMessageListener(
+                (message, pattern) -> onRemoteInvalidation(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(CHANNEL)));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * 读取配比详情，不存在时返回空
+     */
+    public Optional<RecipeDetail> get(Long id) {
+        if (!enabled) {
+            return Optional.ofNullable(loadFromDatabase(id));
+        }
+        return Optional.ofNullable(local.get(id, this::loadThroughRedis));
+    }
+
+    public RecipeDetail getRequired(Long id) {
+        return get(id).orElseThrow(() -> new BusinessException("配比不存在"));
+    }
+
+    /**
+     * 配比变更提交后失效缓存
+     */
+    @TransactionalEventListener
+    public void onMixRecipeChanged(MixRecipeChangedEvent event) {
+        evict(event.getRecipeId());
+        scheduler.schedule(() -> evict(event.getRecipeId()), doubleDeleteDelayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 清除本地和 Redis 中的副本并通知其他节点
+     */
+    public void evict(Long id) {
+        local.invalidate(id);
+        redis.delete(KEY_PREFIX + id);
+        redis.execute(template -> template.convertAndSend(CHANNEL, nodeId + ":" + id), null);
+    }
+
+    private void onRemoteInvalidation(String message) {
+        int separator = message.indexOf(':');
+        if (separator < 0 || message.substring(0, separator).equals(nodeId)) {
+            return;
+        }
+        try {
+            local.invalidate(Long.parseLong(message.substring(separator + 1)));
+        } catch (NumberFormatException e) {
+            log.warn("无法解析配比缓存失效消息: {}", message);
+        }
+    }
+
+    private RecipeDetail loadThroughRedis(Long id) {
+        String key = KEY_PREFIX + id;
+        Optional<String> cached = redis.get(key);
+        if (cached.isPresent()) {
+            try {
+                return objectMapper.readValue(cached.get(), RecipeDetail.class);
+            } catch (Exception e) {
+                log.warn("配比缓存内容无法解析，重新加载: id={}", id, e);
+            }
+        }
+
+        RecipeDetail detail = loadFromDatabase(id);
+        if (detail != null) {
+            try {
+                redis.set(key, objectMapper.writeValueAsString(detail), redisTtl);
+            } catch (Exception e) {
+                log.warn("写入配比缓存失败: id={}", id, e);
+            }
+        }
+        return detail;
+    }
+
+    private RecipeDetail loadFromDatabase(Long id) {
+        return readOnlyTransaction.execute(tx -> mixRecipeRepository.findByIdWithItems(id)
+                .map(recipe -> RecipeDetail.of(recipe, materialCache))
+                .orElse(null));
+    }
+}
@@ -0,0 +1,565 @@
+package com.company.smartmix.mix;
+
+import com.company.smartmix.common.BusinessException;
+import com.company.smartmix.material.MaterialCache;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.IntToDoubleFunction;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * 配比多条件检索索引（内存）
+ *
+ * 每个配比对应一个文档序号：强度等级、状态、材料编码各维护一个文档位图，
+ * 坍落度中值、各材料单方用量及其占总用量的比例各维护一个有序数组，范围条件用二分查找转成位图。
+ * 查询只做位图与/非运算，不访问数据库。
+ *
+ * 索引不可变，变更时在单独线程中整体替换（写少读多），查询无需加锁。本节点配比变更提交后重新读取对应配比，
+ * 短时间内的多次变更合并处理；其他节点的变更通过 {@link RecipeDetailCache#CHANNEL} 通知，另有定时全量重建兜底。
+ */
+@Slf4j
+@Component
+public class RecipeSearchIndex {
+
+    private static final int LOAD_CHUNK_SIZE = 500;
+    private static final int MAX_LIMIT = 1000;
+
+    private final MixRecipeRepository mixRecipeRepository;
+    private final MaterialCache materialCache;
+    private final ObjectProvider<RedisMessageListenerContainer> listenerContainerProvider;
+    private final TransactionTemplate readOnlyTransaction;
+    private final ScheduledExecutorService indexer;
+    private final Set<Long> pending = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean refreshScheduled = new AtomicBoolean();
+
+    /**
+     * 当前配比文档，只在 indexer 线程中读写
+     */
+    private Map<Long, Doc> docs = new HashMap<>();
+
+    private volatile Snapshot snapshot;
+
+    @Value("${app.mix.search-index.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.mix.search-index.refresh-delay-ms:200}")
+    private long refreshDelayMillis;
+
+    public RecipeSearchIndex(MixRecipeRepository mixRecipeRepository, MaterialCache materialCache,
+            ObjectProvider<RedisMessageListenerContainer> listenerContainerProvider,
+            PlatformTransactionManager transactionManager) {
+        this.mixRecipeRepository = mixRecipeRepository;
+        this.materialCache = materialCache;
+        this.listenerContainerProvider = listenerContainerProvider;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.indexer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "recipe-search-index");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PostConstruct
+    public void subscribe() {
+        listenerContainerProvider.ifAvailable(container -> container.addMessageListener((message, pattern) -> {
+            String body = new String(message.getBody(), StandardCharsets.UTF_8);
+            try {
+                refresh(Long.parseLong(body.substring(body.indexOf(':') + 1)));
+            } catch (NumberFormatException e) {
+                log.warn("无法解析配比变更消息: {}", body);
+            }
+        }, new ChannelTopic(RecipeDetailCache.CHANNEL)));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        indexer.shutdownNow();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        rebuild();
+    }
+
+    /**
+     * 定时全量重建，兜底其他节点未送达的变更通知
+     */
+    @Scheduled(initialDelayString = "${app.mix.search-index.rebuild-interval-ms:600000}",
+            fixedDelayString = "${app.mix.search-index.rebuild-interval-ms:600000}")
+    public void scheduledRebuild() {
+        rebuild();
+    }
+
+    @TransactionalEventListener
+    public void onMixRecipeChanged(MixRecipeChangedEvent event) {
+        refresh(event.getRecipeId());
+    }
+
+    /**
+     * 从数据库全量重建索引（异步）
+     */
+    public void rebuild() {
+        if (enabled) {
+            indexer.execute(this::rebuildNow);
+        }
+    }
+
+    /**
+     * 标记配比已变更；refresh-delay-ms 内的变更合并为一次索引更新，批量写入时不必每条都重建快照
+     */
+    public void refresh(Long recipeId) {
+        if (!enabled) {
+            return;
+        }
+        pending.add(recipeId);
+        if (refreshScheduled.compareAndSet(false, true)) {
+            indexer.schedule(this::applyPending, refreshDelayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void rebuildNow() {
+        long start = System.currentTimeMillis();
+        try {
+            Map<Long, Doc> loaded = new HashMap<>();
+            List<Long> ids = mixRecipeRepository.findAllIds();
+            for (int from = 0; from < ids.size(); from += LOAD_CHUNK_SIZE) {
+                loadInto(ids.subList(from, Math.min(from + LOAD_CHUNK_SIZE, ids.size())), loaded);
+            }
+            // 加载期间提交的变更已进入 pending，在随后的 applyPending 中重新读取
+            docs = loaded;
+            snapshot = Snapshot.build(docs.values());
+            log.info("配比检索索引已重建: recipes={}, materials={}, {}ms", snapshot.docs.length,
+                    snapshot.byMaterial.size(), System.currentTimeMillis() - start);
+        } catch (RuntimeException e) {
+            log.error("配比检索索引重建失败", e);
+        }
+    }
+
+    private void applyPending() {
+        refreshScheduled.set(false);
+        List<Long> ids = new ArrayList<>(pending);
+        pending.removeAll(ids);
+        if (ids.isEmpty() || snapshot == null) {
+            return;
+        }
+        try {
+            Map<Long, Doc> updated = new HashMap<>(docs);
+            ids.forEach(updated::remove); // 已删除的配比不会被重新加载
+            for (int from = 0; from < ids.size(); from += LOAD_CHUNK_SIZE) {
+                loadInto(ids.subList(from, Math.min(from + LOAD_CHUNK_SIZE, ids.size())), updated);
+            }
+            docs = updated;
+            snapshot = Snapshot.build(docs.values());
+        } catch (RuntimeException e) {
+            log.error("配比检索索引更新失败: ids={}", ids, e);
+            ids.forEach(this::refresh);
+        }
+    }
+
+    /**
+     * 当前索引快照，尚未构建时返回 null；快照不可变，变更后整体替换为新实例
+     */
+    Snapshot currentSnapshot() {
+        return snapshot;
+    }
+
+    private void loadInto(List<Long> ids, Map<Long, Doc> target) {
+        readOnlyTransaction.executeWithoutResult(tx -> mixRecipeRepository.findAllWithItemsByIdIn(ids)
+                .forEach(recipe -> target.put(recipe.getId(), Doc.of(recipe, materialCache))));
+    }
+
+    /**
+     * 按条件检索配比
+     */
+    public SearchResult search(SearchRequest request) {
+        Snapshot current = snapshot;
+        if (current == null) {
+            throw new BusinessException(503, "配比检索索引尚未就绪");
+        }
+        long start = System.nanoTime();
+        int limit = request.getLimit() == null ? 100 : Math.max(1, Math.min(request.getLimit(), MAX_LIMIT));
+
+        BitSet matched = current.search(request);
+        List<MaterialCondition> deferred = new ArrayList<>();
+        if (request.getMaterials() != null) {
+            for (MaterialCondition condition : request.getMaterials()) {
+                if (condition.getPercentOf() != null && !condition.getPercentOf().isEmpty()
+                        && (condition.getMinPercent() != null || condition.getMaxPercent() != null)) {
+                    deferred.add(condition);
+                }
+            }
+        }
+
+        SearchResult result = new SearchResult();
+        List<SearchHit> hits = new ArrayList<>(Math.min(limit, matched.cardinality()));
+        int total = 0;
+        for (int doc = matched.nextSetBit(0); doc >= 0; doc = matched.nextSetBit(doc + 1)) {
+            Doc candidate = current.docs[doc];
+            if (!deferred.isEmpty() && !deferred.stream().allMatch(candidate::matchesPercentOf)) {
+                continue;
+            }
+            total++;
+            if (hits.size() < limit) {
+                hits.add(candidate.toHit());
+            }
+        }
+        result.setTotal(total);
+        result.setItems(hits);
+        result.setIndexedRecipes(current.docs.length);
+        result.setTookMicros((System.nanoTime() - start) / 1000);
+        return result;
+    }
+
+    /**
+     * 不可变的索引快照
+     */
+    static final class Snapshot {
+
+        final Doc[] docs; // 按配比ID升序
+        final BitSet all;
+        final Map<String, BitSet> byGrade = new HashMap<>();
+        final Map<MixRecipe.RecipeStatus, BitSet> byStatus = new EnumMap<>(MixRecipe.RecipeStatus.class);
+        final Map<String, MaterialPostings> byMaterial = new HashMap<>();
+        final SortedValues slump;
+
+        private Snapshot(Doc[] docs) {
+            this.docs = docs;
+            this.all = new BitSet(docs.length);
+            this.all.set(0, docs.length);
+
+            Map<String, List<int[]>> materialDocs = new HashMap<>(); // 材料编码 -> [文档序号, 明细序号]
+            List<Integer> slumpDocs = new ArrayList<>();
+            for (int i = 0; i < docs.length; i++) {
+                Doc doc = docs[i];
+                byGrade.computeIfAbsent(doc.strengthGrade, key -> new BitSet()).set(i);
+                byStatus.computeIfAbsent(doc.status, key -> new BitSet()).set(i);
+                if (doc.slumpMidpoint != null) {
+                    slumpDocs.add(i);
+                }
+                for (int j = 0; j < doc.materialCodes.length; j++) {
+                    materialDocs.computeIfAbsent(doc.materialCodes[j], key -> new ArrayList<>()).add(new int[] { i, j });
+                }
+            }
+
+            this.slump = SortedValues.of(slumpDocs.size(), k -> slumpDocs.get(k), k -> docs[slumpDocs.get(k)].slumpMidpoint);
+            materialDocs.forEach((code, postings) -> {
+                BitSet present = new BitSet(docs.length);
+                postings.forEach(posting -> present.set(posting[0]));
+                SortedValues dosage = SortedValues.of(postings.size(), k -> postings.get(k)[0],
+                        k -> docs[postings.get(k)[0]].dosages[postings.get(k)[1]]);
+                SortedValues share = SortedValues.of(postings.size(), k -> postings.get(k)[0],
+                        k -> docs[postings.get(k)[0]].share(postings.get(k)[1]));
+                byMaterial.put(code, new MaterialPostings(present, dosage, share));
+            });
+        }
+
+        static Snapshot build(Collection<Doc> docs) {
+            Doc[] sorted = docs.toArray(new Doc[0]);
+            Arrays.sort(sorted, Comparator.comparing(doc -> doc.id));
+            return new Snapshot(sorted);
+        }
+
+        BitSet search(SearchRequest request) {
+            BitSet result = (BitSet) all.clone();
+            if (request.getStrengthGrades() != null && !request.getStrengthGrades().isEmpty()) {
+                BitSet grades = new BitSet();
+                request.getStrengthGrades().forEach(grade -> {
+                    BitSet bits = byGrade.get(grade);
+                    if (bits != null) {
+                        grades.or(bits);
+                    }
+                });
+                result.and(grades);
+            }
+            if (request.getStatuses() != null && !request.getStatuses().isEmpty()) {
+                BitSet statuses = new BitSet();
+                request.getStatuses().forEach(status -> {
+                    BitSet bits = byStatus.get(status);
+                    if (bits != null) {
+                        statuses.or(bits);
+                    }
+                });
+                result.and(statuses);
+            }
+            if (request.getSlumpMin() != null || request.getSlumpMax() != null) {
+                result.and(slump.range(request.getSlumpMin(), request.getSlumpMax(), docs.length));
+            }
+            if (request.getMaterials() != null) {
+                for (MaterialCondition condition : request.getMaterials()) {
+                    if (result.isEmpty()) {
+                        return result;
+                    }
+                    MaterialPostings postings = byMaterial.get(condition.getMaterialCode());
+                    if (postings == null) {
+                        return new BitSet();
+                    }
+                    result.and(postings.present);
+                    if (condition.getMinDosage() != null || condition.getMaxDosage() != null) {
+                        result.and(postings.dosage.range(condition.getMinDosage(), condition.getMaxDosage(),
+                                docs.length));
+                    }
+                    boolean ofTotal = condition.getPercentOf() == null || condition.getPercentOf().isEmpty();
+                    if (ofTotal && (condition.getMinPercent() != null || condition.getMaxPercent() != null)) {
+                        result.and(postings.share.range(condition.getMinPercent(), condition.getMaxPercent(),
+                                docs.length));
+                    }
+                }
+            }
+            if (request.getExcludedMaterialCodes() != null) {
+                for (String code : request.getExcludedMaterialCodes()) {
+                    MaterialPostings postings = byMaterial.get(code);
+                    if (postings != null) {
+                        result.andNot(postings.present);
+                    }
+                }
+            }
+            return result;
+        }
+    }
+
+    private static final class MaterialPostings {
+
+        final BitSet present;
+        final SortedValues dosage; // 单方用量（kg/m³）
+        final SortedValues share; // 占配比总用量的百分比
+
+        MaterialPostings(BitSet present, SortedValues dosage, SortedValues share) {
+            this.present = present;
+            this.dosage = dosage;
+            this.share = share;
+        }
+    }
+
+    /**
+     * 按值升序排列的 (值, 文档序号)
+     */
+    private static final class SortedValues {
+
+        final double[] values;
+        final int[] docs;
+
+        private SortedValues(double[] values, int[] docs) {
+            this.values = values;
+            this.docs = docs;
+        }
+
+        static SortedValues of(int size, IntUnaryOperator docOf,
+                IntToDoubleFunction valueOf) {
+            Integer[] order = new Integer[size];
+            for (int k = 0; k < size; k++) {
+                order[k] = k;
+            }
+            Arrays.sort(order, Comparator.comparingDouble(valueOf::applyAsDouble));
+            double[] values = new double[size];
+            int[] docs = new int[size];
+            for (int k = 0; k < size; k++) {
+                values[k] = valueOf.applyAsDouble(order[k]);
+                docs[k] = docOf.applyAsInt(order[k]);
+            }
+            return new SortedValues(values, docs);
+        }
+
+        /**
+         * 值在 [min, max] 内的文档，min/max 为空表示不限
+         */
+        BitSet range(Number min, Number max, int docCount) {
+            int from = min == null ? 0 : lowerBound(min.doubleValue());
+            int to = max == null ? values.length : upperBound(max.doubleValue());
+            BitSet bits = new BitSet(docCount);
+            for (int k = from; k < to; k++) {
+                bits.set(docs[k]);
+            }
+            return bits;
+        }
+
+        private int lowerBound(double value) {
+            int low = 0;
+            int high = values.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (values[mid] < value) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        private int upperBound(double value) {
+            int low = 0;
+            int high = values.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (values[mid] <= value) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+
+    /**
+     * 索引中的配比文档（同一材料编码出现多次时合并用量，用量为零的明细不计入）
+     */
+    static final class Doc {
+
+        final Long id;
+        final String recipeCode;
+        final String strengthGrade;
+        final String slump;
+        final Integer slumpMidpoint;
+        final MixRecipe.RecipeStatus status;
+        final String[] materialCodes;
+        final double[] dosages;
+        final double totalDosage;
+
+        private Doc(MixRecipe recipe, String[] materialCodes, double[] dosages) {
+            this.id = recipe.getId();
+            this.recipeCode = recipe.getRecipeCode();
+            this.strengthGrade = recipe.getStrengthGrade();
+            this.slump = recipe.getSlump();
+            SlumpRange range = SlumpRange.parse(recipe.getSlump());
+            this.slumpMidpoint = range != null ? range.getMidpoint() : null;
+            this.status = recipe.getStatus();
+            this.materialCodes = materialCodes;
+            this.dosages = dosages;
+            this.totalDosage = Arrays.stream(dosages).sum();
+        }
+
+        static Doc of(MixRecipe recipe, MaterialCache materialCache) {
+            Map<String, Double> byCode = new LinkedHashMap<>();
+            for (MixRecipeItem item : recipe.getItems()) {
+                if (item.getDosagePerM3() == null || item.getDosagePerM3().signum() <= 0) {
+                    continue;
+                }
+                byCode.merge(materialCache.getRequired(item.getMaterial().getId()).getMaterialCode(), item.getDosagePerM3().doubleValue(), Double::sum);
+            }
+            String[] codes = byCode.keySet().toArray(new String[0]);
+            double[] dosages = byCode.values().stream().mapToDouble(Double::doubleValue).toArray();
+            return new Doc(recipe, codes, dosages);
+        }
+
+        double share(int item) {
+            return totalDosage > 0 ? dosages[item] * 100 / totalDosage : 0;
+        }
+
+        double dosageOf(String code) {
+            for (int j = 0; j < materialCodes.length; j++) {
+                if (materialCodes[j].equals(code)) {
+                    return dosages[j];
+                }
+            }
+            return 0;
+        }
+
+        /**
+         * 按指定基准材料（如胶凝材料）计算的百分比条件
+         */
+        boolean matchesPercentOf(MaterialCondition condition) {
+            double base = 0;
+            for (String code : new HashSet<>(condition.getPercentOf())) {
+                base += dosageOf(code);
+            }
+            if (base <= 0) {
+                return false;
+            }
+            double percent = dosageOf(condition.getMaterialCode()) * 100 / base;
+            return (condition.getMinPercent() == null || percent >= condition.getMinPercent().doubleValue())
+                    && (condition.getMaxPercent() == null || percent <= condition.getMaxPercent().doubleValue());
+        }
+
+        SearchHit toHit() {
+            SearchHit hit = new SearchHit();
+            hit.setId(id);
+            hit.setRecipeCode(recipeCode);
+            hit.setStrengthGrade(strengthGrade);
+            hit.setSlump(slump);
+            hit.setStatus(status);
+            Map<String, Double> materials = new TreeMap<>();
+            for (int j = 0; j < materialCodes.length; j++) {
+                materials.put(materialCodes[j], dosages[j]);
+            }
+            hit.setMaterials(materials);
+            return hit;
+        }
+    }
+
+    // DTOs
+
+    @Data
+    public static class SearchRequest {
+        private List<String> strengthGrades;
+        private List<MixRecipe.RecipeStatus> statuses;
+        private Integer slumpMin; // 设计坍落度中值下限（mm）
+        private Integer slumpMax;
+        private List<MaterialCondition> materials; // 须全部满足
+        private List<String> excludedMaterialCodes; // 不得含有的材料
+        private Integer limit; // 默认100，最大1000
+    }
+
+    @Data
+    public static class MaterialCondition {
+        private String materialCode;
+        private BigDecimal minDosage; // 单方用量范围（kg/m³）
+        private BigDecimal maxDosage;
+        private BigDecimal minPercent; // 百分比范围
+        private BigDecimal maxPercent;
+        private List<String> percentOf; // 百分比基准材料编码（如胶凝材料），为空时以配比总用量为基准
+    }
+
+    @Data
+    public static class SearchResult {
+        private int total;
+        private int indexedRecipes;
+        private long tookMicros;
+        private List<SearchHit> items;
+    }
+
+    @Data
+    public static class SearchHit {
+        private Long id;
+        private String recipeCode;
+        private String strengthGrade;
+        private String slump;
+        private MixRecipe.RecipeStatus status;
+        private Map<String, Double> materials; // 材料编码 -> 单方用量
+    }
+}
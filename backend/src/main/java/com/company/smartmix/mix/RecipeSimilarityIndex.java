@@ -0,0 +1,478 @@
+package com.company.smartmix.mix;
+
+import com.company.smartmix.common.BusinessException;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * 配比相似度索引（近似重复配比检测）
+ *
+ * 每个配比表示为以材料编码为维度的单方用量向量，两配比的距离为各材料用量差的绝对值之和（kg/m³，L1 距离）；
+ * “相差 X% 以内”指距离不超过基准配比总用量的 X%。同一强度等级的配比建一棵 VP 树，
+ * 范围查询只访问与查询半径相交的子树；重复簇报告对每个簇代表做一次范围查询，均无需两两比较。
+ *
+ * 数据取自 {@link RecipeSearchIndex} 的快照，快照替换后在下一次查询时重建。
+ */
+@Component
+@RequiredArgsConstructor
+public class RecipeSimilarityIndex {
+
+    private static final int MAX_LIMIT = 1000;
+
+    private final RecipeSearchIndex recipeSearchIndex;
+
+    private volatile Trees trees;
+
+    /**
+     * 查找与指定配比相差 percent% 以内的配比，按距离升序
+     */
+    public SimilarResult findSimilar(Long recipeId, double percent, boolean sameGrade, int limit) {
+        long start = System.nanoTime();
+        Trees current = current();
+        Integer doc = current.docOf.get(recipeId);
+        if (doc == null) {
+            throw new BusinessException("配比不存在");
+        }
+        RecipeSearchIndex.Doc query = current.snapshot.docs[doc];
+        Vector vector = current.vectors[doc];
+        double radius = vector.total * percent / 100;
+
+        List<Neighbor> found = new ArrayList<>();
+        for (Map.Entry<String, VpTree> grade : current.byGrade.entrySet()) {
+            if (sameGrade && !grade.getKey().equals(query.strengthGrade)) {
+                continue;
+            }
+            grade.getValue().range(current.vectors, vector, radius, (other, distance) -> {
+                if (other != doc) {
+                    found.add(new Neighbor(other, distance));
+                }
+            });
+        }
+        found.sort(Comparator.comparingDouble(neighbor -> neighbor.distance));
+
+        SimilarResult result = new SimilarResult();
+        result.setRecipeId(recipeId);
+        result.setRecipeCode(query.recipeCode);
+        result.setPercent(percent);
+        result.setRadius(round(radius));
+        result.setTotal(found.size());
+        List<SimilarRecipe> items = new ArrayList<>();
+        for (Neighbor neighbor : found.subList(0, Math.min(found.size(), Math.max(1, Math.min(limit, MAX_LIMIT))))) {
+            SimilarRecipe item = toSimilarRecipe(current.snapshot.docs[neighbor.doc]);
+            item.setDistance(round(neighbor.distance));
+            item.setDifferencePercent(vector.total > 0 ? round(neighbor.distance * 100 / vector.total) : 0);
+            items.add(item);
+        }
+        result.setItems(items);
+        result.setTookMicros((System.nanoTime() - start) / 1000);
+        return result;
+    }
+
+    /**
+     * 按强度等级输出近似重复配比簇
+     *
+     * 依次以尚未归簇的配比为代表（已审核的优先，其次ID小的），与其相差 percent% 以内且尚未归簇的配比归入该簇；
+     * 簇内每个配比都与代表相近，不会像传递合并那样串成大簇。只输出两个及以上的簇。
+     */
+    public DuplicateReport findDuplicates(double percent, String strengthGrade, MixRecipe.RecipeStatus status) {
+        long start = System.nanoTime();
+        Trees current = current();
+        RecipeSearchIndex.Doc[] docs = current.snapshot.docs;
+        boolean[] assigned = new boolean[docs.length];
+
+        List<DuplicateCluster> clusters = new ArrayList<>();
+        int scanned = 0;
+        for (Map.Entry<String, VpTree> grade : current.byGrade.entrySet()) {
+            if (strengthGrade != null && !grade.getKey().equals(strengthGrade)) {
+                continue;
+            }
+            VpTree tree = grade.getValue();
+            int[] order = Arrays.stream(tree.docs)
+                    .filter(doc -> status == null || docs[doc].status == status)
+                    .boxed()
+                    .sorted(Comparator.comparing((Integer doc) -> docs[doc].status != MixRecipe.RecipeStatus.APPROVED)
+                            .thenComparing(doc -> docs[doc].id))
+                    .mapToInt(Integer::intValue)
+                    .toArray();
+            scanned += order.length;
+
+            for (int leader : order) {
+                if (assigned[leader]) {
+                    continue;
+                }
+                assigned[leader] = true;
+                Vector vector = current.vectors[leader];
+                List<Neighbor> members = new ArrayList<>();
+                tree.range(current.vectors, vector, vector.total * percent / 100, (other, distance) -> {
+                    if (!assigned[other] && (status == null || docs[other].status == status)) {
+                        assigned[other] = true;
+                        members.add(new Neighbor(other, distance));
+                    }
+                });
+                if (!members.isEmpty()) {
+                    members.sort(Comparator.comparingDouble(neighbor -> neighbor.distance));
+                    clusters.add(toCluster(grade.getKey(), leader, vector, members, docs));
+                }
+            }
+        }
+
+        clusters.sort(Comparator.comparing(DuplicateCluster::getStrengthGrade)
+                .thenComparing(Comparator.comparingInt(DuplicateCluster::getSize).reversed()));
+        DuplicateReport report = new DuplicateReport();
+        report.setPercent(percent);
+        report.setScannedRecipes(scanned);
+        report.setClusterCount(clusters.size());
+        report.setDuplicateRecipes(clusters.stream().mapToInt(cluster -> cluster.getSize() - 1).sum());
+        report.setClusters(clusters);
+        report.setTookMillis((System.nanoTime() - start) / 1_000_000);
+        return report;
+    }
+
+    private static DuplicateCluster toCluster(String strengthGrade, int leader, Vector vector, List<Neighbor> members,
+            RecipeSearchIndex.Doc[] docs) {
+        DuplicateCluster cluster = new DuplicateCluster();
+        cluster.setStrengthGrade(strengthGrade);
+        cluster.setSize(members.size() + 1);
+        cluster.setRepresentative(toSimilarRecipe(docs[leader]));
+        List<SimilarRecipe> recipes = new ArrayList<>(members.size());
+        for (Neighbor member : members) {
+            SimilarRecipe recipe = toSimilarRecipe(docs[member.doc]);
+            recipe.setDistance(round(member.distance));
+            recipe.setDifferencePercent(vector.total > 0 ? round(member.distance * 100 / vector.total) : 0);
+            recipes.add(recipe);
+        }
+        cluster.setRecipes(recipes);
+        return cluster;
+    }
+
+    private static SimilarRecipe toSimilarRecipe(RecipeSearchIndex.Doc doc) {
+        SimilarRecipe recipe = new SimilarRecipe();
+        recipe.setId(doc.id);
+        recipe.setRecipeCode(doc.recipeCode);
+        recipe.setStrengthGrade(doc.strengthGrade);
+        recipe.setSlump(doc.slump);
+        recipe.setStatus(doc.status);
+        return recipe;
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+
+    /**
+     * 取得与当前检索快照对应的 VP 树，快照已替换时重建
+     */
+    private Trees current() {
+        RecipeSearchIndex.Snapshot snapshot = recipeSearchIndex.currentSnapshot();
+        if (snapshot == null) {
+            throw new BusinessException(503, "配比检索索引尚未就绪");
+        }
+        Trees built = trees;
+        if (built != null && built.snapshot == snapshot) {
+            return built;
+        }
+        synchronized (this) {
+            built = trees;
+            if (built == null || built.snapshot != snapshot) {
+                built = Trees.build(snapshot);
+                trees = built;
+            }
+            return built;
+        }
+    }
+
+    /**
+     * 某一检索快照上的全部向量与按强度等级划分的 VP 树
+     */
+    private static final class Trees {
+
+        final RecipeSearchIndex.Snapshot snapshot;
+        final Vector[] vectors;
+        final Map<Long, Integer> docOf;
+        final Map<String, VpTree> byGrade = new TreeMap<>();
+
+        private Trees(RecipeSearchIndex.Snapshot snapshot) {
+            this.snapshot = snapshot;
+            RecipeSearchIndex.Doc[] docs = snapshot.docs;
+            this.vectors = new Vector[docs.length];
+            this.docOf = new HashMap<>(docs.length * 2);
+            Map<String, Integer> dimensions = new HashMap<>();
+            Map<String, List<Integer>> gradeDocs = new TreeMap<>();
+            for (int i = 0; i < docs.length; i++) {
+                vectors[i] = Vector.of(docs[i], dimensions);
+                docOf.put(docs[i].id, i);
+                gradeDocs.computeIfAbsent(docs[i].strengthGrade, key -> new ArrayList<>()).add(i);
+            }
+            gradeDocs.forEach((grade, members) -> byGrade.put(grade,
+                    VpTree.build(members.stream().mapToInt(Integer::intValue).toArray(), vectors)));
+        }
+
+        static Trees build(RecipeSearchIndex.Snapshot snapshot) {
+            return new Trees(snapshot);
+        }
+    }
+
+    /**
+     * 稀疏用量向量，维度按材料编码编号并升序排列
+     */
+    private static final class Vector {
+
+        final int[] dims;
+        final double[] values;
+        final double total;
+
+        private Vector(int[] dims, double[] values) {
+            this.dims = dims;
+            this.values = values;
+            this.total = Arrays.stream(values).sum();
+        }
+
+        static Vector of(RecipeSearchIndex.Doc doc, Map<String, Integer> dimensions) {
+            int n = doc.materialCodes.length;
+            long[] packed = new long[n]; // 高位维度号、低位明细序号，排序后按维度升序
+            for (int j = 0; j < n; j++) {
+                int dim = dimensions.computeIfAbsent(doc.materialCodes[j], key -> dimensions.size());
+                packed[j] = ((long) dim << 32) | j;
+            }
+            Arrays.sort(packed);
+            int[] dims = new int[n];
+            double[] values = new double[n];
+            for (int k = 0; k < n; k++) {
+                dims[k] = (int) (packed[k] >>> 32);
+                values[k] = doc.dosages[(int) packed[k]];
+            }
+            return new Vector(dims, values);
+        }
+
+        /**
+         * L1 距离（按维度归并）
+         */
+        double distance(Vector other) {
+            double sum = 0;
+            int i = 0;
+            int j = 0;
+            while (i < dims.length && j < other.dims.length) {
+                if (dims[i] == other.dims[j]) {
+                    sum += Math.abs(values[i++] - other.values[j++]);
+                } else if (dims[i] < other.dims[j]) {
+                    sum += values[i++];
+                } else {
+                    sum += other.values[j++];
+                }
+            }
+            while (i < dims.length) {
+                sum += values[i++];
+            }
+            while (j < other.dims.length) {
+                sum += other.values[j++];
+            }
+            return sum;
+        }
+    }
+
+    private static final class Neighbor {
+
+        final int doc;
+        final double distance;
+
+        Neighbor(int doc, double distance) {
+            this.doc = doc;
+            this.distance = distance;
+        }
+    }
+
+    @FunctionalInterface
+    private interface RangeVisitor {
+        void visit(int doc, double distance);
+    }
+
+    /**
+     * VP 树（vantage-point tree），节点以数组存放
+     *
+     * 每个内部节点选一个支点，按到支点距离的中位数 mu 把其余点分为内侧（≤ mu）和外侧；
+     * 范围查询利用三角不等式，只在 d(q, vp) - r ≤ mu 时进入内侧、d(q, vp) + r ≥ mu 时进入外侧。
+     * 不超过 LEAF_SIZE 个点的子集直接存为叶子逐个比较。
+     */
+    private static final class VpTree {
+
+        private static final int LEAF_SIZE = 8;
+
+        final int[] docs; // 本等级的文档序号，建树后按节点重排
+        private int[] vantage = new int[16]; // 支点在 docs 中的位置，叶子为 -1
+        private double[] mu = new double[16];
+        private int[] from = new int[16]; // 子树在 docs 中的区间 [from, to)
+        private int[] to = new int[16];
+        private int[] inside = new int[16];
+        private int[] outside = new int[16];
+        private int nodeCount;
+        private final int root;
+
+        private VpTree(int[] docs, Vector[] vectors) {
+            this.docs = docs;
+            this.root = docs.length == 0 ? -1 : build(0, docs.length, vectors, new Random(docs.length),
+                    new double[docs.length]);
+        }
+
+        static VpTree build(int[] docs, Vector[] vectors) {
+            return new VpTree(docs, vectors);
+        }
+
+        private int build(int lo, int hi, Vector[] vectors, Random random, double[] scratch) {
+            int node = newNode(lo, hi);
+            if (hi - lo <= LEAF_SIZE) {
+                vantage[node] = -1;
+                return node;
+            }
+            // 随机选支点并移到区间首位
+            swap(lo, lo + random.nextInt(hi - lo));
+            Vector vp = vectors[docs[lo]];
+            for (int i = lo + 1; i < hi; i++) {
+                scratch[i] = vp.distance(vectors[docs[i]]);
+            }
+            int median = (lo + 1 + hi) >>> 1;
+            select(scratch, lo + 1, hi - 1, median);
+            vantage[node] = lo;
+            mu[node] = scratch[median];
+            int in = build(lo + 1, median + 1, vectors, random, scratch);
+            int out = median + 1 < hi ? build(median + 1, hi, vectors, random, scratch) : -1;
+            inside[node] = in;
+            outside[node] = out;
+            return node;
+        }
+
+        void range(Vector[] vectors, Vector query, double radius, RangeVisitor visitor) {
+            if (root >= 0) {
+                range(root, vectors, query, radius, visitor);
+            }
+        }
+
+        private void range(int node, Vector[] vectors, Vector query, double radius, RangeVisitor visitor) {
+            if (vantage[node] < 0) {
+                for (int i = from[node]; i < to[node]; i++) {
+                    double distance = query.distance(vectors[docs[i]]);
+                    if (distance <= radius) {
+                        visitor.visit(docs[i], distance);
+                    }
+                }
+                return;
+            }
+            int vp = docs[vantage[node]];
+            double distance = query.distance(vectors[vp]);
+            if (distance <= radius) {
+                visitor.visit(vp, distance);
+            }
+            if (distance - radius <= mu[node]) {
+                range(inside[node], vectors, query, radius, visitor);
+            }
+            if (outside[node] >= 0 && distance + radius >= mu[node]) {
+                range(outside[node], vectors, query, radius, visitor);
+            }
+        }
+
+        private int newNode(int lo, int hi) {
+            if (nodeCount == vantage.length) {
+                int size = nodeCount * 2;
+                vantage = Arrays.copyOf(vantage, size);
+                mu = Arrays.copyOf(mu, size);
+                from = Arrays.copyOf(from, size);
+                to = Arrays.copyOf(to, size);
+                inside = Arrays.copyOf(inside, size);
+                outside = Arrays.copyOf(outside, size);
+            }
+            from[nodeCount] = lo;
+            to[nodeCount] = hi;
+            outside[nodeCount] = -1;
+            return nodeCount++;
+        }
+
+        /**
+         * 快速选择：使 scratch[k] 为 [lo, hi] 中第 k 小，左侧不大于、右侧不小于它（docs 同步交换）
+         */
+        private void select(double[] scratch, int lo, int hi, int k) {
+            while (lo < hi) {
+                double pivot = scratch[(lo + hi) >>> 1];
+                int i = lo;
+                int j = hi;
+                while (i <= j) {
+                    while (scratch[i] < pivot) {
+                        i++;
+                    }
+                    while (scratch[j] > pivot) {
+                        j--;
+                    }
+                    if (i <= j) {
+                        double t = scratch[i];
+                        scratch[i] = scratch[j];
+                        scratch[j] = t;
+                        swap(i++, j--);
+                    }
+                }
+                if (k <= j) {
+                    hi = j;
+                } else if (k >= i) {
+                    lo = i;
+                } else {
+                    return;
+                }
+            }
+        }
+
+        private void swap(int a, int b) {
+            int t = docs[a];
+            docs[a] = docs[b];
+            docs[b] = t;
+        }
+    }
+
+    // DTOs
+
+    @Data
+    public static class SimilarResult {
+        private Long recipeId;
+        private String recipeCode;
+        private double percent;
+        private double radius; // 距离上限（kg/m³）
+        private int total;
+        private long tookMicros;
+        private List<SimilarRecipe> items;
+    }
+
+    @Data
+    public static class SimilarRecipe {
+        private Long id;
+        private String recipeCode;
+        private String strengthGrade;
+        private String slump;
+        private MixRecipe.RecipeStatus status;
+        private Double distance; // 各材料用量差绝对值之和（kg/m³）
+        private Double differencePercent; // 占基准配比总用量的百分比
+    }
+
+    @Data
+    public static class DuplicateReport {
+        private double percent;
+        private int scannedRecipes;
+        private int clusterCount;
+        private int duplicateRecipes; // 各簇中代表以外的配比数之和
+        private long tookMillis;
+        private List<DuplicateCluster> clusters;
+    }
+
+    @Data
+    public static class DuplicateCluster {
+        private String strengthGrade;
+        private int size; // 含代表
+        private SimilarRecipe representative; // 建议保留的配比
+        private List<SimilarRecipe> recipes; // 与代表相近的配比，按差异升序
+    }
+}
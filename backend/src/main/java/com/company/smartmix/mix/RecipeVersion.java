@@ -0,0 +1,33 @@
+package com.company.smartmix.mix;
+
+import lombok.Builder;
+import lombok.Value;
+import lombok.extern.jackson.Jacksonized;
+
+import java.time.LocalDateTime;
+
+/**
+ * 配比审核版本，不可变
+ *
+ * 内容一经写入不再变化，由 {@link RecipeVersionService} 无过期地缓存，可在线程间直接共享。
+ */
+@Value
+@Builder
+@Jacksonized
+public class RecipeVersion {
+
+    Long id;
+    Long mixRecipeId;
+    Integer versionNo;
+    String contentHash;
+    LocalDateTime approvedAt;
+    String approvedBy;
+    RecipeDetail recipe;
+
+    /**
+     * 强 ETag：同一版本的内容和序列化结果始终相同
+     */
+    public String etag() {
+        return "\"" + contentHash + "\"";
+    }
+}
@@ -0,0 +1,177 @@
+package com.company.smartmix.mix;
+
+import com.company.smartmix.common.BusinessException;
+import com.company.smartmix.material.MaterialCache;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * 配比审核版本：审核时写入快照，读取时走无过期的本地缓存
+ *
+ * 版本不可变，缓存无需失效，只按条数淘汰；未命中时按主键读取一行并反序列化快照，不加载配比实体和明细。
+ */
+@Slf4j
+@Service
+public class RecipeVersionService {
+
+    private final MixRecipeVersionRepository versionRepository;
+    private final MixRecipeRepository mixRecipeRepository;
+    private final MaterialCache materialCache;
+    private final ObjectMapper objectMapper;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TransactionTemplate readOnlyTransaction;
+    private final Cache<Long, RecipeVersion> cache;
+
+    public RecipeVersionService(MixRecipeVersionRepository versionRepository, MixRecipeRepository mixRecipeRepository,
+            MaterialCache materialCache, ObjectMapper objectMapper, ApplicationEventPublisher eventPublisher,
+            PlatformTransactionManager transactionManager,
+            @Value("${app.mix.recipe-version-cache.max-entries:5000}") long maxEntries) {
+        this.versionRepository = versionRepository;
+        this.mixRecipeRepository = mixRecipeRepository;
+        this.materialCache = materialCache;
+        this.objectMapper = objectMapper;
+        this.eventPublisher = eventPublisher;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .build();
+    }
+
+    /**
+     * 为已审核的配比（须已加载明细）写入新版本，并设为配比的当前版本；须在审核事务内调用，
+     * 且配比须已通过 {@link MixRecipeRepository#findForUpdateById} 锁定后再加载。
+     * 版本号取自配比行上的计数器，并发审核同一配比时按行锁顺序分配，不依赖一致性读的快照
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public MixRecipeVersion snapshot(MixRecipe recipe) {
+        if (recipe.getStatus() != MixRecipe.RecipeStatus.APPROVED) {
+            throw new BusinessException("只能为已审核的配比生成版本");
+        }
+        // 快照内不记录当前版本ID，避免内容随后续版本变化
+        recipe.setCurrentVersionId(null);
+        String detail;
+        try {
+            detail = objectMapper.writeValueAsString(RecipeDetail.of(recipe, materialCache));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("配比快照序列化失败: " + recipe.getRecipeCode(), e);
+        }
+
+        Integer latest = recipe.getLatestVersionNo();
+        if (latest == null) {
+            // 计数器启用前已有版本的配比，在行锁内按已有最大版本号补齐
+            latest = versionRepository.findMaxVersionNo(recipe.getId());
+        }
+        int versionNo = latest == null ? 1 : latest + 1;
+        MixRecipeVersion version = new MixRecipeVersion();
+        version.setMixRecipeId(recipe.getId());
+        version.setVersionNo(versionNo);
+        version.setRecipeCode(recipe.getRecipeCode());
+        version.setStrengthGrade(recipe.getStrengthGrade());
+        version.setContentHash(sha256(detail));
+        version.setDetail(detail);
+        MixRecipeVersion saved = versionRepository.save(version);
+
+        recipe.setCurrentVersionId(saved.getId());
+        recipe.setLatestVersionNo(versionNo);
+        log.info("配比版本已生成: recipe={}, version={}, id={}", recipe.getRecipeCode(), saved.getVersionNo(), saved.getId());
+        return saved;
+    }
+
+    /**
+     * 已审核配比的当前版本；审核状态和当前版本ID在本事务内从数据库读取，不使用可能过期的配比缓存，
+     * 版本内容不可变，走版本缓存。审核早于版本功能、尚无版本的配比在本事务内补建
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public RecipeVersion currentVersion(Long mixRecipeId) {
+        MixRecipeRepository.VersionState state = mixRecipeRepository.findVersionStateById(mixRecipeId)
+                .orElseThrow(() -> new BusinessException("配比不存在"));
+        if (state.getStatus() != MixRecipe.RecipeStatus.APPROVED) {
+            throw new BusinessException(400, "只能选择已审核的配比");
+        }
+        if (state.getCurrentVersionId() != null) {
+            return getRequired(state.getCurrentVersionId());
+        }
+        // 补建前锁定配比行并重新检查，并发选择同一配比时只补建一个版本
+        MixRecipe locked = mixRecipeRepository.findForUpdateById(mixRecipeId)
+                .orElseThrow(() -> new BusinessException("配比不存在"));
+        if (locked.getStatus() != MixRecipe.RecipeStatus.APPROVED) {
+            throw new BusinessException(400, "只能选择已审核的配比");
+        }
+        if (locked.getCurrentVersionId() != null) {
+            return getRequired(locked.getCurrentVersionId());
+        }
+        MixRecipe entity = mixRecipeRepository.findByIdWithItems(mixRecipeId)
+                .orElseThrow(() -> new BusinessException("配比不存在"));
+        MixRecipeVersion version = snapshot(entity);
+        mixRecipeRepository.save(entity);
+        eventPublisher.publishEvent(new MixRecipeChangedEvent(entity.getId()));
+        return toRecipeVersion(version);
+    }
+
+    /**
+     * 按版本ID读取，不存在时返回 null
+     */
+    public RecipeVersion get(Long versionId) {
+        return cache.get(versionId, this::load);
+    }
+
+    public RecipeVersion getRequired(Long versionId) {
+        RecipeVersion version = get(versionId);
+        if (version == null) {
+            throw new BusinessException("配比版本不存在: " + versionId);
+        }
+        return version;
+    }
+
+    public List<MixRecipeVersionRepository.VersionSummary> listVersions(Long mixRecipeId) {
+        return versionRepository.findSummaryByMixRecipeIdOrderByVersionNoDesc(mixRecipeId);
+    }
+
+    private RecipeVersion load(Long versionId) {
+        return readOnlyTransaction.execute(tx -> versionRepository.findById(versionId)
+                .map(this::toRecipeVersion)
+                .orElse(null));
+    }
+
+    private RecipeVersion toRecipeVersion(MixRecipeVersion version) {
+        try {
+            return RecipeVersion.builder()
+                    .id(version.getId())
+                    .mixRecipeId(version.getMixRecipeId())
+                    .versionNo(version.getVersionNo())
+                    .contentHash(version.getContentHash())
+                    .approvedAt(version.getCreatedAt())
+                    .approvedBy(version.getCreatedBy())
+                    .recipe(objectMapper.readValue(version.getDetail(), RecipeDetail.class))
+                    .build();
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("配比版本内容无法解析: " + version.getId(), e);
+        }
+    }
+
+    private static String sha256(String content) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(content.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
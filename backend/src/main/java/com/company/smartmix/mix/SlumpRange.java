@@ -0,0 +1,73 @@
+package com.company.smartmix.mix;
+
+import lombok.Value;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 坍落度范围（mm）
+ * 支持 "180±20"、"160-200"、"160~200"、"180" 等写法
+ */
+@Value
+public class SlumpRange {
+
+    private static final Pattern TOLERANCE = Pattern.compile("^(\\d+)\\s*(?:±|\\+/-|\\+-)\\s*(\\d+)");
+    private static final Pattern RANGE = Pattern.compile("^(\\d+)\\s*(?:-|~|～|–|—|至)\\s*(\\d+)");
+    private static final Pattern SINGLE = Pattern.compile("^(\\d+)");
+
+    int min;
+    int max;
+
+    public int getMidpoint() {
+        return (min + max) / 2;
+    }
+
+    public boolean contains(int value) {
+        return value >= min && value <= max;
+    }
+
+    /**
+     * 解析坍落度，无法解析时返回 null
+     */
+    public static SlumpRange parse(String text) {
+        if (text == null) {
+            return null;
+        }
+        String value = text.trim().toLowerCase().replace("mm", "").trim();
+        Matcher matcher = TOLERANCE.matcher(value);
+        if (matcher.find()) {
+            int center = Integer.parseInt(matcher.group(1));
+            int tolerance = Integer.parseInt(matcher.group(2));
+            return new SlumpRange(center - tolerance, center + tolerance);
+        }
+        matcher = RANGE.matcher(value);
+        if (matcher.find()) {
+            int a = Integer.parseInt(matcher.group(1));
+            int b = Integer.parseInt(matcher.group(2));
+            return new SlumpRange(Math.min(a, b), Math.max(a, b));
+        }
+        matcher = SINGLE.matcher(value);
+        if (matcher.find()) {
+            int v = Integer.parseInt(matcher.group(1));
+            return new SlumpRange(v, v);
+        }
+        return null;
+    }
+
+    /**
+     * 配比坍落度是否满足任务要求：任务无要求时均满足；
+     * 双方可解析时要求配比设计坍落度中值落在任务要求范围内，否则按文本相同判断
+     */
+    public static boolean satisfies(String recipeSlump, String requirement) {
+        if (requirement == null || requirement.isBlank()) {
+            return true;
+        }
+        SlumpRange required = parse(requirement);
+        SlumpRange designed = parse(recipeSlump);
+        if (required != null && designed != null) {
+            return required.contains(designed.getMidpoint());
+        }
+        return recipeSlump != null && recipeSlump.trim().equalsIgnoreCase(requirement.trim());
+    }
+}
@@ -1,12 +1,14 @@
 package com.company.smartmix.task;
 
 import com.company.smartmix.common.BusinessException;
-import com.company.smartmix.mix.MixRecipe;
-import com.company.smartmix.mix.MixRecipeItem;
-import com.company.smartmix.mix.MixRecipeRepository;
+import com.company.smartmix.mix.RecipeDetail;
+import com.company.smartmix.mix.RecipeDetailCache;
+import com.company.smartmix.mix.RecipeVersionService;
 import com.openhtmltopdf.pdfboxout.PdfRendererBuilder;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.Data;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.thymeleaf.TemplateEngine;
@@ -24,12 +26,31 @@ import java.util.List;
  */
 @Slf4j
 @Service
-@RequiredArgsConstructor
 public class PdfGenerationService {
 
     private final TemplateEngine templateEngine;
     private final ProductionTaskRepository productionTaskRepository;
-    private final MixRecipeRepository mixRecipeRepository;
+    private final RecipeDetailCache recipeDetailCache;
+    private final RecipeVersionService recipeVersionService;
+    // 指标在构造时创建并复用，不在每次生成时向注册表查找
+    private final Timer renderSuccess;
+    private final Timer renderError;
+    private final DistributionSummary pdfSize;
+
+    public PdfGenerationService(TemplateEngine templateEngine, ProductionTaskRepository productionTaskRepository,
+            RecipeDetailCache recipeDetailCache, RecipeVersionService recipeVersionService,
+            MeterRegistry meterRegistry) {
+        this.templateEngine = templateEngine;
+        this.productionTaskRepository = productionTaskRepository;
+        this.recipeDetailCache = recipeDetailCache;
+        this.recipeVersionService = recipeVersionService;
+        this.renderSuccess = renderTimer(meterRegistry, "success");
+        this.renderError = renderTimer(meterRegistry, "error");
+        this.pdfSize = DistributionSummary.builder("smartmix.pdf.size")
+                .description("生成的PDF字节数")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
 
     /**
      * 生成生产任务单PDF
@@ -43,9 +64,10 @@ public class PdfGenerationService {
             throw new BusinessException("任务尚未选择配比");
         }
 
-        // 查询配比
-        MixRecipe recipe = mixRecipeRepository.findByIdWithItems(task.getSelectedMixRecipeId())
-                .orElseThrow(() -> new BusinessException("配比不存在"));
+        // 查询配比：按选定的审核版本；版本功能之前选定的任务只能取配比当前内容
+        RecipeDetail recipe = task.getSelectedRecipeVersionId() != null
+                ? recipeVersionService.getRequired(task.getSelectedRecipeVersionId()).getRecipe()
+                : recipeDetailCache.getRequired(task.getSelectedMixRecipeId());
 
         // 准备数据
         TaskPdfData pdfData = preparePdfData(task, recipe);
@@ -56,6 +78,8 @@ public class PdfGenerationService {
         String html = templateEngine.process("task-pdf", context);
 
         // 生成PDF
+        Timer.Sample sample = Timer.start();
+        Timer outcome = renderError;
         try (ByteArrayOutputStream os = new ByteArrayOutputStream()) {
             PdfRendererBuilder builder = new PdfRendererBuilder();
             builder.useFastMode();
@@ -63,17 +87,30 @@ public class PdfGenerationService {
             builder.toStream(os);
             builder.run();
 
-            return os.toByteArray();
+            byte[] pdf = os.toByteArray();
+            outcome = renderSuccess;
+            pdfSize.record(pdf.length);
+            return pdf;
         } catch (Exception e) {
             log.error("PDF生成失败", e);
             throw new BusinessException("PDF生成失败: " + e.getMessage());
+        } finally {
+            sample.stop(outcome);
         }
     }
 
+    private static Timer renderTimer(MeterRegistry meterRegistry, String outcome) {
+        return Timer.builder("smartmix.pdf.render")
+                .description("PDF渲染耗时（HTML转PDF）")
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
     /**
      * 准备PDF数据
      */
-    private TaskPdfData preparePdfData(ProductionTask task, MixRecipe recipe) {
+    private TaskPdfData preparePdfData(ProductionTask task, RecipeDetail recipe) {
         TaskPdfData data = new TaskPdfData();
 
         // 任务信息
@@ -94,11 +131,11 @@ public class PdfGenerationService {
 
         // 材料清单
         List<MaterialItem> materials = new ArrayList<>();
-        for (MixRecipeItem item : recipe.getItems()) {
+        for (RecipeDetail.Item item : recipe.getItems()) {
             MaterialItem material = new MaterialItem();
-            material.setMaterialCode(item.getMaterial().getMaterialCode());
-            material.setMaterialName(item.getMaterial().getDescription());
-            material.setUnit(item.getMaterial().getBaseUnit());
+            material.setMaterialCode(item.getMaterialCode());
+            material.setMaterialName(item.getMaterialName());
+            material.setUnit(item.getMaterialUnit());
             material.setDosagePerM3(item.getDosagePerM3());
             material.setTotalDosage(item.getDosagePerM3().multiply(task.getVolume()));
             materials.add(material);
@@ -15,6 +15,12 @@ import java.math.BigDecimal;
 @Entity
 @Table(name = "production_tasks", uniqueConstraints = {
         @UniqueConstraint(columnNames = "taskNo")
+}, indexes = {
+        @Index(name = "idx_task_status_created", columnList = "status,createdAt"),
+        @Index(name = "idx_task_grade_status_created", columnList = "strengthGrade,status,createdAt"),
+        @Index(name = "idx_task_source_status_created", columnList = "sourceSystem,status,createdAt"),
+        @Index(name = "idx_task_project_created", columnList = "projectName,createdAt"),
+        @Index(name = "idx_task_created", columnList = "createdAt")
 })
 public class ProductionTask extends BaseEntity {
 
@@ -73,6 +79,12 @@ public class ProductionTask extends BaseEntity {
     @Column(length = 50)
     private String sapProductionOrderNo;
 
+    /**
+     * ERP同步字段的内容哈希，重复推送内容未变化时跳过更新
+     */
+    @Column(length = 64)
+    private String syncHash;
+
     /**
      * 任务状态
      */
@@ -86,6 +98,12 @@ public class ProductionTask extends BaseEntity {
     @Column
     private Long selectedMixRecipeId;
 
+    /**
+     * 选定配比的审核版本ID，任务单和理论消耗按该版本的快照生成
+     */
+    @Column
+    private Long selectedRecipeVersionId;
+
     /**
      * 理论单方成本（元/m³）
      */
@@ -2,9 +2,13 @@ package com.company.smartmix.task;
 
 import com.company.smartmix.common.ApiResponse;
 import com.company.smartmix.common.BusinessException;
+import com.company.smartmix.common.CursorPage;
 import com.company.smartmix.cost.CostOptimizationController;
-import com.company.smartmix.mix.MixRecipe;
-import com.company.smartmix.mix.MixRecipeRepository;
+import com.company.smartmix.cost.RecipeUnitCost;
+import com.company.smartmix.cost.RecipeUnitCostRepository;
+import com.company.smartmix.erp.ErpOutboxWriter;
+import com.company.smartmix.mix.RecipeVersion;
+import com.company.smartmix.mix.RecipeVersionService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
@@ -16,10 +20,12 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
 
 import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.time.LocalDateTime;
 import java.util.List;
 
@@ -32,24 +38,68 @@ import java.util.List;
 @RequiredArgsConstructor
 public class ProductionTaskController {
 
+    private static final LocalDateTime MIN_TIME = LocalDateTime.of(1970, 1, 1, 0, 0);
+    private static final LocalDateTime MAX_TIME = LocalDateTime.of(9999, 12, 31, 23, 59, 59);
+    private static final int MAX_PAGE_SIZE = 200;
+
     private final ProductionTaskRepository productionTaskRepository;
-    private final MixRecipeRepository mixRecipeRepository;
     private final PdfGenerationService pdfGenerationService;
+    private final TaskAssignmentService taskAssignmentService;
+    private final ErpOutboxWriter erpOutboxWriter;
+    private final RecipeVersionService recipeVersionService;
+    private final RecipeUnitCostRepository recipeUnitCostRepository;
 
-    @Operation(summary = "分页查询生产任务")
+    @Operation(summary = "分页查询生产任务", description = "按状态、强度等级、来源系统、工程名称前缀和创建时间范围过滤，"
+            + "按创建时间倒序")
     @GetMapping
     public ApiResponse<Page<ProductionTaskListDTO>> getAllTasks(
             @RequestParam(required = false) ProductionTask.TaskStatus status,
+            @RequestParam(required = false) String strengthGrade,
+            @RequestParam(required = false) ProductionTask.SourceSystem sourceSystem,
+            @RequestParam(required = false) String projectName,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "10") int size) {
+        if (size < 1 || size > MAX_PAGE_SIZE) {
+            return ApiResponse.badRequest("size 须在 1 到 " + MAX_PAGE_SIZE + " 之间");
+        }
 
-        Pageable pageable = PageRequest.of(page, size, Sort.by("createdAt").descending());
-        Page<ProductionTask> tasks = productionTaskRepository.findAll(pageable);
+        Pageable pageable = PageRequest.of(page, size, Sort.by(Sort.Order.desc("createdAt"), Sort.Order.desc("id")));
+        Page<ProductionTaskRepository.TaskSummary> tasks = productionTaskRepository.findSummaries(status,
+                blankToNull(strengthGrade), sourceSystem, ProductionTaskRepository.projectNamePattern(projectName),
+                from != null ? from : MIN_TIME, to != null ? to : MAX_TIME, pageable);
 
         Page<ProductionTaskListDTO> result = tasks.map(this::toListDTO);
         return ApiResponse.success(result);
     }
 
+    @Operation(summary = "游标分页查询生产任务", description = "过滤条件同分页查询，不统计总数，按创建时间倒序；"
+            + "下一页传入上一页返回的 nextCursor，适合调度看板轮询")
+    @GetMapping("/cursor")
+    public ApiResponse<CursorPage<ProductionTaskListDTO>> getTasksByCursor(
+            @RequestParam(required = false) ProductionTask.TaskStatus status,
+            @RequestParam(required = false) String strengthGrade,
+            @RequestParam(required = false) ProductionTask.SourceSystem sourceSystem,
+            @RequestParam(required = false) String projectName,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size) {
+        if (size < 1 || size > MAX_PAGE_SIZE) {
+            return ApiResponse.badRequest("size 须在 1 到 " + MAX_PAGE_SIZE + " 之间");
+        }
+
+        CursorPage.TimeIdCursor position = CursorPage.decodeTimeIdCursor(cursor, to != null ? to : MAX_TIME);
+
+        List<ProductionTaskListDTO> rows = productionTaskRepository.findSummariesBefore(status,
+                blankToNull(strengthGrade), sourceSystem, ProductionTaskRepository.projectNamePattern(projectName),
+                from != null ? from : MIN_TIME, position.getCreatedAt(), position.getId(), PageRequest.of(0, size + 1))
+                .stream().map(this::toListDTO).toList();
+        return ApiResponse.success(CursorPage.of(rows, size,
+                row -> CursorPage.encodeCursor(row.getCreatedAt(), row.getId())));
+    }
+
     @Operation(summary = "查询任务详情")
     @GetMapping("/{id}")
     @Transactional(readOnly = true)
@@ -82,7 +132,7 @@ public class ProductionTaskController {
         return ApiResponse.success("任务创建成功", toDetailDTO(saved));
     }
 
-    @Operation(summary = "选择配比")
+    @Operation(summary = "选择配比", description = "理论成本按当前价格计算的配比单方成本，价格不完整时为空")
     @PostMapping("/{id}/select-mix")
     @Transactional
     public ApiResponse<ProductionTaskDetailDTO> selectMix(@PathVariable Long id,
@@ -90,28 +140,74 @@ public class ProductionTaskController {
         ProductionTask task = productionTaskRepository.findById(id)
                 .orElseThrow(() -> new BusinessException("生产任务不存在"));
 
-        MixRecipe recipe = mixRecipeRepository.findByIdWithItems(request.getMixRecipeId())
-                .orElseThrow(() -> new BusinessException("配比不存在"));
-
-        if (recipe.getStatus() != MixRecipe.RecipeStatus.APPROVED) {
-            return ApiResponse.badRequest("只能选择已审核的配比");
-        }
+        // 审核状态和当前版本在本事务内从数据库读取，配比明细取自不可变的版本快照
+        RecipeVersion version = recipeVersionService.currentVersion(request.getMixRecipeId());
 
         // 更新任务
-        task.setSelectedMixRecipeId(recipe.getId());
+        task.setSelectedMixRecipeId(version.getMixRecipeId());
+        task.setSelectedRecipeVersionId(version.getId());
 
         // 设置理论成本
-        if (request.getTheoreticalUnitCost() != null) {
-            task.setTheoreticalUnitCost(request.getTheoreticalUnitCost());
-            task.setTheoreticalTotalCost(request.getTheoreticalUnitCost().multiply(task.getVolume()));
-        }
+        BigDecimal unitCost = recipeUnitCostRepository.findByMixRecipeId(version.getMixRecipeId())
+                .filter(cost -> !Boolean.TRUE.equals(cost.getPriceIncomplete()))
+                .map(RecipeUnitCost::getUnitCost)
+                .orElse(null);
+        task.setTheoreticalUnitCost(unitCost);
+        task.setTheoreticalTotalCost(unitCost != null
+                ? unitCost.multiply(task.getVolume()).setScale(2, RoundingMode.HALF_UP) : null);
 
         task.setStatus(ProductionTask.TaskStatus.PLANNED);
 
         ProductionTask saved = productionTaskRepository.save(task);
+        erpOutboxWriter.taskPlanned(saved, version.getRecipe());
         return ApiResponse.success("配比选择成功", toDetailDTO(saved));
     }
 
+    @Operation(summary = "完成任务", description = "标记任务完成，并回传成本数据到ERP")
+    @PostMapping("/{id}/complete")
+    @Transactional
+    public ApiResponse<ProductionTaskDetailDTO> completeTask(@PathVariable Long id) {
+        ProductionTask task = productionTaskRepository.findById(id)
+                .orElseThrow(() -> new BusinessException("生产任务不存在"));
+
+        if (task.getStatus() != ProductionTask.TaskStatus.PLANNED
+                && task.getStatus() != ProductionTask.TaskStatus.IN_PROGRESS) {
+            return ApiResponse.badRequest("只能完成已计划或生产中的任务");
+        }
+
+        task.setStatus(ProductionTask.TaskStatus.COMPLETED);
+        ProductionTask saved = productionTaskRepository.save(task);
+        erpOutboxWriter.taskCompleted(saved, LocalDateTime.now());
+        return ApiResponse.success("任务已完成", toDetailDTO(saved));
+    }
+
+    @Operation(summary = "预览批量配比分配", description = "对新建任务在满足材料可用量约束下按总成本最低分配配比，不保存")
+    @PostMapping("/assignment/plan")
+    public ApiResponse<TaskAssignmentService.AssignmentPlan> planAssignment(
+            @Valid @RequestBody TaskAssignmentService.AssignmentRequest request) {
+        return ApiResponse.success(taskAssignmentService.plan(request));
+    }
+
+    @Operation(summary = "执行批量配比分配", description = "重新计算分配方案并在同一事务内保存全部任务")
+    @PostMapping("/assignment/apply")
+    public ApiResponse<TaskAssignmentService.AssignmentPlan> applyAssignment(
+            @Valid @RequestBody TaskAssignmentService.AssignmentRequest request) {
+        TaskAssignmentService.AssignmentPlan plan = taskAssignmentService.apply(request);
+        return ApiResponse.success("批量分配成功", plan);
+    }
+
+    @Operation(summary = "批量自动选择配比", description = "对指定的或按条件过滤的新建任务，各自选择等级和坍落度匹配的"
+            + "最便宜已审核配比，服务端计算理论成本并批量保存；有材料可用量约束时使用 /assignment/apply")
+    @PostMapping("/auto-select-mix")
+    public ApiResponse<TaskAssignmentService.AssignmentPlan> autoSelectMix(
+            @RequestBody TaskAssignmentService.AssignmentRequest request) {
+        if (request.getMaterialCaps() != null && !request.getMaterialCaps().isEmpty()) {
+            return ApiResponse.badRequest("自动选择配比不支持材料可用量约束，请使用 /assignment/apply");
+        }
+        TaskAssignmentService.AssignmentPlan plan = taskAssignmentService.apply(request);
+        return ApiResponse.success("已为 " + plan.getAssignedCount() + " 个任务选择配比", plan);
+    }
+
     @Operation(summary = "生成PDF任务单")
     @GetMapping("/{id}/pdf")
     public org.springframework.http.ResponseEntity<byte[]> generatePdf(@PathVariable Long id) {
@@ -125,7 +221,11 @@ public class ProductionTaskController {
 
     // DTO 转换方法
 
-    private ProductionTaskListDTO toListDTO(ProductionTask task) {
+    private static String blankToNull(String value) {
+        return value == null || value.isBlank() ? null : value.trim();
+    }
+
+    private ProductionTaskListDTO toListDTO(ProductionTaskRepository.TaskSummary task) {
         ProductionTaskListDTO dto = new ProductionTaskListDTO();
         dto.setId(task.getId());
         dto.setTaskNo(task.getTaskNo());
@@ -152,6 +252,7 @@ public class ProductionTaskController {
         dto.setSapSalesOrderNo(task.getSapSalesOrderNo());
         dto.setSapProductionOrderNo(task.getSapProductionOrderNo());
         dto.setSelectedMixRecipeId(task.getSelectedMixRecipeId());
+        dto.setSelectedRecipeVersionId(task.getSelectedRecipeVersionId());
         dto.setTheoreticalUnitCost(task.getTheoreticalUnitCost());
         dto.setTheoreticalTotalCost(task.getTheoreticalTotalCost());
         dto.setCreatedAt(task.getCreatedAt());
@@ -187,6 +288,7 @@ public class ProductionTaskController {
         private String sapSalesOrderNo;
         private String sapProductionOrderNo;
         private Long selectedMixRecipeId;
+        private Long selectedRecipeVersionId;
         private BigDecimal theoreticalUnitCost;
         private BigDecimal theoreticalTotalCost;
         private LocalDateTime createdAt;
@@ -216,7 +318,5 @@ public class ProductionTaskController {
     public static class SelectMixRequest {
         @NotNull(message = "配比ID不能为空")
         private Long mixRecipeId;
-
-        private BigDecimal theoreticalUnitCost;
     }
 }
@@ -1,8 +1,15 @@
 package com.company.smartmix.task;
 
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 /**
@@ -11,7 +18,75 @@ import java.util.Optional;
 @Repository
 public interface ProductionTaskRepository extends JpaRepository<ProductionTask, Long> {
 
+    String SUMMARY_COLUMNS = "SELECT t.id AS id, t.taskNo AS taskNo, t.projectName AS projectName, "
+            + "t.strengthGrade AS strengthGrade, t.volume AS volume, t.status AS status, "
+            + "t.sourceSystem AS sourceSystem, t.createdAt AS createdAt FROM ProductionTask t ";
+
+    /**
+     * 列表过滤条件：?1-?4 为空时不过滤该字段，?4 为已转义的工程名称前缀模式（如 "华东\_一期%"）
+     */
+    String SUMMARY_FILTER = "WHERE (?1 IS NULL OR t.status = ?1) AND (?2 IS NULL OR t.strengthGrade = ?2) "
+            + "AND (?3 IS NULL OR t.sourceSystem = ?3) AND (?4 IS NULL OR t.projectName LIKE ?4 ESCAPE '\\') "
+            + "AND t.createdAt >= ?5 AND t.createdAt <= ?6 ";
+
     Optional<ProductionTask> findByTaskNo(String taskNo);
 
+    List<ProductionTask> findByTaskNoIn(Collection<String> taskNos);
+
     boolean existsByTaskNo(String taskNo);
+
+    List<ProductionTask> findByIdInAndStatus(Collection<Long> ids, ProductionTask.TaskStatus status);
+
+    /**
+     * 列表分页（只查询列表字段），创建时间在 [from, to] 内
+     */
+    @Query(value = SUMMARY_COLUMNS + SUMMARY_FILTER,
+            countQuery = "SELECT COUNT(t) FROM ProductionTask t " + SUMMARY_FILTER)
+    Page<TaskSummary> findSummaries(ProductionTask.TaskStatus status, String strengthGrade,
+            ProductionTask.SourceSystem sourceSystem, String projectNamePattern, LocalDateTime from, LocalDateTime to,
+            Pageable pageable);
+
+    /**
+     * 列表游标分页：(cursorCreatedAt, cursorId) 之前、from 之后的任务，按创建时间和ID倒序，不统计总数
+     */
+    @Query(SUMMARY_COLUMNS + SUMMARY_FILTER
+            + "AND (t.createdAt < ?6 OR t.id < ?7) ORDER BY t.createdAt DESC, t.id DESC")
+    List<TaskSummary> findSummariesBefore(ProductionTask.TaskStatus status, String strengthGrade,
+            ProductionTask.SourceSystem sourceSystem, String projectNamePattern, LocalDateTime from,
+            LocalDateTime cursorCreatedAt, Long cursorId, Pageable pageable);
+
+    /**
+     * 过滤条件同列表查询的任务实体，按创建时间顺序，供批量分配配比
+     */
+    @Query("SELECT t FROM ProductionTask t " + SUMMARY_FILTER + "ORDER BY t.createdAt, t.id")
+    List<ProductionTask> findForPlanning(ProductionTask.TaskStatus status, String strengthGrade,
+            ProductionTask.SourceSystem sourceSystem, String projectNamePattern, LocalDateTime from, LocalDateTime to);
+
+    /**
+     * 工程名称前缀转为 LIKE 模式并转义其中的通配符，前缀为空时返回 null（不过滤）
+     */
+    static String projectNamePattern(String prefix) {
+        if (prefix == null || prefix.isBlank()) {
+            return null;
+        }
+        return prefix.trim().replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+    }
+
+    interface TaskSummary {
+        Long getId();
+
+        String getTaskNo();
+
+        String getProjectName();
+
+        String getStrengthGrade();
+
+        BigDecimal getVolume();
+
+        ProductionTask.TaskStatus getStatus();
+
+        ProductionTask.SourceSystem getSourceSystem();
+
+        LocalDateTime getCreatedAt();
+    }
 }
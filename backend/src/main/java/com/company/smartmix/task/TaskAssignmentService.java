@@ -0,0 +1,442 @@
+package com.company.smartmix.task;
+
+import com.company.smartmix.common.BusinessException;
+import com.company.smartmix.cost.RecipeCostMatrix;
+import com.company.smartmix.material.MaterialCache;
+import com.company.smartmix.material.MaterialPriceSnapshot;
+import com.company.smartmix.material.MaterialPriceSnapshotService;
+import com.company.smartmix.mix.MixRecipe;
+import com.company.smartmix.mix.MixRecipeItem;
+import com.company.smartmix.mix.MixRecipeRepository;
+import com.company.smartmix.mix.RecipeVersion;
+import com.company.smartmix.mix.RecipeVersionService;
+import com.company.smartmix.mix.SlumpRange;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.DecimalMin;
+import jakarta.validation.constraints.NotNull;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 生产任务批量配比分配
+ *
+ * 对全部新建任务，在强度等级相同、坍落度满足要求的已审核配比中选择，使总理论成本最低。
+ * 无材料可用量约束时每个任务独立取最便宜配比即为最优；有约束时先按最便宜配比分配，
+ * 再对超限材料反复执行"单位超限量代价最小"的换配比修复，最后在不违反约束的前提下
+ * 尝试把任务换回更便宜的配比。单方成本使用价格快照和定点成本核一次算出。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class TaskAssignmentService {
+
+    private static final double EPS = 1e-6;
+    private static final LocalDateTime MIN_TIME = LocalDateTime.of(1970, 1, 1, 0, 0);
+    private static final LocalDateTime MAX_TIME = LocalDateTime.of(9999, 12, 31, 23, 59, 59);
+
+    private final ProductionTaskRepository productionTaskRepository;
+    private final MixRecipeRepository mixRecipeRepository;
+    private final MaterialPriceSnapshotService materialPriceSnapshotService;
+    private final MaterialCache materialCache;
+    private final TaskPlanWriter taskPlanWriter;
+    private final RecipeVersionService recipeVersionService;
+
+    /**
+     * 预览分配方案，不修改任务
+     */
+    @Transactional(readOnly = true)
+    public AssignmentPlan plan(AssignmentRequest request) {
+        return solve(loadTasks(request), request);
+    }
+
+    /**
+     * 计算并在同一事务内保存全部分配结果；约束无法满足时不做任何修改
+     */
+    @Transactional
+    public AssignmentPlan apply(AssignmentRequest request) {
+        List<ProductionTask> tasks = loadTasks(request);
+        AssignmentPlan plan = solve(tasks, request);
+        if (!plan.isFeasible()) {
+            throw new BusinessException(400, "材料可用量约束无法满足，未保存分配结果");
+        }
+
+        // 任务实体保持未修改，由 TaskPlanWriter 批量写入任务和回传ERP的理论消耗（随本事务提交）
+        Map<Long, ProductionTask> byId = new HashMap<>();
+        tasks.forEach(task -> byId.put(task.getId(), task));
+        Map<Long, RecipeVersion> versions = new HashMap<>();
+        List<TaskPlanWriter.TaskPlan> plans = new ArrayList<>(plan.getAssignments().size());
+        for (TaskAssignment assignment : plan.getAssignments()) {
+            RecipeVersion version = versions.computeIfAbsent(assignment.getMixRecipeId(),
+                    recipeVersionService::currentVersion);
+            assignment.setRecipeVersionId(version.getId());
+            plans.add(new TaskPlanWriter.TaskPlan(byId.get(assignment.getTaskId()), version,
+                    assignment.getUnitCost(), assignment.getTotalCost()));
+        }
+        taskPlanWriter.write(plans);
+        log.info("批量分配配比: tasks={}, assigned={}, totalCost={}",
+                plan.getTaskCount(), plan.getAssignedCount(), plan.getTotalCost());
+        return plan;
+    }
+
+    private List<ProductionTask> loadTasks(AssignmentRequest request) {
+        if (request.getTaskIds() == null || request.getTaskIds().isEmpty()) {
+            String strengthGrade = request.getStrengthGrade() == null || request.getStrengthGrade().isBlank()
+                    ? null : request.getStrengthGrade().trim();
+            return productionTaskRepository.findForPlanning(ProductionTask.TaskStatus.NEW, strengthGrade,
+                    request.getSourceSystem(), ProductionTaskRepository.projectNamePattern(request.getProjectName()),
+                    request.getFrom() != null ? request.getFrom() : MIN_TIME,
+                    request.getTo() != null ? request.getTo() : MAX_TIME);
+        }
+        return productionTaskRepository.findByIdInAndStatus(request.getTaskIds(), ProductionTask.TaskStatus.NEW);
+    }
+
+    private AssignmentPlan solve(List<ProductionTask> tasks, AssignmentRequest request) {
+        long start = System.nanoTime();
+        MaterialPriceSnapshot prices = materialPriceSnapshotService.current();
+
+        // 一次加载所有相关等级的已审核配比并计算单方成本
+        Set<String> grades = new LinkedHashSet<>();
+        tasks.forEach(task -> grades.add(task.getStrengthGrade()));
+        List<MixRecipe> recipes = grades.isEmpty() ? List.of()
+                : mixRecipeRepository.findByStrengthGradeInAndStatusWithItems(grades, MixRecipe.RecipeStatus.APPROVED);
+        RecipeCostMatrix matrix = RecipeCostMatrix.of(recipes);
+        long[] unitCosts = matrix.unitCosts(prices);
+        int[] ascending = RecipeCostMatrix.ascendingOrder(unitCosts, matrix.rows());
+
+        // 受约束材料的用量（kg/m³），按行号索引
+        Map<Long, Integer> capIndex = new LinkedHashMap<>();
+        List<MaterialCap> caps = request.getMaterialCaps() == null ? List.of() : request.getMaterialCaps();
+        for (MaterialCap cap : caps) {
+            if (capIndex.putIfAbsent(cap.getMaterialId(), capIndex.size()) != null) {
+                throw new BusinessException(400, "材料可用量重复: " + cap.getMaterialId());
+            }
+        }
+        int k = capIndex.size();
+        double[] limit = new double[k];
+        for (MaterialCap cap : caps) {
+            limit[capIndex.get(cap.getMaterialId())] = cap.getMaxKg().doubleValue();
+        }
+        double[][] dosage = new double[matrix.rows()][k];
+        String[] capCodes = new String[k];
+        for (int r = 0; r < matrix.rows(); r++) {
+            for (MixRecipeItem item : matrix.recipe(r).getItems()) {
+                Integer c = capIndex.get(item.getMaterial().getId());
+                if (c != null) {
+                    dosage[r][c] += item.getDosagePerM3().doubleValue();
+                    capCodes[c] = materialCache.getRequired(item.getMaterial().getId()).getMaterialCode();
+                }
+            }
+        }
+
+        // 各任务的候选配比（按单方成本升序）
+        List<ProductionTask> assignable = new ArrayList<>();
+        List<int[]> candidates = new ArrayList<>();
+        List<UnassignedTask> unassigned = new ArrayList<>();
+        for (ProductionTask task : tasks) {
+            int[] rows = new int[ascending.length];
+            int count = 0;
+            for (int r : ascending) {
+                MixRecipe recipe = matrix.recipe(r);
+                if (recipe.getStrengthGrade().equals(task.getStrengthGrade())
+                        && SlumpRange.satisfies(recipe.getSlump(), task.getSlumpRequirement())) {
+                    rows[count++] = r;
+                }
+            }
+            if (count == 0) {
+                unassigned.add(new UnassignedTask(task.getId(), task.getTaskNo(), "没有等级和坍落度匹配且价格完整的已审核配比"));
+            } else {
+                assignable.add(task);
+                candidates.add(Arrays.copyOf(rows, count));
+            }
+        }
+
+        int n = assignable.size();
+        double[] volumes = new double[n];
+        int[] choice = new int[n]; // 候选列表中的位置
+        double[] usage = new double[k];
+        for (int t = 0; t < n; t++) {
+            volumes[t] = assignable.get(t).getVolume().doubleValue();
+            addUsage(usage, dosage[candidates.get(t)[0]], volumes[t]);
+        }
+
+        boolean feasible = repair(candidates, volumes, choice, unitCosts, dosage, usage, limit);
+        if (feasible) {
+            improve(candidates, volumes, choice, unitCosts, dosage, usage, limit);
+        }
+
+        // 组装结果
+        AssignmentPlan plan = new AssignmentPlan();
+        List<TaskAssignment> assignments = new ArrayList<>(n);
+        BigDecimal totalCost = BigDecimal.ZERO;
+        for (int t = 0; t < n; t++) {
+            ProductionTask task = assignable.get(t);
+            int[] rows = candidates.get(t);
+            int row = rows[choice[t]];
+            MixRecipe recipe = matrix.recipe(row);
+
+            TaskAssignment assignment = new TaskAssignment();
+            assignment.setTaskId(task.getId());
+            assignment.setTaskNo(task.getTaskNo());
+            assignment.setStrengthGrade(task.getStrengthGrade());
+            assignment.setSlumpRequirement(task.getSlumpRequirement());
+            assignment.setVolume(task.getVolume());
+            assignment.setMixRecipeId(recipe.getId());
+            assignment.setMixRecipeCode(recipe.getRecipeCode());
+            assignment.setSlump(recipe.getSlump());
+            assignment.setUnitCost(RecipeCostMatrix.toAmount(unitCosts[row]));
+            assignment.setTotalCost(assignment.getUnitCost().multiply(task.getVolume()).setScale(2, RoundingMode.HALF_UP));
+            assignment.setCheapestUnitCost(RecipeCostMatrix.toAmount(unitCosts[rows[0]]));
+            assignment.setCandidateCount(rows.length);
+            assignments.add(assignment);
+            totalCost = totalCost.add(assignment.getTotalCost());
+        }
+
+        List<MaterialUsage> materialUsages = new ArrayList<>(k);
+        for (Map.Entry<Long, Integer> entry : capIndex.entrySet()) {
+            int c = entry.getValue();
+            MaterialUsage materialUsage = new MaterialUsage();
+            materialUsage.setMaterialId(entry.getKey());
+            materialUsage.setMaterialCode(capCodes[c]);
+            materialUsage.setMaxKg(BigDecimal.valueOf(limit[c]));
+            materialUsage.setPlannedKg(BigDecimal.valueOf(usage[c]).setScale(2, RoundingMode.HALF_UP));
+            materialUsage.setExceeded(usage[c] > limit[c] + EPS);
+            materialUsages.add(materialUsage);
+        }
+
+        plan.setFeasible(feasible);
+        plan.setTaskCount(tasks.size());
+        plan.setAssignedCount(n);
+        plan.setTotalCost(totalCost);
+        plan.setPriceEpoch(prices.getPriceEpoch());
+        plan.setAssignments(assignments);
+        plan.setUnassigned(unassigned);
+        plan.setMaterialUsages(materialUsages);
+        plan.setElapsedMillis((System.nanoTime() - start) / 1_000_000);
+        return plan;
+    }
+
+    /**
+     * 修复超限材料：每轮取相对超限最严重的材料，在所有使用该材料的任务中，
+     * 选择"成本增加 / 可消除的超限量"最小、且不使其他材料新增超限的换配比操作
+     */
+    private static boolean repair(List<int[]> candidates, double[] volumes, int[] choice, long[] unitCosts,
+            double[][] dosage, double[] usage, double[] limit) {
+        int maxRounds = 0;
+        for (int[] rows : candidates) {
+            maxRounds += rows.length;
+        }
+        for (int round = 0; round <= maxRounds; round++) {
+            int worst = -1;
+            double worstRatio = 0.0;
+            for (int c = 0; c < limit.length; c++) {
+                double excess = usage[c] - limit[c];
+                if (excess > EPS) {
+                    double ratio = excess / Math.max(limit[c], 1.0);
+                    if (ratio > worstRatio) {
+                        worstRatio = ratio;
+                        worst = c;
+                    }
+                }
+            }
+            if (worst < 0) {
+                return true;
+            }
+
+            double excess = usage[worst] - limit[worst];
+            int bestTask = -1;
+            int bestChoice = -1;
+            double bestScore = Double.POSITIVE_INFINITY;
+            for (int t = 0; t < candidates.size(); t++) {
+                int[] rows = candidates.get(t);
+                double[] current = dosage[rows[choice[t]]];
+                if (current[worst] <= 0.0) {
+                    continue;
+                }
+                for (int i = 0; i < rows.length; i++) {
+                    double[] next = dosage[rows[i]];
+                    double reduction = (current[worst] - next[worst]) * volumes[t];
+                    if (reduction <= EPS || !keepsOthers(usage, limit, current, next, volumes[t], worst)) {
+                        continue;
+                    }
+                    double deltaCost = (unitCosts[rows[i]] - unitCosts[rows[choice[t]]]) * volumes[t];
+                    double score = deltaCost / Math.min(reduction, excess);
+                    if (score < bestScore) {
+                        bestScore = score;
+                        bestTask = t;
+                        bestChoice = i;
+                    }
+                }
+            }
+            if (bestTask < 0) {
+                return false;
+            }
+            move(candidates, volumes, choice, dosage, usage, bestTask, bestChoice);
+        }
+        return false;
+    }
+
+    /**
+     * 在满足全部约束的前提下，按节省金额从大到小把任务换到更便宜的配比，直到无法改进
+     */
+    private static void improve(List<int[]> candidates, double[] volumes, int[] choice, long[] unitCosts,
+            double[][] dosage, double[] usage, double[] limit) {
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            int bestTask = -1;
+            int bestChoice = -1;
+            double bestSaving = EPS;
+            for (int t = 0; t < candidates.size(); t++) {
+                int[] rows = candidates.get(t);
+                double[] current = dosage[rows[choice[t]]];
+                // 候选按成本升序，只需检查比当前更靠前的配比
+                for (int i = 0; i < choice[t]; i++) {
+                    double saving = (unitCosts[rows[choice[t]]] - unitCosts[rows[i]]) * volumes[t];
+                    if (saving > bestSaving && fits(usage, limit, current, dosage[rows[i]], volumes[t])) {
+                        bestSaving = saving;
+                        bestTask = t;
+                        bestChoice = i;
+                        break;
+                    }
+                }
+            }
+            if (bestTask >= 0) {
+                move(candidates, volumes, choice, dosage, usage, bestTask, bestChoice);
+                improved = true;
+            }
+        }
+    }
+
+    /**
+     * 换配比后除 skip 以外的材料：原本未超限的不能超限，原本已超限的不能增加
+     */
+    private static boolean keepsOthers(double[] usage, double[] limit, double[] current, double[] next,
+            double volume, int skip) {
+        for (int c = 0; c < limit.length; c++) {
+            if (c == skip) {
+                continue;
+            }
+            double delta = (next[c] - current[c]) * volume;
+            if (delta > 0.0 && usage[c] + delta > limit[c] + EPS) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean fits(double[] usage, double[] limit, double[] current, double[] next, double volume) {
+        for (int c = 0; c < limit.length; c++) {
+            if (usage[c] + (next[c] - current[c]) * volume > limit[c] + EPS) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void move(List<int[]> candidates, double[] volumes, int[] choice, double[][] dosage,
+            double[] usage, int task, int newChoice) {
+        int[] rows = candidates.get(task);
+        addUsage(usage, dosage[rows[choice[task]]], -volumes[task]);
+        addUsage(usage, dosage[rows[newChoice]], volumes[task]);
+        choice[task] = newChoice;
+    }
+
+    private static void addUsage(double[] usage, double[] dosage, double volume) {
+        for (int c = 0; c < usage.length; c++) {
+            usage[c] += dosage[c] * volume;
+        }
+    }
+
+    // DTOs
+
+    @Data
+    public static class AssignmentRequest {
+        /**
+         * 参与分配的任务，为空时为按以下条件过滤的全部新建任务
+         */
+        private List<Long> taskIds;
+
+        private String strengthGrade;
+        private ProductionTask.SourceSystem sourceSystem;
+        private String projectName; // 工程名称前缀
+        private LocalDateTime from; // 创建时间范围
+        private LocalDateTime to;
+
+        /**
+         * 材料可用量（kg）
+         */
+        @Valid
+        private List<MaterialCap> materialCaps;
+    }
+
+    @Data
+    public static class MaterialCap {
+        @NotNull(message = "材料ID不能为空")
+        private Long materialId;
+
+        @NotNull(message = "可用量不能为空")
+        @DecimalMin(value = "0", message = "可用量不能为负")
+        private BigDecimal maxKg;
+    }
+
+    @Data
+    public static class AssignmentPlan {
+        private boolean feasible;
+        private int taskCount;
+        private int assignedCount;
+        private BigDecimal totalCost;
+        private Long priceEpoch;
+        private long elapsedMillis;
+        private List<TaskAssignment> assignments;
+        private List<UnassignedTask> unassigned;
+        private List<MaterialUsage> materialUsages;
+    }
+
+    @Data
+    public static class TaskAssignment {
+        private Long taskId;
+        private String taskNo;
+        private String strengthGrade;
+        private String slumpRequirement;
+        private BigDecimal volume;
+        private Long mixRecipeId;
+        private String mixRecipeCode;
+        private Long recipeVersionId; // 保存后为选定的审核版本
+        private String slump;
+        private BigDecimal unitCost;
+        private BigDecimal totalCost;
+        private BigDecimal cheapestUnitCost; // 不考虑材料约束时的最低单方成本
+        private int candidateCount;
+    }
+
+    @Data
+    public static class UnassignedTask {
+        private final Long taskId;
+        private final String taskNo;
+        private final String reason;
+    }
+
+    @Data
+    public static class MaterialUsage {
+        private Long materialId;
+        private String materialCode;
+        private BigDecimal maxKg;
+        private BigDecimal plannedKg;
+        private boolean exceeded;
+    }
+}
@@ -0,0 +1,86 @@
+package com.company.smartmix.task;
+
+import com.company.smartmix.common.BusinessException;
+import com.company.smartmix.erp.ErpOutboxWriter;
+import com.company.smartmix.mix.RecipeVersion;
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * 批量保存任务的配比分配结果
+ *
+ * 任务以 JDBC 批量 UPDATE 分块写入，不经过实体脏检查逐条更新；条件中带上加载时的版本号和 NEW 状态，
+ * 期间被其他操作修改的任务使整批回滚。回传ERP的理论消耗事件随同一事务批量写入发件箱。
+ * 调用方不得修改已加载的任务实体，否则提交时 Hibernate 会再次写入并因版本号冲突失败。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class TaskPlanWriter {
+
+    private static final int BATCH_SIZE = 500;
+
+    private static final String UPDATE = "UPDATE production_tasks SET selected_mix_recipe_id = :recipeId, "
+            + "selected_recipe_version_id = :versionId, theoretical_unit_cost = :unitCost, "
+            + "theoretical_total_cost = :totalCost, status = :planned, updated_at = :now, version = version + 1 "
+            + "WHERE id = :id AND version = :version AND status = :expected";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final ErpOutboxWriter erpOutboxWriter;
+
+    /**
+     * 把新建任务更新为已计划并写入发件箱事件；须在分配事务内调用
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void write(List<TaskPlan> plans) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        for (int from = 0; from < plans.size(); from += BATCH_SIZE) {
+            List<TaskPlan> chunk = plans.subList(from, Math.min(from + BATCH_SIZE, plans.size()));
+            MapSqlParameterSource[] params = new MapSqlParameterSource[chunk.size()];
+            for (int i = 0; i < chunk.size(); i++) {
+                TaskPlan plan = chunk.get(i);
+                params[i] = new MapSqlParameterSource()
+                        .addValue("recipeId", plan.getVersion().getMixRecipeId())
+                        .addValue("versionId", plan.getVersion().getId())
+                        .addValue("unitCost", plan.getUnitCost())
+                        .addValue("totalCost", plan.getTotalCost())
+                        .addValue("planned", ProductionTask.TaskStatus.PLANNED.name())
+                        .addValue("now", now)
+                        .addValue("id", plan.getTask().getId())
+                        .addValue("version", plan.getTask().getVersion())
+                        .addValue("expected", ProductionTask.TaskStatus.NEW.name());
+            }
+            int[] counts = jdbcTemplate.batchUpdate(UPDATE, params);
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] == 0) {
+                    throw new BusinessException(409,
+                            "任务已被其他操作修改，请重新分配: " + chunk.get(i).getTask().getTaskNo());
+                }
+            }
+        }
+        erpOutboxWriter.tasksPlanned(plans);
+        log.debug("批量保存任务配比: tasks={}", plans.size());
+    }
+
+    /**
+     * 单个任务的分配结果；task 为加载时的实体，保持未修改
+     */
+    @Value
+    public static class TaskPlan {
+        ProductionTask task;
+        RecipeVersion version;
+        BigDecimal unitCost;
+        BigDecimal totalCost;
+    }
+}
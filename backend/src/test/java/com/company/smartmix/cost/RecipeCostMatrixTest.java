@@ -0,0 +1,212 @@
+package com.company.smartmix.cost;
+
+import com.company.smartmix.material.Material;
+import com.company.smartmix.material.MaterialPriceLookup;
+import com.company.smartmix.mix.MixRecipe;
+import com.company.smartmix.mix.MixRecipeItem;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * 定点成本核与 BigDecimal 成本计算（逐项 HALF_UP 保留两位后求和）逐位一致
+ */
+class RecipeCostMatrixTest {
+
+    private static final int MATERIALS = 24;
+
+    @Test
+    void randomRecipesMatchDecimalPath() {
+        SplittableRandom random = new SplittableRandom(20240601L);
+        for (int round = 0; round < 50; round++) {
+            Map<Long, BigDecimal> prices = new HashMap<>();
+            for (long id = 1; id <= MATERIALS; id++) {
+                // 0~4 位小数的单价（元/公斤），定点路径
+                int scale = random.nextInt(5);
+                prices.put(id, BigDecimal.valueOf(random.nextLong(0, 20 * pow10(scale) + 1), scale));
+            }
+            List<MixRecipe> recipes = new ArrayList<>();
+            for (int r = 0; r < 200; r++) {
+                MixRecipe recipe = new MixRecipe();
+                int itemCount = random.nextInt(1, 10);
+                for (int i = 0; i < itemCount; i++) {
+                    long materialId = 1 + random.nextInt(MATERIALS);
+                    if (hasMaterial(recipe, materialId)) {
+                        continue;
+                    }
+                    // 0.00~2000.00 kg/m³
+                    addItem(recipe, materialId, BigDecimal.valueOf(random.nextLong(0, 200_001), 2));
+                }
+                recipes.add(recipe);
+            }
+            assertMatches(recipes, prices::get);
+        }
+    }
+
+    @Test
+    void halfUpBoundaries() {
+        // 逐项乘积恰好落在半分、略低于和略高于半分
+        Object[][] cases = {
+                { "1.00", "0.0050" },   // 0.005000 -> 0.01
+                { "1.00", "0.0049" },   // 0.004900 -> 0.00
+                { "0.01", "0.5000" },   // 0.005000 -> 0.01
+                { "0.01", "0.4999" },   // 0.004999 -> 0.00
+                { "0.01", "0.5001" },   // 0.005001 -> 0.01
+                { "12.50", "0.0001" },  // 0.001250 -> 0.00
+                { "0.50", "0.0250" },   // 0.012500 -> 0.01
+                { "0.50", "0.0350" },   // 0.017500 -> 0.02
+                { "2.50", "0.0010" },   // 0.002500 -> 0.00
+                { "2.50", "0.0020" },   // 0.005000 -> 0.01
+                { "333.33", "0.0015" }, // 0.499995 -> 0.50
+                { "0.05", "0.1000" },   // 0.005000 -> 0.01
+                { "0.00", "9.9999" },
+                { "1999.99", "0.0000" },
+        };
+        Map<Long, BigDecimal> prices = new HashMap<>();
+        List<MixRecipe> recipes = new ArrayList<>();
+        MixRecipe combined = new MixRecipe();
+        for (int i = 0; i < cases.length; i++) {
+            long materialId = i + 1;
+            BigDecimal dosage = new BigDecimal((String) cases[i][0]);
+            prices.put(materialId, new BigDecimal((String) cases[i][1]));
+
+            MixRecipe single = new MixRecipe();
+            addItem(single, materialId, dosage);
+            recipes.add(single);
+            addItem(combined, materialId, dosage);
+        }
+        // 多项各自舍入后求和，不能先求和再舍入
+        recipes.add(combined);
+        assertMatches(recipes, prices::get);
+
+        long[] costs = RecipeCostMatrix.of(recipes).unitCosts(prices::get);
+        assertEquals(1L, costs[0]);
+        assertEquals(0L, costs[1]);
+        assertEquals(1L, costs[2]);
+        assertEquals(0L, costs[3]);
+        assertEquals(1L, costs[4]);
+        assertEquals(50L, costs[10]);
+    }
+
+    @Test
+    void randomProductsAroundHalfCent() {
+        // 5000 的约数作为用量（0.01kg），使 用量 × 单价（1e-6 元）恰好为 ...5000
+        long[] divisors = { 1, 2, 4, 5, 8, 10, 20, 25, 40, 50, 100, 125, 200, 250, 500, 625, 1000, 1250, 2500, 5000 };
+        SplittableRandom random = new SplittableRandom(7L);
+        Map<Long, BigDecimal> prices = new HashMap<>();
+        List<MixRecipe> recipes = new ArrayList<>();
+        for (long materialId = 1; materialId <= 3_000; materialId++) {
+            long k = random.nextLong(0, 5_000);
+            long dosageUnits;
+            long product;
+            switch ((int) (materialId % 3)) {
+                case 0 -> {
+                    dosageUnits = divisors[random.nextInt(divisors.length)];
+                    product = 5_000L * (2 * k + 1);
+                }
+                case 1 -> {
+                    dosageUnits = 1;
+                    product = k * 10_000 + 4_999;
+                }
+                default -> {
+                    // 5001 = 3 × 1667，k 取 3 的倍数时可被 3 整除
+                    dosageUnits = 3;
+                    product = (k - k % 3) * 10_000 + 5_001;
+                }
+            }
+            prices.put(materialId, BigDecimal.valueOf(product / dosageUnits, 4));
+            MixRecipe recipe = new MixRecipe();
+            addItem(recipe, materialId, BigDecimal.valueOf(dosageUnits, 2));
+            recipes.add(recipe);
+        }
+        assertMatches(recipes, prices::get);
+    }
+
+    @Test
+    void irregularRowsFallBackToDecimal() {
+        Map<Long, BigDecimal> prices = new HashMap<>();
+        prices.put(1L, new BigDecimal("0.45"));
+        prices.put(2L, new BigDecimal("0.333333333")); // 超过 4 位小数
+        prices.put(3L, new BigDecimal("0.07"));
+
+        MixRecipe duplicate = new MixRecipe(); // 同一材料出现两次
+        addItem(duplicate, 1L, new BigDecimal("280.00"));
+        addItem(duplicate, 1L, new BigDecimal("20.55"));
+        MixRecipe finePrice = new MixRecipe();
+        addItem(finePrice, 2L, new BigDecimal("170.15"));
+        addItem(finePrice, 3L, new BigDecimal("1050.00"));
+        MixRecipe huge = new MixRecipe(); // 用量超出定点量级
+        addItem(huge, 3L, new BigDecimal("99999999.99"));
+        MixRecipe fineDosage = new MixRecipe(); // 用量超过 2 位小数
+        addItem(fineDosage, 1L, new BigDecimal("0.125"));
+
+        assertMatches(List.of(duplicate, finePrice, huge, fineDosage), prices::get);
+    }
+
+    @Test
+    void missingPriceIsIncomplete() {
+        Map<Long, BigDecimal> prices = new HashMap<>();
+        prices.put(1L, new BigDecimal("0.45"));
+        MixRecipe recipe = new MixRecipe();
+        addItem(recipe, 1L, new BigDecimal("300.00"));
+        addItem(recipe, 2L, new BigDecimal("80.00"));
+
+        long[] costs = RecipeCostMatrix.of(List.of(recipe)).unitCosts(prices::get);
+        assertEquals(RecipeCostMatrix.INCOMPLETE, costs[0]);
+        assertNull(RecipeCostMatrix.toAmount(costs[0]));
+        assertNull(calculateCost(recipe, prices::get));
+    }
+
+    private static void assertMatches(List<MixRecipe> recipes, MaterialPriceLookup prices) {
+        long[] costs = RecipeCostMatrix.of(recipes).unitCosts(prices);
+        for (int r = 0; r < recipes.size(); r++) {
+            assertEquals(calculateCost(recipes.get(r), prices), RecipeCostMatrix.toAmount(costs[r]),
+                    "row " + r);
+        }
+    }
+
+    /**
+     * BigDecimal 参考路径：每项 用量 × 单价 按 HALF_UP 保留两位，再累加
+     */
+    private static BigDecimal calculateCost(MixRecipe recipe, MaterialPriceLookup prices) {
+        BigDecimal total = BigDecimal.ZERO;
+        for (MixRecipeItem item : recipe.getItems()) {
+            BigDecimal price = prices.getPricePerKg(item.getMaterial().getId());
+            if (price == null) {
+                return null;
+            }
+            total = total.add(item.getDosagePerM3().multiply(price).setScale(2, RoundingMode.HALF_UP));
+        }
+        return total.setScale(2, RoundingMode.HALF_UP);
+    }
+
+    private static boolean hasMaterial(MixRecipe recipe, long materialId) {
+        return recipe.getItems().stream().anyMatch(item -> item.getMaterial().getId() == materialId);
+    }
+
+    private static void addItem(MixRecipe recipe, long materialId, BigDecimal dosage) {
+        Material material = new Material();
+        material.setId(materialId);
+        MixRecipeItem item = new MixRecipeItem();
+        item.setMaterial(material);
+        item.setDosagePerM3(dosage);
+        recipe.addItem(item);
+    }
+
+    private static long pow10(int exponent) {
+        long value = 1;
+        for (int i = 0; i < exponent; i++) {
+            value *= 10;
+        }
+        return value;
+    }
+}
@@ -0,0 +1,123 @@
+package com.company.smartmix.cost;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 两阶段单纯形法：最优、无可行解、无界及退化问题
+ */
+class SimplexSolverTest {
+
+    private static final double DELTA = 1e-6;
+
+    @Test
+    void optimalWithGreaterEqualRows() {
+        // min 2x + 3y, x + y >= 4, x + 3y >= 6 -> (3, 1), 9
+        SimplexSolver.Result result = new SimplexSolver(2)
+                .objective(0, 2).objective(1, 3)
+                .constraint(new double[] { 1, 1 }, SimplexSolver.Sense.GE, 4)
+                .constraint(new double[] { 1, 3 }, SimplexSolver.Sense.GE, 6)
+                .solve();
+
+        assertEquals(SimplexSolver.Status.OPTIMAL, result.getStatus());
+        assertArrayEquals(new double[] { 3, 1 }, result.getSolution(), DELTA);
+        assertEquals(9, result.getObjective(), DELTA);
+    }
+
+    @Test
+    void optimalWithBoundsAndEquality() {
+        // min x + y, x - y = 1, 2 <= x <= 5, y <= 10 -> (2, 1)，下界平移后约束右端为负
+        SimplexSolver.Result result = new SimplexSolver(2)
+                .objective(0, 1).objective(1, 1)
+                .bounds(0, 2, 5).bounds(1, 0, 10)
+                .constraint(new double[] { 1, -1 }, SimplexSolver.Sense.EQ, 1)
+                .solve();
+
+        assertEquals(SimplexSolver.Status.OPTIMAL, result.getStatus());
+        assertArrayEquals(new double[] { 2, 1 }, result.getSolution(), DELTA);
+        assertEquals(3, result.getObjective(), DELTA);
+    }
+
+    @Test
+    void optimalAtUpperBound() {
+        // max x + 2y（min 取负），x + y <= 4, y <= 3 -> (1, 3)
+        SimplexSolver.Result result = new SimplexSolver(2)
+                .objective(0, -1).objective(1, -2)
+                .bounds(1, 0, 3)
+                .constraint(new double[] { 1, 1 }, SimplexSolver.Sense.LE, 4)
+                .solve();
+
+        assertEquals(SimplexSolver.Status.OPTIMAL, result.getStatus());
+        assertArrayEquals(new double[] { 1, 3 }, result.getSolution(), DELTA);
+        assertEquals(-7, result.getObjective(), DELTA);
+    }
+
+    @Test
+    void conflictingRowsAreInfeasible() {
+        SimplexSolver.Result result = new SimplexSolver(2)
+                .objective(0, 1).objective(1, 1)
+                .constraint(new double[] { 1, 1 }, SimplexSolver.Sense.LE, 1)
+                .constraint(new double[] { 1, 1 }, SimplexSolver.Sense.GE, 3)
+                .solve();
+
+        assertEquals(SimplexSolver.Status.INFEASIBLE, result.getStatus());
+        assertNull(result.getSolution());
+    }
+
+    @Test
+    void invertedBoundsAreInfeasible() {
+        SimplexSolver.Result result = new SimplexSolver(1)
+                .objective(0, 1)
+                .bounds(0, 5, 2)
+                .solve();
+
+        assertEquals(SimplexSolver.Status.INFEASIBLE, result.getStatus());
+        assertEquals(0, result.getIterations());
+    }
+
+    @Test
+    void openDirectionIsUnbounded() {
+        // min -x, x - y <= 1：x、y 可同时无限增大
+        SimplexSolver.Result result = new SimplexSolver(2)
+                .objective(0, -1)
+                .constraint(new double[] { 1, -1 }, SimplexSolver.Sense.LE, 1)
+                .solve();
+
+        assertEquals(SimplexSolver.Status.UNBOUNDED, result.getStatus());
+        assertNull(result.getSolution());
+    }
+
+    @Test
+    void redundantEqualityRowsKeepArtificialInBasis() {
+        // 第二行是第一行的两倍，第一阶段结束时有人工变量留在基中且无法换出
+        SimplexSolver.Result result = new SimplexSolver(2)
+                .objective(0, 1)
+                .constraint(new double[] { 1, 1 }, SimplexSolver.Sense.EQ, 2)
+                .constraint(new double[] { 2, 2 }, SimplexSolver.Sense.EQ, 4)
+                .solve();
+
+        assertEquals(SimplexSolver.Status.OPTIMAL, result.getStatus());
+        assertArrayEquals(new double[] { 0, 2 }, result.getSolution(), DELTA);
+        assertEquals(0, result.getObjective(), DELTA);
+    }
+
+    @Test
+    void degenerateCyclingExampleTerminates() {
+        // Beale 循环例：Dantzig 规则在零步长换基中循环，连续退化后切换 Bland 规则
+        SimplexSolver.Result result = new SimplexSolver(4)
+                .objective(0, -0.75).objective(1, 20).objective(2, -0.5).objective(3, 6)
+                .bounds(2, 0, 1)
+                .constraint(new double[] { 0.25, -8, -1, 9 }, SimplexSolver.Sense.LE, 0)
+                .constraint(new double[] { 0.5, -12, -0.5, 3 }, SimplexSolver.Sense.LE, 0)
+                .solve();
+
+        assertEquals(SimplexSolver.Status.OPTIMAL, result.getStatus());
+        assertEquals(-1.25, result.getObjective(), DELTA);
+        assertArrayEquals(new double[] { 1, 0, 1, 0 }, result.getSolution(), DELTA);
+        assertTrue(result.getIterations() < 200, "iterations " + result.getIterations());
+    }
+}